@@ -37,6 +37,7 @@ import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.step.StepGraph;
 import com.facebook.buck.step.fs.CopyStep;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.MkdirStep;
@@ -160,21 +161,29 @@ abstract class AndroidBinaryBuildable implements AddsToRuleKey {
 
     // The `HasInstallableApk` interface needs access to the manifest, so make sure we create our
     // own copy of this so that we don't have a runtime dep on the `AaptPackageResources` step.
+    // Copying the manifest and proguard files and laying out each module's assets touch disjoint
+    // outputs, so they can run concurrently when the rule is granted more than one CPU.
+    StepGraph.Builder apkInputSteps = StepGraph.builder("prepare_apk_inputs", buildTarget);
+
     Path manifestPath = AndroidBinaryPathUtility.getManifestPath(filesystem, buildTarget);
-    steps.add(
-        MkdirStep.of(
-            BuildCellRelativePath.fromCellRelativePath(
-                context.getBuildCellRootPath(), getProjectFilesystem(), manifestPath.getParent())));
-    steps.add(
+    StepGraph.Node mkdirManifest =
+        apkInputSteps.add(
+            MkdirStep.of(
+                BuildCellRelativePath.fromCellRelativePath(
+                    context.getBuildCellRootPath(),
+                    getProjectFilesystem(),
+                    manifestPath.getParent())));
+    apkInputSteps.add(
         CopyStep.forFile(
             getProjectFilesystem(),
             pathResolver.getRelativePath(androidManifestPath),
-            manifestPath));
+            manifestPath),
+        mkdirManifest);
     buildableContext.recordArtifact(manifestPath);
 
     dexFilesInfo.proguardTextFilesPath.ifPresent(
         path -> {
-          steps.add(createCopyProguardFilesStep(pathResolver, path));
+          apkInputSteps.add(createCopyProguardFilesStep(pathResolver, path), mkdirManifest);
         });
 
     ImmutableSet.Builder<Path> nativeLibraryDirectoriesBuilder = ImmutableSet.builder();
@@ -192,18 +201,21 @@ abstract class AndroidBinaryBuildable implements AddsToRuleKey {
     baseModuleInfo.setModuleName("base");
 
     for (APKModule module : apkModules) {
+      ImmutableList.Builder<Step> moduleSteps = ImmutableList.builder();
       processModule(
           module,
           nativeLibraryDirectoriesBuilder,
           nativeLibraryAsAssetDirectories,
           moduleResourcesDirectories,
-          steps,
+          moduleSteps,
           pathResolver,
           context,
           mapOfModuleToSecondaryDexSourcePaths,
           baseModuleInfo,
           modulesInfo);
+      apkInputSteps.addChain(moduleSteps.build());
     }
+    steps.add(apkInputSteps.build());
 
     // If non-english strings are to be stored as assets, pass them to ApkBuilder.
     ImmutableSet.Builder<Path> zipFiles = ImmutableSet.builder();
@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.android.tools.r8.ByteDataView;
+import com.android.tools.r8.CompilationFailedException;
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.DexFilePerClassFileConsumer;
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.origin.PathOrigin;
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
+
+/**
+ * A content-addressed store of intermediate dex files for individual classes, so that re-dexing a
+ * secondary dex shard only runs d8 over the classes that actually changed.
+ *
+ * <p>Each fragment is keyed by the SHA-1 of a .class file's bytes and holds the intermediate dex
+ * that d8 produced for that class, with its synthetic classes (desugared lambdas and the like)
+ * folded in. The store lives under buck-out rather than in a rule's output directory, so every
+ * {@code android_binary} in the project that dexes the same library class with the same options
+ * shares the fragment.
+ *
+ * <p>Every set of options gets a directory of its own under a common root. The root is kept below
+ * {@link #MAX_CACHE_BYTES} by {@link #pruneIfDue(Path)}, which evicts the least recently written
+ * fragments, including those of compiler versions and options no longer in use.
+ */
+class D8ClassDexCache {
+
+  private static final Logger LOG = Logger.get(D8ClassDexCache.class);
+
+  private static final String CLASS_EXTENSION = ".class";
+  private static final String DEX_EXTENSION = ".dex";
+
+  @VisibleForTesting static final long MAX_CACHE_BYTES = 2L * 1024 * 1024 * 1024;
+
+  /** Pruning leaves this fraction of the maximum size, so that it is not needed on every build. */
+  private static final double PRUNED_SIZE_RATIO = 0.75;
+
+  private static final long PRUNE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /** When each cache root was last pruned by this process. */
+  private static final ConcurrentMap<Path, Long> LAST_PRUNED = new ConcurrentHashMap<>();
+
+  private final Path cacheDir;
+  private final ExecutorService d8Workers;
+
+  /**
+   * @param cacheDir absolute path of the directory holding fragments. Fragments are only valid for
+   *     the d8 version and options that produced them, so callers should use a directory per set of
+   *     options.
+   * @param d8Workers threads d8 fans its work out to.
+   */
+  D8ClassDexCache(Path cacheDir, ExecutorService d8Workers) {
+    this.cacheDir = cacheDir;
+    this.d8Workers = d8Workers;
+  }
+
+  /**
+   * Prunes the fragments under {@code cacheRoot} unless this process already did so recently.
+   * Failures are logged, as they only mean that the cache keeps more than it should for a while.
+   */
+  static void pruneIfDue(Path cacheRoot) {
+    long now = System.currentTimeMillis();
+    Long lastPruned = LAST_PRUNED.get(cacheRoot);
+    if (lastPruned != null && now - lastPruned < PRUNE_INTERVAL_MILLIS) {
+      return;
+    }
+    boolean claimed =
+        lastPruned == null
+            ? LAST_PRUNED.putIfAbsent(cacheRoot, now) == null
+            : LAST_PRUNED.replace(cacheRoot, lastPruned, now);
+    if (!claimed) {
+      // Another dexing step is pruning it right now.
+      return;
+    }
+    try {
+      prune(cacheRoot, MAX_CACHE_BYTES);
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to prune the dex fragment cache in %s.", cacheRoot);
+    }
+  }
+
+  /**
+   * Deletes the least recently written fragments under {@code cacheRoot} until what remains takes
+   * less than {@link #PRUNED_SIZE_RATIO} of {@code maxBytes}, if it takes more than {@code
+   * maxBytes}. Other processes may be reading fragments concurrently; a fragment deleted under
+   * them is simply dexed again.
+   */
+  @VisibleForTesting
+  static void prune(Path cacheRoot, long maxBytes) throws IOException {
+    if (!Files.isDirectory(cacheRoot)) {
+      return;
+    }
+    List<Map.Entry<Path, BasicFileAttributes>> fragments = new ArrayList<>();
+    Files.walkFileTree(
+        cacheRoot,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (attrs.isRegularFile()) {
+              fragments.add(new AbstractMap.SimpleImmutableEntry<>(file, attrs));
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    long totalBytes = fragments.stream().mapToLong(fragment -> fragment.getValue().size()).sum();
+    if (totalBytes <= maxBytes) {
+      return;
+    }
+
+    long targetBytes = (long) (maxBytes * PRUNED_SIZE_RATIO);
+    fragments.sort(Comparator.comparing(fragment -> fragment.getValue().lastModifiedTime()));
+    int deleted = 0;
+    for (Map.Entry<Path, BasicFileAttributes> fragment : fragments) {
+      if (totalBytes <= targetBytes) {
+        break;
+      }
+      Files.deleteIfExists(fragment.getKey());
+      totalBytes -= fragment.getValue().size();
+      deleted++;
+    }
+    LOG.debug("Pruned %d dex fragments from %s.", deleted, cacheRoot);
+  }
+
+  /**
+   * Returns dex data for every class and dex file in {@code filesToDex}, in input order, ready to
+   * be merged by a non-intermediate d8 invocation. Classes without a cached fragment are dexed in a
+   * single intermediate d8 run configured by {@code configureCompilation}, and stored.
+   *
+   * @param filesToDex absolute paths of .class files, .dex files, zips of either, or directories
+   *     of either.
+   * @return empty if the inputs contain no .class files, or contain files this cache does not know
+   *     how to split up. Callers should then hand the inputs to d8 as they are.
+   */
+  Optional<ImmutableList<byte[]>> getDexData(
+      Iterable<Path> filesToDex,
+      Consumer<D8Command.Builder> configureCompilation,
+      DiagnosticsHandler diagnosticsHandler)
+      throws IOException, CompilationFailedException {
+    List<ProgramInput> inputs = new ArrayList<>();
+    for (Path fileToDex : filesToDex) {
+      if (!readInputs(fileToDex, inputs)) {
+        return Optional.empty();
+      }
+    }
+    if (inputs.stream().noneMatch(ProgramInput::isClass)) {
+      return Optional.empty();
+    }
+
+    Map<String, byte[]> fragments = new HashMap<>();
+    Map<String, ProgramInput> missingClasses = new HashMap<>();
+    for (ProgramInput input : inputs) {
+      if (!input.isClass()) {
+        continue;
+      }
+      byte[] fragment = readFragment(input.hash);
+      if (fragment != null) {
+        fragments.put(input.hash, fragment);
+      } else {
+        missingClasses.put(input.descriptor, input);
+      }
+    }
+
+    if (!missingClasses.isEmpty()) {
+      LOG.debug("Dexing %d of %d classes.", missingClasses.size(), countClasses(inputs));
+      Map<String, byte[]> dexedClasses =
+          dexClasses(missingClasses.values(), configureCompilation, diagnosticsHandler);
+      for (Map.Entry<String, byte[]> dexedClass : dexedClasses.entrySet()) {
+        ProgramInput input = missingClasses.get(dexedClass.getKey());
+        if (input == null) {
+          continue;
+        }
+        writeFragment(input.hash, dexedClass.getValue());
+        fragments.put(input.hash, dexedClass.getValue());
+      }
+    }
+
+    ImmutableList.Builder<byte[]> dexData = ImmutableList.builderWithExpectedSize(inputs.size());
+    for (ProgramInput input : inputs) {
+      if (!input.isClass()) {
+        dexData.add(input.data);
+        continue;
+      }
+      byte[] fragment = fragments.get(input.hash);
+      if (fragment == null) {
+        // d8 did not produce a file for this class under its own name, so we cannot tell which
+        // fragment it ended up in.
+        LOG.warn("No dex fragment was produced for %s.", input.descriptor);
+        return Optional.empty();
+      }
+      dexData.add(fragment);
+    }
+    return Optional.of(dexData.build());
+  }
+
+  private static long countClasses(List<ProgramInput> inputs) {
+    return inputs.stream().filter(ProgramInput::isClass).count();
+  }
+
+  private Map<String, byte[]> dexClasses(
+      Iterable<ProgramInput> classes,
+      Consumer<D8Command.Builder> configureCompilation,
+      DiagnosticsHandler diagnosticsHandler)
+      throws CompilationFailedException {
+    Map<String, byte[]> dexedClasses = new HashMap<>();
+    D8Command.Builder builder =
+        D8Command.builder(diagnosticsHandler)
+            .setIntermediate(true)
+            .setProgramConsumer(
+                new DexFilePerClassFileConsumer() {
+                  @Override
+                  public void accept(
+                      String primaryClassDescriptor,
+                      ByteDataView data,
+                      Set<String> descriptors,
+                      DiagnosticsHandler handler) {
+                    synchronized (dexedClasses) {
+                      dexedClasses.put(primaryClassDescriptor, data.copyByteData());
+                    }
+                  }
+
+                  @Override
+                  public boolean combineSyntheticClassesWithPrimaryClass() {
+                    return true;
+                  }
+
+                  @Override
+                  public void finished(DiagnosticsHandler handler) {}
+                });
+    for (ProgramInput input : classes) {
+      builder.addClassProgramData(input.data, new PathOrigin(input.source));
+    }
+    configureCompilation.accept(builder);
+    D8.run(builder.build(), d8Workers);
+    return dexedClasses;
+  }
+
+  /** @return false if {@code fileToDex} contains something other than classes and dex files. */
+  private static boolean readInputs(Path fileToDex, List<ProgramInput> inputs) throws IOException {
+    if (Files.isDirectory(fileToDex)) {
+      List<Path> files;
+      try (Stream<Path> paths = Files.walk(fileToDex)) {
+        files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+      }
+      for (Path file : files) {
+        if (!readInputs(file, inputs)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    String fileName = fileToDex.getFileName().toString();
+    if (fileName.endsWith(CLASS_EXTENSION)) {
+      inputs.add(ProgramInput.ofClass(fileToDex, Files.readAllBytes(fileToDex)));
+    } else if (fileName.endsWith(DEX_EXTENSION)) {
+      inputs.add(ProgramInput.ofDex(fileToDex, Files.readAllBytes(fileToDex)));
+    } else if (fileName.endsWith(".jar") || fileName.endsWith(".zip")) {
+      try (ZipFile zip = new ZipFile(fileToDex.toFile())) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          String name = entry.getName();
+          boolean isClass = name.endsWith(CLASS_EXTENSION);
+          if (entry.isDirectory() || !(isClass || name.endsWith(DEX_EXTENSION))) {
+            // d8 ignores resources in archives as well.
+            continue;
+          }
+          byte[] data;
+          try (InputStream in = zip.getInputStream(entry)) {
+            data = ByteStreams.toByteArray(in);
+          }
+          inputs.add(
+              isClass
+                  ? ProgramInput.ofClass(fileToDex, data)
+                  : ProgramInput.ofDex(fileToDex, data));
+        }
+      }
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private Path getFragmentPath(String hash) {
+    return cacheDir.resolve(hash.substring(0, 2)).resolve(hash + DEX_EXTENSION);
+  }
+
+  @Nullable
+  private byte[] readFragment(String hash) throws IOException {
+    try {
+      return Files.readAllBytes(getFragmentPath(hash));
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  private void writeFragment(String hash, byte[] fragment) throws IOException {
+    Path fragmentPath = getFragmentPath(hash);
+    Files.createDirectories(fragmentPath.getParent());
+    // Other shards and other builds may be storing the same fragment concurrently, so publish it
+    // with an atomic rename to never expose a partially written file. Replacing a fragment someone
+    // else just stored is harmless, as it has the same contents.
+    Path tempPath = Files.createTempFile(fragmentPath.getParent(), hash, ".tmp");
+    try {
+      Files.write(tempPath, fragment);
+      Files.move(tempPath, fragmentPath, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  /** A class or a dex file from one of the inputs. */
+  private static class ProgramInput {
+    private final Path source;
+    private final byte[] data;
+    // Only set for classes.
+    @Nullable private final String descriptor;
+    @Nullable private final String hash;
+
+    private ProgramInput(
+        Path source, byte[] data, @Nullable String descriptor, @Nullable String hash) {
+      this.source = source;
+      this.data = data;
+      this.descriptor = descriptor;
+      this.hash = hash;
+    }
+
+    static ProgramInput ofClass(Path source, byte[] data) {
+      String descriptor = "L" + new ClassReader(data).getClassName() + ";";
+      return new ProgramInput(source, data, descriptor, Hashing.sha1().hashBytes(data).toString());
+    }
+
+    static ProgramInput ofDex(Path source, byte[] data) {
+      return new ProgramInput(source, data, null, null);
+    }
+
+    boolean isClass() {
+      return descriptor != null;
+    }
+  }
+}
@@ -169,11 +169,6 @@ public class DummyRDotJava extends AbstractBuildRule
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
     Path rDotJavaSrcFolder = getRDotJavaSrcFolder(getBuildTarget(), getProjectFilesystem());
 
-    steps.addAll(
-        MakeCleanDirectoryStep.of(
-            BuildCellRelativePath.fromCellRelativePath(
-                context.getBuildCellRootPath(), getProjectFilesystem(), rDotJavaSrcFolder)));
-
     // Generate the .java files and record where they will be written in javaSourceFilePaths.
     ImmutableSortedSet<Path> javaSourceFilePaths;
     if (androidResourceDeps.isEmpty()) {
@@ -185,6 +180,10 @@ public class DummyRDotJava extends AbstractBuildRule
       // associated TestAndroidManifest.xml file.
       Path emptyRDotJava = rDotJavaSrcFolder.resolve("com/facebook/R.java");
 
+      steps.addAll(
+          MakeCleanDirectoryStep.of(
+              BuildCellRelativePath.fromCellRelativePath(
+                  context.getBuildCellRootPath(), getProjectFilesystem(), rDotJavaSrcFolder)));
       steps.addAll(
           MakeCleanDirectoryStep.of(
               BuildCellRelativePath.fromCellRelativePath(
@@ -199,6 +198,12 @@ public class DummyRDotJava extends AbstractBuildRule
               /* executable */ false));
       javaSourceFilePaths = ImmutableSortedSet.of(emptyRDotJava);
     } else {
+      // The merge step only rewrites the R.java files whose contents change, and deletes the ones
+      // for packages that went away, so the sources from the last build are kept.
+      steps.add(
+          MkdirStep.of(
+              BuildCellRelativePath.fromCellRelativePath(
+                  context.getBuildCellRootPath(), getProjectFilesystem(), rDotJavaSrcFolder)));
       MergeAndroidResourcesStep mergeStep =
           MergeAndroidResourcesStep.createStepForDummyRDotJava(
               getProjectFilesystem(),
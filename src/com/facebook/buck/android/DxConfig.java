@@ -46,4 +46,12 @@ public class DxConfig {
   public OptionalInt getDxMaxThreadCount() {
     return delegate.getInteger("dx", "max_threads");
   }
+
+  /**
+   * @return The percentage of Buck's heap that in-process dexing jobs may use between them. Jobs
+   *     that would go over it wait for others to finish.
+   */
+  public int getInProcessHeapPercent() {
+    return delegate.getInteger("dx", "in_process_heap_percent").orElse(50);
+  }
 }
@@ -22,6 +22,8 @@ import com.android.tools.r8.D8Command;
 import com.android.tools.r8.Diagnostic;
 import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.OutputMode;
+import com.android.tools.r8.Version;
+import com.android.tools.r8.origin.Origin;
 import com.android.tools.r8.utils.AbortException;
 import com.android.tools.r8.utils.InternalOptions;
 import com.facebook.buck.android.toolchain.AndroidPlatformTarget;
@@ -30,6 +32,7 @@ import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.shell.ShellStep;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.MoreSuppliers;
 import com.facebook.buck.util.Verbosity;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -37,6 +40,11 @@ import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -47,6 +55,7 @@ import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
@@ -54,6 +63,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
 public class DxStep extends ShellStep {
@@ -99,6 +114,26 @@ public class DxStep extends ShellStep {
    */
   private static final int ARG_MAX = 32768;
 
+  /**
+   * Threads for the work d8 fans out while dexing in-process. Left to itself, d8 starts and tears
+   * down a pool as large as the machine on every run, so shards dexed concurrently oversubscribe
+   * the CPUs many times over and never get to reuse a thread. Shared by every run for the life of
+   * the process, which with the daemon spans builds.
+   */
+  private static final Supplier<ExecutorService> D8_WORKERS =
+      MoreSuppliers.memoize(
+          () ->
+              Executors.newFixedThreadPool(
+                  Runtime.getRuntime().availableProcessors(),
+                  new ThreadFactoryBuilder()
+                      .setNameFormat("d8-worker-%d")
+                      .setDaemon(true)
+                      .build()));
+
+  /** Content hashes of android.jar files, keyed by path, size and modification time. */
+  private static final ConcurrentMap<String, HashCode> ANDROID_JAR_HASHES =
+      new ConcurrentHashMap<>();
+
   private final ProjectFilesystem filesystem;
   private final AndroidPlatformTarget androidPlatformTarget;
   @VisibleForTesting final @Nullable Collection<Path> classpathFiles;
@@ -111,6 +146,7 @@ public class DxStep extends ShellStep {
   // used to differentiate different dexing buckets (if any)
   private final Optional<String> bucketId;
   private final Optional<Integer> minSdkVersion;
+  private final Optional<Path> classDexCacheDir;
 
   @Nullable private Collection<String> resourcesReferencedInCode;
 
@@ -211,6 +247,46 @@ public class DxStep extends ShellStep {
       @Nullable Collection<Path> classpathFiles,
       Optional<String> bucketId,
       Optional<Integer> minSdkVersion) {
+    this(
+        filesystem,
+        androidPlatformTarget,
+        outputDexFile,
+        filesToDex,
+        options,
+        maxHeapSize,
+        dexTool,
+        intermediate,
+        classpathFiles,
+        bucketId,
+        minSdkVersion,
+        Optional.empty());
+  }
+
+  /**
+   * @param outputDexFile path to the file where the generated classes.dex should go.
+   * @param filesToDex each element in this set is a path to a .class file, a zip file of .class
+   *     files, or a directory of .class files.
+   * @param options to pass to {@code dx}.
+   * @param maxHeapSize The max heap size used for out of process dex.
+   * @param dexTool the tool used to perform dexing.
+   * @param classpathFiles specifies classpath for interface static and default methods desugaring.
+   * @param minSdkVersion
+   * @param classDexCacheDir directory of a {@link D8ClassDexCache} to dex individual classes
+   *     through. Only valid with D8, and only when classes can be desugared without a classpath.
+   */
+  public DxStep(
+      ProjectFilesystem filesystem,
+      AndroidPlatformTarget androidPlatformTarget,
+      Path outputDexFile,
+      Iterable<Path> filesToDex,
+      EnumSet<Option> options,
+      Optional<String> maxHeapSize,
+      String dexTool,
+      boolean intermediate,
+      @Nullable Collection<Path> classpathFiles,
+      Optional<String> bucketId,
+      Optional<Integer> minSdkVersion,
+      Optional<Path> classDexCacheDir) {
     super(filesystem.getRootPath());
     this.filesystem = filesystem;
     this.androidPlatformTarget = androidPlatformTarget;
@@ -223,6 +299,7 @@ public class DxStep extends ShellStep {
     this.intermediate = intermediate;
     this.bucketId = bucketId;
     this.minSdkVersion = minSdkVersion;
+    this.classDexCacheDir = classDexCacheDir;
 
     Preconditions.checkArgument(
         !options.contains(Option.RUN_IN_PROCESS)
@@ -230,6 +307,10 @@ public class DxStep extends ShellStep {
         "In-process dexing is only supported with custom DX");
     Preconditions.checkArgument(
         !intermediate || dexTool.equals(D8), "Intermediate dexing is only supported with D8");
+    Preconditions.checkArgument(
+        !classDexCacheDir.isPresent()
+            || (dexTool.equals(D8) && (classpathFiles == null || classpathFiles.isEmpty())),
+        "Class dex caching is only supported with D8 and without a desugaring classpath");
   }
 
   @Override
@@ -352,24 +433,52 @@ public class DxStep extends ShellStep {
         boolean outputToDex = outputDexFile.getFileName().toString().endsWith(".dex");
         Path output = outputToDex ? Files.createTempDirectory("buck-d8") : outputDexFile;
 
+        Consumer<D8Command.Builder> configureCompilation =
+            compilation -> {
+              compilation
+                  .addLibraryFiles(androidPlatformTarget.getAndroidJar())
+                  .setMode(
+                      options.contains(Option.NO_OPTIMIZE)
+                          ? CompilationMode.DEBUG
+                          : CompilationMode.RELEASE)
+                  .setDisableDesugaring(options.contains(Option.NO_DESUGAR))
+                  .setInternalOptionsModifier(
+                      (InternalOptions opt) -> {
+                        opt.testing.forceJumboStringProcessing =
+                            options.contains(Option.FORCE_JUMBO);
+                      });
+              minSdkVersion.ifPresent(compilation::setMinApiLevel);
+            };
+
         D8Command.Builder builder =
             D8Command.builder(diagnosticsHandler)
-                .addProgramFiles(inputs)
                 .setIntermediate(intermediate)
-                .addLibraryFiles(androidPlatformTarget.getAndroidJar())
-                .setMode(
-                    options.contains(Option.NO_OPTIMIZE)
-                        ? CompilationMode.DEBUG
-                        : CompilationMode.RELEASE)
-                .setOutput(output, OutputMode.DexIndexed)
-                .setDisableDesugaring(options.contains(Option.NO_DESUGAR))
-                .setInternalOptionsModifier(
-                    (InternalOptions opt) -> {
-                      opt.testing.forceJumboStringProcessing = options.contains(Option.FORCE_JUMBO);
-                    });
-
+                .setOutput(output, OutputMode.DexIndexed);
+        configureCompilation.accept(builder);
         bucketId.ifPresent(builder::setBucketId);
-        minSdkVersion.ifPresent(builder::setMinApiLevel);
+
+        Optional<ImmutableList<byte[]>> cachedDexData = Optional.empty();
+        if (classDexCacheDir.isPresent() && !intermediate) {
+          // Merging per-class intermediate dex files only redexes the classes that changed since
+          // any build last saw them, instead of the whole input.
+          ImmutableList.Builder<Path> orderedInputs = ImmutableList.builder();
+          for (Path rawFile : filesToDex) {
+            orderedInputs.add(filesystem.resolve(rawFile));
+          }
+          Path classDexCacheRoot = filesystem.resolve(classDexCacheDir.get());
+          D8ClassDexCache.pruneIfDue(classDexCacheRoot);
+          cachedDexData =
+              new D8ClassDexCache(
+                      classDexCacheRoot.resolve(getClassDexCacheKey()), D8_WORKERS.get())
+                  .getDexData(orderedInputs.build(), configureCompilation, diagnosticsHandler);
+        }
+        if (cachedDexData.isPresent()) {
+          for (byte[] dexData : cachedDexData.get()) {
+            builder.addDexProgramData(dexData, Origin.unknown());
+          }
+        } else {
+          builder.addProgramFiles(inputs);
+        }
 
         if (classpathFiles != null && !classpathFiles.isEmpty()) {
           // classpathFiles is needed only for D8 java 8 desugar
@@ -380,7 +489,7 @@ public class DxStep extends ShellStep {
           builder.addClasspathFiles(absolutePaths.build());
         }
         D8Command d8Command = builder.build();
-        com.android.tools.r8.D8.run(d8Command);
+        com.android.tools.r8.D8.run(d8Command, D8_WORKERS.get());
 
         if (outputToDex) {
           File[] outputs = output.toFile().listFiles();
@@ -444,6 +553,42 @@ public class DxStep extends ShellStep {
     }
   }
 
+  /**
+   * Fragments in a {@link D8ClassDexCache} are only interchangeable between d8 runs that would have
+   * produced the same dex for the class, so they are kept apart per compiler version, options and
+   * android.jar contents.
+   */
+  private String getClassDexCacheKey() throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putUnencodedChars(Version.getVersionString());
+    hasher.putBytes(hashAndroidJar(androidPlatformTarget.getAndroidJar()).asBytes());
+    hasher.putBoolean(options.contains(Option.NO_OPTIMIZE));
+    hasher.putBoolean(options.contains(Option.NO_DESUGAR));
+    hasher.putBoolean(options.contains(Option.FORCE_JUMBO));
+    hasher.putInt(minSdkVersion.orElse(0));
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Hashes the contents of {@code androidJar}, since an SDK can be updated in place. The hash is
+   * only recomputed when the size or modification time of the file changes.
+   */
+  private static HashCode hashAndroidJar(Path androidJar) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(androidJar, BasicFileAttributes.class);
+    String stamp =
+        String.format(
+            "%s:%d:%d", androidJar, attributes.size(), attributes.lastModifiedTime().toMillis());
+    HashCode hash = ANDROID_JAR_HASHES.get(stamp);
+    if (hash == null) {
+      hash = MoreFiles.asByteSource(androidJar).hash(Hashing.sha1());
+      HashCode previous = ANDROID_JAR_HASHES.putIfAbsent(stamp, hash);
+      if (previous != null) {
+        hash = previous;
+      }
+    }
+    return hash;
+  }
+
   private boolean isOverloadedDexException(CompilationFailedException e) {
     return e.getCause() instanceof AbortException
         && e.getCause().getMessage().contains("Cannot fit requested classes in a single dex file");
@@ -31,7 +31,7 @@ import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.io.BuildCellRelativePath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.step.Step;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.RmStep;
 import com.facebook.buck.util.zip.ZipCompressionLevel;
 import com.facebook.buck.zip.ZipStep;
@@ -117,8 +117,10 @@ public class GenerateRDotJava extends AbstractBuildRule {
     // Merge R.txt of HasAndroidRes and generate the resulting R.java files per package.
     Path rDotJavaSrc = getPathToGeneratedRDotJavaSrcFiles();
 
-    steps.addAll(
-        MakeCleanDirectoryStep.of(
+    // Not cleaned: the merge step only rewrites the R.java files whose contents change, and
+    // deletes the ones for packages that went away.
+    steps.add(
+        MkdirStep.of(
             BuildCellRelativePath.fromCellRelativePath(
                 buildContext.getBuildCellRootPath(), projectFilesystem, rDotJavaSrc)));
 
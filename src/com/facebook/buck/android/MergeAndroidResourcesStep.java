@@ -31,6 +31,7 @@ import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
 import com.facebook.buck.util.ThrowingPrintWriter;
+import com.facebook.buck.util.function.ThrowingFunction;
 import com.facebook.buck.util.json.ObjectMappers;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.annotations.VisibleForTesting;
@@ -47,7 +48,11 @@ import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
 import com.google.common.collect.TreeMultimap;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -88,6 +93,11 @@ public class MergeAndroidResourcesStep implements Step {
    * a set of resources per R.java package and writes an {@code R.java} file per package under the
    * output directory. Also, if {@code uberRDotTxt} is present, the IDs in the output {@code R.java}
    * file will be taken from the {@code R.txt} file.
+   *
+   * <p>The merge is incremental: the parsed symbols files are kept in a {@link
+   * ResourceSymbolsIndex} next to the output directory, {@code R.java} files whose contents did not
+   * change are left untouched, and {@code R.java} files for packages that are no longer present are
+   * deleted. The output directory therefore does not need to be cleaned before this step runs.
    */
   @VisibleForTesting
   MergeAndroidResourcesStep(
@@ -232,6 +242,9 @@ public class MergeAndroidResourcesStep implements Step {
       }
       ImmutableMap<Path, String> symbolsFileToRDotJavaPackage = rDotTxtToPackage.build();
 
+      Path symbolsIndexPath = getPathToSymbolsIndex();
+      ResourceSymbolsIndex symbolsIndex = ResourceSymbolsIndex.load(filesystem, symbolsIndexPath);
+
       Optional<SetMultimap<String, RDotTxtEntry>> overrideSymbols =
           loadOverrideSymbols(overrideSymbolsPath);
 
@@ -248,7 +261,7 @@ public class MergeAndroidResourcesStep implements Step {
               overrideSymbols,
               bannedDuplicateResourceTypes,
               duplicateResourceWhitelist,
-              filesystem,
+              symbolsFile -> symbolsIndex.readSymbolsFile(filesystem, symbolsFile),
               useOldStyleableFormat);
 
       ImmutableSet.Builder<String> requiredPackages = ImmutableSet.builder();
@@ -290,6 +303,12 @@ public class MergeAndroidResourcesStep implements Step {
       if (!emptyPackages.isEmpty()) {
         writeEmptyRDotJavaForPackages(emptyPackages, filesystem);
       }
+
+      deleteStaleRDotJavaFiles(
+          Sets.union(rDotJavaPackageToResources.keySet(), emptyPackages).stream()
+              .map(this::getPathToRDotJava)
+              .collect(ImmutableSet.toImmutableSet()));
+      symbolsIndex.save(filesystem, symbolsIndexPath);
       return StepExecutionResults.SUCCESS;
     } catch (DuplicateResourceException e) {
       return StepExecutionResult.builder()
@@ -323,10 +342,48 @@ public class MergeAndroidResourcesStep implements Step {
   private void writeEmptyRDotJavaForPackages(
       Set<String> rDotJavaPackages, ProjectFilesystem filesystem) throws IOException {
     for (String rDotJavaPackage : rDotJavaPackages) {
-      Path outputFile = getPathToRDotJava(rDotJavaPackage);
-      filesystem.mkdirs(outputFile.getParent());
-      filesystem.writeContentsToPath(
-          String.format("package %s;\n\npublic class %s {}\n", rDotJavaPackage, rName), outputFile);
+      writeIfChanged(
+          filesystem,
+          getPathToRDotJava(rDotJavaPackage),
+          String.format("package %s;\n\npublic class %s {}\n", rDotJavaPackage, rName)
+              .getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Writes {@code contents} to {@code outputFile} unless it already holds exactly those bytes, so
+   * that an unchanged {@code R.java} keeps its timestamp and anything watching it sees no change.
+   */
+  private static void writeIfChanged(ProjectFilesystem filesystem, Path outputFile, byte[] contents)
+      throws IOException {
+    if (filesystem.isFile(outputFile) && filesystem.getFileSize(outputFile) == contents.length) {
+      byte[] existing;
+      try (InputStream in = filesystem.newFileInputStream(outputFile)) {
+        existing = ByteStreams.toByteArray(in);
+      }
+      if (Arrays.equals(existing, contents)) {
+        return;
+      }
+    }
+    filesystem.mkdirs(outputFile.getParent());
+    filesystem.writeBytesToPath(contents, outputFile);
+  }
+
+  /**
+   * Deletes the {@code R.java} files with this step's class name that an earlier run left in the
+   * output directory for packages that are no longer generated.
+   */
+  private void deleteStaleRDotJavaFiles(Set<Path> rDotJavaFiles) throws IOException {
+    if (!filesystem.isDirectory(outputDir)) {
+      return;
+    }
+    String fileName = String.format("%s.java", rName);
+    for (Path file :
+        filesystem.getFilesUnderPath(
+            outputDir, path -> path.getFileName().toString().equals(fileName))) {
+      if (!rDotJavaFiles.contains(file)) {
+        filesystem.deleteFileAtPathIfExists(file);
+      }
     }
   }
 
@@ -335,10 +392,8 @@ public class MergeAndroidResourcesStep implements Step {
       SortedSetMultimap<String, RDotTxtEntry> packageToResources, ProjectFilesystem filesystem)
       throws IOException {
     for (String rDotJavaPackage : packageToResources.keySet()) {
-      Path outputFile = getPathToRDotJava(rDotJavaPackage);
-      filesystem.mkdirs(outputFile.getParent());
-      try (ThrowingPrintWriter writer =
-          new ThrowingPrintWriter(filesystem.newFileOutputStream(outputFile))) {
+      ByteArrayOutputStream rDotJava = new ByteArrayOutputStream();
+      try (ThrowingPrintWriter writer = new ThrowingPrintWriter(rDotJava)) {
         writer.format("package %s;\n\n", rDotJavaPackage);
         writer.format("public class %s {\n", rName);
 
@@ -398,6 +453,7 @@ public class MergeAndroidResourcesStep implements Step {
         // Close the class definition.
         writer.println("}");
       }
+      writeIfChanged(filesystem, getPathToRDotJava(rDotJavaPackage), rDotJava.toByteArray());
     }
   }
 
@@ -412,6 +468,35 @@ public class MergeAndroidResourcesStep implements Step {
       ProjectFilesystem filesystem,
       boolean useOldStyleableFormat)
       throws DuplicateResourceException {
+    return sortSymbols(
+        symbolsFileToRDotJavaPackage,
+        uberRDotTxtIds,
+        symbolsFileToResourceDeps,
+        overrides,
+        bannedDuplicateResourceTypes,
+        duplicateResourceWhitelist,
+        symbolsFile ->
+            filesystem.readLines(symbolsFile).stream()
+                .filter(input -> !Strings.isNullOrEmpty(input))
+                .map(MergeAndroidResourcesStep::parseEntryOrThrow)
+                .collect(Collectors.toList()),
+        useOldStyleableFormat);
+  }
+
+  /**
+   * Same as the above, but reads each symbols file with {@code symbolsFileReader}, which must
+   * return a list that may be modified.
+   */
+  private static SortedSetMultimap<String, RDotTxtEntry> sortSymbols(
+      Map<Path, String> symbolsFileToRDotJavaPackage,
+      Optional<ImmutableMap<RDotTxtEntry, String>> uberRDotTxtIds,
+      ImmutableMap<Path, HasAndroidResourceDeps> symbolsFileToResourceDeps,
+      Optional<SetMultimap<String, RDotTxtEntry>> overrides,
+      EnumSet<RType> bannedDuplicateResourceTypes,
+      Set<String> duplicateResourceWhitelist,
+      ThrowingFunction<Path, List<RDotTxtEntry>, IOException> symbolsFileReader,
+      boolean useOldStyleableFormat)
+      throws DuplicateResourceException {
     // If we're reenumerating, start at 0x7f01001 so that the resulting file is human readable.
     // This value range (0x7f010001 - ...) is easier to spot as an actual resource id instead of
     // other values in styleable which can be enumerated integers starting at 0.
@@ -449,11 +534,7 @@ public class MergeAndroidResourcesStep implements Step {
       // Read the symbols file and parse each line as a Resource.
       List<RDotTxtEntry> linesInSymbolsFile;
       try {
-        linesInSymbolsFile =
-            filesystem.readLines(symbolsFile).stream()
-                .filter(input -> !Strings.isNullOrEmpty(input))
-                .map(MergeAndroidResourcesStep::parseEntryOrThrow)
-                .collect(Collectors.toList());
+        linesInSymbolsFile = symbolsFileReader.apply(symbolsFile);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -683,6 +764,17 @@ public class MergeAndroidResourcesStep implements Step {
     return getShortName() + " " + Joiner.on(' ').join(resources);
   }
 
+  /**
+   * The index lives next to the output directory rather than inside it, so that it is not packaged
+   * with the generated sources. Each class name gets its own index, as the steps for {@code R} and
+   * for a final R class may share an output directory.
+   */
+  @VisibleForTesting
+  Path getPathToSymbolsIndex() {
+    return outputDir.resolveSibling(
+        String.format("%s_%s_symbols.bin", outputDir.getFileName(), rName));
+  }
+
   protected Path getPathToRDotJava(String rDotJavaPackage) {
     return outputDir
         .resolve(rDotJavaPackage.replace('.', '/'))
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry;
+import com.facebook.buck.android.aapt.RDotTxtEntry.CustomDrawableType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The parsed contents of the {@code R.txt} files read by a {@link MergeAndroidResourcesStep},
+ * persisted between builds in a compact binary file so that only the symbols files that changed
+ * since the last merge need to be parsed again.
+ *
+ * <p>Each symbols file is keyed by its path and the SHA-1 of its contents, so a stale or foreign
+ * index can only cost a re-parse, never a wrong result.
+ */
+class ResourceSymbolsIndex {
+  private static final Logger LOG = Logger.get(ResourceSymbolsIndex.class);
+
+  /** Bump this whenever the serialized format changes. */
+  private static final int VERSION = 1;
+
+  private static final IdType[] ID_TYPES = IdType.values();
+  private static final RType[] R_TYPES = RType.values();
+  private static final CustomDrawableType[] CUSTOM_TYPES = CustomDrawableType.values();
+
+  private final Map<Path, SymbolsFile> previous;
+  private final Map<Path, SymbolsFile> current = new LinkedHashMap<>();
+
+  private ResourceSymbolsIndex(Map<Path, SymbolsFile> previous) {
+    this.previous = previous;
+  }
+
+  /**
+   * Loads the index at {@code indexPath}, or returns an empty index if it is missing, unreadable or
+   * was written by another version of this class.
+   */
+  static ResourceSymbolsIndex load(ProjectFilesystem filesystem, Path indexPath) {
+    if (!filesystem.isFile(indexPath)) {
+      return new ResourceSymbolsIndex(new HashMap<>());
+    }
+    try (InputStream stream = filesystem.newFileInputStream(indexPath);
+        DataInputStream in = new DataInputStream(stream)) {
+      if (in.readInt() != VERSION) {
+        return new ResourceSymbolsIndex(new HashMap<>());
+      }
+      int fileCount = in.readInt();
+      Map<Path, SymbolsFile> files = new HashMap<>(fileCount * 2);
+      for (int i = 0; i < fileCount; i++) {
+        Path path = Paths.get(in.readUTF());
+        byte[] hash = new byte[in.readUnsignedByte()];
+        in.readFully(hash);
+        int entryCount = in.readInt();
+        ImmutableList.Builder<RDotTxtEntry> entries =
+            ImmutableList.builderWithExpectedSize(entryCount);
+        for (int j = 0; j < entryCount; j++) {
+          IdType idType = ID_TYPES[in.readUnsignedByte()];
+          RType type = R_TYPES[in.readUnsignedByte()];
+          CustomDrawableType customType = CUSTOM_TYPES[in.readUnsignedByte()];
+          String name = in.readUTF();
+          String idValue = in.readUTF();
+          entries.add(new RDotTxtEntry(idType, type, name, idValue, customType));
+        }
+        files.put(path, new SymbolsFile(HashCode.fromBytes(hash), entries.build()));
+      }
+      return new ResourceSymbolsIndex(files);
+    } catch (IOException | RuntimeException e) {
+      LOG.debug(e, "Ignoring unreadable resource symbols index %s.", indexPath);
+      return new ResourceSymbolsIndex(new HashMap<>());
+    }
+  }
+
+  /**
+   * Returns the entries of the symbols file at {@code symbolsFile}, parsing it only if its contents
+   * differ from the last time it was indexed. The returned list may be modified by the caller.
+   */
+  List<RDotTxtEntry> readSymbolsFile(ProjectFilesystem filesystem, Path symbolsFile)
+      throws IOException {
+    SymbolsFile indexed = current.get(symbolsFile);
+    if (indexed == null) {
+      byte[] contents;
+      try (InputStream in = filesystem.newFileInputStream(symbolsFile)) {
+        contents = ByteStreams.toByteArray(in);
+      }
+      HashCode hash = Hashing.sha1().hashBytes(contents);
+      indexed = previous.get(symbolsFile);
+      if (indexed == null || !indexed.hash.equals(hash)) {
+        indexed = new SymbolsFile(hash, parse(contents));
+      }
+      current.put(symbolsFile, indexed);
+    }
+    return new ArrayList<>(indexed.entries);
+  }
+
+  /** Writes the symbols files read through this index to {@code indexPath}. */
+  void save(ProjectFilesystem filesystem, Path indexPath) throws IOException {
+    filesystem.createParentDirs(indexPath);
+    try (OutputStream stream = filesystem.newFileOutputStream(indexPath);
+        DataOutputStream out = new DataOutputStream(stream)) {
+      out.writeInt(VERSION);
+      out.writeInt(current.size());
+      for (Map.Entry<Path, SymbolsFile> file : current.entrySet()) {
+        out.writeUTF(file.getKey().toString());
+        byte[] hash = file.getValue().hash.asBytes();
+        out.writeByte(hash.length);
+        out.write(hash);
+        out.writeInt(file.getValue().entries.size());
+        for (RDotTxtEntry entry : file.getValue().entries) {
+          out.writeByte(entry.idType.ordinal());
+          out.writeByte(entry.type.ordinal());
+          out.writeByte(entry.customType.ordinal());
+          out.writeUTF(entry.name);
+          out.writeUTF(entry.idValue);
+        }
+      }
+    }
+  }
+
+  private static ImmutableList<RDotTxtEntry> parse(byte[] contents) throws IOException {
+    ImmutableList.Builder<RDotTxtEntry> entries = ImmutableList.builder();
+    for (String line :
+        ByteSource.wrap(contents).asCharSource(StandardCharsets.UTF_8).readLines()) {
+      if (Strings.isNullOrEmpty(line)) {
+        continue;
+      }
+      Optional<RDotTxtEntry> entry = RDotTxtEntry.parse(line);
+      Preconditions.checkState(entry.isPresent(), "Should be able to match '%s'.", line);
+      entries.add(entry.get());
+    }
+    return entries.build();
+  }
+
+  private static class SymbolsFile {
+    private final HashCode hash;
+    private final ImmutableList<RDotTxtEntry> entries;
+
+    SymbolsFile(HashCode hash, ImmutableList<RDotTxtEntry> entries) {
+      this.hash = hash;
+      this.entries = entries;
+    }
+  }
+}
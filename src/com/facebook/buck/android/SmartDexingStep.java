@@ -33,7 +33,9 @@ import com.facebook.buck.step.fs.RmStep;
 import com.facebook.buck.step.fs.WriteFileStep;
 import com.facebook.buck.step.fs.XzStep;
 import com.facebook.buck.util.MoreSuppliers;
-import com.facebook.buck.util.concurrent.MoreFutures;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
+import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.facebook.buck.util.types.Unit;
 import com.facebook.buck.util.zip.ZipCompressionLevel;
@@ -54,6 +56,8 @@ import com.google.common.collect.Sets;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -86,6 +90,14 @@ public class SmartDexingStep implements Step {
 
   public static final String SHORT_NAME = "smart_dex";
   private static final String SECONDARY_SOLID_DEX_EXTENSION = ".dex.jar.xzs";
+  // Shared by every rule in the project, so that apps depending on the same libraries reuse each
+  // other's dexed classes.
+  private static final String CLASS_DEX_CACHE_DIR = "d8-class-cache";
+  // Android N runs default and static interface methods natively, so d8 leaves them alone.
+  private static final int MIN_SDK_WITH_INTERFACE_METHODS = 24;
+  // A rough ratio between the heap in-process dexing holds for a shard and the size of its
+  // compressed inputs. It only needs to be good enough to keep the largest shards apart.
+  private static final int IN_PROCESS_DEX_HEAP_BYTES_PER_INPUT_BYTE = 10;
   private final String PRIMARY_DEX_OVERFLOW_MESSAGE =
       "Primary dex size exceeds 64k method ref limit\n"
           + "Use primary dex patterns to exclude classes from the primary dex.";
@@ -305,23 +317,37 @@ public class SmartDexingStep implements Step {
       throws StepFailedException, InterruptedException {
     // Invoke dx commands in parallel for maximum thread utilization.  In testing, dx revealed
     // itself to be CPU (and not I/O) bound making it a good candidate for parallelization.
-    Stream<ImmutableList<Step>> dxSteps = generateDxCommands(filesystem, outputToInputs);
-
-    ImmutableList<Callable<Unit>> callables =
-        dxSteps
-            .map(
-                steps ->
-                    (Callable<Unit>)
-                        () -> {
-                          for (Step step : steps) {
-                            StepRunner.runStep(context, step, Optional.of(buildTarget));
-                          }
-                          return Unit.UNIT;
-                        })
-            .collect(ImmutableList.toImmutableList());
+    ImmutableList<DxPseudoRule> dxPseudoRules =
+        generateDxCommands(filesystem, outputToInputs).collect(ImmutableList.toImmutableList());
+
+    ImmutableList.Builder<ListenableFuture<Unit>> futures = ImmutableList.builder();
+    for (DxPseudoRule dxPseudoRule : dxPseudoRules) {
+      ImmutableList.Builder<Step> steps = ImmutableList.builder();
+      dxPseudoRule.buildInternal(steps);
+      ImmutableList<Step> dxSteps = steps.build();
+      Callable<Unit> callable =
+          () -> {
+            for (Step step : dxSteps) {
+              StepRunner.runStep(context, step, Optional.of(buildTarget));
+            }
+            return Unit.UNIT;
+          };
+      if (executorService instanceof WeightedListeningExecutorService) {
+        // Hold back shards whose dexing would not fit in the heap next to the ones already running.
+        futures.add(
+            ((WeightedListeningExecutorService) executorService)
+                .submit(callable, dxPseudoRule.getResourceAmounts()));
+      } else {
+        futures.add(executorService.submit(callable));
+      }
+    }
 
+    ListenableFuture<List<Unit>> future = Futures.allAsList(futures.build());
     try {
-      MoreFutures.getAll(executorService, callables);
+      future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      throw e;
     } catch (ExecutionException e) {
       Throwable cause = e.getCause();
       Throwables.throwIfInstanceOf(cause, StepFailedException.class);
@@ -376,7 +402,7 @@ public class SmartDexingStep implements Step {
    * Once the {@code .class} files have been split into separate zip files, each must be converted
    * to a {@code .dex} file.
    */
-  private Stream<ImmutableList<Step>> generateDxCommands(
+  private Stream<DxPseudoRule> generateDxCommands(
       ProjectFilesystem filesystem, Multimap<Path, Path> outputToInputs) {
 
     ImmutableMap<Path, Sha1HashCode> dexInputHashes = dexInputHashesProvider.getDexInputHashes();
@@ -405,13 +431,7 @@ public class SmartDexingStep implements Step {
                         : null,
                     useDexBuckedId,
                     minSdkVersion))
-        .filter(dxPseudoRule -> !dxPseudoRule.checkIsCached())
-        .map(
-            dxPseudoRule -> {
-              ImmutableList.Builder<Step> steps = ImmutableList.builder();
-              dxPseudoRule.buildInternal(steps);
-              return steps.build();
-            });
+        .filter(dxPseudoRule -> !dxPseudoRule.checkIsCached());
   }
 
   /**
@@ -508,6 +528,38 @@ public class SmartDexingStep implements Step {
       return newInputsHash.equals(currentInputsHash);
     }
 
+    /**
+     * Estimates what dexing this shard takes, so that no more shards are dexed at once than fit in
+     * the heap. Only in-process dexing uses Buck's heap, and it holds all of a shard's code at
+     * once, several times the size of its compressed input jars.
+     */
+    ResourceAmounts getResourceAmounts() {
+      if (!DxStep.D8.equals(dexTool) && !dxOptions.contains(Option.RUN_IN_PROCESS)) {
+        return ResourceAmounts.of(1, 0, 0, 0);
+      }
+      long inputBytes = 0;
+      for (Path src : srcs) {
+        try {
+          if (filesystem.isFile(src)) {
+            inputBytes += filesystem.getFileSize(src);
+          }
+        } catch (IOException e) {
+          // Dexing will report the problem with this input.
+        }
+      }
+      long heapBytes = inputBytes * IN_PROCESS_DEX_HEAP_BYTES_PER_INPUT_BYTE;
+      return ResourceAmounts.of(
+          1,
+          (int)
+              Math.max(
+                  1,
+                  Math.min(
+                      Integer.MAX_VALUE,
+                      heapBytes / ResourceAmountsEstimator.MEMORY_UNIT_BYTES)),
+          0,
+          0);
+    }
+
     private void buildInternal(ImmutableList.Builder<Step> steps) {
       Preconditions.checkState(newInputsHash != null, "Must call checkIsCached first!");
 
@@ -530,6 +582,23 @@ public class SmartDexingStep implements Step {
     }
   }
 
+  /**
+   * Classes can only be dexed one at a time if that gives the same result as dexing them alongside
+   * the rest of the shard. That's not the case when d8 desugars default and static interface
+   * methods, which needs to see the interfaces a class implements.
+   */
+  @VisibleForTesting
+  static boolean canUseClassDexCache(
+      String dexTool,
+      EnumSet<Option> dxOptions,
+      @Nullable Collection<Path> classpathFiles,
+      Optional<Integer> minSdkVersion) {
+    return DxStep.D8.equals(dexTool)
+        && (classpathFiles == null || classpathFiles.isEmpty())
+        && (dxOptions.contains(Option.NO_DESUGAR)
+            || minSdkVersion.orElse(0) >= MIN_SDK_WITH_INTERFACE_METHODS);
+  }
+
   /**
    * The step to produce the .dex file will be determined by the file extension of outputPath, much
    * as {@code dx} itself chooses whether to embed the dex inside a jar/zip based on the destination
@@ -565,6 +634,11 @@ public class SmartDexingStep implements Step {
       buckedId = Optional.of(id);
     }
 
+    Optional<Path> classDexCacheDir =
+        canUseClassDexCache(dexTool, dxOptions, classpathFiles, minSdkVersion)
+            ? Optional.of(filesystem.getBuckPaths().getCacheDir().resolve(CLASS_DEX_CACHE_DIR))
+            : Optional.empty();
+
     if (DexStore.XZ.matchesPath(outputPath)) {
       Path tempDexJarOutput = Paths.get(output.replaceAll("\\.jar\\.xz$", ".tmp.jar"));
       steps.add(
@@ -579,7 +653,8 @@ public class SmartDexingStep implements Step {
               false,
               classpathFiles,
               buckedId,
-              minSdkVersion));
+              minSdkVersion,
+              classDexCacheDir));
       // We need to make sure classes.dex is STOREd in the .dex.jar file, otherwise .XZ
       // compression won't be effective.
       Path repackedJar = Paths.get(output.replaceAll("\\.xz$", ""));
@@ -619,7 +694,8 @@ public class SmartDexingStep implements Step {
               false,
               classpathFiles,
               buckedId,
-              minSdkVersion));
+              minSdkVersion,
+              classDexCacheDir));
       steps.add(
           new RepackZipEntriesStep(
               filesystem,
@@ -653,7 +729,8 @@ public class SmartDexingStep implements Step {
               false,
               classpathFiles,
               buckedId,
-              minSdkVersion));
+              minSdkVersion,
+              classDexCacheDir));
       if (DexStore.JAR.matchesPath(outputPath)) {
         steps.add(
             new DexJarAnalysisStep(
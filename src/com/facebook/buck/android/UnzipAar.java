@@ -44,6 +44,7 @@ import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.TouchStep;
 import com.facebook.buck.unarchive.UnzipStep;
+import com.facebook.buck.util.unarchive.ExistingFileMode;
 import com.facebook.buck.util.zip.JarBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
@@ -88,8 +89,8 @@ public class UnzipAar extends AbstractBuildRuleWithDeclaredAndExtraDeps
       BuildContext context, BuildableContext buildableContext) {
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
 
-    steps.addAll(
-        MakeCleanDirectoryStep.of(
+    steps.add(
+        MkdirStep.of(
             BuildCellRelativePath.fromCellRelativePath(
                 context.getBuildCellRootPath(), getProjectFilesystem(), unpackDirectory)));
     steps.add(
@@ -97,7 +98,8 @@ public class UnzipAar extends AbstractBuildRuleWithDeclaredAndExtraDeps
             getProjectFilesystem(),
             context.getSourcePathResolver().getAbsolutePath(aarFile),
             unpackDirectory,
-            Optional.empty()));
+            Optional.empty(),
+            ExistingFileMode.OVERWRITE_CHANGED_AND_CLEAN_DIRECTORIES));
 
     steps.add(new TouchStep(getProjectFilesystem(), getProguardConfig()));
     steps.add(
@@ -27,6 +27,11 @@ import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.jvm.java.JavaBuckConfig;
 import com.facebook.buck.log.GlobalStateManager;
 import com.facebook.buck.util.concurrent.CommandThreadFactory;
+import com.facebook.buck.util.concurrent.ListeningMultiSemaphore;
+import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
+import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.util.Optional;
@@ -50,19 +55,37 @@ public class DxToolchainFactory implements ToolchainFactory<DxToolchain> {
 
     DxConfig dxConfig = new DxConfig(context.getBuckConfig());
 
-    ListeningExecutorService dxExecutorService =
-        MoreExecutors.listeningDecorator(
-            Executors.newFixedThreadPool(
-                Math.min(
-                    dxConfig
+    int threadCount =
+        Math.min(
+            dxConfig
+                .getDxThreadCount()
+                .orElse(
+                    javaConfig
                         .getDxThreadCount()
-                        .orElse(
-                            javaConfig
-                                .getDxThreadCount()
-                                .orElse(SmartDexingStep.determineOptimalThreadCount())),
-                    dxConfig.getDxMaxThreadCount().orElse(Integer.MAX_VALUE)),
-                new CommandThreadFactory(
-                    "SmartDexing", GlobalStateManager.singleton().getThreadToCommandRegister())));
+                        .orElse(SmartDexingStep.determineOptimalThreadCount())),
+            dxConfig.getDxMaxThreadCount().orElse(Integer.MAX_VALUE));
+
+    // In-process dexing shares Buck's heap, so besides a thread, each dexing job is admitted with
+    // an estimate of the heap it needs, and only as many run as fit in the share of the heap set
+    // aside for dexing.
+    ListeningExecutorService dxExecutorService =
+        new WeightedListeningExecutorService(
+            new ListeningMultiSemaphore(
+                ResourceAmounts.of(
+                    threadCount,
+                    ResourceAmountsEstimator.DEFAULT_MEMORY_CAP
+                        * dxConfig.getInProcessHeapPercent()
+                        / 100,
+                    0,
+                    0),
+                ResourceAllocationFairness.FAIR),
+            ResourceAmounts.of(1, 0, 0, 0),
+            MoreExecutors.listeningDecorator(
+                Executors.newFixedThreadPool(
+                    threadCount,
+                    new CommandThreadFactory(
+                        "SmartDexing",
+                        GlobalStateManager.singleton().getThreadToCommandRegister()))));
 
     return Optional.of(DxToolchain.of(dxExecutorService));
   }
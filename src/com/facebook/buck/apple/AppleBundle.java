@@ -61,6 +61,7 @@ import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepGraph;
 import com.facebook.buck.step.fs.CopyStep;
 import com.facebook.buck.step.fs.FindAndReplaceStep;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
@@ -369,55 +370,41 @@ public class AppleBundle extends AbstractBuildRule
             BuildCellRelativePath.fromCellRelativePath(
                 context.getBuildCellRootPath(), getProjectFilesystem(), bundleRoot)));
 
-    Path resourcesDestinationPath = bundleRoot.resolve(this.destinations.getResourcesPath());
-    if (assetCatalog.isPresent()) {
-      stepsBuilder.add(
-          MkdirStep.of(
-              BuildCellRelativePath.fromCellRelativePath(
-                  context.getBuildCellRootPath(),
-                  getProjectFilesystem(),
-                  resourcesDestinationPath)));
-      Path bundleDir = assetCatalog.get().getOutputDir();
-      stepsBuilder.add(
-          CopyStep.forDirectory(
-              getProjectFilesystem(),
-              bundleDir,
-              resourcesDestinationPath,
-              CopyStep.DirectoryMode.CONTENTS_ONLY));
-    }
+    // The resource copies and the Info.plist processing can run concurrently when the rule is
+    // granted more than one CPU. On iOS, both write into the bundle root, so the steps writing
+    // into a shared directory still run one after another.
+    StepGraph.Builder bundleContentsSteps = StepGraph.builder("prepare_bundle", getBuildTarget());
 
-    if (coreDataModel.isPresent()) {
-      stepsBuilder.add(
-          MkdirStep.of(
-              BuildCellRelativePath.fromCellRelativePath(
-                  context.getBuildCellRootPath(),
-                  getProjectFilesystem(),
-                  resourcesDestinationPath)));
-      stepsBuilder.add(
-          CopyStep.forDirectory(
-              getProjectFilesystem(),
-              context
-                  .getSourcePathResolver()
-                  .getRelativePath(coreDataModel.get().getSourcePathToOutput()),
-              resourcesDestinationPath,
-              CopyStep.DirectoryMode.CONTENTS_ONLY));
-    }
-
-    if (sceneKitAssets.isPresent()) {
-      stepsBuilder.add(
-          MkdirStep.of(
-              BuildCellRelativePath.fromCellRelativePath(
-                  context.getBuildCellRootPath(),
-                  getProjectFilesystem(),
-                  resourcesDestinationPath)));
-      stepsBuilder.add(
-          CopyStep.forDirectory(
-              getProjectFilesystem(),
-              context
-                  .getSourcePathResolver()
-                  .getRelativePath(sceneKitAssets.get().getSourcePathToOutput()),
-              resourcesDestinationPath,
-              CopyStep.DirectoryMode.CONTENTS_ONLY));
+    Path resourcesDestinationPath = bundleRoot.resolve(this.destinations.getResourcesPath());
+    ImmutableList.Builder<Path> resourceDirectoriesBuilder = ImmutableList.builder();
+    assetCatalog.ifPresent(catalog -> resourceDirectoriesBuilder.add(catalog.getOutputDir()));
+    coreDataModel.ifPresent(
+        model ->
+            resourceDirectoriesBuilder.add(
+                context.getSourcePathResolver().getRelativePath(model.getSourcePathToOutput())));
+    sceneKitAssets.ifPresent(
+        assets ->
+            resourceDirectoriesBuilder.add(
+                context.getSourcePathResolver().getRelativePath(assets.getSourcePathToOutput())));
+    ImmutableList<Path> resourceDirectories = resourceDirectoriesBuilder.build();
+    if (!resourceDirectories.isEmpty()) {
+      StepGraph.Node mkdirResources =
+          bundleContentsSteps.add(
+              MkdirStep.of(
+                  BuildCellRelativePath.fromCellRelativePath(
+                      context.getBuildCellRootPath(),
+                      getProjectFilesystem(),
+                      resourcesDestinationPath)));
+      for (Path resourceDirectory : resourceDirectories) {
+        bundleContentsSteps.addWritingTo(
+            resourcesDestinationPath,
+            CopyStep.forDirectory(
+                getProjectFilesystem(),
+                resourceDirectory,
+                resourcesDestinationPath,
+                CopyStep.DirectoryMode.CONTENTS_ONLY),
+            mkdirResources);
+      }
     }
 
     Path metadataPath = getMetadataPath();
@@ -428,37 +415,46 @@ public class AppleBundle extends AbstractBuildRule
         BuildTargetPaths.getScratchPath(getProjectFilesystem(), getBuildTarget(), "%s.plist");
     Path infoPlistOutputPath = metadataPath.resolve("Info.plist");
 
-    stepsBuilder.add(
-        MkdirStep.of(
-            BuildCellRelativePath.fromCellRelativePath(
-                context.getBuildCellRootPath(), getProjectFilesystem(), metadataPath)));
+    StepGraph.Node mkdirMetadata =
+        bundleContentsSteps.add(
+            MkdirStep.of(
+                BuildCellRelativePath.fromCellRelativePath(
+                    context.getBuildCellRootPath(), getProjectFilesystem(), metadataPath)));
 
     if (needsPkgInfoFile()) {
       // TODO(bhamiltoncx): This is only appropriate for .app bundles.
-      stepsBuilder.add(
+      bundleContentsSteps.addWritingTo(
+          metadataPath,
           new WriteFileStep(
               getProjectFilesystem(),
               "APPLWRUN",
               metadataPath.resolve("PkgInfo"),
-              /* executable */ false));
+              /* executable */ false),
+          mkdirMetadata);
     }
 
-    stepsBuilder.add(
-        MkdirStep.of(
-            BuildCellRelativePath.fromCellRelativePath(
-                context.getBuildCellRootPath(),
+    StepGraph.Node mkdirSubstitutionTemp =
+        bundleContentsSteps.add(
+            MkdirStep.of(
+                BuildCellRelativePath.fromCellRelativePath(
+                    context.getBuildCellRootPath(),
+                    getProjectFilesystem(),
+                    infoPlistSubstitutionTempPath.getParent())));
+    StepGraph.Node substituteInfoPlist =
+        bundleContentsSteps.add(
+            new FindAndReplaceStep(
                 getProjectFilesystem(),
-                infoPlistSubstitutionTempPath.getParent())),
-        new FindAndReplaceStep(
-            getProjectFilesystem(),
-            infoPlistInputPath,
-            infoPlistSubstitutionTempPath,
-            InfoPlistSubstitution.createVariableExpansionFunction(
-                withDefaults(
-                    infoPlistSubstitutions,
-                    ImmutableMap.of(
-                        "EXECUTABLE_NAME", binaryName,
-                        "PRODUCT_NAME", binaryName)))),
+                infoPlistInputPath,
+                infoPlistSubstitutionTempPath,
+                InfoPlistSubstitution.createVariableExpansionFunction(
+                    withDefaults(
+                        infoPlistSubstitutions,
+                        ImmutableMap.of(
+                            "EXECUTABLE_NAME", binaryName,
+                            "PRODUCT_NAME", binaryName)))),
+            mkdirSubstitutionTemp);
+    bundleContentsSteps.addWritingTo(
+        metadataPath,
         new PlistProcessStep(
             getProjectFilesystem(),
             infoPlistSubstitutionTempPath,
@@ -466,7 +462,10 @@ public class AppleBundle extends AbstractBuildRule
             infoPlistOutputPath,
             getInfoPlistAdditionalKeys(),
             getInfoPlistOverrideKeys(),
-            PlistProcessStep.OutputFormat.BINARY));
+            PlistProcessStep.OutputFormat.BINARY),
+        substituteInfoPlist,
+        mkdirMetadata);
+    stepsBuilder.add(bundleContentsSteps.build());
 
     if (hasBinary) {
       appendCopyBinarySteps(stepsBuilder, context);
@@ -34,6 +34,7 @@ import com.facebook.buck.parser.config.ParserConfig;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.syntax.ListWithSelects;
 import com.facebook.buck.parser.syntax.SelectorValue;
+import com.facebook.buck.query.CachingQueryEvaluator;
 import com.facebook.buck.query.QueryBuildTarget;
 import com.facebook.buck.query.QueryException;
 import com.facebook.buck.query.QueryExpression;
@@ -88,6 +89,9 @@ import org.kohsuke.args4j.spi.FileOptionHandler;
 public abstract class AbstractQueryCommand extends AbstractCommand {
   private static final Logger LOG = Logger.get(AbstractCommand.class);
 
+  /** Bounds the intermediate results kept for reuse between the arguments of a multi-query. */
+  private static final long MAX_SHARED_QUERY_TARGETS = 1_000_000;
+
   /**
    * Example usage:
    *
@@ -304,12 +308,16 @@ public abstract class AbstractQueryCommand extends AbstractCommand {
     }
     env.preloadTargetPatterns(targetLiterals);
 
-    // Now execute the query on the arguments one-by-one.
+    // Now execute the query on the arguments one-by-one. The parts of the query that don't depend
+    // on the argument, e.g. the universe of `rdeps(//..., %s)`, are only evaluated once, as long as
+    // they fit in the cache alongside the most recent results.
+    CachingQueryEvaluator<QueryBuildTarget> evaluator =
+        new CachingQueryEvaluator<>(MAX_SHARED_QUERY_TARGETS);
     TreeMultimap<String, QueryTarget> queryResultMap =
         TreeMultimap.create(String::compareTo, QueryTarget::compare);
     for (String input : inputsFormattedAsBuildTargets) {
       String query = queryFormat.replace("%s", input);
-      Set<QueryTarget> queryResult = env.evaluateQuery(query);
+      Set<QueryTarget> queryResult = env.evaluateQuery(query, evaluator);
       queryResultMap.putAll(input, queryResult);
     }
 
@@ -63,6 +63,7 @@ import com.facebook.buck.query.NoopQueryEvaluator;
 import com.facebook.buck.query.OwnerFunction;
 import com.facebook.buck.query.QueryBuildTarget;
 import com.facebook.buck.query.QueryEnvironment;
+import com.facebook.buck.query.QueryEvaluator;
 import com.facebook.buck.query.QueryException;
 import com.facebook.buck.query.QueryExpression;
 import com.facebook.buck.query.QueryFileTarget;
@@ -71,6 +72,7 @@ import com.facebook.buck.query.TestsOfFunction;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.query.QueryTargetAccessor;
 import com.facebook.buck.util.MoreExceptions;
+import com.facebook.buck.util.concurrent.ExecutorPool;
 import com.facebook.buck.util.types.Pair;
 import com.facebook.buck.util.types.Unit;
 import com.google.common.annotations.VisibleForTesting;
@@ -89,7 +91,6 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -99,6 +100,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -135,9 +137,11 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
   private final BuckEventBus eventBus;
   private final QueryEnvironment.TargetEvaluator queryTargetEvaluator;
   private final TypeCoercerFactory typeCoercerFactory;
+  private final Optional<ExecutorService> traversalExecutor;
 
   private final ImmutableMap<Cell, BuildFileTree> buildFileTrees;
-  private final Map<BuildTarget, QueryBuildTarget> buildTargetToQueryTarget = new HashMap<>();
+  private final Map<BuildTarget, QueryBuildTarget> buildTargetToQueryTarget =
+      new ConcurrentHashMap<>();
 
   // Query execution is single threaded, however the buildTransitiveClosure implementation
   // traverses the graph in parallel.
@@ -153,7 +157,8 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
       PerBuildState parserState,
       TargetPatternEvaluator targetPatternEvaluator,
       BuckEventBus eventBus,
-      TypeCoercerFactory typeCoercerFactory) {
+      TypeCoercerFactory typeCoercerFactory,
+      Optional<ExecutorService> traversalExecutor) {
     this.parser = parser;
     this.eventBus = eventBus;
     this.parserState = parserState;
@@ -171,6 +176,7 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     this.targetPatternEvaluator = targetPatternEvaluator;
     this.queryTargetEvaluator = new TargetEvaluator(targetPatternEvaluator);
     this.typeCoercerFactory = typeCoercerFactory;
+    this.traversalExecutor = traversalExecutor;
     this.checker =
         TemporaryUnconfiguredTargetToTargetUniquenessChecker.create(
             BuildBuckConfig.of(rootCell.getBuckConfig()).shouldBuckOutIncludeTargetConfigHash());
@@ -183,7 +189,8 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
       PerBuildState parserState,
       TargetPatternEvaluator targetPatternEvaluator,
       BuckEventBus eventBus,
-      TypeCoercerFactory typeCoercerFactory) {
+      TypeCoercerFactory typeCoercerFactory,
+      Optional<ExecutorService> traversalExecutor) {
     return new BuckQueryEnvironment(
         rootCell,
         ownersReportBuilder,
@@ -191,7 +198,8 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
         parserState,
         targetPatternEvaluator,
         eventBus,
-        typeCoercerFactory);
+        typeCoercerFactory,
+        traversalExecutor);
   }
 
   public static BuckQueryEnvironment from(
@@ -217,7 +225,10 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
                 ParserConfig.ApplyDefaultFlavorsMode.DISABLED),
             params.getTargetConfiguration()),
         params.getBuckEventBus(),
-        params.getTypeCoercerFactory());
+        params.getTypeCoercerFactory(),
+        // Queries don't build action graphs, so the pool for that is free, and unlike the parser's
+        // pool, which traversals block on, it can run them without deadlocking.
+        Optional.ofNullable(params.getExecutors().get(ExecutorPool.GRAPH_CPU)));
   }
 
   public DirectedAcyclicGraph<TargetNode<?>> getTargetGraph() {
@@ -248,16 +259,31 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
    */
   public Set<QueryTarget> evaluateQuery(QueryExpression<QueryBuildTarget> expr)
       throws QueryException, InterruptedException {
+    return evaluateQuery(expr, new NoopQueryEvaluator<>());
+  }
+
+  /**
+   * Evaluates {@code expr} with {@code evaluator}, which may be shared between queries to reuse
+   * the results of their common subexpressions.
+   */
+  public Set<QueryTarget> evaluateQuery(
+      QueryExpression<QueryBuildTarget> expr, QueryEvaluator<QueryBuildTarget> evaluator)
+      throws QueryException, InterruptedException {
     Set<String> targetLiterals = new HashSet<>();
     expr.collectTargetPatterns(targetLiterals);
     preloadTargetPatterns(targetLiterals);
-    return new NoopQueryEvaluator<QueryBuildTarget>().eval(expr, this);
+    return evaluator.eval(expr, this);
   }
 
   public Set<QueryTarget> evaluateQuery(String query) throws QueryException, InterruptedException {
     return evaluateQuery(QueryExpression.parse(query, this));
   }
 
+  public Set<QueryTarget> evaluateQuery(String query, QueryEvaluator<QueryBuildTarget> evaluator)
+      throws QueryException, InterruptedException {
+    return evaluateQuery(QueryExpression.parse(query, this), evaluator);
+  }
+
   TargetNode<?> getNode(QueryBuildTarget target) throws QueryException {
     BuildTarget buildTarget = target.getBuildTarget();
     TargetNode<?> node = targetsToNodes.get(buildTarget);
@@ -318,6 +344,13 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     return result.build();
   }
 
+  @Override
+  public Optional<ExecutorService> getTraversalExecutor() {
+    // The graph and the maps from targets to nodes are concurrent, and nodes missing from them are
+    // loaded through the parser, which is thread-safe.
+    return traversalExecutor;
+  }
+
   @Override
   public Set<QueryBuildTarget> getReverseDeps(Iterable<QueryBuildTarget> targets)
       throws QueryException {
@@ -20,7 +20,9 @@ import com.facebook.buck.log.GlobalStateManager;
 import com.facebook.buck.util.concurrent.CommandThreadFactory;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.concurrent.ListeningMultiSemaphore;
+import com.facebook.buck.util.concurrent.LockFreeListeningMultiSemaphore;
 import com.facebook.buck.util.concurrent.MostExecutors;
+import com.facebook.buck.util.concurrent.MultiResourceSemaphore;
 import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.google.common.base.Joiner;
@@ -59,7 +61,7 @@ public class CommandThreadManager implements AutoCloseable {
 
   public CommandThreadManager(
       String name,
-      ListeningMultiSemaphore semaphore,
+      MultiResourceSemaphore semaphore,
       ResourceAmounts defaultAmounts,
       int managedThreadCount,
       long shutdownTimeout,
@@ -88,7 +90,7 @@ public class CommandThreadManager implements AutoCloseable {
 
   public CommandThreadManager(
       String name,
-      ListeningMultiSemaphore semaphore,
+      MultiResourceSemaphore semaphore,
       ResourceAmounts defaultAmounts,
       int managedThreadCount) {
     this(
@@ -107,8 +109,7 @@ public class CommandThreadManager implements AutoCloseable {
       TimeUnit shutdownTimeoutUnit) {
     this(
         name,
-        new ListeningMultiSemaphore(
-            concurrencyLimit.maximumAmounts, concurrencyLimit.resourceAllocationFairness),
+        createSemaphore(concurrencyLimit),
         concurrencyLimit.defaultAmounts,
         concurrencyLimit.managedThreadCount,
         shutdownTimeout,
@@ -119,6 +120,16 @@ public class CommandThreadManager implements AutoCloseable {
     this(name, concurrencyLimit, DEFAULT_SHUTDOWN_TIMEOUT, DEFAULT_SHUTDOWN_TIMEOUT_UNIT);
   }
 
+  private static MultiResourceSemaphore createSemaphore(ConcurrencyLimit concurrencyLimit) {
+    if (concurrencyLimit.lockFreeSemaphore
+        && LockFreeListeningMultiSemaphore.canRepresent(concurrencyLimit.maximumAmounts)) {
+      return new LockFreeListeningMultiSemaphore(
+          concurrencyLimit.maximumAmounts, concurrencyLimit.resourceAllocationFairness);
+    }
+    return new ListeningMultiSemaphore(
+        concurrencyLimit.maximumAmounts, concurrencyLimit.resourceAllocationFairness);
+  }
+
   public ExecutorService getExecutorService() {
     return executorService;
   }
@@ -147,6 +147,7 @@ public class FetchCommand extends BuildCommand {
                   params.getTargetConfigurationSerializer(),
                   params.getBuildInfoStoreManager(),
                   cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+                  Optional.empty(),
                   cachingBuildEngineBuckConfig.getConsoleLogBuildRuleFailuresInline(),
                   RuleKeyFactories.of(
                       params.getRuleKeyConfiguration(),
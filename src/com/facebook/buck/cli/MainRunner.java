@@ -1868,6 +1868,9 @@ public final class MainRunner {
                         .addAll(DEFAULT_IGNORE_GLOBS)
                         .build(),
                     buckGlobalState.getWatchmanCursor(),
+                    buckConfig.getView(ParserConfig.class).getWatchmanSubscription()
+                        ? Optional.of(buckGlobalState.getWatchmanSubscriptions())
+                        : Optional.empty(),
                     buckConfig.getView(BuildBuckConfig.class).getNumThreads()));
       } catch (WatchmanWatcherException e) {
         buildEventBus.post(
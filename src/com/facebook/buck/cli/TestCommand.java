@@ -26,6 +26,7 @@ import com.facebook.buck.core.build.engine.BuildEngine;
 import com.facebook.buck.core.build.engine.config.CachingBuildEngineBuckConfig;
 import com.facebook.buck.core.build.engine.delegate.LocalCachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.impl.CachingBuildEngine;
+import com.facebook.buck.core.build.engine.impl.RuleDurationHistory;
 import com.facebook.buck.core.build.event.BuildEvent;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.config.BuckConfig;
@@ -295,7 +296,8 @@ public class TestCommand extends BuildCommand {
         resourcesConfig.getResourceAllocationFairness(),
         getNumTestManagedThreads(resourcesConfig),
         resourcesConfig.getDefaultResourceAmounts(),
-        resourcesConfig.getMaximumResourceAmounts());
+        resourcesConfig.getMaximumResourceAmounts(),
+        resourcesConfig.isLockFreeSemaphoreEnabled());
   }
 
   private ExitCode runTestsInternal(
@@ -619,6 +621,9 @@ public class TestCommand extends BuildCommand {
                     params.getTargetConfigurationSerializer(),
                     params.getBuildInfoStoreManager(),
                     cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+                    RuleDurationHistory.loadIfEnabled(
+                        cachingBuildEngineBuckConfig,
+                        params.getCells().getRootCell().getFilesystem()),
                     cachingBuildEngineBuckConfig.getConsoleLogBuildRuleFailuresInline(),
                     RuleKeyFactories.of(
                         params.getRuleKeyConfiguration(),
@@ -328,7 +328,11 @@ public class Build implements Closeable {
     int exitCode;
 
     BuildReport buildReport =
-        new BuildReport(buildExecutionResult, graphBuilder.getSourcePathResolver(), rootCell);
+        new BuildReport(
+            buildExecutionResult,
+            graphBuilder.getSourcePathResolver(),
+            rootCell,
+            buildEngine.getCriticalPathSummary());
 
     if (buildContext.isKeepGoing()) {
       String buildReportText = buildReport.generateForConsole(console);
@@ -20,6 +20,7 @@ import com.facebook.buck.command.config.BuildBuckConfig;
 import com.facebook.buck.core.build.engine.config.CachingBuildEngineBuckConfig;
 import com.facebook.buck.core.build.engine.delegate.CachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.impl.CachingBuildEngine;
+import com.facebook.buck.core.build.engine.impl.RuleDurationHistory;
 import com.facebook.buck.core.build.engine.type.BuildType;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.exceptions.BuildTargetParseException;
@@ -166,6 +167,8 @@ public class BuildExecutor {
         targetConfigurationSerializer,
         args.getBuildInfoStoreManager(),
         engineConfig.getResourceAwareSchedulingInfo(),
+        RuleDurationHistory.loadIfEnabled(
+            engineConfig, args.getCells().getRootCell().getFilesystem()),
         engineConfig.getConsoleLogBuildRuleFailuresInline(),
         RuleKeyFactories.of(
             args.getRuleKeyConfiguration(),
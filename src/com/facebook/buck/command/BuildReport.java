@@ -20,6 +20,8 @@ import static com.facebook.buck.util.string.MoreStrings.linesToText;
 
 import com.facebook.buck.core.build.engine.BuildResult;
 import com.facebook.buck.core.build.engine.BuildRuleSuccessType;
+import com.facebook.buck.core.build.engine.CriticalPathEntry;
+import com.facebook.buck.core.build.engine.CriticalPathSummary;
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.exceptions.HumanReadableExceptionAugmentor;
 import com.facebook.buck.core.filesystems.RelPath;
@@ -39,6 +41,7 @@ import com.facebook.buck.util.ErrorLogger.LogImpl;
 import com.facebook.buck.util.json.ObjectMappers;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
@@ -59,6 +62,7 @@ public class BuildReport {
   private final SourcePathResolverAdapter pathResolver;
   private final Cell rootCell;
   private final boolean removeOutput;
+  private final Optional<CriticalPathSummary> criticalPathSummary;
 
   /**
    * @param buildExecutionResult the build result to generate the report for.
@@ -68,7 +72,21 @@ public class BuildReport {
       Build.BuildExecutionResult buildExecutionResult,
       SourcePathResolverAdapter pathResolver,
       Cell rootCell) {
+    this(buildExecutionResult, pathResolver, rootCell, Optional.empty());
+  }
+
+  /**
+   * @param buildExecutionResult the build result to generate the report for.
+   * @param pathResolver source path resolver which can be used for the result.
+   * @param criticalPathSummary predicted and actual critical path of the build, if available.
+   */
+  public BuildReport(
+      Build.BuildExecutionResult buildExecutionResult,
+      SourcePathResolverAdapter pathResolver,
+      Cell rootCell,
+      Optional<CriticalPathSummary> criticalPathSummary) {
     this.buildExecutionResult = buildExecutionResult;
+    this.criticalPathSummary = criticalPathSummary;
     this.pathResolver = pathResolver;
     this.rootCell = rootCell;
     this.removeOutput = rootCell.getBuckConfig().getView(BuildReportConfig.class).getRemoveOutput();
@@ -233,11 +251,31 @@ public class BuildReport {
     report.put("success", isOverallSuccess);
     report.put("results", results);
     report.put("failures", failures);
+    if (criticalPathSummary.isPresent()) {
+      Map<String, Object> criticalPath = new LinkedHashMap<>();
+      criticalPath.put("predicted", getCriticalPathReport(criticalPathSummary.get().getPredicted()));
+      criticalPath.put("actual", getCriticalPathReport(criticalPathSummary.get().getActual()));
+      report.put("criticalPath", criticalPath);
+    }
     return ObjectMappers.WRITER
         .withFeatures(SerializationFeature.INDENT_OUTPUT)
         .writeValueAsString(report);
   }
 
+  private static Map<String, Object> getCriticalPathReport(
+      ImmutableList<CriticalPathEntry> criticalPath) {
+    long totalDurationMs = 0;
+    LinkedHashMap<String, Object> rules = new LinkedHashMap<>();
+    for (CriticalPathEntry entry : criticalPath) {
+      totalDurationMs += entry.getDurationMs();
+      rules.put(entry.getBuildTarget().getFullyQualifiedName(), entry.getDurationMs());
+    }
+    Map<String, Object> value = new LinkedHashMap<>();
+    value.put("durationMs", totalDurationMs);
+    value.put("rules", rules);
+    return value;
+  }
+
   /**
    * Returns a set of paths representing all outputs generated by the given {@code rule}, or null if
    * no outputs are available.
@@ -21,6 +21,7 @@ import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.util.immutables.BuckStyleValue;
 import com.google.common.util.concurrent.ListenableFuture;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import javax.annotation.Nullable;
 
@@ -58,6 +59,14 @@ public interface BuildEngine {
    */
   void terminateBuildWithFailure(Throwable failure);
 
+  /**
+   * Returns the predicted and the actual critical path of the rules built so far, if the engine
+   * keeps track of them.
+   */
+  default Optional<CriticalPathSummary> getCriticalPathSummary() {
+    return Optional.empty();
+  }
+
   @BuckStyleValue
   abstract class BuildEngineResult {
     /** @return a future that will contain the result of running the rule */
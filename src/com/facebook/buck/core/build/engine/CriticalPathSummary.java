@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.core.build.engine;
+
+import com.facebook.buck.core.util.immutables.BuckStyleValue;
+import com.google.common.collect.ImmutableList;
+
+/** The predicted and the actual critical path of a build, as seen by the build engine. */
+@BuckStyleValue
+public interface CriticalPathSummary {
+
+  /** The longest chain of rules according to the durations recorded in previous builds. */
+  ImmutableList<CriticalPathEntry> getPredicted();
+
+  /** The longest chain of rules according to the durations observed in this build. */
+  ImmutableList<CriticalPathEntry> getActual();
+
+  static CriticalPathSummary of(
+      ImmutableList<CriticalPathEntry> predicted, ImmutableList<CriticalPathEntry> actual) {
+    return ImmutableCriticalPathSummary.of(predicted, actual);
+  }
+}
@@ -18,6 +18,7 @@ package com.facebook.buck.core.build.engine.config;
 
 import com.facebook.buck.core.build.engine.type.BuildType;
 import com.facebook.buck.core.build.engine.type.DepFiles;
+import com.facebook.buck.core.build.engine.type.SchedulingMode;
 import com.facebook.buck.core.config.BuckConfig;
 import com.facebook.buck.core.config.ConfigView;
 import com.facebook.buck.core.resources.ResourcesConfig;
@@ -41,6 +42,13 @@ public abstract class CachingBuildEngineBuckConfig implements ConfigView<BuckCon
     return getDelegate().getEnum("build", "depfiles", DepFiles.class).orElse(DepFiles.CACHE);
   }
 
+  /** @return the order in which to start rules that are ready to be built. */
+  public SchedulingMode getSchedulingMode() {
+    return getDelegate()
+        .getEnum("build", "scheduling_mode", SchedulingMode.class)
+        .orElse(SchedulingMode.FIFO);
+  }
+
   /**
    * @return whether to log to console build rule failures as they happen, including rule name and
    *     error text. If false, then depending on keepGoing/verbosity settings, failures may not
@@ -25,6 +25,7 @@ import com.facebook.buck.core.build.engine.BuildEngineBuildContext;
 import com.facebook.buck.core.build.engine.BuildResult;
 import com.facebook.buck.core.build.engine.BuildRuleStatus;
 import com.facebook.buck.core.build.engine.BuildRuleSuccessType;
+import com.facebook.buck.core.build.engine.CriticalPathSummary;
 import com.facebook.buck.core.build.engine.RuleDepsCache;
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfo;
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfoRecorder;
@@ -46,6 +47,7 @@ import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.BuildRuleResolver;
 import com.facebook.buck.core.rules.attr.HasRuntimeDeps;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy;
+import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.rules.keys.RuleKeyDiagnostics;
 import com.facebook.buck.rules.keys.RuleKeyFactories;
@@ -88,6 +90,8 @@ import javax.annotation.Nullable;
  * tries to fetch its output from an {@link ArtifactCache} to avoid doing any computation.
  */
 public class CachingBuildEngine implements BuildEngine, Closeable {
+  private static final Logger LOG = Logger.get(CachingBuildEngine.class);
+
   public static final ResourceAmounts CACHE_CHECK_RESOURCE_AMOUNTS = ResourceAmounts.of(0, 0, 1, 1);
 
   public static final ResourceAmounts RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS =
@@ -144,6 +148,8 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
 
   private final Optional<BuildRuleStrategy> customBuildRuleStrategy;
 
+  private final Optional<CriticalPathScheduler> criticalPathScheduler;
+
   public CachingBuildEngine(
       CachingBuildEngineDelegate cachingBuildEngineDelegate,
       Optional<BuildRuleStrategy> customBuildRuleStrategy,
@@ -157,6 +163,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       TargetConfigurationSerializer targetConfigurationSerializer,
       BuildInfoStoreManager buildInfoStoreManager,
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      Optional<RuleDurationHistory> ruleDurationHistory,
       boolean consoleLogBuildFailuresInline,
       RuleKeyFactories ruleKeyFactories) {
     this(
@@ -173,6 +180,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
         targetConfigurationSerializer,
         ruleKeyFactories,
         resourceAwareSchedulingInfo,
+        ruleDurationHistory,
         new RuleKeyDiagnostics<>(
             rule ->
                 ruleKeyFactories
@@ -201,6 +209,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       TargetConfigurationSerializer targetConfigurationSerializer,
       RuleKeyFactories ruleKeyFactories,
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      Optional<RuleDurationHistory> ruleDurationHistory,
       RuleKeyDiagnostics<RuleKey, String> defaultRuleKeyDiagnostics,
       boolean consoleLogBuildFailuresInline) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
@@ -221,6 +230,8 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
 
     this.ruleDeps = new DefaultRuleDepsCache(resolver, actionToBuildRuleResolver);
     this.unskippedRulesTracker = createUnskippedRulesTracker(buildMode, ruleDeps, resolver);
+    this.criticalPathScheduler =
+        ruleDurationHistory.map(history -> new CriticalPathScheduler(history, ruleDeps));
     this.defaultRuleKeyDiagnostics = defaultRuleKeyDiagnostics;
     this.consoleLogBuildFailuresInline = consoleLogBuildFailuresInline;
     this.asyncCallbacks = new ConcurrentLinkedQueue<>();
@@ -249,6 +260,19 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       e.printStackTrace();
     } catch (IOException | ExecutionException e) {
       throw new RuntimeException(e);
+    } finally {
+      saveCriticalPathHistory();
+    }
+  }
+
+  private void saveCriticalPathHistory() {
+    if (!criticalPathScheduler.isPresent()) {
+      return;
+    }
+    try {
+      criticalPathScheduler.get().saveHistory();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to save rule duration history.");
     }
   }
 
@@ -422,6 +446,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
 
   @Override
   public int getNumRulesToBuild(Iterable<BuildRule> rules) {
+    criticalPathScheduler.ifPresent(scheduler -> scheduler.addTopLevelRules(rules));
     Set<BuildRule> seen = Sets.newConcurrentHashSet();
     ImmutableList.Builder<ListenableFuture<?>> results = ImmutableList.builder();
     for (BuildRule rule : rules) {
@@ -444,11 +469,18 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     // Keep track of all jobs that run asynchronously with respect to the build dep chain.  We want
     // to make sure we wait for these before calling yielding the final build result.
     registerTopLevelRule(rule, buildContext.getEventBus());
+    criticalPathScheduler.ifPresent(
+        scheduler -> scheduler.addTopLevelRules(ImmutableList.of(rule)));
     ListenableFuture<BuildResult> resultFuture =
         getBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext);
     return BuildEngine.BuildEngineResult.of(resultFuture);
   }
 
+  @Override
+  public Optional<CriticalPathSummary> getCriticalPathSummary() {
+    return criticalPathScheduler.map(CriticalPathScheduler::getSummary);
+  }
+
   @Nullable
   @Override
   public BuildResult getBuildRuleResult(BuildTarget buildTarget)
@@ -570,5 +602,19 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     public void onRuleAboutToBeBuilt(BuildRule rule) {
       cachingBuildEngine.cachingBuildEngineDelegate.onRuleAboutToBeBuilt(rule);
     }
+
+    @Override
+    public long getSchedulingPriority(BuildRule rule) {
+      return cachingBuildEngine
+          .criticalPathScheduler
+          .map(scheduler -> scheduler.getPriority(rule))
+          .orElse(0L);
+    }
+
+    @Override
+    public void onRuleBuiltLocally(BuildRule rule, long durationMs) {
+      cachingBuildEngine.criticalPathScheduler.ifPresent(
+          scheduler -> scheduler.recordDuration(rule, durationMs));
+    }
   }
 }
@@ -120,6 +120,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import javax.annotation.Nonnull;
@@ -1082,7 +1083,9 @@ class CachingBuildRuleBuilder {
                     service
                         // This needs to adjust the default amounts even in the non-resource-aware
                         // scheduling case so that RuleScheduleInfo works correctly.
-                        .withDefaultAmounts(getRuleResourceAmounts())));
+                        .withDefaultAmounts(getRuleResourceAmounts())
+                        .withDefaultPriority(
+                            buildRuleBuilderDelegate.getSchedulingPriority(rule))));
 
     if (SupportsPipelining.isSupported(rule)) {
       buildResultFuture.addListener(
@@ -1367,14 +1370,16 @@ class CachingBuildRuleBuilder {
       this.cacheResult = cacheResult;
       this.pipelineState = pipelineState;
       this.ruleExecutionContext =
-          executionContext.withProcessExecutor(
-              new ContextualProcessExecutor(
-                  executionContext.getProcessExecutor(),
-                  ImmutableMap.of(
-                      CachingBuildEngine.BUILD_RULE_TYPE_CONTEXT_KEY,
-                      rule.getType(),
-                      CachingBuildEngine.STEP_TYPE_CONTEXT_KEY,
-                      StepType.BUILD_STEP.toString())));
+          executionContext
+              .withProcessExecutor(
+                  new ContextualProcessExecutor(
+                      executionContext.getProcessExecutor(),
+                      ImmutableMap.of(
+                          CachingBuildEngine.BUILD_RULE_TYPE_CONTEXT_KEY,
+                          rule.getType(),
+                          CachingBuildEngine.STEP_TYPE_CONTEXT_KEY,
+                          StepType.BUILD_STEP.toString())))
+              .withRuleResourceAmounts(getRuleResourceAmounts());
     }
 
     public SettableFuture<Optional<BuildResult>> getFuture() {
@@ -1393,6 +1398,8 @@ class CachingBuildRuleBuilder {
           long start = System.nanoTime();
           executeCommands(ruleExecutionContext, buildRuleBuildContext, buildableContext);
           long end = System.nanoTime();
+          buildRuleBuilderDelegate.onRuleBuiltLocally(
+              rule, TimeUnit.NANOSECONDS.toMillis(end - start));
           LOG.debug(
               "Build completed: %s %s (%dns)",
               rule.getType(), rule.getFullyQualifiedName(), end - start);
@@ -1455,5 +1462,10 @@ class CachingBuildRuleBuilder {
     void addAsyncCallback(ListenableFuture<Unit> callback);
 
     void onRuleAboutToBeBuilt(BuildRule rule);
+
+    /** @return the priority with which the local build of the given rule should be scheduled. */
+    long getSchedulingPriority(BuildRule rule);
+
+    void onRuleBuiltLocally(BuildRule rule, long durationMs);
   }
 }
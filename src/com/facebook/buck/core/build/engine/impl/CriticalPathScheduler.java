@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.core.build.engine.CriticalPathEntry;
+import com.facebook.buck.core.build.engine.CriticalPathSummary;
+import com.facebook.buck.core.build.engine.RuleDepsCache;
+import com.facebook.buck.core.build.engine.type.SchedulingMode;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.util.types.Pair;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToLongFunction;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Computes rule priorities for {@link SchedulingMode#CRITICAL_PATH}.
+ *
+ * <p>The priority of a rule is the estimated length of the longest chain of rules that starts with
+ * it and ends at one of the top level rules, i.e. the remaining critical path once it is ready to
+ * be built. Rule durations are estimated from a {@link RuleDurationHistory}, which is updated with
+ * the durations observed in the current build.
+ */
+public class CriticalPathScheduler {
+
+  private final RuleDurationHistory history;
+  private final RuleDepsCache ruleDeps;
+  private final long defaultEstimateMs;
+
+  /** All rules reachable from the top level rules, dependencies before their dependents. */
+  @GuardedBy("this")
+  private final List<BuildRule> topologicalOrder = new ArrayList<>();
+
+  /** Index of each rule in {@link #topologicalOrder}. */
+  @GuardedBy("this")
+  private final Map<BuildRule, Integer> positions = new HashMap<>();
+
+  /** Durations the priorities were computed with, kept so the prediction can be reported. */
+  @GuardedBy("this")
+  private final Map<BuildRule, Long> estimates = new HashMap<>();
+
+  private final ConcurrentMap<BuildRule, Long> priorities = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<BuildRule, Long> actualDurations = new ConcurrentHashMap<>();
+
+  public CriticalPathScheduler(RuleDurationHistory history, RuleDepsCache ruleDeps) {
+    this.history = history;
+    this.ruleDeps = ruleDeps;
+    this.defaultEstimateMs = history.getAverage();
+  }
+
+  /**
+   * Registers rules that are going to be built and updates the priorities of the rules in their
+   * transitive closure.
+   *
+   * <p>Only the rules that were not already reachable from earlier top level rules are walked, and
+   * known rules are only revisited when a new dependent lengthens their remaining path, so
+   * registering top level rules one at a time costs about as much as registering them together.
+   */
+  public synchronized void addTopLevelRules(Iterable<BuildRule> rules) {
+    int firstNewRule = topologicalOrder.size();
+    for (BuildRule rule : rules) {
+      addToTopologicalOrder(rule);
+    }
+
+    // Visit rules dependents first, so that by the time a rule is reached the longest remaining
+    // path through all of its updated dependents is known. Rules known before this call cannot
+    // depend on the new ones, so their priority can only grow, by way of a new dependent.
+    Map<BuildRule, Long> longestDependent = new HashMap<>();
+    TreeSet<Integer> pending = new TreeSet<>();
+    for (int i = firstNewRule; i < topologicalOrder.size(); i++) {
+      pending.add(i);
+    }
+    while (!pending.isEmpty()) {
+      BuildRule rule = topologicalOrder.get(pending.pollLast());
+      long length =
+          longestDependent.getOrDefault(rule, 0L)
+              + estimates.computeIfAbsent(rule, this::getEstimatedDurationMs);
+      Long previous = priorities.get(rule);
+      if (previous != null && previous >= length) {
+        continue;
+      }
+      priorities.put(rule, length);
+      for (BuildRule dep : ruleDeps.get(rule)) {
+        longestDependent.merge(dep, length, Math::max);
+        pending.add(positions.get(dep));
+      }
+    }
+  }
+
+  /** @return the priority with which work for the given rule should be scheduled. */
+  public long getPriority(BuildRule rule) {
+    return priorities.getOrDefault(rule, 0L);
+  }
+
+  /** Records the time it took to build the given rule locally. */
+  public void recordDuration(BuildRule rule, long durationMs) {
+    actualDurations.put(rule, durationMs);
+    history.record(rule.getBuildTarget(), durationMs);
+  }
+
+  /** @return the critical paths predicted before the build and observed during it. */
+  public synchronized CriticalPathSummary getSummary() {
+    return CriticalPathSummary.of(
+        findLongestPath(estimates::get),
+        findLongestPath(rule -> actualDurations.getOrDefault(rule, 0L)));
+  }
+
+  /** Persists the durations observed during this build for use by future builds. */
+  public void saveHistory() throws IOException {
+    history.save();
+  }
+
+  private long getEstimatedDurationMs(BuildRule rule) {
+    if (!rule.hasBuildSteps()) {
+      return 0;
+    }
+    return history.get(rule.getBuildTarget()).orElse(defaultEstimateMs);
+  }
+
+  /** Appends the rule and its dependencies that are not yet in the topological order. */
+  @GuardedBy("this")
+  private void addToTopologicalOrder(BuildRule topLevelRule) {
+    if (positions.containsKey(topLevelRule)) {
+      return;
+    }
+    // Use an explicit stack, action graphs can be deeper than the thread stack allows.
+    Set<BuildRule> visited = new HashSet<>();
+    visited.add(topLevelRule);
+    Deque<Pair<BuildRule, Iterator<BuildRule>>> stack = new ArrayDeque<>();
+    stack.push(new Pair<>(topLevelRule, ruleDeps.get(topLevelRule).iterator()));
+    while (!stack.isEmpty()) {
+      Iterator<BuildRule> deps = stack.peek().getSecond();
+      if (deps.hasNext()) {
+        BuildRule dep = deps.next();
+        if (!positions.containsKey(dep) && visited.add(dep)) {
+          stack.push(new Pair<>(dep, ruleDeps.get(dep).iterator()));
+        }
+      } else {
+        BuildRule rule = stack.pop().getFirst();
+        positions.put(rule, topologicalOrder.size());
+        topologicalOrder.add(rule);
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private ImmutableList<CriticalPathEntry> findLongestPath(ToLongFunction<BuildRule> durationMs) {
+    Map<BuildRule, Long> lengths = new HashMap<>();
+    Map<BuildRule, BuildRule> previous = new HashMap<>();
+    @Nullable BuildRule last = null;
+    long longest = -1;
+    for (BuildRule rule : topologicalOrder) {
+      long before = 0;
+      @Nullable BuildRule longestDep = null;
+      for (BuildRule dep : ruleDeps.get(rule)) {
+        long length = lengths.get(dep);
+        if (longestDep == null || length > before) {
+          before = length;
+          longestDep = dep;
+        }
+      }
+      if (longestDep != null) {
+        previous.put(rule, longestDep);
+      }
+      long length = before + durationMs.applyAsLong(rule);
+      lengths.put(rule, length);
+      if (length > longest) {
+        longest = length;
+        last = rule;
+      }
+    }
+
+    Deque<CriticalPathEntry> path = new ArrayDeque<>();
+    for (BuildRule rule = last; rule != null; rule = previous.get(rule)) {
+      path.addFirst(CriticalPathEntry.of(rule.getBuildTarget(), durationMs.applyAsLong(rule)));
+    }
+    return ImmutableList.copyOf(path);
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.core.build.engine.config.CachingBuildEngineBuckConfig;
+import com.facebook.buck.core.build.engine.type.SchedulingMode;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.facebook.buck.util.timing.Clock;
+import com.facebook.buck.util.timing.DefaultClock;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durations of local rule builds recorded in previous builds. They are persisted in buck-out so
+ * that the build engine can estimate how long a rule is going to take before it starts building it.
+ * Entries that have not been recorded for a while are dropped when the history is saved, and the
+ * number of saved entries is capped, so that the file does not grow without bound.
+ */
+public class RuleDurationHistory {
+  private static final Logger LOG = Logger.get(RuleDurationHistory.class);
+
+  private static final String FILE_NAME = "rule_durations.json";
+
+  @VisibleForTesting static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(30);
+  @VisibleForTesting static final int MAX_ENTRIES = 100_000;
+
+  private final ProjectFilesystem filesystem;
+  private final Clock clock;
+  private final ConcurrentMap<String, Entry> entries;
+
+  private RuleDurationHistory(
+      ProjectFilesystem filesystem, Clock clock, Map<String, Entry> entries) {
+    this.filesystem = filesystem;
+    this.clock = clock;
+    this.entries = new ConcurrentHashMap<>(entries);
+  }
+
+  /** Loads the history stored in the buck-out of the given filesystem, if any. */
+  public static RuleDurationHistory load(ProjectFilesystem filesystem) {
+    return load(filesystem, new DefaultClock());
+  }
+
+  @VisibleForTesting
+  static RuleDurationHistory load(ProjectFilesystem filesystem, Clock clock) {
+    Map<String, Entry> entries = ImmutableMap.of();
+    Path path = getPath(filesystem);
+    Optional<String> contents = filesystem.readFileIfItExists(path);
+    if (contents.isPresent()) {
+      try {
+        entries =
+            ObjectMappers.readValue(contents.get(), new TypeReference<Map<String, Entry>>() {});
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to read rule duration history from %s, ignoring it.", path);
+      }
+    }
+    return new RuleDurationHistory(filesystem, clock, entries);
+  }
+
+  /** Loads the history if the given config enables {@link SchedulingMode#CRITICAL_PATH}. */
+  public static Optional<RuleDurationHistory> loadIfEnabled(
+      CachingBuildEngineBuckConfig config, ProjectFilesystem filesystem) {
+    if (config.getSchedulingMode() != SchedulingMode.CRITICAL_PATH) {
+      return Optional.empty();
+    }
+    return Optional.of(load(filesystem));
+  }
+
+  private static Path getPath(ProjectFilesystem filesystem) {
+    return filesystem.getBuckPaths().getCacheDir().resolve(FILE_NAME);
+  }
+
+  /** @return the recorded duration of building the given target locally, if known. */
+  public OptionalLong get(BuildTarget target) {
+    Entry entry = entries.get(target.getFullyQualifiedName());
+    return entry == null ? OptionalLong.empty() : OptionalLong.of(entry.durationMs);
+  }
+
+  /** @return the average of all recorded durations, used for rules that were never built. */
+  public long getAverage() {
+    return (long) entries.values().stream().mapToLong(e -> e.durationMs).average().orElse(0);
+  }
+
+  /**
+   * Records the duration of a local build of the given target. The stored value is smoothed with
+   * the previous one so that a single outlier does not skew the estimates.
+   */
+  public void record(BuildTarget target, long durationMs) {
+    entries.merge(
+        target.getFullyQualifiedName(),
+        new Entry(durationMs, clock.currentTimeMillis()),
+        (prev, next) -> new Entry((prev.durationMs + next.durationMs) / 2, next.lastRecordedMs));
+  }
+
+  /**
+   * Writes the history back to buck-out, dropping entries older than {@link #MAX_AGE_MS} and
+   * keeping at most {@link #MAX_ENTRIES} of the most recently recorded ones.
+   */
+  public void save() throws IOException {
+    long oldestKept = clock.currentTimeMillis() - MAX_AGE_MS;
+    entries.values().removeIf(entry -> entry.lastRecordedMs < oldestKept);
+    if (entries.size() > MAX_ENTRIES) {
+      entries.entrySet().stream()
+          .sorted(Comparator.comparingLong(e -> e.getValue().lastRecordedMs))
+          .limit(entries.size() - MAX_ENTRIES)
+          .map(Map.Entry::getKey)
+          .collect(ImmutableList.toImmutableList())
+          .forEach(entries::remove);
+    }
+    Path path = getPath(filesystem);
+    filesystem.createParentDirs(path);
+    filesystem.writeContentsToPath(ObjectMappers.WRITER.writeValueAsString(entries), path);
+  }
+
+  /** A smoothed duration together with the time it was last recorded. */
+  static class Entry {
+    @JsonProperty final long durationMs;
+    @JsonProperty final long lastRecordedMs;
+
+    @JsonCreator
+    Entry(
+        @JsonProperty("durationMs") long durationMs,
+        @JsonProperty("lastRecordedMs") long lastRecordedMs) {
+      this.durationMs = durationMs;
+      this.lastRecordedMs = lastRecordedMs;
+    }
+  }
+}
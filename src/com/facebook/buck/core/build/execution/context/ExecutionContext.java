@@ -36,6 +36,7 @@ import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.concurrent.ExecutorPool;
 import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.worker.WorkerProcessPool;
@@ -142,6 +143,15 @@ public abstract class ExecutionContext implements Closeable {
         ResourceAmountsEstimator.DEFAULT_MAXIMUM_AMOUNTS);
   }
 
+  /**
+   * The resources the build engine granted to the rule whose steps are being executed. Steps that
+   * fan work out to other threads should not use more CPU than this.
+   */
+  @Value.Default
+  public ResourceAmounts getRuleResourceAmounts() {
+    return ResourceAmounts.of(1, 0, 0, 0);
+  }
+
   @Value.Default
   public ClassLoaderCache getClassLoaderCache() {
     return new ClassLoaderCache();
@@ -227,6 +237,13 @@ public abstract class ExecutionContext implements Closeable {
     return builder().from(this).setProcessExecutor(processExecutor).build();
   }
 
+  public ExecutionContext withRuleResourceAmounts(ResourceAmounts ruleResourceAmounts) {
+    if (getRuleResourceAmounts().equals(ruleResourceAmounts)) {
+      return this;
+    }
+    return builder().from(this).setRuleResourceAmounts(ruleResourceAmounts).build();
+  }
+
   public ExecutionContext withBuildCellRootPath(Path cellRootPath) {
     if (getBuildCellRootPath().equals(cellRootPath)) {
       return this;
@@ -21,6 +21,7 @@ import com.facebook.buck.core.graph.transformation.GraphEngineCache;
 import com.facebook.buck.event.FileHashCacheEvent;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.watchman.WatchmanEvent.Kind;
+import com.facebook.buck.io.watchman.WatchmanMultiplePathEvent;
 import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.google.common.eventbus.Subscribe;
@@ -145,22 +146,37 @@ public class DirectoryListCache implements GraphEngineCache<DirectoryListKey, Di
     /** Invoked asynchronously by event bus when file system change is detected with Watchman */
     @Subscribe
     public void onFileSystemChange(WatchmanPathEvent event) {
-      if (event.getKind() == Kind.MODIFY) {
-        // file modifications do not change directory structure, do nothing
+      if (!rootPath.equals(event.getCellPath().getPath())) {
+        // must be same cell
         return;
       }
+      onFileSystemChange(event.getKind(), event.getPath());
+    }
 
+    /** Invoked by event bus with all the changes Watchman detected in a cell at once */
+    @Subscribe
+    public void onFileSystemChange(WatchmanMultiplePathEvent event) {
       if (!rootPath.equals(event.getCellPath().getPath())) {
         // must be same cell
         return;
       }
+      for (WatchmanMultiplePathEvent.Change change : event.getChanges()) {
+        onFileSystemChange(change.getKind(), RelPath.of(change.getPath()));
+      }
+    }
+
+    private void onFileSystemChange(Kind kind, RelPath path) {
+      if (kind == Kind.MODIFY) {
+        // file modifications do not change directory structure, do nothing
+        return;
+      }
 
       // for CREATE and DELETE, invalidate containing folder
-      RelPath folderPath = MorePaths.getParentOrEmpty(event.getPath());
+      RelPath folderPath = MorePaths.getParentOrEmpty(path);
       DirectoryListKey key = ImmutableDirectoryListKey.of(folderPath.getPath());
       dirListCache.cache.remove(key);
 
-      if (event.getKind() == Kind.DELETE) {
+      if (kind == Kind.DELETE) {
         // Watchman does not report when a folder is deleted, it reports deletions of all the files
         // in that folder. If a folder is deleted, we have to invalidate also containing
         // parent DirectoryList. So we keep track of all affected folders in order to possibly
@@ -20,11 +20,14 @@ import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.graph.transformation.GraphEngineCache;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.watchman.WatchmanEvent.Kind;
+import com.facebook.buck.io.watchman.WatchmanMultiplePathEvent;
 import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.google.common.eventbus.Subscribe;
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /** Stores a recursive file tree */
@@ -79,22 +82,39 @@ public class FileTreeCache implements GraphEngineCache<FileTreeKey, FileTree> {
     /** Invoked asynchronously by event bus when file system change is detected with Watchman */
     @Subscribe
     public void onFileSystemChange(WatchmanPathEvent event) {
-      if (event.getKind() == Kind.MODIFY) {
-        // file modifications do not change directory structure, do nothing
+      if (!rootPath.equals(event.getCellPath().getPath())) {
+        // must be same cell
         return;
       }
+      onFileSystemChange(event.getKind(), event.getPath(), new HashSet<>());
+    }
 
+    /** Invoked by event bus with all the changes Watchman detected in a cell at once */
+    @Subscribe
+    public void onFileSystemChange(WatchmanMultiplePathEvent event) {
       if (!rootPath.equals(event.getCellPath().getPath())) {
         // must be same cell
         return;
       }
+      // changed files usually share folders, so only walk up from each folder once per batch
+      Set<RelPath> invalidatedFolders = new HashSet<>();
+      for (WatchmanMultiplePathEvent.Change change : event.getChanges()) {
+        onFileSystemChange(change.getKind(), RelPath.of(change.getPath()), invalidatedFolders);
+      }
+    }
+
+    private void onFileSystemChange(Kind kind, RelPath path, Set<RelPath> invalidatedFolders) {
+      if (kind == Kind.MODIFY) {
+        // file modifications do not change directory structure, do nothing
+        return;
+      }
 
       // for CREATE and DELETE, invalidate all folders up the tree
       // TODO(sergeyb): be smarter - modify data in-place instead of full invalidation of the tree
       // this might require to unify FileTreeCache and DirectoryListCache
-      RelPath folderPath = MorePaths.getParentOrEmpty(event.getPath());
+      RelPath folderPath = MorePaths.getParentOrEmpty(path);
 
-      while (true) {
+      while (invalidatedFolders.add(folderPath)) {
         fileTreeCache.cache.remove(ImmutableFileTreeKey.of(folderPath.getPath()));
 
         if (MorePaths.isEmpty(folderPath.getPath())) {
@@ -20,6 +20,8 @@ import com.facebook.buck.core.cell.name.CanonicalCellName;
 import com.facebook.buck.core.path.ForwardRelativePath;
 import com.facebook.buck.core.util.immutables.BuckStyleValue;
 import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 /**
  * A pair of {@link CanonicalCellName} and {@link ForwardRelativePath} relative the the cell.
@@ -51,7 +53,13 @@ public abstract class CellRelativePath implements Comparable<CellRelativePath> {
         .result();
   }
 
+  private static final Interner<CellRelativePath> interner = Interners.newWeakInterner();
+
+  /**
+   * Interned, so that all targets of a package share one instance along with its {@link
+   * ForwardRelativePath}.
+   */
   public static CellRelativePath of(CanonicalCellName cellName, ForwardRelativePath path) {
-    return ImmutableCellRelativePath.of(cellName, path);
+    return interner.intern(ImmutableCellRelativePath.of(cellName, path));
   }
 }
@@ -17,9 +17,12 @@
 package com.facebook.buck.core.model;
 
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Set;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
@@ -35,10 +38,21 @@ public class FlavorSet implements Comparable<FlavorSet> {
   static final Ordering<Iterable<Flavor>> LEXICOGRAPHICAL_ORDERING =
       Ordering.<Flavor>natural().lexicographical();
 
+  private static final Interner<InternKey> interner = Interners.newWeakInterner();
+
   private final ImmutableSortedSet<Flavor> flavors;
 
+  /** Keeps the interned entry of this set alive for as long as the set itself. */
+  private final InternKey internKey;
+
   private FlavorSet(ImmutableSortedSet<Flavor> flavors) {
     this.flavors = flavors;
+    this.internKey = new InternKey(this);
+  }
+
+  /** Many targets share the same few combinations of flavors, so keep one instance of each. */
+  private static FlavorSet intern(ImmutableSortedSet<Flavor> flavors) {
+    return interner.intern(new FlavorSet(flavors).internKey).flavorSet;
   }
 
   public static FlavorSet of(Flavor... flavors) {
@@ -102,7 +116,7 @@ public class FlavorSet implements Comparable<FlavorSet> {
     if (flavors.isEmpty()) {
       return NO_FLAVORS;
     } else {
-      return new FlavorSet(ImmutableSortedSet.copyOf(FLAVOR_ORDERING, flavors));
+      return intern(ImmutableSortedSet.copyOf(FLAVOR_ORDERING, flavors));
     }
   }
 
@@ -113,7 +127,7 @@ public class FlavorSet implements Comparable<FlavorSet> {
     } else if (b.isEmpty()) {
       return a;
     } else {
-      return new FlavorSet(
+      return intern(
           Stream.concat(a.flavors.stream(), b.flavors.stream())
               .collect(ImmutableSortedSet.toImmutableSortedSet(FLAVOR_ORDERING)));
     }
@@ -155,4 +169,45 @@ public class FlavorSet implements Comparable<FlavorSet> {
   public boolean containsAll(Collection<Flavor> flavors) {
     return this.flavors.containsAll(flavors);
   }
+
+  /**
+   * Flavors compare equal by name regardless of their class, so a {@link UserFlavor} and an {@link
+   * InternalFlavor} with the same name make equal sets. Interning must not hand out one for the
+   * other, so this key also compares the class of each flavor.
+   */
+  private static final class InternKey {
+    private final FlavorSet flavorSet;
+
+    private InternKey(FlavorSet flavorSet) {
+      this.flavorSet = flavorSet;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (this == that) {
+        return true;
+      }
+      if (!(that instanceof InternKey)) {
+        return false;
+      }
+      ImmutableSortedSet<Flavor> theseFlavors = flavorSet.flavors;
+      ImmutableSortedSet<Flavor> thoseFlavors = ((InternKey) that).flavorSet.flavors;
+      if (theseFlavors.size() != thoseFlavors.size()) {
+        return false;
+      }
+      Iterator<Flavor> those = thoseFlavors.iterator();
+      for (Flavor flavor : theseFlavors) {
+        Flavor other = those.next();
+        if (flavor.getClass() != other.getClass() || !flavor.equals(other)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return flavorSet.hashCode();
+    }
+  }
 }
@@ -19,6 +19,8 @@ package com.facebook.buck.core.model;
 import com.facebook.buck.core.util.immutables.BuckStylePrehashedValue;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import org.immutables.value.Value;
 
 /**
@@ -59,7 +61,9 @@ public abstract class InternalFlavor implements Flavor {
     return this.getName().hashCode();
   }
 
+  private static final Interner<InternalFlavor> interner = Interners.newWeakInterner();
+
   public static InternalFlavor of(String name) {
-    return ImmutableInternalFlavor.of(name);
+    return interner.intern(ImmutableInternalFlavor.of(name));
   }
 }
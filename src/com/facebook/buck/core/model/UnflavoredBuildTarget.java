@@ -39,7 +39,8 @@ public class UnflavoredBuildTarget
     Preconditions.checkArgument(
         !localName.contains("#"), "Build target name cannot contain '#' but was: %s.", localName);
     this.cellRelativeBasePath = cellRelativeBasePath;
-    this.localName = localName;
+    // Short names like "lib" or "test" repeat across packages.
+    this.localName = localName.intern();
     this.hash = Objects.hash(cellRelativeBasePath, localName);
   }
 
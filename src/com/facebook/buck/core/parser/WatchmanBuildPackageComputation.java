@@ -38,13 +38,13 @@ import com.facebook.buck.skylark.io.impl.WatchmanGlobber;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.collect.Ordering;
 import java.io.IOException;
 import java.nio.file.FileSystemException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.util.EnumSet;
 import java.util.Optional;
+import java.util.stream.Collector;
 
 /**
  * Discover paths for packages which contain targets that match specification (build target pattern)
@@ -104,8 +104,9 @@ public class WatchmanBuildPackageComputation
             .toPath(filesystemView.getRootPath().getFileSystem());
     try {
       LOG.info("Starting fetch of basepath %s", basePath);
-      ImmutableSet<String> buildFiles = findBuildFiles(basePath, targetPattern.isRecursive());
-      BuildPackagePaths ret = getPackagePathsOfNonIgnoredBuildFiles(basePath, buildFiles);
+      BuildPackagePaths ret =
+          ImmutableBuildPackagePaths.of(
+              findPackagePathsOfNonIgnoredBuildFiles(basePath, targetPattern.isRecursive()));
       LOG.info("Ending fetch of basepath %s, ret: %s", basePath, ret.getPackageRoots());
       return ret;
     } catch (WatchmanQueryFailedException e) {
@@ -116,8 +117,8 @@ public class WatchmanBuildPackageComputation
     }
   }
 
-  private ImmutableSet<String> findBuildFiles(Path basePath, boolean recursive)
-      throws IOException, InterruptedException {
+  private ImmutableSortedSet<Path> findPackagePathsOfNonIgnoredBuildFiles(
+      Path basePath, boolean recursive) throws IOException, InterruptedException {
     LOG.info("Finding build files for %s, recursive: %s", basePath, recursive);
     String pattern = escapeGlobPattern(buildFileName);
     if (recursive) {
@@ -126,9 +127,9 @@ public class WatchmanBuildPackageComputation
     return glob(basePath, pattern);
   }
 
-  private ImmutableSet<String> glob(Path basePath, String pattern)
+  private ImmutableSortedSet<Path> glob(Path basePath, String pattern)
       throws IOException, InterruptedException {
-    Optional<ImmutableSet<String>> paths;
+    Optional<ImmutableSortedSet<Path>> paths;
     try (WatchmanClient watchmanClient = watchman.createClient()) {
       // TODO: Avoid costly per-glob sync cookies by reusing SyncCookieState instances.
       WatchmanGlobber globber =
@@ -148,7 +149,8 @@ public class WatchmanBuildPackageComputation
                   .collect(ImmutableSet.toImmutableSet()),
               EnumSet.of(
                   WatchmanGlobber.Option.EXCLUDE_DIRECTORIES,
-                  WatchmanGlobber.Option.FORCE_CASE_SENSITIVE));
+                  WatchmanGlobber.Option.FORCE_CASE_SENSITIVE),
+              toPackagePathsOfNonIgnoredBuildFiles(basePath));
       LOG.info("Globber with basepath %s, pattern: %s result: %s", basePath, pattern, paths);
     }
     if (!paths.isPresent()) {
@@ -161,17 +163,21 @@ public class WatchmanBuildPackageComputation
   }
 
   /**
-   * Get the full relative build packages for the given build files. Filter out any packages that
-   * should be ignored
+   * Collects the full relative build packages for the build files returned by the glob, as they
+   * are decoded. Filters out any packages that should be ignored.
    */
-  private BuildPackagePaths getPackagePathsOfNonIgnoredBuildFiles(
-      Path basePath, ImmutableSet<String> buildFilePaths) {
-    ImmutableSortedSet<Path> relativeBuildFiles =
-        buildFilePaths.stream()
-            .map((String buildFilePath) -> getPackagePathOfBuildFile(basePath, buildFilePath))
-            .filter(p -> !filesystemView.isIgnored(p))
-            .collect(ImmutableSortedSet.toImmutableSortedSet(Ordering.natural()));
-    return ImmutableBuildPackagePaths.of(relativeBuildFiles);
+  private Collector<String, ?, ImmutableSortedSet<Path>> toPackagePathsOfNonIgnoredBuildFiles(
+      Path basePath) {
+    return Collector.of(
+        ImmutableSortedSet::<Path>naturalOrder,
+        (builder, buildFilePath) -> {
+          Path packagePath = getPackagePathOfBuildFile(basePath, buildFilePath);
+          if (!filesystemView.isIgnored(packagePath)) {
+            builder.add(packagePath);
+          }
+        },
+        (left, right) -> left.addAll(right.build()),
+        ImmutableSortedSet.Builder::build);
   }
 
   private Path getPackagePathOfBuildFile(Path basePath, String buildFilePath) {
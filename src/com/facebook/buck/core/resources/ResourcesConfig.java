@@ -57,6 +57,11 @@ public abstract class ResourcesConfig implements ConfigView<BuckConfig> {
         .getBooleanValue(RESOURCES_SECTION_HEADER, "resource_aware_scheduling_enabled", false);
   }
 
+  @Value.Lazy
+  public boolean isLockFreeSemaphoreEnabled() {
+    return getDelegate().getBooleanValue(RESOURCES_SECTION_HEADER, "lock_free_semaphore", false);
+  }
+
   @Value.Lazy
   public ImmutableMap<String, ResourceAmounts> getResourceAmountsPerRuleType() {
     ImmutableMap.Builder<String, ResourceAmounts> result = ImmutableMap.builder();
@@ -146,6 +151,7 @@ public abstract class ResourcesConfig implements ConfigView<BuckConfig> {
         getResourceAllocationFairness(),
         getManagedThreadCount(),
         getDefaultResourceAmounts(),
-        getMaximumResourceAmounts());
+        getMaximumResourceAmounts(),
+        isLockFreeSemaphoreEnabled());
   }
 }
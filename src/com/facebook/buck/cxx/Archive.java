@@ -29,6 +29,7 @@ import com.facebook.buck.core.toolchain.tool.Tool;
 import com.facebook.buck.cxx.toolchain.ArchiveContents;
 import com.facebook.buck.cxx.toolchain.Archiver;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
+import com.facebook.buck.cxx.toolchain.GnuArchiver;
 import com.facebook.buck.cxx.toolchain.LinkerMapMode;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.rules.args.Arg;
@@ -67,12 +68,21 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
       ArchiveContents contents,
       String outputFileName,
       ImmutableList<SourcePath> inputs,
+      boolean inProcess,
       boolean cacheable) {
     super(
         buildTarget,
         projectFilesystem,
         ruleFinder,
-        new Impl(archiver, archiverFlags, ranlib, ranlibFlags, contents, outputFileName, inputs));
+        new Impl(
+            archiver,
+            archiverFlags,
+            ranlib,
+            ranlibFlags,
+            contents,
+            outputFileName,
+            inputs,
+            inProcess));
     Preconditions.checkState(
         contents == ArchiveContents.NORMAL || archiver.supportsThinArchives(),
         "%s: archive tool for this platform does not support thin archives",
@@ -108,6 +118,7 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
         contents,
         outputFileName,
         inputs,
+        platform.getInProcessArchiving(),
         cacheable);
   }
 
@@ -140,6 +151,7 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
     @AddToRuleKey private final ArchiveContents contents;
     @AddToRuleKey private final OutputPath output;
     @AddToRuleKey private final ImmutableList<SourcePath> inputs;
+    @AddToRuleKey private final boolean inProcess;
 
     Impl(
         Archiver archiver,
@@ -148,7 +160,8 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
         ImmutableList<Arg> ranlibFlags,
         ArchiveContents contents,
         String outputFileName,
-        ImmutableList<SourcePath> inputs) {
+        ImmutableList<SourcePath> inputs,
+        boolean inProcess) {
       this.archiver = archiver;
       this.archiverFlags = archiverFlags;
       this.ranlib = ranlib;
@@ -156,6 +169,7 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
       this.contents = contents;
       this.output = new OutputPath(outputFileName);
       this.inputs = inputs;
+      this.inProcess = inProcess;
     }
 
     @Override
@@ -176,27 +190,28 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
         Preconditions.checkState(resolver.getFilesystem(input).getRootPath().equals(rootPath));
       }
 
-      ImmutableList.Builder<Step> builder = ImmutableList.builder();
       Path outputPath = outputPathResolver.resolvePath(output);
-      builder
-          .add(MkdirStep.of(buildCellPathFactory.from(outputPath.getParent())))
-          .add(
-              new ArchiveStep(
-                  filesystem,
-                  archiver.getEnvironment(resolver),
-                  archiver.getCommandPrefix(resolver),
-                  Arg.stringify(archiverFlags, resolver),
-                  archiver.getArchiveOptions(contents == ArchiveContents.THIN),
-                  outputPath,
-                  inputs.stream()
-                      .map(resolver::getRelativePath)
-                      .collect(ImmutableList.toImmutableList()),
-                  archiver,
-                  outputPathResolver.getTempPath()));
+      ImmutableList<Path> inputPaths =
+          inputs.stream()
+              .map(resolver::getRelativePath)
+              .collect(ImmutableList.toImmutableList());
+
+      ImmutableList.Builder<Step> archiveSteps = ImmutableList.builder();
+      archiveSteps.add(
+          new ArchiveStep(
+              filesystem,
+              archiver.getEnvironment(resolver),
+              archiver.getCommandPrefix(resolver),
+              Arg.stringify(archiverFlags, resolver),
+              archiver.getArchiveOptions(contents == ArchiveContents.THIN),
+              outputPath,
+              inputPaths,
+              archiver,
+              outputPathResolver.getTempPath()));
 
       if (archiver.isRanLibStepRequired()) {
         Tool tool = ranlib.get();
-        builder.add(
+        archiveSteps.add(
             new RanlibStep(
                 filesystem,
                 tool.getEnvironment(resolver),
@@ -206,7 +221,26 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
       }
 
       if (!archiver.getScrubbers().isEmpty()) {
-        builder.add(new FileScrubberStep(filesystem, outputPath, archiver.getScrubbers()));
+        archiveSteps.add(new FileScrubberStep(filesystem, outputPath, archiver.getScrubbers()));
+      }
+
+      ImmutableList.Builder<Step> builder = ImmutableList.builder();
+      builder.add(MkdirStep.of(buildCellPathFactory.from(outputPath.getParent())));
+      // Flags for ar and ranlib can't be honored in-process, so only plain GNU archives are
+      // written here.
+      if (inProcess
+          && archiver instanceof GnuArchiver
+          && archiverFlags.isEmpty()
+          && ranlibFlags.isEmpty()) {
+        builder.add(
+            new InProcessArchiveStep(
+                filesystem,
+                outputPath,
+                inputPaths,
+                contents == ArchiveContents.THIN,
+                archiveSteps.build()));
+      } else {
+        builder.addAll(archiveSteps.build());
       }
 
       return builder.build();
@@ -83,7 +83,18 @@ class ArchiveStep implements Step {
   }
 
   private ImmutableList<String> getAllInputs() throws IOException {
-    ImmutableList.Builder<String> allInputs = ImmutableList.builder();
+    return expandInputs(filesystem, inputs).stream()
+        .map(Path::toString)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * @return the given inputs with any directories replaced by the files found from a recursive
+   *     search, in sorted order so that archives are deterministic.
+   */
+  static ImmutableList<Path> expandInputs(ProjectFilesystem filesystem, ImmutableList<Path> inputs)
+      throws IOException {
+    ImmutableList.Builder<Path> allInputs = ImmutableList.builder();
 
     // Inputs can either be files or directories.  In the case of the latter, we add all files
     // found from a recursive search.
@@ -101,9 +112,9 @@ class ArchiveStep implements Step {
                 return FileVisitResult.CONTINUE;
               }
             });
-        allInputs.addAll(dirFiles);
+        dirFiles.forEach(file -> allInputs.add(filesystem.getPath(file)));
       } else {
-        allInputs.add(input.toString());
+        allInputs.add(input);
       }
     }
 
@@ -34,6 +34,7 @@ import com.facebook.buck.core.rules.BuildRuleParams;
 import com.facebook.buck.core.rules.BuildRuleResolver;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
 import com.facebook.buck.core.rules.impl.MappedSymlinkTree;
+import com.facebook.buck.core.sourcepath.BuildTargetSourcePath;
 import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.core.sourcepath.PathSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
@@ -895,7 +896,8 @@ public class CxxDescriptionEnhancer {
             args.getLangPlatformCompilerFlags(),
             args.getPrefixHeader(),
             args.getPrecompiledHeader(),
-            cxxThinLTOIndex.getSourcePathToOutput());
+            cxxThinLTOIndex.getSourcePathToOutput(),
+            cxxThinLTOIndex.getIndexedInputs());
 
     Path linkOutput =
         getBinaryOutputPath(
@@ -1217,7 +1219,8 @@ public class CxxDescriptionEnhancer {
           langPlatformCompilerFlags,
       Optional<SourcePath> prefixHeader,
       Optional<SourcePath> precompiledHeader,
-      SourcePath thinIndicesRoot) {
+      BuildTargetSourcePath thinIndicesRoot,
+      ImmutableSortedSet<SourcePath> importableInputs) {
     ImmutableListMultimap<CxxSource.Type, Arg> allCompilerFlags =
         createCompilerFlagsForCxxBinary(
             target,
@@ -1243,7 +1246,7 @@ public class CxxDescriptionEnhancer {
             prefixHeader,
             precompiledHeader,
             pic)
-        .requireThinOptRules(srcs, thinIndicesRoot);
+        .requireThinOptRules(srcs, thinIndicesRoot, importableInputs);
   }
 
   private static ImmutableMap<CxxPreprocessAndCompile, SourcePath> createCompileRulesForCxxBinary(
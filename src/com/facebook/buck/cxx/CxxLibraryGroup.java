@@ -46,6 +46,7 @@ import com.facebook.buck.rules.args.Arg;
 import com.facebook.buck.rules.args.FileListableLinkerInputArg;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.coercer.FrameworkPath;
+import com.facebook.buck.util.collect.HashTrieMap;
 import com.facebook.buck.util.function.QuadFunction;
 import com.facebook.buck.util.stream.RichStream;
 import com.google.common.base.Preconditions;
@@ -250,6 +251,12 @@ public class CxxLibraryGroup extends NoopBuildRuleWithDeclaredAndExtraDeps
     return transitiveCxxPreprocessorInputCache.getUnchecked(cxxPlatform, graphBuilder);
   }
 
+  @Override
+  public HashTrieMap<BuildTarget, CxxPreprocessorInput> getSharedTransitiveCxxPreprocessorInput(
+      CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+    return transitiveCxxPreprocessorInputCache.getSharedUnchecked(cxxPlatform, graphBuilder);
+  }
+
   private void forEachNativeLinkableDep(
       BuildRuleResolver ruleResolver, Consumer<? super NativeLinkableGroup> consumer) {
     if (!propagateLinkables) {
@@ -30,10 +30,18 @@ import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
 import com.facebook.buck.cxx.toolchain.Preprocessor;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.rules.args.Arg;
+import com.facebook.buck.rules.args.SanitizedArg;
+import com.facebook.buck.rules.args.StringArg;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.function.Function;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 
 /**
  * Represents a precompilable header file, along with dependencies.
@@ -41,8 +49,33 @@ import java.util.function.Function;
  * <p>Rules which depend on this will inherit this rule's of dependencies. For example if a given
  * rule R uses a precompiled header rule P, then all of P's {@code deps} will get merged into R's
  * {@code deps} list.
+ *
+ * <p>One PCH is built per distinct set of flags among the rules using the template. Flags which
+ * cannot make a PCH unusable, such as warning flags, are left out of both the PCH's flags and its
+ * key, so rules that only differ in those share a single PCH. Warning flags are kept when warnings
+ * are turned into errors, as they then decide whether the header compiles.
  */
 public class CxxPrecompiledHeaderTemplate extends PreInclude implements AndroidPackageable {
+
+  /**
+   * Flags which only change which diagnostics are reported, or how they are printed. Neither clang
+   * nor gcc check these when loading a PCH (clang only does for modules), so a PCH built without
+   * them works with any of them. {@code -Werror} is kept, as it turns warnings in the header into
+   * errors.
+   */
+  private static final Pattern DIAGNOSTIC_FLAG =
+      Pattern.compile(
+          "-W(?!l,|p,|a,|error|no-error)[^,]*"
+              + "|-f(no-)?(color-diagnostics|caret-diagnostics|diagnostics-.*)"
+              + "|-f(message-length|error-limit|(macro|template)-backtrace-limit)=.*");
+
+  /**
+   * With warnings turned into errors, the warning flags decide whether the header compiles at all:
+   * a PCH built without a rule's {@code -Wno-foo} would fail on the warnings it silences. So
+   * whenever one of these is present, {@code -W} flags are kept in the PCH's flags and key.
+   */
+  private static final Pattern WARNINGS_AS_ERRORS_FLAG = Pattern.compile("-Werror(=.*)?");
+
   CxxPrecompiledHeaderTemplate(
       BuildTarget buildTarget,
       ProjectFilesystem projectFilesystem,
@@ -82,9 +115,10 @@ public class CxxPrecompiledHeaderTemplate extends PreInclude implements AndroidP
     // We just need the flags pertaining to PCH compatibility: language, PIC, macros, etc.
     // and nothing related to the deps of this particular rule (hence 'getNonIncludePathFlags').
     CxxToolFlags compilerFlags =
-        CxxToolFlags.concat(
-            preprocessorDelegateForCxxRule.getNonIncludePathFlags(pathResolver),
-            computedCompilerFlags);
+        withoutDiagnosticFlags(
+            CxxToolFlags.concat(
+                preprocessorDelegateForCxxRule.getNonIncludePathFlags(pathResolver),
+                computedCompilerFlags));
 
     // Now build a new pp-delegate specially for this PCH rule.
     PreprocessorDelegate preprocessorDelegate =
@@ -117,6 +151,75 @@ public class CxxPrecompiledHeaderTemplate extends PreInclude implements AndroidP
         graphBuilder);
   }
 
+  /**
+   * Returns {@code flags} without those matching {@link #DIAGNOSTIC_FLAG}, except for {@code -W}
+   * flags if any flag matches {@link #WARNINGS_AS_ERRORS_FLAG}.
+   */
+  @VisibleForTesting
+  static CxxToolFlags withoutDiagnosticFlags(CxxToolFlags flags) {
+    boolean keepWarningFlags =
+        Iterables.any(
+            flags.getAllFlags(),
+            flag ->
+                getLiteralFlag(flag)
+                    .map(arg -> WARNINGS_AS_ERRORS_FLAG.matcher(arg).matches())
+                    .orElse(false));
+    ImmutableList.Builder<Arg> platformFlags = ImmutableList.builder();
+    ImmutableList.Builder<Arg> ruleFlags = ImmutableList.builder();
+    Arg last =
+        addNonDiagnosticFlags(flags.getPlatformFlags(), null, keepWarningFlags, platformFlags);
+    addNonDiagnosticFlags(flags.getRuleFlags(), last, keepWarningFlags, ruleFlags);
+    CxxToolFlags result =
+        ImmutableIterableCxxToolFlags.of(platformFlags.build(), ruleFlags.build());
+    // Keep the original instance where nothing was removed, so existing PCH keys stay the same.
+    return Iterables.size(result.getAllFlags()) == Iterables.size(flags.getAllFlags())
+        ? flags
+        : result;
+  }
+
+  @Nullable
+  private static Arg addNonDiagnosticFlags(
+      Iterable<Arg> flags,
+      @Nullable Arg previous,
+      boolean keepWarningFlags,
+      ImmutableList.Builder<Arg> builder) {
+    for (Arg flag : flags) {
+      // Flags passed through to another tool, e.g. `-Xclang -Wfoo`, must stay with their prefix.
+      if (!isDiagnosticFlag(flag, keepWarningFlags) || isPassThroughFlag(previous)) {
+        builder.add(flag);
+      }
+      previous = flag;
+    }
+    return previous;
+  }
+
+  private static boolean isDiagnosticFlag(Arg flag, boolean keepWarningFlags) {
+    return getLiteralFlag(flag)
+        .map(
+            arg ->
+                DIAGNOSTIC_FLAG.matcher(arg).matches()
+                    && !(keepWarningFlags && arg.startsWith("-W")))
+        .orElse(false);
+  }
+
+  private static boolean isPassThroughFlag(@Nullable Arg flag) {
+    return getLiteralFlag(flag)
+        .map(arg -> arg.startsWith("-X") || arg.equals("-mllvm"))
+        .orElse(false);
+  }
+
+  /** Returns the flag's value if it is a plain string, which needs nothing resolved. */
+  private static Optional<String> getLiteralFlag(@Nullable Arg flag) {
+    if (flag instanceof StringArg) {
+      return Optional.of(((StringArg) flag).getArg());
+    }
+    if (flag instanceof SanitizedArg) {
+      // The unsanitized value, which is what ends up on the command line.
+      return Optional.of(flag.toString());
+    }
+    return Optional.empty();
+  }
+
   @Override
   public Iterable<AndroidPackageable> getRequiredPackageables(BuildRuleResolver ruleResolver) {
     return AndroidPackageableCollector.getPackageableRules(getBuildDeps());
@@ -21,6 +21,7 @@ import com.facebook.buck.core.rules.ActionGraphBuilder;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.BuildRuleResolver;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
+import com.facebook.buck.util.collect.HashTrieMap;
 import com.google.common.collect.ImmutableMap;
 
 /**
@@ -48,4 +49,15 @@ public interface CxxPreprocessorDep {
    */
   ImmutableMap<BuildTarget, CxxPreprocessorInput> getTransitiveCxxPreprocessorInput(
       CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder);
+
+  /**
+   * Returns the same inputs as {@link #getTransitiveCxxPreprocessorInput}, as a map that dependents
+   * can build their own transitive inputs on without copying it. Rules backed by a {@link
+   * TransitiveCxxPreprocessorInputCache} should return {@link
+   * TransitiveCxxPreprocessorInputCache#getSharedUnchecked} here.
+   */
+  default HashTrieMap<BuildTarget, CxxPreprocessorInput> getSharedTransitiveCxxPreprocessorInput(
+      CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+    return HashTrieMap.copyOf(getTransitiveCxxPreprocessorInput(cxxPlatform, graphBuilder));
+  }
 }
@@ -26,6 +26,8 @@ import com.facebook.buck.core.rules.ActionGraphBuilder;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.actions.Action;
 import com.facebook.buck.core.rules.impl.DependencyAggregation;
+import com.facebook.buck.core.sourcepath.BuildTargetSourcePath;
+import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.core.sourcepath.PathSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
@@ -59,6 +61,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.hash.Hashing;
 import java.io.File;
 import java.nio.file.Path;
@@ -337,10 +340,14 @@ public abstract class CxxSourceRuleFactory {
   /**
    * @return a {@link CxxThinLTOOpt} rule that handles the opt phase of ThinLTO with the given
    *     {@link CxxSource}. thinIndicesRoot points to the root of the thin index artifacts generated
-   *     in the ThinLTO indexing step. See {@link CxxThinLTOIndex}.
+   *     in the ThinLTO indexing step, and importableInputs are the inputs the index was computed
+   *     over. See {@link CxxThinLTOIndex}.
    */
   private CxxThinLTOOpt createThinOptBuildRule(
-      String name, CxxSource source, SourcePath thinIndicesRoot) {
+      String name,
+      CxxSource source,
+      BuildTargetSourcePath thinIndicesRoot,
+      ImmutableSortedSet<SourcePath> importableInputs) {
 
     Preconditions.checkArgument(CxxSourceTypes.isOptimizableType(source.getType()));
 
@@ -350,6 +357,17 @@ public abstract class CxxSourceRuleFactory {
         CxxSourceTypes.getCompiler(getCxxPlatform(), source.getType())
             .resolve(getActionGraphBuilder(), getBaseBuildTarget().getTargetConfiguration());
 
+    // The indexing step writes the index of each module at the module's own path under the index
+    // root, so point at that one file rather than the whole directory.
+    SourcePath thinIndex =
+        ExplicitBuildTargetSourcePath.of(
+            thinIndicesRoot.getTarget(),
+            getPathResolver()
+                .getRelativePath(thinIndicesRoot)
+                .resolve(
+                    getPathResolver().getRelativePath(source.getPath())
+                        + CxxThinLTOOpt.THIN_INDEX_SUFFIX));
+
     CxxToolFlags flags =
         CxxToolFlags.explicitBuilder()
             // If we're using pic, add in the appropriate flag.
@@ -360,7 +378,7 @@ public abstract class CxxSourceRuleFactory {
             .addAllRuleFlags(getRuleCompileFlags(source.getType()))
             // Add custom per-file flags.
             .addAllRuleFlags(sanitizedArgs(StringArg.from(source.getFlags())))
-            .addRuleFlags(new CxxThinLTOIndexArg(thinIndicesRoot, source.getPath()))
+            .addRuleFlags(new CxxThinLTOIndexArg(thinIndex))
             .build();
 
     CompilerDelegate compilerDelegate =
@@ -377,9 +395,11 @@ public abstract class CxxSourceRuleFactory {
         compilerDelegate,
         getCompileOutputName(name),
         source.getPath(),
-        thinIndicesRoot,
+        thinIndex,
+        importableInputs,
         source.getType(),
-        getSanitizer());
+        getSanitizer(),
+        getCxxBuckConfig().getThinLTOOptScheduleInfo());
   }
 
   /**
@@ -537,8 +557,14 @@ public abstract class CxxSourceRuleFactory {
                 });
   }
 
+  /**
+   * @return the {@link CxxThinLTOOpt} rules for the given bitcode sources, each depending on its
+   *     own index file under thinIndicesRoot.
+   */
   public ImmutableMap<CxxThinLTOOpt, SourcePath> requireThinOptRules(
-      ImmutableMap<String, CxxSource> sources, SourcePath thinIndicesRoot) {
+      ImmutableMap<String, CxxSource> sources,
+      BuildTargetSourcePath thinIndicesRoot,
+      ImmutableSortedSet<SourcePath> importableInputs) {
 
     ImmutableMap.Builder<BuildTarget, Function<BuildTarget, BuildRule>> mappings =
         ImmutableMap.builder();
@@ -550,7 +576,8 @@ public abstract class CxxSourceRuleFactory {
               target,
               ignored -> {
                 Preconditions.checkState(CxxSourceTypes.isOptimizableType(source.getType()));
-                CxxThinLTOOpt rule = createThinOptBuildRule(name, source, thinIndicesRoot);
+                CxxThinLTOOpt rule =
+                    createThinOptBuildRule(name, source, thinIndicesRoot, importableInputs);
                 Preconditions.checkState(
                     rule.getInput().equals(source.getPath()),
                     "Hash collision for %s; a build rule would have been ignored.",
@@ -821,6 +848,7 @@ public abstract class CxxSourceRuleFactory {
   private class PreprocessorDelegateCacheValue {
     private final Function<AddsToRuleKey, String> commandHashCache = memoize(this::computeHash);
     private final PreprocessorDelegate preprocessorDelegate;
+    private final Supplier<String> preprocessorToolHash;
     private final Supplier<String> preprocessorHash;
     private final Supplier<String> preprocessorFullHash;
 
@@ -833,6 +861,14 @@ public abstract class CxxSourceRuleFactory {
     PreprocessorDelegateCacheValue(
         PreprocessorDelegate preprocessorDelegate, DebugPathSanitizer sanitizer) {
       this.preprocessorDelegate = preprocessorDelegate;
+      this.preprocessorToolHash =
+          MoreSuppliers.memoize(
+              () ->
+                  computeHash(
+                      new AddsToRuleKey() {
+                        @AddToRuleKey
+                        Preprocessor preprocessor = preprocessorDelegate.getPreprocessor();
+                      }));
       this.preprocessorHash =
           MoreSuppliers.memoize(
               () ->
@@ -870,8 +906,12 @@ public abstract class CxxSourceRuleFactory {
           + commandHashCache.apply(compilerFlags);
     }
 
+    /**
+     * Hashes only the preprocessor tool and {@code compilerFlags}, leaving out this rule's own
+     * preprocessor flags. Callers must pass flags that already include whichever of those matter.
+     */
     public String getBaseHash(CxxToolFlags compilerFlags) {
-      return preprocessorHash.get() + "-" + commandHashCache.apply(compilerFlags);
+      return preprocessorToolHash.get() + "-" + commandHashCache.apply(compilerFlags);
     }
   }
 
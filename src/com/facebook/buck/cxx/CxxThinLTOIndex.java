@@ -22,8 +22,10 @@ import com.facebook.buck.core.rulekey.AddToRuleKey;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
 import com.facebook.buck.core.rules.attr.SupportsInputBasedRuleKey;
+import com.facebook.buck.core.rules.common.BuildableSupport;
 import com.facebook.buck.core.rules.schedule.OverrideScheduleRule;
 import com.facebook.buck.core.rules.schedule.RuleScheduleInfo;
+import com.facebook.buck.core.sourcepath.BuildTargetSourcePath;
 import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.cxx.toolchain.LinkerMapMode;
@@ -44,6 +46,8 @@ import com.facebook.buck.step.fs.TouchStep;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Ordering;
 import java.nio.file.Path;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -157,10 +161,17 @@ public class CxxThinLTOIndex extends ModernBuildRule<CxxThinLTOIndex.Impl>
   }
 
   @Override
-  public SourcePath getSourcePathToOutput() {
+  public BuildTargetSourcePath getSourcePathToOutput() {
     return getSourcePath(getBuildable().output);
   }
 
+  /** @return the objects and libraries the index is computed over. */
+  ImmutableSortedSet<SourcePath> getIndexedInputs() {
+    return getBuildable().args.stream()
+        .flatMap(BuildableSupport::deriveInputs)
+        .collect(ImmutableSortedSet.toImmutableSortedSet(Ordering.natural()));
+  }
+
   /** @return The source path to be used to link against this binary. */
   SourcePath getSourcePathToOutputForLinking() {
     if (isSharedLib() && getBuildable().linker instanceof HasImportLibrary) {
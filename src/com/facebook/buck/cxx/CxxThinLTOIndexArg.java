@@ -24,22 +24,16 @@ import java.util.function.Consumer;
 
 /** Holds an argument specifying the location of a thinLTO index file for optimization */
 public class CxxThinLTOIndexArg implements Arg {
-  @AddToRuleKey private final SourcePath thinIndicesRoot;
-  private final SourcePath cxxSourcePath;
+  @AddToRuleKey private final SourcePath thinIndex;
 
-  public CxxThinLTOIndexArg(SourcePath thinIndicesRoot, SourcePath cxxSourcePath) {
-    this.thinIndicesRoot = thinIndicesRoot;
-    this.cxxSourcePath = cxxSourcePath;
+  /** @param thinIndex the index file the ThinLTO indexing step emitted for a single module. */
+  public CxxThinLTOIndexArg(SourcePath thinIndex) {
+    this.thinIndex = thinIndex;
   }
 
   @Override
   public void appendToCommandLine(
       Consumer<String> consumer, SourcePathResolverAdapter pathResolver) {
-    consumer.accept(
-        String.format(
-            "-fthinlto-index=%s.thinlto.bc",
-            pathResolver
-                .getRelativePath(thinIndicesRoot)
-                .resolve(pathResolver.getRelativePath(cxxSourcePath))));
+    consumer.accept("-fthinlto-index=" + pathResolver.getRelativePath(thinIndex));
   }
 }
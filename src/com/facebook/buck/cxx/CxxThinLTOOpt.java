@@ -17,10 +17,14 @@
 package com.facebook.buck.cxx;
 
 import com.facebook.buck.core.build.context.BuildContext;
+import com.facebook.buck.core.cell.CellPathResolver;
 import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.AddToRuleKey;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
+import com.facebook.buck.core.rules.attr.SupportsDependencyFileRuleKey;
+import com.facebook.buck.core.rules.schedule.OverrideScheduleRule;
+import com.facebook.buck.core.rules.schedule.RuleScheduleInfo;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.cxx.CxxSource.Type;
@@ -38,13 +42,37 @@ import com.facebook.buck.rules.modern.OutputPathResolver;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Predicate;
 
-/** A build rule which runs the opt phase of an incremental ThinLTO build */
+/**
+ * A build rule which runs the opt phase of an incremental ThinLTO build.
+ *
+ * <p>Each rule depends on the index file of its own module rather than on the whole index output.
+ * Which other modules the backend imports functions from is only known once the index has run, so
+ * the rule declares every input the index was computed over, which keeps the inputs complete when
+ * it is built by a remote or hybrid strategy. The index also lists the modules each backend
+ * actually imports from, and that list is used as the rule's dep file, so that a local build only
+ * reruns a backend when one of those modules changes.
+ */
 public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
-    implements CxxIntermediateBuildProduct {
+    implements CxxIntermediateBuildProduct, SupportsDependencyFileRuleKey, OverrideScheduleRule {
+
+  /** The suffix of the per-module index files the indexing step writes. */
+  static final String THIN_INDEX_SUFFIX = ".thinlto.bc";
+
+  /** The suffix of the files listing the modules each backend imports functions from. */
+  private static final String IMPORTS_SUFFIX = ".imports";
+
+  private final Optional<RuleScheduleInfo> ruleScheduleInfo;
+
   private CxxThinLTOOpt(
       BuildTarget buildTarget,
       ProjectFilesystem projectFilesystem,
@@ -52,9 +80,11 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
       CompilerDelegate compilerDelegate,
       String outputName,
       SourcePath input,
-      SourcePath thinIndicesRoot,
+      SourcePath thinIndex,
+      ImmutableSortedSet<SourcePath> importableInputs,
       Type inputType,
-      DebugPathSanitizer sanitizer) {
+      DebugPathSanitizer sanitizer,
+      Optional<RuleScheduleInfo> ruleScheduleInfo) {
     super(
         buildTarget,
         projectFilesystem,
@@ -64,9 +94,11 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
             compilerDelegate,
             outputName,
             input,
-            thinIndicesRoot,
+            thinIndex,
+            importableInputs,
             inputType,
             sanitizer));
+    this.ruleScheduleInfo = ruleScheduleInfo;
     Preconditions.checkArgument(
         !buildTarget.getFlavors().contains(CxxStrip.RULE_FLAVOR)
             || !StripStyle.FLAVOR_DOMAIN.containsAnyOf(buildTarget.getFlavors()),
@@ -86,9 +118,11 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
       CompilerDelegate compilerDelegate,
       String outputName,
       SourcePath input,
-      SourcePath thinIndicesRoot,
+      SourcePath thinIndex,
+      ImmutableSortedSet<SourcePath> importableInputs,
       Type inputType,
-      DebugPathSanitizer sanitizer) {
+      DebugPathSanitizer sanitizer,
+      Optional<RuleScheduleInfo> ruleScheduleInfo) {
     return new CxxThinLTOOpt(
         buildTarget,
         projectFilesystem,
@@ -96,9 +130,11 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
         compilerDelegate,
         outputName,
         input,
-        thinIndicesRoot,
+        thinIndex,
+        importableInputs,
         inputType,
-        sanitizer);
+        sanitizer,
+        ruleScheduleInfo);
   }
 
   CompilerDelegate getCompilerDelegate() {
@@ -121,6 +157,70 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
     return getBuildable().input;
   }
 
+  @Override
+  public RuleScheduleInfo getRuleScheduleInfo() {
+    return ruleScheduleInfo.orElse(RuleScheduleInfo.DEFAULT);
+  }
+
+  @Override
+  public boolean useDependencyFileRuleKeys() {
+    return true;
+  }
+
+  @Override
+  public Predicate<SourcePath> getCoveredByDepFilePredicate(
+      SourcePathResolverAdapter pathResolver) {
+    return getBuildable().importableInputs::contains;
+  }
+
+  @Override
+  public Predicate<SourcePath> getExistenceOfInterestPredicate(
+      SourcePathResolverAdapter pathResolver) {
+    return (SourcePath path) -> false;
+  }
+
+  /**
+   * Returns this module's bitcode and the bitcode of the modules listed in the imports file the
+   * index wrote next to this module's index file. Every importable input is returned if that list
+   * is missing or names a file that isn't one of them, such as a member of an archive.
+   */
+  @Override
+  public ImmutableList<SourcePath> getInputsAfterBuildingLocally(
+      BuildContext context, CellPathResolver cellPathResolver) throws IOException {
+    SourcePathResolverAdapter resolver = context.getSourcePathResolver();
+    ProjectFilesystem filesystem = getProjectFilesystem();
+    Impl buildable = getBuildable();
+
+    ImmutableList.Builder<SourcePath> inputs = ImmutableList.builder();
+    inputs.add(buildable.input);
+
+    String indexPath = resolver.getRelativePath(buildable.thinIndex).toString();
+    Preconditions.checkState(indexPath.endsWith(THIN_INDEX_SUFFIX));
+    Optional<String> imports =
+        filesystem.readFileIfItExists(
+            filesystem.getPath(
+                indexPath.substring(0, indexPath.length() - THIN_INDEX_SUFFIX.length())
+                    + IMPORTS_SUFFIX));
+    if (!imports.isPresent()) {
+      return inputs.addAll(buildable.importableInputs).build();
+    }
+
+    Map<Path, SourcePath> importableInputsByPath = new HashMap<>();
+    for (SourcePath importableInput : buildable.importableInputs) {
+      importableInputsByPath.put(
+          resolver.getAbsolutePath(importableInput).normalize(), importableInput);
+    }
+    for (String line : Splitter.on('\n').trimResults().omitEmptyStrings().split(imports.get())) {
+      SourcePath importedInput =
+          importableInputsByPath.get(filesystem.resolve(line).normalize());
+      if (importedInput == null) {
+        return inputs.addAll(buildable.importableInputs).build();
+      }
+      inputs.add(importedInput);
+    }
+    return inputs.build();
+  }
+
   /** Buildable implementation for CxxThinLTOOpt. */
   public static class Impl implements Buildable {
     @AddToRuleKey private final BuildTarget targetName;
@@ -129,7 +229,8 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
     @AddToRuleKey private final DebugPathSanitizer sanitizer;
     @AddToRuleKey private final OutputPath output;
     @AddToRuleKey private final SourcePath input;
-    @AddToRuleKey private final SourcePath thinIndicesRoot;
+    @AddToRuleKey private final SourcePath thinIndex;
+    @AddToRuleKey private final ImmutableSortedSet<SourcePath> importableInputs;
     @AddToRuleKey private final CxxSource.Type inputType;
 
     public Impl(
@@ -137,7 +238,8 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
         CompilerDelegate compilerDelegate,
         String outputName,
         SourcePath input,
-        SourcePath thinIndicesRoot,
+        SourcePath thinIndex,
+        ImmutableSortedSet<SourcePath> importableInputs,
         Type inputType,
         DebugPathSanitizer sanitizer) {
       this.targetName = targetName;
@@ -145,7 +247,8 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
       this.sanitizer = sanitizer;
       this.output = new OutputPath(outputName);
       this.input = input;
-      this.thinIndicesRoot = thinIndicesRoot;
+      this.thinIndex = thinIndex;
+      this.importableInputs = importableInputs;
       this.inputType = inputType;
     }
 
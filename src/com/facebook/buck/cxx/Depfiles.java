@@ -29,23 +29,26 @@ import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.pathformat.PathFormatter;
+import com.facebook.buck.util.function.ThrowingConsumer;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import java.io.BufferedReader;
+import com.google.common.io.CharStreams;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /** Specialized parser for .d Makefiles emitted by {@code gcc -MD}. */
 // TODO(cjhopman): This should be better documented about the format it is expecting.
@@ -82,9 +85,6 @@ class Depfiles {
     ADD_PREREQ
   }
 
-  private static final String WHITESPACE_CHARS = " \n\r\t";
-  private static final String ESCAPED_TARGET_CHARS = ": #";
-  private static final String ESCAPED_PREREQ_CHARS = " #";
   private static final String UNTRACKED_HEADER_ERROR_TIPS =
       "Untracked headers detected. Please reference these headers "
           + System.lineSeparator()
@@ -102,144 +102,188 @@ class Depfiles {
    * dep2, ...]) inside.
    */
   public static Depfile parseDepfile(Readable readable) throws IOException {
-    String target = null;
+    byte[] contents = CharStreams.toString(readable).getBytes(StandardCharsets.UTF_8);
     ImmutableList.Builder<String> prereqsBuilder = ImmutableList.builder();
-    State state = State.LOOKING_FOR_TARGET;
-    StringBuilder identifierBuilder = new StringBuilder();
-
-    CharBuffer buffer = CharBuffer.allocate(4096);
-    int numBackslashes = 0;
-
-    while (readable.read(buffer) != -1) {
-      buffer.flip();
-
-      while (buffer.hasRemaining()) {
-        char c = buffer.get();
-        Action action = Action.NONE;
-        boolean isBackslash = c == '\\';
-        boolean isCarriageReturn = c == '\r';
-        boolean isNewline = c == '\n';
-        boolean isWhitespace = WHITESPACE_CHARS.indexOf(c) != -1;
-        boolean inIdentifier = identifierBuilder.length() > 0;
-        boolean isEscaped;
-        if (state == State.LOOKING_FOR_TARGET) {
-          isEscaped = ESCAPED_TARGET_CHARS.indexOf(c) != -1;
-        } else {
-          isEscaped = ESCAPED_PREREQ_CHARS.indexOf(c) != -1;
-        }
+    String target = parseDepfile(new ByteArrayInputStream(contents), prereqsBuilder::add);
+    return new Depfile(target, prereqsBuilder.build());
+  }
 
-        if (isBackslash) {
-          // We need to count the number of backslashes in case the
-          // first non-backslash is an escaped character.
-          numBackslashes++;
-        } else if (numBackslashes > 0 && isEscaped) {
-          // Consume one backslash to escape the special char.
-          numBackslashes--;
-          if (inIdentifier) {
-            action = Action.APPEND_TO_IDENTIFIER;
+  /**
+   * Parses the input as a .d Makefile as emitted by {@code gcc -MD}, straight from its bytes, and
+   * returns its target. Each prerequisite is handed to {@code prereqConsumer} as soon as it has
+   * been read, so no list of them is ever built.
+   */
+  public static String parseDepfile(
+      InputStream input, ThrowingConsumer<String, IOException> prereqConsumer) throws IOException {
+    Tokenizer tokenizer = new Tokenizer(prereqConsumer);
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = input.read(buffer)) != -1) {
+      for (int i = 0; i < read; i++) {
+        tokenizer.accept(buffer[i]);
+      }
+    }
+    return tokenizer.finish();
+  }
+
+  /**
+   * The state machine behind {@link #parseDepfile(InputStream, ThrowingConsumer)}. All the bytes it
+   * treats specially are ASCII, which never occur inside a multi-byte UTF-8 sequence, so
+   * identifiers are collected as raw bytes and decoded once they are complete.
+   */
+  private static class Tokenizer {
+    private final ThrowingConsumer<String, IOException> prereqConsumer;
+
+    private State state = State.LOOKING_FOR_TARGET;
+    private int numBackslashes = 0;
+    private byte[] identifier = new byte[256];
+    private int identifierLength = 0;
+    @Nullable private String target;
+    private int numPrereqs = 0;
+
+    Tokenizer(ThrowingConsumer<String, IOException> prereqConsumer) {
+      this.prereqConsumer = prereqConsumer;
+    }
+
+    void accept(byte c) throws IOException {
+      Action action = Action.NONE;
+      boolean isBackslash = c == '\\';
+      boolean isCarriageReturn = c == '\r';
+      boolean isNewline = c == '\n';
+      boolean isWhitespace = c == ' ' || c == '\t' || isNewline || isCarriageReturn;
+      boolean inIdentifier = identifierLength > 0;
+      boolean isEscaped;
+      if (state == State.LOOKING_FOR_TARGET) {
+        isEscaped = c == ':' || c == ' ' || c == '#';
+      } else {
+        isEscaped = c == ' ' || c == '#';
+      }
+
+      if (isBackslash) {
+        // We need to count the number of backslashes in case the
+        // first non-backslash is an escaped character.
+        numBackslashes++;
+      } else if (numBackslashes > 0 && isEscaped) {
+        // Consume one backslash to escape the special char.
+        numBackslashes--;
+        if (inIdentifier) {
+          action = Action.APPEND_TO_IDENTIFIER;
+        }
+      } else if (isWhitespace) {
+        if (numBackslashes == 0) {
+          if (state == State.FOUND_TARGET && inIdentifier) {
+            action = Action.ADD_PREREQ;
           }
-        } else if (isWhitespace) {
-          if (numBackslashes == 0) {
-            if (state == State.FOUND_TARGET && inIdentifier) {
-              action = Action.ADD_PREREQ;
-            }
-            if (state == State.FOUND_TARGET && (isNewline || isCarriageReturn)) {
-              state = State.LOOKING_FOR_TARGET;
-            }
-          } else if (isNewline) {
-            // Consume one backslash to escape \n or \r\n.
-            numBackslashes--;
-          } else if (!isCarriageReturn) {
-            action = Action.APPEND_TO_IDENTIFIER;
+          if (state == State.FOUND_TARGET && (isNewline || isCarriageReturn)) {
+            state = State.LOOKING_FOR_TARGET;
           }
-        } else if (c == ':' && state == State.LOOKING_FOR_TARGET) {
-          state = State.FOUND_TARGET;
-          action = Action.SET_TARGET;
-        } else {
+        } else if (isNewline) {
+          // Consume one backslash to escape \n or \r\n.
+          numBackslashes--;
+        } else if (!isCarriageReturn) {
           action = Action.APPEND_TO_IDENTIFIER;
         }
+      } else if (c == ':' && state == State.LOOKING_FOR_TARGET) {
+        state = State.FOUND_TARGET;
+        action = Action.SET_TARGET;
+      } else {
+        action = Action.APPEND_TO_IDENTIFIER;
+      }
 
-        if (!isBackslash && numBackslashes > 0 && !isCarriageReturn) {
-          int numBackslashesToAppend;
-          if (isEscaped || isWhitespace) {
-            // Backslashes escape themselves before an escaped character or whitespace.
-            numBackslashesToAppend = numBackslashes / 2;
-          } else {
-            // Backslashes are literal before a non-escaped character.
-            numBackslashesToAppend = numBackslashes;
-          }
-
-          for (int i = 0; i < numBackslashesToAppend; i++) {
-            identifierBuilder.append('\\');
-          }
-          numBackslashes = 0;
+      if (!isBackslash && numBackslashes > 0 && !isCarriageReturn) {
+        int numBackslashesToAppend;
+        if (isEscaped || isWhitespace) {
+          // Backslashes escape themselves before an escaped character or whitespace.
+          numBackslashesToAppend = numBackslashes / 2;
+        } else {
+          // Backslashes are literal before a non-escaped character.
+          numBackslashesToAppend = numBackslashes;
         }
 
-        switch (action) {
-          case NONE:
-            break;
-          case APPEND_TO_IDENTIFIER:
-            identifierBuilder.append(c);
-            break;
-          case SET_TARGET:
-            if (target != null) {
-              throw new HumanReadableException(
-                  "Depfile parser cannot handle .d file with multiple targets");
-            }
-            target = identifierBuilder.toString();
-            identifierBuilder.setLength(0);
-            break;
-          case ADD_PREREQ:
-            prereqsBuilder.add(identifierBuilder.toString());
-            identifierBuilder.setLength(0);
-            break;
+        for (int i = 0; i < numBackslashesToAppend; i++) {
+          append((byte) '\\');
         }
+        numBackslashes = 0;
       }
 
-      buffer.clear();
+      switch (action) {
+        case NONE:
+          break;
+        case APPEND_TO_IDENTIFIER:
+          append(c);
+          break;
+        case SET_TARGET:
+          if (target != null) {
+            throw new HumanReadableException(
+                "Depfile parser cannot handle .d file with multiple targets");
+          }
+          target = takeIdentifier();
+          break;
+        case ADD_PREREQ:
+          numPrereqs++;
+          prereqConsumer.accept(takeIdentifier());
+          break;
+      }
+    }
+
+    String finish() throws IOException {
+      if (target == null || numPrereqs == 0) {
+        throw new IOException("Could not find target or prereqs parsing depfile");
+      }
+      return target;
+    }
+
+    private void append(byte c) {
+      if (identifierLength == identifier.length) {
+        identifier = Arrays.copyOf(identifier, identifier.length * 2);
+      }
+      identifier[identifierLength++] = c;
     }
 
-    ImmutableList<String> prereqs = prereqsBuilder.build();
-    if (target == null || prereqs.isEmpty()) {
-      throw new IOException("Could not find target or prereqs parsing depfile");
-    } else {
-      return new Depfile(target, prereqs);
+    private String takeIdentifier() {
+      String result = new String(identifier, 0, identifierLength, StandardCharsets.UTF_8);
+      identifierLength = 0;
+      return result;
     }
   }
 
-  private static ImmutableList<String> getRawUsedHeadersFromDepfile(
+  /**
+   * Hands the headers used by a compilation, as listed in {@code sourceDepFile}, to {@code
+   * headerConsumer} while the depfile is being read.
+   */
+  private static void readRawUsedHeadersFromDepfile(
       ProjectFilesystem filesystem,
       Path sourceDepFile,
       Path inputPath,
       DependencyTrackingMode dependencyTrackingMode,
-      boolean useUnixPathSeparator)
+      boolean useUnixPathSeparator,
+      ThrowingConsumer<String, IOException> headerConsumer)
       throws IOException {
     switch (dependencyTrackingMode) {
       case MAKEFILE:
-        try (InputStream input = filesystem.newFileInputStream(sourceDepFile);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(input))) {
-          ImmutableList<String> prereqs = Depfiles.parseDepfile(reader).getPrereqs();
-          // Additional files passed in via command-line flags (e.g. `-fsanitize-blacklist=<file>`)
-          // appear first in the dep file, followed by the input source file.  So, just skip over
-          // everything until just after the input source which should position us at the headers.
-          //
-          // TODO(#11303454): This means we're not including the content of these special files into
-          // the rule key. The correct way to handle this is likely to support macros in
-          // preprocessor/compiler flags at which point we can use the entries for these files in
-          // the depfile to verify that the user properly references these files via the macros.
-          int inputIndex =
-              prereqs.indexOf(
-                  useUnixPathSeparator
-                      ? PathFormatter.pathWithUnixSeparators(inputPath)
-                      : inputPath.toString());
-          Preconditions.checkState(
-              inputIndex != -1,
-              "Could not find input source (%s) in dep file prereqs (%s)",
-              inputPath,
-              prereqs);
-          ImmutableList<String> includes = prereqs.subList(inputIndex + 1, prereqs.size());
-          return includes;
+        // Additional files passed in via command-line flags (e.g. `-fsanitize-blacklist=<file>`)
+        // appear first in the dep file, followed by the input source file.  So, just skip over
+        // everything until just after the input source which should position us at the headers.
+        //
+        // TODO(#11303454): This means we're not including the content of these special files into
+        // the rule key. The correct way to handle this is likely to support macros in
+        // preprocessor/compiler flags at which point we can use the entries for these files in
+        // the depfile to verify that the user properly references these files via the macros.
+        HeadersAfterInput headersAfterInput =
+            new HeadersAfterInput(
+                useUnixPathSeparator
+                    ? PathFormatter.pathWithUnixSeparators(inputPath)
+                    : inputPath.toString(),
+                headerConsumer);
+        try (InputStream input = filesystem.newFileInputStream(sourceDepFile)) {
+          Depfiles.parseDepfile(input, headersAfterInput);
         }
+        Preconditions.checkState(
+            headersAfterInput.foundInput,
+            "Could not find input source (%s) in dep file prereqs (%s)",
+            inputPath,
+            headersAfterInput.leadingPrereqs);
+        return;
       case SHOW_HEADERS:
       case SHOW_INCLUDES:
         // An intermediate depfile in `show_include` mode contains a source file + used headers
@@ -248,15 +292,42 @@ class Depfiles {
         List<String> srcAndIncludes = filesystem.readLines(sourceDepFile);
         List<String> includes = srcAndIncludes.subList(1, srcAndIncludes.size());
         // We don't require the tree structure here, we remove the spaces
-        return includes.stream().map(String::trim).collect(ImmutableList.toImmutableList());
+        for (String include : includes) {
+          headerConsumer.accept(include.trim());
+        }
+        return;
       case NONE:
-        return ImmutableList.<String>of();
+        return;
       default:
         // never happens
         throw new IllegalStateException();
     }
   }
 
+  /** Passes on the prerequisites of a Makefile depfile that follow the input source. */
+  private static class HeadersAfterInput implements ThrowingConsumer<String, IOException> {
+    private final String inputPrereq;
+    private final ThrowingConsumer<String, IOException> headerConsumer;
+    private final List<String> leadingPrereqs = new ArrayList<>();
+    private boolean foundInput = false;
+
+    HeadersAfterInput(String inputPrereq, ThrowingConsumer<String, IOException> headerConsumer) {
+      this.inputPrereq = inputPrereq;
+      this.headerConsumer = headerConsumer;
+    }
+
+    @Override
+    public void accept(String prereq) throws IOException {
+      if (foundInput) {
+        headerConsumer.accept(prereq);
+      } else if (prereq.equals(inputPrereq)) {
+        foundInput = true;
+      } else {
+        leadingPrereqs.add(prereq);
+      }
+    }
+  }
+
   /**
    * Reads and processes {@code .dep} file produced by a cxx compiler.
    *
@@ -302,50 +373,67 @@ class Depfiles {
             SimplePerfEvent.PerfEventId.of("depfile-parse"),
             ImmutableMap.of("input", inputPath, "output", outputPath))) {
 
-      List<String> headers =
-          getRawUsedHeadersFromDepfile(
-              filesystem, sourceDepFile, inputPath, dependencyTrackingMode, useUnixPathSeparator);
-
-      return normalizeAndVerifyHeaders(
-          eventBus,
+      HeaderVerifier headerVerifier =
+          new HeaderVerifier(
+              filesystem,
+              pathResolver,
+              headerPathNormalizer,
+              headerVerification,
+              inputPath,
+              sourceDepFile,
+              dependencyTrackingMode);
+      readRawUsedHeadersFromDepfile(
           filesystem,
-          pathResolver,
-          headerPathNormalizer,
-          headerVerification,
-          inputPath,
-          headers,
           sourceDepFile,
-          dependencyTrackingMode);
+          inputPath,
+          dependencyTrackingMode,
+          useUnixPathSeparator,
+          headerVerifier::addHeader);
+      return headerVerifier.finish(eventBus);
     }
   }
 
-  private static ImmutableList<Path> normalizeAndVerifyHeaders(
-      BuckEventBus eventBus,
-      ProjectFilesystem filesystem,
-      SourcePathResolverAdapter pathResolver,
-      HeaderPathNormalizer headerPathNormalizer,
-      HeaderVerification headerVerification,
-      Path inputPath,
-      List<String> headers,
-      Path sourceDepFile,
-      DependencyTrackingMode dependencyTrackingMode)
-      throws IOException, HeaderVerificationException {
-    ImmutableList.Builder<Path> resultBuilder = ImmutableList.builder();
-    UntrackedHeaderReporterWithFallback untrackedHeaderReporter =
-        new UntrackedHeaderReporterWithFallback(
-            dependencyTrackingMode, filesystem, headerPathNormalizer, sourceDepFile, inputPath);
-    List<String> errors = new ArrayList<String>();
-    for (String rawHeader : headers) {
+  /**
+   * Normalizes the headers of a compilation one at a time, as they are read from its depfile, and
+   * collects the errors for the ones that are not tracked by the build.
+   */
+  private static class HeaderVerifier {
+    private final ProjectFilesystem filesystem;
+    private final SourcePathResolverAdapter pathResolver;
+    private final HeaderPathNormalizer headerPathNormalizer;
+    private final HeaderVerification headerVerification;
+    private final UntrackedHeaderReporterWithFallback untrackedHeaderReporter;
+    private final ImmutableList.Builder<Path> resultBuilder = ImmutableList.builder();
+    private final List<String> errors = new ArrayList<>();
+
+    HeaderVerifier(
+        ProjectFilesystem filesystem,
+        SourcePathResolverAdapter pathResolver,
+        HeaderPathNormalizer headerPathNormalizer,
+        HeaderVerification headerVerification,
+        Path inputPath,
+        Path sourceDepFile,
+        DependencyTrackingMode dependencyTrackingMode) {
+      this.filesystem = filesystem;
+      this.pathResolver = pathResolver;
+      this.headerPathNormalizer = headerPathNormalizer;
+      this.headerVerification = headerVerification;
+      this.untrackedHeaderReporter =
+          new UntrackedHeaderReporterWithFallback(
+              dependencyTrackingMode, filesystem, headerPathNormalizer, sourceDepFile, inputPath);
+    }
+
+    void addHeader(String rawHeader) throws IOException {
       Path header = filesystem.resolve(rawHeader).normalize();
       Optional<Path> absolutePath =
           headerPathNormalizer.getAbsolutePathForUnnormalizedPath(pathResolver, header);
-      Optional<Path> repoRelativePath = filesystem.getPathRelativeToProjectRoot(header);
       if (absolutePath.isPresent()) {
         Preconditions.checkState(absolutePath.get().isAbsolute());
         resultBuilder.add(absolutePath.get());
       } else if ((headerVerification.getMode() != HeaderVerification.Mode.IGNORE)
           && (!(headerVerification.isWhitelisted(header.toString())
-              || repoRelativePath
+              || filesystem
+                  .getPathRelativeToProjectRoot(header)
                   .map(path -> headerVerification.isWhitelisted(path.toString()))
                   .orElse(false)))) {
         // Check again with the real path with all symbolic links resolved.
@@ -356,28 +444,31 @@ class Depfiles {
         }
       }
     }
-    // Check if any errors occurred and report them
-    if (!errors.isEmpty()) {
-      String errorMessage =
-          String.format(
-              "%s%n%n%s",
-              errors.stream()
-                  .collect(Collectors.joining(System.lineSeparator() + System.lineSeparator())),
-              UNTRACKED_HEADER_ERROR_TIPS);
-      if (!untrackedHeaderReporter.isDetailed()) {
-        errorMessage += UNTRACKED_HEADER_ERROR_DETAILED_SUGGESTION;
-      }
-      eventBus.post(
-          ConsoleEvent.create(
-              headerVerification.getMode() == HeaderVerification.Mode.ERROR
-                  ? Level.SEVERE
-                  : Level.WARNING,
-              errorMessage));
-      if (headerVerification.getMode() == HeaderVerification.Mode.ERROR) {
-        throw new HeaderVerificationException(errorMessage);
+
+    ImmutableList<Path> finish(BuckEventBus eventBus) throws HeaderVerificationException {
+      // Check if any errors occurred and report them
+      if (!errors.isEmpty()) {
+        String errorMessage =
+            String.format(
+                "%s%n%n%s",
+                errors.stream()
+                    .collect(Collectors.joining(System.lineSeparator() + System.lineSeparator())),
+                UNTRACKED_HEADER_ERROR_TIPS);
+        if (!untrackedHeaderReporter.isDetailed()) {
+          errorMessage += UNTRACKED_HEADER_ERROR_DETAILED_SUGGESTION;
+        }
+        eventBus.post(
+            ConsoleEvent.create(
+                headerVerification.getMode() == HeaderVerification.Mode.ERROR
+                    ? Level.SEVERE
+                    : Level.WARNING,
+                errorMessage));
+        if (headerVerification.getMode() == HeaderVerification.Mode.ERROR) {
+          throw new HeaderVerificationException(errorMessage);
+        }
       }
+      return resultBuilder.build();
     }
-    return resultBuilder.build();
   }
 
   public static class Depfile {
@@ -16,8 +16,6 @@
 
 package com.facebook.buck.cxx;
 
-import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
-
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.util.immutables.BuckStyleValue;
 import com.facebook.buck.cxx.toolchain.elf.Elf;
@@ -32,10 +30,8 @@ import com.facebook.buck.util.stream.RichStream;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 
 /**
@@ -43,7 +39,7 @@ import java.util.Optional;
  * irrelevant at link time.
  */
 @BuckStyleValue
-abstract class ElfDynamicSectionScrubberStep implements Step {
+abstract class ElfDynamicSectionScrubberStep implements Step, ElfRewriter {
 
   static final String SECTION = ".dynamic";
 
@@ -64,63 +60,61 @@ abstract class ElfDynamicSectionScrubberStep implements Step {
 
   @Override
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
-    try (FileChannel channel =
-        FileChannel.open(
-            getFilesystem().resolve(getPath()),
-            StandardOpenOption.READ,
-            StandardOpenOption.WRITE)) {
-      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, channel.size());
-      Elf elf = new Elf(buffer);
-      Elf.ElfSectionLookupResult sectionResult = elf.getMandatorySectionByName(getPath(), SECTION);
-      int sectionIndex = sectionResult.getIndex();
-      ElfSection section = sectionResult.getSection();
-
-      // Parse the dynamic section.
-      ElfDynamicSection dynamic = ElfDynamicSection.parse(elf.header.ei_class, section.body);
-
-      // Generate a new dynamic section with only the whitelisted tags.
-      ElfDynamicSection newDynamic =
-          new ElfDynamicSection(
-              RichStream.from(dynamic.entries)
-                  .filter(e -> isKeepTag(e.d_tag) || !isRemoveScrubbedTags())
-                  .map(e -> isKeepTag(e.d_tag) ? e : new ElfDynamicSection.Entry(e.d_tag, 0L))
-                  .toImmutableList());
-
-      // Write out the new dynamic symbol table.
-      section.body.rewind();
-      newDynamic.write(elf.header.ei_class, section.body);
-
-      // Update the size in other parts of the ELF file, if necessary.
-      if (dynamic.entries.size() != newDynamic.entries.size()) {
-        Preconditions.checkState(isRemoveScrubbedTags());
-
-        // Update the section header.
-        buffer.position((int) (elf.header.e_shoff + sectionIndex * elf.header.e_shentsize));
-        section.header.withSize(section.body.position()).write(elf.header.ei_class, buffer);
-
-        // Update the `_DYNAMIC` symbol in the symbol table.
-        Optional<Elf.ElfSectionLookupResult> symtabSection = elf.getSectionByName(".symtab");
-        if (symtabSection.isPresent()) {
-          ElfSymbolTable symtab =
-              ElfSymbolTable.parse(elf.header.ei_class, symtabSection.get().getSection().body);
-          ElfSection strtab = elf.getMandatorySectionByName(getPath(), ".strtab").getSection();
-          ElfSymbolTable newSymtab =
-              new ElfSymbolTable(
-                  RichStream.from(symtab.entries)
-                      .map(
-                          entry ->
-                              strtab.lookupString(entry.st_name).equals("_DYNAMIC")
-                                  ? entry.withSize(section.body.position())
-                                  : entry)
-                      .toImmutableList());
-
-          // Write out the new symbol table.
-          symtabSection.get().getSection().body.rewind();
-          newSymtab.write(elf.header.ei_class, symtabSection.get().getSection().body);
-        }
+    rewrite(ElfRewriter.map(getFilesystem().resolve(getPath())));
+    return StepExecutionResults.SUCCESS;
+  }
+
+  @Override
+  public void rewrite(ByteBuffer buffer) throws IOException {
+    Elf elf = new Elf(buffer);
+    Elf.ElfSectionLookupResult sectionResult = elf.getMandatorySectionByName(getPath(), SECTION);
+    int sectionIndex = sectionResult.getIndex();
+    ElfSection section = sectionResult.getSection();
+
+    // Parse the dynamic section.
+    ElfDynamicSection dynamic = ElfDynamicSection.parse(elf.header.ei_class, section.body);
+
+    // Generate a new dynamic section with only the whitelisted tags.
+    ElfDynamicSection newDynamic =
+        new ElfDynamicSection(
+            RichStream.from(dynamic.entries)
+                .filter(e -> isKeepTag(e.d_tag) || !isRemoveScrubbedTags())
+                .map(e -> isKeepTag(e.d_tag) ? e : new ElfDynamicSection.Entry(e.d_tag, 0L))
+                .toImmutableList());
+
+    // Write out the new dynamic symbol table.
+    section.body.rewind();
+    newDynamic.write(elf.header.ei_class, section.body);
+
+    // Update the size in other parts of the ELF file, if necessary.
+    if (dynamic.entries.size() != newDynamic.entries.size()) {
+      Preconditions.checkState(isRemoveScrubbedTags());
+
+      // Update the section header.
+      buffer.position((int) (elf.header.e_shoff + sectionIndex * elf.header.e_shentsize));
+      section.header.withSize(section.body.position()).write(elf.header.ei_class, buffer);
+
+      // Update the `_DYNAMIC` symbol in the symbol table.
+      Optional<Elf.ElfSectionLookupResult> symtabSection = elf.getSectionByName(".symtab");
+      if (symtabSection.isPresent()) {
+        ElfSymbolTable symtab =
+            ElfSymbolTable.parse(elf.header.ei_class, symtabSection.get().getSection().body);
+        ElfSection strtab = elf.getMandatorySectionByName(getPath(), ".strtab").getSection();
+        ElfSymbolTable newSymtab =
+            new ElfSymbolTable(
+                RichStream.from(symtab.entries)
+                    .map(
+                        entry ->
+                            strtab.lookupString(entry.st_name).equals("_DYNAMIC")
+                                ? entry.withSize(section.body.position())
+                                : entry)
+                    .toImmutableList());
+
+        // Write out the new symbol table.
+        symtabSection.get().getSection().body.rewind();
+        newSymtab.write(elf.header.ei_class, symtabSection.get().getSection().body);
       }
     }
-    return StepExecutionResults.SUCCESS;
   }
 
   @Override
@@ -16,8 +16,6 @@
 
 package com.facebook.buck.cxx;
 
-import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
-
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.util.immutables.BuckStyleValue;
 import com.facebook.buck.cxx.toolchain.elf.Elf;
@@ -37,10 +35,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -51,7 +47,7 @@ import java.util.Optional;
  * after removing symbols from the dynamic symbol table to compact the string table.
  */
 @BuckStyleValue
-abstract class ElfRewriteDynStrSectionStep implements Step {
+abstract class ElfRewriteDynStrSectionStep implements Step, ElfRewriter {
 
   private static final String DYNAMIC = ".dynamic";
   private static final String DYNSTR = ".dynstr";
@@ -197,65 +193,62 @@ abstract class ElfRewriteDynStrSectionStep implements Step {
 
   @Override
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
-    try (FileChannel channel =
-        FileChannel.open(
-            getFilesystem().resolve(getPath()),
-            StandardOpenOption.READ,
-            StandardOpenOption.WRITE)) {
-      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, channel.size());
-      Elf elf = new Elf(buffer);
-
-      ImmutableList<SectionUsingDynamicStrings> processors = getSectionProcesors(elf);
-
-      // Load the dynamic string table.
-      Elf.ElfSectionLookupResult dynStrSection = elf.getMandatorySectionByName(getPath(), DYNSTR);
-      byte[] dynStr = new byte[dynStrSection.getSection().body.remaining()];
-      dynStrSection.getSection().body.get(dynStr);
-
-      // Collect all the string references from the section processors.
-      ImmutableList<Long> stringIndices =
-          RichStream.from(processors)
-              .flatMap(p -> p.getStringReferences().stream())
-              .toImmutableList();
-
-      // Write the new dynamic string table out to a byte array and get the new string indices
-      // corresponding to the order of the collected string indices.
-      ByteArrayOutputStream newDynStrStream = new ByteArrayOutputStream();
-      ImmutableList<Integer> newStringIndices =
-          ElfStringTable.writeStringTableFromStringTable(
-              dynStr,
-              RichStream.from(stringIndices).map(i -> (int) (long) i).toImmutableList(),
-              newDynStrStream);
-      Preconditions.checkState(stringIndices.size() == newStringIndices.size());
-      byte[] newDynStr = newDynStrStream.toByteArray();
-      Preconditions.checkState(dynStrSection.getSection().header.sh_size >= newDynStr.length);
-
-      // Generate a map from old to new string indices which sections can use to update themselves.
-      Map<Long, Long> newStringIndexMapBuilder = new HashMap<>();
-      for (int i = 0; i < stringIndices.size(); i++) {
-        newStringIndexMapBuilder.put(stringIndices.get(i), (long) newStringIndices.get(i));
-      }
-      ImmutableMap<Long, Long> newStringIndexMap = ImmutableMap.copyOf(newStringIndexMapBuilder);
-
-      // Call back into the processors to update themselves with the new string indices.
-      processors.forEach(p -> p.processNewStringReferences(newDynStr.length, newStringIndexMap));
-
-      // Rewrite the dynamic string section.
-      dynStrSection.getSection().body.rewind();
-      dynStrSection.getSection().body.put(newDynStr);
-
-      // Fixup the version section header with the new size and write it out.
-      buffer.position(
-          (int) (elf.header.e_shoff + dynStrSection.getIndex() * elf.header.e_shentsize));
-      dynStrSection
-          .getSection()
-          .header
-          .withSize(dynStrSection.getSection().body.position())
-          .write(elf.header.ei_class, buffer);
-    }
+    rewrite(ElfRewriter.map(getFilesystem().resolve(getPath())));
     return StepExecutionResults.SUCCESS;
   }
 
+  @Override
+  public void rewrite(ByteBuffer buffer) throws IOException {
+    Elf elf = new Elf(buffer);
+
+    ImmutableList<SectionUsingDynamicStrings> processors = getSectionProcesors(elf);
+
+    // Load the dynamic string table.
+    Elf.ElfSectionLookupResult dynStrSection = elf.getMandatorySectionByName(getPath(), DYNSTR);
+    byte[] dynStr = new byte[dynStrSection.getSection().body.remaining()];
+    dynStrSection.getSection().body.get(dynStr);
+
+    // Collect all the string references from the section processors.
+    ImmutableList<Long> stringIndices =
+        RichStream.from(processors)
+            .flatMap(p -> p.getStringReferences().stream())
+            .toImmutableList();
+
+    // Write the new dynamic string table out to a byte array and get the new string indices
+    // corresponding to the order of the collected string indices.
+    ByteArrayOutputStream newDynStrStream = new ByteArrayOutputStream();
+    ImmutableList<Integer> newStringIndices =
+        ElfStringTable.writeStringTableFromStringTable(
+            dynStr,
+            RichStream.from(stringIndices).map(i -> (int) (long) i).toImmutableList(),
+            newDynStrStream);
+    Preconditions.checkState(stringIndices.size() == newStringIndices.size());
+    byte[] newDynStr = newDynStrStream.toByteArray();
+    Preconditions.checkState(dynStrSection.getSection().header.sh_size >= newDynStr.length);
+
+    // Generate a map from old to new string indices which sections can use to update themselves.
+    Map<Long, Long> newStringIndexMapBuilder = new HashMap<>();
+    for (int i = 0; i < stringIndices.size(); i++) {
+      newStringIndexMapBuilder.put(stringIndices.get(i), (long) newStringIndices.get(i));
+    }
+    ImmutableMap<Long, Long> newStringIndexMap = ImmutableMap.copyOf(newStringIndexMapBuilder);
+
+    // Call back into the processors to update themselves with the new string indices.
+    processors.forEach(p -> p.processNewStringReferences(newDynStr.length, newStringIndexMap));
+
+    // Rewrite the dynamic string section.
+    dynStrSection.getSection().body.rewind();
+    dynStrSection.getSection().body.put(newDynStr);
+
+    // Fixup the version section header with the new size and write it out.
+    buffer.position((int) (elf.header.e_shoff + dynStrSection.getIndex() * elf.header.e_shentsize));
+    dynStrSection
+        .getSection()
+        .header
+        .withSize(dynStrSection.getSection().body.position())
+        .write(elf.header.ei_class, buffer);
+  }
+
   @Override
   public final String getShortName() {
     return "elf_rewrite_dyn_str_section";
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.util.immutables.BuckStyleValue;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A step which maps an ELF file once and applies several {@link ElfRewriter}s to it, in stages.
+ * Stages run one after the other. The rewriters of a stage run in parallel, so they must write to
+ * disjoint parts of the file and must not read anything that another rewriter of the stage writes.
+ */
+@BuckStyleValue
+abstract class ElfRewriteStep implements Step {
+
+  abstract ProjectFilesystem getFilesystem();
+
+  abstract Path getPath();
+
+  abstract ImmutableList<ImmutableList<ElfRewriter>> getStages();
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws IOException {
+    MappedByteBuffer buffer = ElfRewriter.map(getFilesystem().resolve(getPath()));
+    for (ImmutableList<ElfRewriter> stage : getStages()) {
+      // Each rewriter gets its own view of the mapping, so they don't share buffer positions.
+      try {
+        stage.parallelStream()
+            .forEach(
+                rewriter -> {
+                  try {
+                    rewriter.rewrite(buffer.duplicate());
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+    return StepExecutionResults.SUCCESS;
+  }
+
+  @Override
+  public final String getShortName() {
+    return "elf_rewrite";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "Rewrite ELF file %s with %d rewriters",
+        getPath(), getStages().stream().mapToInt(ImmutableList::size).sum());
+  }
+}
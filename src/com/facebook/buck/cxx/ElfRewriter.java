@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** An in-place transformation of an ELF file which has been mapped into memory. */
+interface ElfRewriter {
+
+  /**
+   * Rewrites the ELF file in {@code buffer}, which is positioned at the start of the file. The file
+   * is parsed anew from {@code buffer}, so the changes of rewriters which ran before are seen.
+   */
+  void rewrite(ByteBuffer buffer) throws IOException;
+
+  /** @return the whole of the given file, mapped for reading and writing. */
+  static MappedByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return channel.map(READ_WRITE, 0, channel.size());
+    }
+  }
+}
@@ -37,6 +37,7 @@ import com.facebook.buck.rules.modern.OutputPath;
 import com.facebook.buck.rules.modern.OutputPathResolver;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.util.types.Pair;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.ImmutableSet;
@@ -93,6 +94,56 @@ class ElfSharedLibraryInterface<T extends AbstractBuildable> extends ModernBuild
             target, objcopy, libName, removeUndefinedSymbols, linker, args));
   }
 
+  // The rewriters of the first stage work on disjoint parts of the file. The second stage needs
+  // the scrubbed `.dynsym` and `.dynamic`, and the `_DYNAMIC` symbol in `.symtab` which
+  // `.dynamic` scrubbing may update.
+  @VisibleForTesting
+  static ImmutableList<ImmutableList<ElfRewriter>> getRewriteStages(
+      ProjectFilesystem filesystem, Path outputScratch, boolean removeUndefinedSymbols) {
+    ImmutableList<ElfRewriter> first =
+        ImmutableList.of(
+            ImmutableElfSymbolTableScrubberStep.of(
+                filesystem,
+                outputScratch,
+                /* section */ ".dynsym",
+                /* versymSection */ Optional.of(".gnu.version"),
+                /* allowMissing */ false,
+                /* scrubUndefinedSymbols */ removeUndefinedSymbols),
+            ImmutableElfDynamicSectionScrubberStep.of(
+                filesystem,
+                outputScratch,
+                // When scrubbing undefined symbols, drop the `DT_NEEDED` tags from the whitelist,
+                // as these leak information about undefined references in the shared library.
+                /* whitelistedTags */ removeUndefinedSymbols
+                    ? ImmutableSet.of(ElfDynamicSection.DTag.DT_SONAME)
+                    : ImmutableSet.of(
+                        ElfDynamicSection.DTag.DT_NEEDED, ElfDynamicSection.DTag.DT_SONAME),
+                /* removeScrubbedTags */ removeUndefinedSymbols),
+            ImmutableElfScrubFileHeaderStep.of(filesystem, outputScratch),
+            // objcopy doesn't like the section-address shuffling chicanery we're doing in
+            // the ElfCompactSectionsStep, since the new addresses may not jive with the current
+            // segment locations.  So kill the segments (program headers) in the scratch file
+            // prior to compacting sections, and _again_ in the interface .so file.
+            ImmutableElfClearProgramHeadersStep.of(filesystem, outputScratch));
+
+    ImmutableList.Builder<ElfRewriter> second = ImmutableList.builder();
+    second.add(
+        ImmutableElfSymbolTableScrubberStep.of(
+            filesystem,
+            outputScratch,
+            /* section */ ".symtab",
+            /* versymSection */ Optional.empty(),
+            /* allowMissing */ true,
+            /* scrubUndefinedSymbols */ true));
+    // If we're removing undefined symbols, rewrite the dynamic string table so that strings for
+    // undefined symbol names are removed.
+    if (removeUndefinedSymbols) {
+      second.add(ImmutableElfRewriteDynStrSectionStep.of(filesystem, outputScratch));
+    }
+
+    return ImmutableList.of(first, second.build());
+  }
+
   /**
    * Internal ElfSharedLibrary specific abstract class with general implementation for Buildable
    * interface
@@ -136,42 +187,11 @@ class ElfSharedLibraryInterface<T extends AbstractBuildable> extends ModernBuild
               input.getSecond(),
               filesystem,
               outputScratch),
-          ImmutableElfSymbolTableScrubberStep.of(
+          // Map the scratch file once and rewrite it in place.
+          ImmutableElfRewriteStep.of(
               filesystem,
               outputScratch,
-              /* section */ ".dynsym",
-              /* versymSection */ Optional.of(".gnu.version"),
-              /* allowMissing */ false,
-              /* scrubUndefinedSymbols */ removeUndefinedSymbols),
-          ImmutableElfSymbolTableScrubberStep.of(
-              filesystem,
-              outputScratch,
-              /* section */ ".symtab",
-              /* versymSection */ Optional.empty(),
-              /* allowMissing */ true,
-              /* scrubUndefinedSymbols */ true),
-          ImmutableElfDynamicSectionScrubberStep.of(
-              filesystem,
-              outputScratch,
-              // When scrubbing undefined symbols, drop the `DT_NEEDED` tags from the whitelist,
-              // as these leak information about undefined references in the shared library.
-              /* whitelistedTags */ removeUndefinedSymbols
-                  ? ImmutableSet.of(ElfDynamicSection.DTag.DT_SONAME)
-                  : ImmutableSet.of(
-                      ElfDynamicSection.DTag.DT_NEEDED, ElfDynamicSection.DTag.DT_SONAME),
-              /* removeScrubbedTags */ removeUndefinedSymbols),
-          ImmutableElfScrubFileHeaderStep.of(filesystem, outputScratch));
-      // If we're removing undefined symbols, rewrite the dynamic string table so that strings for
-      // undefined symbol names are removed.
-      if (removeUndefinedSymbols) {
-        steps.add(ImmutableElfRewriteDynStrSectionStep.of(filesystem, outputScratch));
-      }
-      steps.add(
-          // objcopy doesn't like the section-address shuffling chicanery we're doing in
-          // the ElfCompactSectionsStep, since the new addresses may not jive with the current
-          // segment locations.  So kill the segments (program headers) in the scratch file
-          // prior to compacting sections, and _again_ in the interface .so file.
-          ImmutableElfClearProgramHeadersStep.of(filesystem, outputScratch),
+              getRewriteStages(filesystem, outputScratch, removeUndefinedSymbols)),
           ImmutableElfCompactSectionsStep.of(
               buildTarget, commandPrefix, filesystem, outputScratch, filesystem, output),
           ImmutableElfClearProgramHeadersStep.of(filesystem, output));
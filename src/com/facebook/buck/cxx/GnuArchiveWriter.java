@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.cxx.toolchain.elf.Elf;
+import com.facebook.buck.cxx.toolchain.elf.ElfHeader;
+import com.facebook.buck.cxx.toolchain.elf.ElfSection;
+import com.facebook.buck.cxx.toolchain.elf.ElfSectionHeader;
+import com.facebook.buck.cxx.toolchain.objectfile.ObjectFileScrubbers;
+import com.facebook.buck.io.file.FileIoPool;
+import com.facebook.buck.util.ObjectFileCommonModificationDate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes GNU format static archives of ELF relocatable objects in-process, producing the same bytes
+ * as running {@code ar qc} (or {@code ar qcT}), {@code ranlib} and the archiver's date/uid/gid
+ * scrubber over the same inputs.
+ *
+ * <p>The symbol index is built from the ELF symbol tables of the inputs and the whole archive is
+ * laid out before anything is written, so that members can be copied into place concurrently with
+ * positional writes.
+ */
+final class GnuArchiveWriter {
+
+  private static final int HEADER_SIZE = 60;
+  private static final int MAX_SHORT_NAME_LENGTH = 15;
+  private static final long MAX_32_BIT_OFFSET = 0xFFFFFFFFL;
+
+  private static final int ET_REL = 1;
+  private static final int SHN_UNDEF = 0;
+  private static final int STB_GLOBAL = 1;
+  private static final int STB_WEAK = 2;
+  private static final int STB_GNU_UNIQUE = 10;
+
+  private GnuArchiveWriter() {}
+
+  /**
+   * Writes an archive of the given inputs to output.
+   *
+   * @param output the absolute path of the archive to write.
+   * @param inputs the absolute paths of the members, in archive order.
+   * @param thinNames the names to record for the members of a thin archive, or empty to embed the
+   *     members and name them by their file names.
+   * @return false, without writing anything, if any input is not an ELF relocatable object.
+   */
+  static boolean write(Path output, ImmutableList<Path> inputs, Optional<List<String>> thinNames)
+      throws IOException {
+    List<Optional<List<byte[]>>> symbols =
+        forEachMember(inputs.size(), i -> readDefinedSymbols(inputs.get(i)));
+    if (symbols.stream().anyMatch(s -> !s.isPresent())) {
+      return false;
+    }
+
+    boolean thin = thinNames.isPresent();
+    int numMembers = inputs.size();
+    long[] sizes = new long[numMembers];
+    for (int i = 0; i < numMembers; i++) {
+      try (FileChannel channel = FileChannel.open(inputs.get(i), StandardOpenOption.READ)) {
+        sizes[i] = channel.size();
+      }
+    }
+
+    // Members whose names don't fit in the header are named by their offset in the long name
+    // table. Thin archives always use the table.
+    String[] headerNames = new String[numMembers];
+    ByteArrayOutputStream longNames = new ByteArrayOutputStream();
+    for (int i = 0; i < numMembers; i++) {
+      String name = thin ? thinNames.get().get(i) : inputs.get(i).getFileName().toString();
+      byte[] nameBytes = (name + "/").getBytes(StandardCharsets.UTF_8);
+      if (!thin && nameBytes.length <= MAX_SHORT_NAME_LENGTH + 1) {
+        headerNames[i] = name + "/";
+      } else {
+        headerNames[i] = "/" + longNames.size();
+        longNames.write(nameBytes, 0, nameBytes.length);
+        longNames.write('\n');
+      }
+    }
+    if (longNames.size() % 2 != 0) {
+      longNames.write('\n');
+    }
+
+    int numSymbols = 0;
+    int symbolNamesSize = 0;
+    for (Optional<List<byte[]>> memberSymbols : symbols) {
+      for (byte[] symbol : memberSymbols.get()) {
+        numSymbols++;
+        symbolNamesSize += symbol.length + 1;
+      }
+    }
+
+    // The symbol index uses 32-bit offsets unless the archive is too large for them.
+    long[] offsets = new long[numMembers];
+    int offsetSize = 4;
+    long symbolTableSize =
+        layout(offsets, offsetSize, numSymbols, symbolNamesSize, longNames.size(), sizes, thin);
+    if (numMembers > 0 && offsets[numMembers - 1] > MAX_32_BIT_OFFSET) {
+      offsetSize = 8;
+      symbolTableSize =
+          layout(offsets, offsetSize, numSymbols, symbolNamesSize, longNames.size(), sizes, thin);
+    }
+
+    long prologueSize =
+        ObjectFileScrubbers.GLOBAL_HEADER.length
+            + HEADER_SIZE
+            + symbolTableSize
+            + (longNames.size() > 0 ? HEADER_SIZE + longNames.size() : 0);
+    ByteBuffer prologue = ByteBuffer.allocate((int) prologueSize).order(ByteOrder.BIG_ENDIAN);
+    prologue.put(
+        thin ? ObjectFileScrubbers.GLOBAL_THIN_HEADER : ObjectFileScrubbers.GLOBAL_HEADER);
+    putHeader(prologue, offsetSize == 4 ? "/" : "/SYM64/", symbolTableSize);
+    putOffset(prologue, offsetSize, numSymbols);
+    for (int i = 0; i < numMembers; i++) {
+      for (int j = 0; j < symbols.get(i).get().size(); j++) {
+        putOffset(prologue, offsetSize, offsets[i]);
+      }
+    }
+    for (Optional<List<byte[]>> memberSymbols : symbols) {
+      for (byte[] symbol : memberSymbols.get()) {
+        prologue.put(symbol).put((byte) 0);
+      }
+    }
+    while (prologue.position() % 2 != 0) {
+      prologue.put((byte) 0);
+    }
+    if (longNames.size() > 0) {
+      putHeader(prologue, "//", longNames.size());
+      prologue.put(longNames.toByteArray());
+    }
+    prologue.flip();
+
+    try (FileChannel out =
+        FileChannel.open(
+            output,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      writeFully(out, prologue, 0);
+      forEachMember(
+          numMembers,
+          i -> {
+            writeMember(out, offsets[i], headerNames[i], inputs.get(i), sizes[i], thin);
+            return null;
+          });
+    }
+    return true;
+  }
+
+  /** Work on one archive member, which blocks on reading or writing files. */
+  @FunctionalInterface
+  private interface MemberTask<T> {
+    T apply(int member) throws IOException;
+  }
+
+  /**
+   * Runs {@code task} for every member on {@link FileIoPool}, which keeps this blocking I/O off the
+   * common pool.
+   *
+   * @return the results, in member order.
+   */
+  private static <T> List<T> forEachMember(int numMembers, MemberTask<T> task) throws IOException {
+    ForkJoinPool pool = FileIoPool.get();
+    List<ForkJoinTask<T>> tasks = new ArrayList<>(numMembers);
+    for (int i = 0; i < numMembers; i++) {
+      int member = i;
+      tasks.add(pool.submit(() -> task.apply(member)));
+    }
+    List<T> results = new ArrayList<>(numMembers);
+    try {
+      for (ForkJoinTask<T> memberTask : tasks) {
+        results.add(memberTask.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while writing archive");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      tasks.forEach(memberTask -> memberTask.cancel(false));
+    }
+    return results;
+  }
+
+  /**
+   * Fills in the offsets of the member headers for the given symbol index entry size.
+   *
+   * @return the padded size of the symbol index.
+   */
+  private static long layout(
+      long[] offsets,
+      int offsetSize,
+      int numSymbols,
+      int symbolNamesSize,
+      int longNamesSize,
+      long[] sizes,
+      boolean thin) {
+    long symbolTableSize = (long) offsetSize * (numSymbols + 1) + symbolNamesSize;
+    symbolTableSize += symbolTableSize % 2;
+    long offset = ObjectFileScrubbers.GLOBAL_HEADER.length + HEADER_SIZE + symbolTableSize;
+    if (longNamesSize > 0) {
+      offset += HEADER_SIZE + longNamesSize;
+    }
+    for (int i = 0; i < sizes.length; i++) {
+      offsets[i] = offset;
+      offset += HEADER_SIZE + (thin ? 0 : sizes[i] + sizes[i] % 2);
+    }
+    return symbolTableSize;
+  }
+
+  private static void writeMember(
+      FileChannel out, long offset, String headerName, Path input, long size, boolean thin)
+      throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    putHeader(header, headerName, size);
+    header.flip();
+    writeFully(out, header, offset);
+    if (thin) {
+      return;
+    }
+    long position = offset + HEADER_SIZE;
+    try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+      long transferred = 0;
+      while (transferred < size) {
+        long count = out.transferFrom(in, position + transferred, size - transferred);
+        if (count <= 0) {
+          throw new IOException(String.format("%s changed while it was being archived", input));
+        }
+        transferred += count;
+      }
+    }
+    if (size % 2 != 0) {
+      writeFully(out, ByteBuffer.wrap(new byte[] {'\n'}), position + size);
+    }
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += out.write(buffer, position);
+    }
+  }
+
+  @SuppressWarnings("PMD.AvoidUsingOctalValues")
+  private static void putHeader(ByteBuffer buffer, String name, long size) {
+    // These are the values the archiver's scrubber would otherwise write over the header.
+    putField(buffer, 16, name);
+    ObjectFileScrubbers.putIntAsDecimalString(
+        buffer,
+        12,
+        ObjectFileCommonModificationDate.COMMON_MODIFICATION_TIME_STAMP,
+        ObjectFileScrubbers.PaddingStyle.LEFT);
+    ObjectFileScrubbers.putIntAsDecimalString(
+        buffer, 6, 0, ObjectFileScrubbers.PaddingStyle.LEFT);
+    ObjectFileScrubbers.putIntAsDecimalString(
+        buffer, 6, 0, ObjectFileScrubbers.PaddingStyle.LEFT);
+    ObjectFileScrubbers.putIntAsOctalString(
+        buffer, 8, 0100644, ObjectFileScrubbers.PaddingStyle.LEFT);
+    putField(buffer, 10, Long.toString(size));
+    buffer.put(ObjectFileScrubbers.END_OF_FILE_HEADER_MARKER);
+  }
+
+  private static void putField(ByteBuffer buffer, int len, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > len) {
+      throw new IllegalStateException(
+          String.format("archive header field \"%s\" is longer than %d bytes", value, len));
+    }
+    buffer.put(bytes);
+    for (int i = bytes.length; i < len; i++) {
+      buffer.put((byte) ' ');
+    }
+  }
+
+  private static void putOffset(ByteBuffer buffer, int offsetSize, long value) {
+    if (offsetSize == 4) {
+      buffer.putInt((int) value);
+    } else {
+      buffer.putLong(value);
+    }
+  }
+
+  /**
+   * @return the names of the symbols the given object defines and exports, in symbol table order,
+   *     which are the symbols {@code ranlib} indexes, or empty if it isn't an ELF relocatable
+   *     object.
+   */
+  static Optional<List<byte[]>> readDefinedSymbols(Path object) throws IOException {
+    try (FileChannel channel = FileChannel.open(object, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        return Optional.empty();
+      }
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (!Elf.isElf(buffer)) {
+        return Optional.empty();
+      }
+      Elf elf = new Elf(buffer);
+      if (elf.header.e_type != ET_REL) {
+        return Optional.empty();
+      }
+      boolean is64Bit = elf.header.ei_class == ElfHeader.EIClass.ELFCLASS64;
+      ImmutableList.Builder<byte[]> symbols = ImmutableList.builder();
+      for (int index = 0; index < elf.getNumberOfSections(); index++) {
+        ElfSection section = elf.getSectionByIndex(index);
+        if (section.header.sh_type != ElfSectionHeader.SHType.SHT_SYMTAB
+            || section.header.sh_entsize == 0) {
+          continue;
+        }
+        ByteBuffer strings = elf.getSectionByIndex((int) section.header.sh_link).body;
+        ByteBuffer entries = section.body;
+        int entrySize = (int) section.header.sh_entsize;
+        // Local symbols come first, and sh_info is the index of the first non-local one.
+        for (int entry = (int) section.header.sh_info;
+            (long) (entry + 1) * entrySize <= entries.limit();
+            entry++) {
+          int start = entry * entrySize;
+          int info = entries.get(start + (is64Bit ? 4 : 12)) & 0xFF;
+          int shndx = entries.getShort(start + (is64Bit ? 6 : 14)) & 0xFFFF;
+          int binding = info >> 4;
+          if (shndx == SHN_UNDEF
+              || (binding != STB_GLOBAL && binding != STB_WEAK && binding != STB_GNU_UNIQUE)) {
+            continue;
+          }
+          int name = entries.getInt(start);
+          int end = name;
+          while (strings.get(end) != 0) {
+            end++;
+          }
+          if (end > name) {
+            byte[] symbol = new byte[end - name];
+            for (int i = 0; i < symbol.length; i++) {
+              symbol[i] = strings.get(name + i);
+            }
+            symbols.add(symbol);
+          }
+        }
+      }
+      return Optional.of(symbols.build());
+    }
+  }
+}
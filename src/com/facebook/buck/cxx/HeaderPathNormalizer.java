@@ -19,16 +19,20 @@ package com.facebook.buck.cxx;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.io.file.MorePaths;
+import com.facebook.buck.util.MoreSuppliers;
 import com.facebook.buck.util.types.Pair;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.nio.file.Path;
 import java.util.AbstractMap;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 class HeaderPathNormalizer {
 
@@ -41,8 +45,12 @@ class HeaderPathNormalizer {
   /**
    * A mapping of unnormalized header paths that are used by the tooling to the absolute path
    * representation of the corresponding source path.
+   *
+   * <p>It is kept as a trie of path segments, so that every header listed in a depfile is matched
+   * to its longest mapped prefix in one walk down its segments. The trie is built on first use, as
+   * most normalizers are never asked to look up a header.
    */
-  private final ImmutableMap<Path, SourcePath> normalized;
+  private final Supplier<PathTrie<SourcePath>> normalized;
 
   /** Minimal mappings to translate paths used during compilation to their real locations. */
   private final ImmutableMap<Path, Path> prefixMap;
@@ -52,7 +60,7 @@ class HeaderPathNormalizer {
       ImmutableMap<Path, SourcePath> normalized,
       ImmutableMap<Path, Path> prefixMap) {
     this.headers = headers;
-    this.normalized = normalized;
+    this.normalized = MoreSuppliers.memoize(() -> PathTrie.of(normalized));
     this.prefixMap = prefixMap;
   }
 
@@ -74,7 +82,8 @@ class HeaderPathNormalizer {
   public Optional<Path> getAbsolutePathForUnnormalizedPath(
       SourcePathResolverAdapter pathResolver, Path unnormalizedPath) {
     Preconditions.checkArgument(unnormalizedPath.isAbsolute());
-    Optional<Map.Entry<Path, SourcePath>> result = pathLookup(unnormalizedPath, normalized);
+    Optional<Map.Entry<Path, SourcePath>> result =
+        normalized.get().longestPrefixOf(unnormalizedPath);
     if (!result.isPresent()) {
       return Optional.empty();
     }
@@ -100,6 +109,44 @@ class HeaderPathNormalizer {
     return prefixMap;
   }
 
+  /**
+   * Maps absolute paths to values by their segments, sharing the nodes of common prefixes. Segments
+   * are compared as {@link Path}s, so the lookup follows the platform's path equality.
+   */
+  private static class PathTrie<T> {
+    private final Map<Path, PathTrie<T>> children = new HashMap<>();
+    @Nullable private Map.Entry<Path, T> entry;
+
+    static <T> PathTrie<T> of(Map<Path, T> map) {
+      PathTrie<T> root = new PathTrie<>();
+      for (Map.Entry<Path, T> mapping : map.entrySet()) {
+        Path path = mapping.getKey();
+        PathTrie<T> node = root.children.computeIfAbsent(path.getRoot(), k -> new PathTrie<>());
+        for (int i = 0; i < path.getNameCount(); i++) {
+          node = node.children.computeIfAbsent(path.getName(i), k -> new PathTrie<>());
+        }
+        node.entry = new AbstractMap.SimpleImmutableEntry<>(path, mapping.getValue());
+      }
+      return root;
+    }
+
+    /** Same as {@link #pathLookup(Path, Map)}, with the map this trie was built from. */
+    Optional<Map.Entry<Path, T>> longestPrefixOf(Path path) {
+      PathTrie<T> node = children.get(path.getRoot());
+      Map.Entry<Path, T> longest = null;
+      for (int i = 0; node != null; i++) {
+        if (node.entry != null) {
+          longest = node.entry;
+        }
+        if (i == path.getNameCount()) {
+          break;
+        }
+        node = node.children.get(path.getName(i));
+      }
+      return Optional.ofNullable(longest);
+    }
+  }
+
   public static class Builder {
 
     private final SourcePathResolverAdapter pathResolver;
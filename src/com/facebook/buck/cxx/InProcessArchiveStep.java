@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Creates a GNU archive of ELF objects with {@link GnuArchiveWriter}, falling back to the given
+ * archiver steps when some input is not an ELF relocatable object (e.g. LLVM bitcode).
+ */
+class InProcessArchiveStep implements Step {
+
+  private static final Logger LOG = Logger.get(InProcessArchiveStep.class);
+
+  private final ProjectFilesystem filesystem;
+  private final Path output;
+  private final ImmutableList<Path> inputs;
+  private final boolean thin;
+  private final ImmutableList<Step> fallbackSteps;
+
+  public InProcessArchiveStep(
+      ProjectFilesystem filesystem,
+      Path output,
+      ImmutableList<Path> inputs,
+      boolean thin,
+      ImmutableList<Step> fallbackSteps) {
+    Preconditions.checkArgument(!output.isAbsolute());
+    this.filesystem = filesystem;
+    this.output = output;
+    this.inputs = inputs;
+    this.thin = thin;
+    this.fallbackSteps = fallbackSteps;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    ImmutableList<Path> allInputs = ArchiveStep.expandInputs(filesystem, inputs);
+    if (allInputs.isEmpty()) {
+      filesystem.writeContentsToPath("!<arch>\n", output);
+      return StepExecutionResults.SUCCESS;
+    }
+
+    // Thin archives name their members by their paths relative to the archive, as ar does.
+    Optional<List<String>> thinNames = Optional.empty();
+    if (thin) {
+      Path outputDir = filesystem.resolve(output).getParent();
+      thinNames =
+          Optional.of(
+              allInputs.stream()
+                  .map(
+                      input ->
+                          input.isAbsolute()
+                              ? input.toString()
+                              : outputDir.relativize(filesystem.resolve(input)).toString())
+                  .collect(ImmutableList.toImmutableList()));
+    }
+
+    if (GnuArchiveWriter.write(
+        filesystem.resolve(output),
+        allInputs.stream().map(filesystem::resolve).collect(ImmutableList.toImmutableList()),
+        thinNames)) {
+      return StepExecutionResults.SUCCESS;
+    }
+
+    LOG.debug("Not all inputs of %s are ELF objects, running the archiver instead.", output);
+    for (Step step : fallbackSteps) {
+      StepExecutionResult result = step.execute(context);
+      if (!result.isSuccess()) {
+        return result;
+      }
+    }
+    return StepExecutionResults.SUCCESS;
+  }
+
+  @Override
+  public String getShortName() {
+    return "archive";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("archive %d inputs into %s in-process", inputs.size(), output);
+  }
+}
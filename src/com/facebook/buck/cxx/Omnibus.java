@@ -46,8 +46,12 @@ import com.facebook.buck.rules.args.Arg;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.util.stream.RichStream;
+import com.facebook.buck.util.types.Pair;
 import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -64,6 +68,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.immutables.value.Value;
 
@@ -72,6 +78,15 @@ public class Omnibus {
   public static final Flavor OMNIBUS_FLAVOR = InternalFlavor.of("omnibus");
   private static final Flavor DUMMY_OMNIBUS_FLAVOR = InternalFlavor.of("dummy-omnibus");
 
+  // Omnibus bookkeeping shared by all the binaries of an action graph.  The cached linkables may
+  // still reach their action graph, so weak keys alone don't release it: only keep the bookkeeping
+  // of the latest action graph around.
+  private static final LoadingCache<ActionGraphBuilder, SpecCache> SPEC_CACHES =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .maximumSize(1)
+          .build(CacheLoader.from(graphBuilder -> new SpecCache()));
+
   private Omnibus() {}
 
   private static String getOmnibusSoname(CxxPlatform cxxPlatform) {
@@ -114,12 +129,89 @@ public class Omnibus {
     }
   }
 
+  // The topologically sorted native linkables a root links against.
+  private static ImmutableList<NativeLinkable> getRootLinkables(
+      NativeLinkTarget root, ActionGraphBuilder graphBuilder) {
+    return ImmutableList.copyOf(
+        NativeLinkables.getNativeLinkables(
+            graphBuilder,
+            root.getNativeLinkTargetDeps(graphBuilder),
+            Linker.LinkableDepType.SHARED));
+  }
+
   // Build the data structure containing bookkeeping which describing the omnibus link for the
   // given included and excluded roots.
   static OmnibusSpec buildSpec(
       Iterable<? extends NativeLinkTarget> includedRoots,
       Iterable<? extends NativeLinkable> excludedRoots,
       ActionGraphBuilder actionGraphBuilder) {
+    return buildSpec(
+        includedRoots,
+        excludedRoots,
+        actionGraphBuilder,
+        root -> getRootLinkables(root, actionGraphBuilder));
+  }
+
+  // Like `buildSpec` above, but memoized per action graph and platform.  Binaries with the same
+  // roots share their spec, and binaries with overlapping roots share the walks of those roots.
+  private static OmnibusSpec getSpec(
+      CxxPlatform cxxPlatform,
+      Iterable<? extends NativeLinkTarget> includedRoots,
+      Iterable<? extends NativeLinkable> excludedRoots,
+      ActionGraphBuilder graphBuilder) {
+    SpecCache cache = SPEC_CACHES.getUnchecked(graphBuilder);
+    Flavor platform = cxxPlatform.getFlavor();
+    ImmutableList<NativeLinkTarget> roots = ImmutableList.copyOf(includedRoots);
+    SpecKey key =
+        ImmutableSpecKey.of(
+            platform,
+            RichStream.from(roots).map(NativeLinkTarget::getBuildTarget).toImmutableList(),
+            RichStream.from(excludedRoots).map(NativeLinkable::getBuildTarget).toImmutableList());
+
+    SharedSpec spec = cache.specs.get(key);
+    if (spec == null) {
+      // Walk the linkables of all the roots in parallel, before merging them in order below.
+      graphBuilder
+          .getParallelizer()
+          .maybeParallelizeTransform(
+              roots, root -> cache.getRootLinkables(platform, root, graphBuilder));
+      OmnibusSpec builtSpec =
+          buildSpec(
+              roots,
+              excludedRoots,
+              graphBuilder,
+              root -> cache.getRootLinkables(platform, root, graphBuilder));
+      spec =
+          ImmutableSharedSpec.of(
+              builtSpec.getGraph(),
+              builtSpec.getBody(),
+              builtSpec.getExcludedRoots(),
+              builtSpec.getExcluded(),
+              builtSpec.getDeps(),
+              builtSpec.getRootLinkables());
+      cache.specs.putIfAbsent(key, spec);
+    }
+
+    // A cached spec may have been built by another binary, so add our own roots.
+    Map<BuildTarget, NativeLinkTarget> ownRoots = new LinkedHashMap<>();
+    for (NativeLinkTarget root : roots) {
+      ownRoots.put(root.getBuildTarget(), root);
+    }
+    return ImmutableOmnibusSpec.of(
+        spec.getGraph(),
+        ownRoots,
+        spec.getBody(),
+        spec.getExcludedRoots(),
+        spec.getExcluded(),
+        spec.getDeps(),
+        spec.getRootLinkables());
+  }
+
+  private static OmnibusSpec buildSpec(
+      Iterable<? extends NativeLinkTarget> includedRoots,
+      Iterable<? extends NativeLinkable> excludedRoots,
+      ActionGraphBuilder actionGraphBuilder,
+      Function<NativeLinkTarget, ImmutableList<NativeLinkable>> rootLinkables) {
 
     // A map of targets to native linkable objects.  We maintain this, so that we index our
     // bookkeeping around `BuildTarget` and avoid having to guarantee that all other types are
@@ -132,13 +224,12 @@ public class Omnibus {
     // Process all the roots included in the omnibus link.
     Map<BuildTarget, NativeLinkTarget> roots = new LinkedHashMap<>();
     Map<BuildTarget, NativeLinkable> rootDeps = new LinkedHashMap<>();
+    Map<BuildTarget, ImmutableList<NativeLinkable>> allRootLinkables = new LinkedHashMap<>();
     for (NativeLinkTarget root : includedRoots) {
       roots.put(root.getBuildTarget(), root);
-      for (NativeLinkable dep :
-          NativeLinkables.getNativeLinkables(
-              actionGraphBuilder,
-              root.getNativeLinkTargetDeps(actionGraphBuilder),
-              Linker.LinkableDepType.SHARED)) {
+      ImmutableList<NativeLinkable> linkables = rootLinkables.apply(root);
+      allRootLinkables.put(root.getBuildTarget(), linkables);
+      for (NativeLinkable dep : linkables) {
         Linker.LinkableDepType linkStyle =
             NativeLinkableGroups.getLinkStyle(
                 dep.getPreferredLinkage(), Linker.LinkableDepType.SHARED);
@@ -232,7 +323,8 @@ public class Omnibus {
             .collect(ImmutableMap.toImmutableMap(k -> k, Functions.forMap(nativeLinkables))),
         RichStream.from(excludedRoots).map(NativeLinkable::getBuildTarget).toImmutableSet(),
         Maps.asMap(excluded, Functions.forMap(nativeLinkables)),
-        Maps.asMap(deps, Functions.forMap(nativeLinkables)));
+        Maps.asMap(deps, Functions.forMap(nativeLinkables)),
+        allRootLinkables);
   }
 
   // Build a dummy library with the omnibus SONAME.  We'll need this to break any dep cycle between
@@ -309,11 +401,8 @@ public class Omnibus {
     argsBuilder.addAll(input.getArgs());
 
     // Grab a topologically sorted mapping of all the root's deps.
-    ImmutableList<? extends NativeLinkable> deps =
-        NativeLinkables.getNativeLinkables(
-            graphBuilder,
-            root.getNativeLinkTargetDeps(graphBuilder),
-            Linker.LinkableDepType.SHARED);
+    ImmutableList<NativeLinkable> deps =
+        Objects.requireNonNull(spec.getRootLinkables().get(root.getBuildTarget()));
 
     // Now process the dependencies in topological order, to assemble the link line.
     boolean alreadyAddedOmnibusToArgs = false;
@@ -647,7 +736,8 @@ public class Omnibus {
 
     ImmutableOmnibusLibraries.Builder libs = ImmutableOmnibusLibraries.builder();
 
-    OmnibusSpec spec = buildSpec(nativeLinkTargetRoots, nativeLinkableRoots, graphBuilder);
+    OmnibusSpec spec =
+        getSpec(cxxPlatform, nativeLinkTargetRoots, nativeLinkableRoots, graphBuilder);
 
     // Create an empty dummy omnibus library, to give the roots something to link against before
     // we have the actual omnibus library available.  Note that this requires that the linker
@@ -780,6 +870,9 @@ public class Omnibus {
     // The subset of excluded nodes which are first-order deps of any root or body nodes.
     public abstract ImmutableMap<BuildTarget, NativeLinkable> getDeps();
 
+    // The topologically sorted native linkables of each root.
+    public abstract ImmutableMap<BuildTarget, ImmutableList<NativeLinkable>> getRootLinkables();
+
     @Value.Check
     public void verify() {
 
@@ -803,6 +896,58 @@ public class Omnibus {
     }
   }
 
+  // Binaries whose omnibus links have equal keys can share the same spec.
+  @BuckStyleValue
+  abstract static class SpecKey {
+
+    public abstract Flavor getPlatform();
+
+    public abstract ImmutableList<BuildTarget> getIncludedRoots();
+
+    public abstract ImmutableList<BuildTarget> getExcludedRoots();
+  }
+
+  // The parts of an `OmnibusSpec` which binaries with equal keys can share.  The roots are left
+  // out, as they belong to the binary which built the spec.
+  @BuckStyleValue
+  abstract static class SharedSpec {
+
+    public abstract DirectedAcyclicGraph<BuildTarget> getGraph();
+
+    public abstract ImmutableMap<BuildTarget, NativeLinkable> getBody();
+
+    public abstract ImmutableSet<BuildTarget> getExcludedRoots();
+
+    public abstract ImmutableMap<BuildTarget, NativeLinkable> getExcluded();
+
+    public abstract ImmutableMap<BuildTarget, NativeLinkable> getDeps();
+
+    public abstract ImmutableMap<BuildTarget, ImmutableList<NativeLinkable>> getRootLinkables();
+  }
+
+  // The omnibus bookkeeping of an action graph, which all its binaries can share.
+  private static class SpecCache {
+
+    private final Map<Pair<Flavor, BuildTarget>, ImmutableList<NativeLinkable>> rootLinkables =
+        new ConcurrentHashMap<>();
+    private final Map<SpecKey, SharedSpec> specs = new ConcurrentHashMap<>();
+
+    ImmutableList<NativeLinkable> getRootLinkables(
+        Flavor platform, NativeLinkTarget root, ActionGraphBuilder graphBuilder) {
+      // Walk the graph outside the map, so that walks of other roots aren't blocked on it.
+      Pair<Flavor, BuildTarget> key = new Pair<>(platform, root.getBuildTarget());
+      ImmutableList<NativeLinkable> linkables = rootLinkables.get(key);
+      if (linkables == null) {
+        linkables = Omnibus.getRootLinkables(root, graphBuilder);
+        ImmutableList<NativeLinkable> previous = rootLinkables.putIfAbsent(key, linkables);
+        if (previous != null) {
+          linkables = previous;
+        }
+      }
+      return linkables;
+    }
+  }
+
   @BuckStyleValue
   public interface OmnibusRoot {
 
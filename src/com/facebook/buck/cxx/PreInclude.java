@@ -39,6 +39,7 @@ import com.facebook.buck.cxx.toolchain.nativelink.NativeLinkableInput;
 import com.facebook.buck.cxx.toolchain.nativelink.PlatformMappedCache;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.rules.coercer.FrameworkPath;
+import com.facebook.buck.util.collect.HashTrieMap;
 import com.facebook.buck.util.stream.RichStream;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
@@ -167,6 +168,12 @@ public abstract class PreInclude extends NoopBuildRuleWithDeclaredAndExtraDeps
     return transitiveCxxPreprocessorInputCache.getUnchecked(cxxPlatform, graphBuilder);
   }
 
+  @Override
+  public HashTrieMap<BuildTarget, CxxPreprocessorInput> getSharedTransitiveCxxPreprocessorInput(
+      CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+    return transitiveCxxPreprocessorInputCache.getSharedUnchecked(cxxPlatform, graphBuilder);
+  }
+
   private ImmutableList<CxxPreprocessorInput> getCxxPreprocessorInputs(
       CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
     ImmutableList.Builder<CxxPreprocessorInput> builder = ImmutableList.builder();
@@ -47,6 +47,7 @@ import com.facebook.buck.rules.args.Arg;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.rules.coercer.PatternMatchedCollection;
+import com.facebook.buck.util.collect.HashTrieMap;
 import com.facebook.buck.util.stream.RichStream;
 import com.facebook.buck.util.types.Pair;
 import com.facebook.buck.versions.VersionPropagator;
@@ -257,6 +258,12 @@ public class PrebuiltCxxLibraryGroupDescription
       return transitiveCxxPreprocessorInputCache.getUnchecked(cxxPlatform, graphBuilder);
     }
 
+    @Override
+    public HashTrieMap<BuildTarget, CxxPreprocessorInput> getSharedTransitiveCxxPreprocessorInput(
+        CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+      return transitiveCxxPreprocessorInputCache.getSharedUnchecked(cxxPlatform, graphBuilder);
+    }
+
     @Override
     public Iterable<? extends NativeLinkableGroup> getNativeLinkableDeps(
         BuildRuleResolver ruleResolver) {
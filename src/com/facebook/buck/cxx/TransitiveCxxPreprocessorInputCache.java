@@ -19,6 +19,7 @@ package com.facebook.buck.cxx;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rules.ActionGraphBuilder;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
+import com.facebook.buck.util.collect.HashTrieMap;
 import com.facebook.buck.util.concurrent.Parallelizer;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -27,15 +28,22 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import javax.annotation.Nonnull;
 
-/** Transitive C++ preprocessor input cache */
+/**
+ * Transitive C++ preprocessor input cache.
+ *
+ * <p>The transitive inputs of a dep are kept as a {@link HashTrieMap} built on top of the maps of
+ * its deps, so each dep only costs memory for its own input rather than for its whole transitive
+ * closure. The sorted maps handed out by {@link #getUnchecked} are built from it on demand and only
+ * kept for as long as someone else holds on to them.
+ */
 public class TransitiveCxxPreprocessorInputCache {
-  private final Cache<CxxPlatform, ImmutableSortedMap<BuildTarget, CxxPreprocessorInput>> cache =
+  private final Cache<CxxPlatform, HashTrieMap<BuildTarget, CxxPreprocessorInput>> cache =
       CacheBuilder.newBuilder().build();
+  private final Cache<CxxPlatform, ImmutableSortedMap<BuildTarget, CxxPreprocessorInput>>
+      sortedCache = CacheBuilder.newBuilder().weakValues().build();
   private final CxxPreprocessorDep preprocessorDep;
 
   public TransitiveCxxPreprocessorInputCache(CxxPreprocessorDep preprocessorDep) {
@@ -45,11 +53,24 @@ public class TransitiveCxxPreprocessorInputCache {
   /** Get a value from the cache */
   public ImmutableMap<BuildTarget, CxxPreprocessorInput> getUnchecked(
       CxxPlatform key, ActionGraphBuilder graphBuilder) {
+    try {
+      return sortedCache.get(key, () -> toSortedMap(getSharedUnchecked(key, graphBuilder)));
+    } catch (ExecutionException e) {
+      throw new UncheckedExecutionException(e.getCause());
+    }
+  }
+
+  /**
+   * Get a value from the cache, as the map that backs {@link #getUnchecked}. See {@link
+   * CxxPreprocessorDep#getSharedTransitiveCxxPreprocessorInput}.
+   */
+  public HashTrieMap<BuildTarget, CxxPreprocessorInput> getSharedUnchecked(
+      CxxPlatform key, ActionGraphBuilder graphBuilder) {
     try {
       return cache.get(
           key,
           () ->
-              computeTransitiveCxxToPreprocessorInputMap(
+              computeSharedTransitiveCxxPreprocessorInput(
                   key, preprocessorDep, true, graphBuilder, graphBuilder.getParallelizer()));
     } catch (ExecutionException e) {
       throw new UncheckedExecutionException(e.getCause());
@@ -62,30 +83,41 @@ public class TransitiveCxxPreprocessorInputCache {
           CxxPreprocessorDep preprocessorDep,
           boolean includeDep,
           ActionGraphBuilder graphBuilder) {
-    return computeTransitiveCxxToPreprocessorInputMap(
-        key, preprocessorDep, includeDep, graphBuilder, graphBuilder.getParallelizer());
+    return toSortedMap(
+        computeSharedTransitiveCxxPreprocessorInput(
+            key, preprocessorDep, includeDep, graphBuilder, graphBuilder.getParallelizer()));
   }
 
-  private static ImmutableSortedMap<BuildTarget, CxxPreprocessorInput>
-      computeTransitiveCxxToPreprocessorInputMap(
+  private static HashTrieMap<BuildTarget, CxxPreprocessorInput>
+      computeSharedTransitiveCxxPreprocessorInput(
           @Nonnull CxxPlatform key,
           CxxPreprocessorDep preprocessorDep,
           boolean includeDep,
           ActionGraphBuilder graphBuilder,
           Parallelizer parallelizer) {
-    Map<BuildTarget, CxxPreprocessorInput> builder = new HashMap<>();
-    if (includeDep) {
-      builder.put(
-          preprocessorDep.getBuildTarget(),
-          preprocessorDep.getCxxPreprocessorInput(key, graphBuilder));
-    }
-
-    Collection<ImmutableMap<BuildTarget, CxxPreprocessorInput>> transitiveDepInputs =
+    Collection<HashTrieMap<BuildTarget, CxxPreprocessorInput>> transitiveDepInputs =
         parallelizer.maybeParallelizeTransform(
             ImmutableList.copyOf(preprocessorDep.getCxxPreprocessorDeps(key, graphBuilder)),
-            dep -> dep.getTransitiveCxxPreprocessorInput(key, graphBuilder));
-    transitiveDepInputs.forEach(builder::putAll);
+            dep -> dep.getSharedTransitiveCxxPreprocessorInput(key, graphBuilder));
+
+    // Later deps win over earlier ones, as they would with Map#putAll. The union reuses the
+    // unchanged parts of both sides, so the result shares almost all of its structure with the
+    // deps' maps.
+    HashTrieMap<BuildTarget, CxxPreprocessorInput> result = HashTrieMap.of();
+    for (HashTrieMap<BuildTarget, CxxPreprocessorInput> depInputs : transitiveDepInputs) {
+      result = depInputs.union(result);
+    }
+    if (includeDep) {
+      result =
+          result.plus(
+              preprocessorDep.getBuildTarget(),
+              preprocessorDep.getCxxPreprocessorInput(key, graphBuilder));
+    }
+    return result;
+  }
 
+  private static ImmutableSortedMap<BuildTarget, CxxPreprocessorInput> toSortedMap(
+      HashTrieMap<BuildTarget, CxxPreprocessorInput> inputs) {
     // Using an ImmutableSortedMap here:
     //
     // 1. Memory efficiency. ImmutableSortedMap is implemented with 2 lists (an ImmutableSortedSet
@@ -96,6 +128,9 @@ public class TransitiveCxxPreprocessorInputCache {
     //
     // 3. We mostly iterate over these maps rather than do lookups, so ImmutableSortedMap
     // binary-search based lookup is not an issue.
-    return ImmutableSortedMap.copyOf(builder);
+    ImmutableSortedMap.Builder<BuildTarget, CxxPreprocessorInput> builder =
+        ImmutableSortedMap.naturalOrder();
+    inputs.forEach(builder::put);
+    return builder.build();
   }
 }
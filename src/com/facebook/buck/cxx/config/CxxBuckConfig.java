@@ -88,11 +88,13 @@ public class CxxBuckConfig {
       "exported_headers_symlinks_enabled";
   private static final String HEADERS_SYMLINKS_ENABLED = "headers_symlinks_enabled";
   private static final String LINK_WEIGHT = "link_weight";
+  private static final String THINLTO_OPT_WEIGHT = "thinlto_opt_weight";
   private static final String CACHE_LINKS = "cache_links";
   private static final String CACHE_STRIPS = "cache_strips";
   private static final String CACHE_BINARIES = "cache_binaries";
   private static final String PCH_ENABLED = "pch_enabled";
   private static final String ARCHIVE_CONTENTS = "archive_contents";
+  private static final String IN_PROCESS_ARCHIVING = "in_process_archiving";
   private static final String DEBUG_PATH_SANITIZER_LIMIT = "debug_path_sanitizer_limit";
   private static final String SHOULD_REMAP_HOST_PLATFORM = "should_remap_host_platform";
   private static final String UNIQUE_LIBRARY_NAME_ENABLED = "unique_library_name_enabled";
@@ -456,6 +458,12 @@ public class CxxBuckConfig {
     return linkWeight.map(weight -> RuleScheduleInfo.of(weight.intValue()));
   }
 
+  /** @return the scheduling info for the backend optimization rules of a ThinLTO build. */
+  public Optional<RuleScheduleInfo> getThinLTOOptScheduleInfo() {
+    Optional<Long> optWeight = delegate.getLong(cxxSection, THINLTO_OPT_WEIGHT);
+    return optWeight.map(weight -> RuleScheduleInfo.of(weight.intValue()));
+  }
+
   public boolean shouldCacheLinks() {
     return delegate.getBooleanValue(cxxSection, CACHE_LINKS, true);
   }
@@ -480,6 +488,11 @@ public class CxxBuckConfig {
     return delegate.getEnum(cxxSection, ARCHIVE_CONTENTS, ArchiveContents.class);
   }
 
+  /** @return whether GNU archives of ELF objects should be written without running ar. */
+  public boolean getInProcessArchiving() {
+    return delegate.getBooleanValue(cxxSection, IN_PROCESS_ARCHIVING, false);
+  }
+
   public ImmutableMap<String, Flavor> getDefaultFlavorsForRuleType(RuleType type) {
     return ImmutableMap.copyOf(
         Maps.transformValues(
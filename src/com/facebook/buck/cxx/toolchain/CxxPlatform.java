@@ -168,6 +168,12 @@ public interface CxxPlatform extends FlavorConvertible {
     return false;
   }
 
+  /** @return whether GNU archives of ELF objects should be written in-process instead of by ar. */
+  @Value.Default
+  default boolean getInProcessArchiving() {
+    return false;
+  }
+
   static Builder builder() {
     return new Builder();
   }
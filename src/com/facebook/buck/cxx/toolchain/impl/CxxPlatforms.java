@@ -200,6 +200,7 @@ public class CxxPlatforms {
         config.getNm().<SymbolNameTool>map(PosixNmSymbolNameTool::new).orElse(nm));
 
     builder.setArchiveContents(config.getArchiveContents().orElse(archiveContents));
+    builder.setInProcessArchiving(config.getInProcessArchiving());
 
     Optional<SharedLibraryInterfaceParams> sharedLibParams =
         getSharedLibraryInterfaceParams(config, platform, Optional.of(stripTool));
@@ -113,6 +113,7 @@ public class JsUtil {
                 tool.getEnvironment(pathResolver),
                 worker.getMaxWorkers(),
                 worker.isAsync(),
+                worker.isMultiplexed(),
                 worker.isPersistent()
                     ? Optional.of(
                         WorkerProcessIdentity.of(buildTarget.toString(), worker.getInstanceKey()))
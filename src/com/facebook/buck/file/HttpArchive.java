@@ -27,11 +27,12 @@ import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.io.BuildCellRelativePath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.step.Step;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.unarchive.UnarchiveStep;
 import com.facebook.buck.unarchive.UntarStep;
 import com.facebook.buck.unarchive.UnzipStep;
 import com.facebook.buck.util.unarchive.ArchiveFormat;
+import com.facebook.buck.util.unarchive.ExistingFileMode;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import java.nio.file.Path;
@@ -80,8 +81,10 @@ public class HttpArchive extends AbstractBuildRuleWithDeclaredAndExtraDeps {
       BuildContext context, BuildableContext buildableContext) {
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
 
-    steps.addAll(
-        MakeCleanDirectoryStep.of(
+    // Rather than wiping the output, let the extraction leave unchanged files in place and remove
+    // anything that is no longer in the archive.
+    steps.add(
+        MkdirStep.of(
             BuildCellRelativePath.fromCellRelativePath(
                 context.getBuildCellRootPath(), getProjectFilesystem(), output)));
 
@@ -117,9 +120,20 @@ public class HttpArchive extends AbstractBuildRuleWithDeclaredAndExtraDeps {
       case TAR_GZ:
       case TAR_XZ:
       case TAR_ZSTD:
-        return new UntarStep(filesystem, archiveFile, destinationDirectory, stripPrefix, format);
+        return new UntarStep(
+            filesystem,
+            archiveFile,
+            destinationDirectory,
+            stripPrefix,
+            format,
+            ExistingFileMode.OVERWRITE_CHANGED_AND_CLEAN_DIRECTORIES);
       case ZIP:
-        return new UnzipStep(filesystem, archiveFile, destinationDirectory, stripPrefix);
+        return new UnzipStep(
+            filesystem,
+            archiveFile,
+            destinationDirectory,
+            stripPrefix,
+            ExistingFileMode.OVERWRITE_CHANGED_AND_CLEAN_DIRECTORIES);
     }
     throw new RuntimeException("Invalid format type " + format);
   }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.io.file;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool for work that blocks on the filesystem, such as listing and stat'ing directory
+ * trees or copying files.
+ *
+ * <p>Blocking I/O must stay off {@link ForkJoinPool#commonPool()}: it is shared with parallel
+ * streams and {@link java.util.concurrent.CompletableFuture}s across the whole daemon, so a slow
+ * disk or network mount would stall unrelated CPU work. This pool never grows beyond {@link
+ * #MAX_THREADS} threads, even when its workers block while joining subtasks.
+ */
+public final class FileIoPool {
+
+  /** The number of threads kept busy with I/O. Disks serve several requests at once. */
+  private static final int PARALLELISM =
+      Math.max(4, Math.min(16, 2 * Runtime.getRuntime().availableProcessors()));
+
+  /** Upper bound on threads, including those the pool adds to compensate for blocked joins. */
+  private static final int MAX_THREADS = 2 * PARALLELISM;
+
+  private FileIoPool() {}
+
+  /** Returns the shared pool, creating it on first use. */
+  public static ForkJoinPool get() {
+    return Holder.POOL;
+  }
+
+  private static class Holder {
+    private static final ForkJoinPool POOL = create();
+  }
+
+  private static ForkJoinPool create() {
+    AtomicInteger threads = new AtomicInteger(0);
+    AtomicInteger nextId = new AtomicInteger(0);
+    return new ForkJoinPool(
+        PARALLELISM,
+        pool -> {
+          if (threads.incrementAndGet() > MAX_THREADS) {
+            threads.decrementAndGet();
+            return null;
+          }
+          ForkJoinWorkerThread thread =
+              new ForkJoinWorkerThread(pool) {
+                @Override
+                protected void onTermination(Throwable exception) {
+                  threads.decrementAndGet();
+                  super.onTermination(exception);
+                }
+              };
+          thread.setName("buck-file-io-" + nextId.getAndIncrement());
+          return thread;
+        },
+        /* handler */ null,
+        /* asyncMode */ false);
+  }
+}
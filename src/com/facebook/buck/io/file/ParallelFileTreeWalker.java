@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.io.file;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+/**
+ * Walks a directory tree on a {@link ForkJoinPool}, listing every directory in its own task.
+ *
+ * <p>Unlike {@link java.nio.file.Files#walkFileTree}, which visits one entry at a time on the
+ * calling thread, this lists sibling directories concurrently and reads the attributes of each
+ * entry exactly once. The results are still deterministic: they come back in the order a
+ * depth-first walk over sorted directory entries would produce them, which is the order the
+ * project filesystem's own walker uses.
+ *
+ * <p>Listing and stat'ing block on the filesystem, so walks should run on a pool reserved for I/O
+ * such as {@link FileIoPool}, never on {@link ForkJoinPool#commonPool()}.
+ *
+ * <p>The walk stops at the first {@link IOException}, including a {@link FileSystemLoopException}
+ * when links are followed, and rethrows it from {@link #walk}.
+ */
+public final class ParallelFileTreeWalker {
+
+  /** Turns a file found by the walk into a result, or {@code null} to leave it out. */
+  @FunctionalInterface
+  public interface FileMapper<T> {
+    @Nullable
+    T apply(Path file, BasicFileAttributes attrs) throws IOException;
+  }
+
+  private final ForkJoinPool pool;
+  private final boolean followLinks;
+  private final DirectoryStream.Filter<? super Path> entryFilter;
+  private final Predicate<Path> skipDirectory;
+
+  /**
+   * @param pool the pool to list directories on, which should be reserved for blocking I/O
+   * @param followLinks whether symlinks to directories are walked into
+   * @param entryFilter entries rejected by this filter are neither returned nor walked into
+   * @param skipDirectory directories matching this predicate are not walked into
+   */
+  public ParallelFileTreeWalker(
+      ForkJoinPool pool,
+      boolean followLinks,
+      DirectoryStream.Filter<? super Path> entryFilter,
+      Predicate<Path> skipDirectory) {
+    this.pool = pool;
+    this.followLinks = followLinks;
+    this.entryFilter = entryFilter;
+    this.skipDirectory = skipDirectory;
+  }
+
+  /** Creates a walker that does not follow links and visits everything on {@code pool}. */
+  public static ParallelFileTreeWalker create(ForkJoinPool pool) {
+    return new ParallelFileTreeWalker(pool, false, path -> true, dir -> false);
+  }
+
+  /**
+   * Maps every non-directory under {@code root} with {@code mapper}. {@code mapper} is called
+   * concurrently from the pool's threads and must be thread safe. If {@code root} is itself a file,
+   * it is the only file mapped.
+   *
+   * @return the non-null results of {@code mapper}, in depth-first sorted order
+   */
+  public <T> ImmutableList<T> walk(Path root, FileMapper<T> mapper) throws IOException {
+    BasicFileAttributes rootAttrs = getAttributes(root);
+    ImmutableList.Builder<T> results = ImmutableList.builder();
+    if (!rootAttrs.isDirectory()) {
+      addIfNotNull(results, mapper.apply(root, rootAttrs));
+      return results.build();
+    }
+    if (skipDirectory.test(root)) {
+      return results.build();
+    }
+
+    AtomicReference<IOException> failure = new AtomicReference<>();
+    DirectoryTask<T> rootTask =
+        new DirectoryTask<>(
+            root, new Ancestor(root, rootAttrs.fileKey(), null), mapper, failure);
+    pool.invoke(rootTask);
+    IOException exception = failure.get();
+    if (exception != null) {
+      throw exception;
+    }
+    rootTask.flattenInto(results);
+    return results.build();
+  }
+
+  private static <T> void addIfNotNull(ImmutableList.Builder<T> builder, @Nullable T value) {
+    if (value != null) {
+      builder.add(value);
+    }
+  }
+
+  private BasicFileAttributes getAttributes(Path path) throws IOException {
+    if (!followLinks) {
+      return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+  }
+
+  /** The chain of directories above a task, used to detect loops when following links. */
+  private static class Ancestor {
+    private final Path dir;
+    @Nullable private final Object fileKey;
+    @Nullable private final Ancestor parent;
+
+    Ancestor(Path dir, @Nullable Object fileKey, @Nullable Ancestor parent) {
+      this.dir = dir;
+      this.fileKey = fileKey;
+      this.parent = parent;
+    }
+
+    boolean contains(Path path, @Nullable Object key) throws IOException {
+      for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+        if (key != null && ancestor.fileKey != null) {
+          if (key.equals(ancestor.fileKey)) {
+            return true;
+          }
+        } else if (Files.isSameFile(path, ancestor.dir)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Lists one directory. Its entries are kept in sorted order, with each subdirectory represented
+   * by the task that walked it, so the tree can be flattened once every task has finished.
+   */
+  private class DirectoryTask<T> extends RecursiveAction {
+    private final Path dir;
+    private final Ancestor ancestors;
+    private final FileMapper<T> mapper;
+    private final AtomicReference<IOException> failure;
+    private final List<Object> entries = new ArrayList<>();
+
+    DirectoryTask(
+        Path dir,
+        Ancestor ancestors,
+        FileMapper<T> mapper,
+        AtomicReference<IOException> failure) {
+      this.dir = dir;
+      this.ancestors = ancestors;
+      this.mapper = mapper;
+      this.failure = failure;
+    }
+
+    @Override
+    protected void compute() {
+      if (failure.get() != null) {
+        return;
+      }
+      List<DirectoryTask<T>> subdirectories = new ArrayList<>();
+      try {
+        for (Path entry : listSorted()) {
+          BasicFileAttributes attrs = getAttributes(entry);
+          if (!attrs.isDirectory()) {
+            T result = mapper.apply(entry, attrs);
+            if (result != null) {
+              entries.add(result);
+            }
+            continue;
+          }
+          if (followLinks && ancestors.contains(entry, attrs.fileKey())) {
+            throw new FileSystemLoopException(entry.toString());
+          }
+          if (skipDirectory.test(entry)) {
+            continue;
+          }
+          DirectoryTask<T> task =
+              new DirectoryTask<>(
+                  entry, new Ancestor(entry, attrs.fileKey(), ancestors), mapper, failure);
+          subdirectories.add(task);
+          entries.add(task);
+        }
+      } catch (IOException e) {
+        failure.compareAndSet(null, e);
+        return;
+      }
+      invokeAll(subdirectories);
+    }
+
+    private List<Path> listSorted() throws IOException {
+      List<Path> children = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, entryFilter)) {
+        stream.forEach(children::add);
+      }
+      children.sort(Comparator.naturalOrder());
+      return children;
+    }
+
+    @SuppressWarnings("unchecked")
+    void flattenInto(ImmutableList.Builder<T> results) {
+      for (Object entry : entries) {
+        if (entry instanceof ParallelFileTreeWalker.DirectoryTask) {
+          ((DirectoryTask<T>) entry).flattenInto(results);
+        } else {
+          results.add((T) entry);
+        }
+      }
+    }
+  }
+}
@@ -19,9 +19,11 @@ package com.facebook.buck.io.filesystem.impl;
 import com.facebook.buck.core.cell.name.CanonicalCellName;
 import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.core.filesystems.RelPath;
+import com.facebook.buck.io.file.FileIoPool;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.file.MorePosixFilePermissions;
 import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.file.ParallelFileTreeWalker;
 import com.facebook.buck.io.file.PathListing;
 import com.facebook.buck.io.filesystem.BuckPaths;
 import com.facebook.buck.io.filesystem.CopySourceMode;
@@ -70,7 +72,6 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -462,14 +463,6 @@ public class DefaultProjectFilesystem implements Cloneable, ProjectFilesystem {
         skipIgnored);
   }
 
-  private void walkRelativeFileTree(
-      Path pathRelativeToProjectRoot,
-      EnumSet<FileVisitOption> visitOptions,
-      FileVisitor<Path> fileVisitor)
-      throws IOException {
-    walkRelativeFileTree(pathRelativeToProjectRoot, visitOptions, fileVisitor, true);
-  }
-
   /** Walks a project-root relative file tree with a visitor and visit options. */
   @Override
   public void walkRelativeFileTree(
@@ -587,20 +580,39 @@ public class DefaultProjectFilesystem implements Cloneable, ProjectFilesystem {
       Predicate<Path> predicate,
       EnumSet<FileVisitOption> visitOptions)
       throws IOException {
-    ImmutableSet.Builder<Path> paths = ImmutableSet.builder();
-    walkRelativeFileTree(
+    return getFilesUnderPathWithPathMapping(
         pathRelativeToProjectRoot,
         visitOptions,
-        new SimpleFileVisitor<Path>() {
-          @Override
-          public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
-            if (predicate.test(path)) {
-              paths.add(path);
-            }
-            return FileVisitResult.CONTINUE;
-          }
-        });
-    return paths.build();
+        input -> !isIgnored(relativize(input)),
+        path -> relativize(path).getPath(),
+        predicate);
+  }
+
+  /**
+   * Collects the files that {@link #walkFileTreeWithPathMapping} would visit, in the same order,
+   * listing directories in parallel. {@code predicate} is applied to mapped paths and may be called
+   * from several threads at once.
+   */
+  ImmutableSet<Path> getFilesUnderPathWithPathMapping(
+      Path root,
+      EnumSet<FileVisitOption> visitOptions,
+      DirectoryStream.Filter<? super Path> ignoreFilter,
+      Function<Path, Path> pathMapper,
+      Predicate<Path> predicate)
+      throws IOException {
+    ParallelFileTreeWalker walker =
+        new ParallelFileTreeWalker(
+            FileIoPool.get(),
+            visitOptions.contains(FileVisitOption.FOLLOW_LINKS),
+            ignoreFilter,
+            dir -> edenMagicPathElement.equals(dir.getFileName()));
+    return ImmutableSet.copyOf(
+        walker.walk(
+            getPathForRelativePath(root),
+            (file, attrs) -> {
+              Path path = pathMapper.apply(file);
+              return predicate.test(path) ? path : null;
+            }));
   }
 
   /** Allows {@link Files#isDirectory} to be faked in tests. */
@@ -32,11 +32,9 @@ import com.google.common.collect.ImmutableSortedSet;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitOption;
-import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.util.Comparator;
@@ -189,20 +187,12 @@ public class DefaultProjectFilesystemView implements ProjectFilesystemView {
   public ImmutableSet<Path> getFilesUnderPath(
       Path pathRelativeToProjectRoot, Predicate<Path> filter, EnumSet<FileVisitOption> visitOptions)
       throws IOException {
-    ImmutableSet.Builder<Path> paths = ImmutableSet.builder();
-    walkRelativeFileTree(
-        pathRelativeToProjectRoot,
+    return filesystemParent.getFilesUnderPathWithPathMapping(
+        projectRoot.resolve(pathRelativeToProjectRoot),
         visitOptions,
-        new SimpleFileVisitor<Path>() {
-          @Override
-          public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
-            if (filter.test(path)) {
-              paths.add(path);
-            }
-            return FileVisitResult.CONTINUE;
-          }
-        });
-    return paths.build();
+        this::shouldExplorePaths,
+        this::relativize,
+        filter);
   }
 
   @Override
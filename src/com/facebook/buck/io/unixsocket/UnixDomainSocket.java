@@ -41,6 +41,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
 
 /**
@@ -59,6 +60,7 @@ public class UnixDomainSocket extends Socket implements Transport {
   private final ReferenceCountedFileDescriptor fd;
   private final InputStream is;
   private final OutputStream os;
+  private final ReadableByteChannel inputChannel;
   private boolean isConnected;
 
   /** Creates a Unix domain socket bound to a path. */
@@ -85,6 +87,7 @@ public class UnixDomainSocket extends Socket implements Transport {
     this.fd = fd;
     this.is = new UnixDomainSocketInputStream();
     this.os = new UnixDomainSocketOutputStream();
+    this.inputChannel = new UnixDomainSocketInputChannel();
     this.isConnected = true;
   }
 
@@ -98,6 +101,11 @@ public class UnixDomainSocket extends Socket implements Transport {
     return is;
   }
 
+  @Override
+  public ReadableByteChannel getInputChannel() {
+    return inputChannel;
+  }
+
   @Override
   public OutputStream getOutputStream() {
     return os;
@@ -147,6 +155,49 @@ public class UnixDomainSocket extends Socket implements Transport {
     close();
   }
 
+  /**
+   * Reads from the socket straight into the memory of the given buffer. Unlike {@link
+   * UnixDomainSocketInputStream}, this avoids a copy when the buffer is direct.
+   */
+  private class UnixDomainSocketInputChannel implements ReadableByteChannel {
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      if (!dst.hasRemaining()) {
+        return 0;
+      }
+      int result;
+      try {
+        int fdToRead = fd.acquire();
+        if (fdToRead == -1) {
+          return -1;
+        }
+        // The native address of a direct buffer is where its content starts, so hand the native
+        // call a view which starts at the current position.
+        ByteBuffer target = dst.isDirect() ? dst.slice() : dst;
+        result = UnixDomainSocketLibrary.read(fdToRead, target, dst.remaining());
+      } catch (LastErrorException e) {
+        throw new IOException(e);
+      } finally {
+        fd.release();
+      }
+      if (result == 0) {
+        return -1;
+      }
+      dst.position(dst.position() + result);
+      return result;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return isConnected;
+    }
+
+    @Override
+    public void close() throws IOException {
+      shutdownInput();
+    }
+  }
+
   private class UnixDomainSocketInputStream extends InputStream {
     @Override
     public int read() throws IOException {
@@ -19,6 +19,8 @@ package com.facebook.buck.io.watchman;
 import java.io.Closeable;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * An abstraction for IPC via messages. Messages are sent via an output stream ({@link
@@ -32,6 +34,17 @@ public interface Transport extends Closeable {
    */
   InputStream getInputStream();
 
+  /**
+   * Returns a channel for reading messages. Reads through the channel and the input stream can be
+   * interleaved as long as each message is read whole through one of them.
+   *
+   * <p>Transports backed by a native handle should override this to read into direct buffers
+   * without copying through the Java heap.
+   */
+  default ReadableByteChannel getInputChannel() {
+    return Channels.newChannel(getInputStream());
+  }
+
   /**
    * Returns an input stream for writing messages.
    *
@@ -16,7 +16,11 @@
 
 package com.facebook.buck.io.watchman;
 
+import com.facebook.buck.util.bser.BserReader;
+import com.facebook.buck.util.bser.BserSerializer;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Map;
 import java.util.Optional;
 
@@ -25,6 +29,36 @@ public interface WatchmanClient extends AutoCloseable {
   Optional<? extends Map<String, ? extends Object>> queryWithTimeout(
       long timeoutNanos, Object... query) throws IOException, InterruptedException;
 
+  /**
+   * Same as {@link #queryWithTimeout(long, Object...)}, but decodes the response with {@code
+   * responseReader} as it is read instead of building it as a tree of maps and lists. Use this for
+   * queries whose responses can list a large number of files.
+   */
+  default <T> Optional<T> queryWithTimeout(
+      long timeoutNanos, BserReader.ValueReader<T> responseReader, Object... query)
+      throws IOException, InterruptedException {
+    Optional<? extends Map<String, ? extends Object>> response =
+        queryWithTimeout(timeoutNanos, query);
+    if (!response.isPresent()) {
+      return Optional.empty();
+    }
+    // Clients which only produce whole responses get them decoded the same way, by encoding them
+    // back to BSER.
+    ByteBuffer buffer = ByteBuffer.allocate(8192).order(ByteOrder.nativeOrder());
+    buffer = new BserSerializer().serializeToBuffer(response.get(), buffer);
+    buffer.flip();
+    return Optional.of(new BserReader().readFrom(buffer).read(responseReader));
+  }
+
+  /**
+   * Waits for the next message Watchman sends on this connection on its own, like the changes
+   * reported for a subscription.
+   *
+   * @return the message, or empty if none arrived within {@code timeoutNanos}.
+   */
+  Optional<? extends Map<String, ? extends Object>> receiveWithTimeout(long timeoutNanos)
+      throws IOException, InterruptedException;
+
   @Override
   void close() throws IOException;
 }
@@ -36,4 +36,16 @@ abstract class WatchmanQuery {
             .putAll(getQueryParams())
             .build());
   }
+
+  /** @return a command which subscribes to the changes this query would return. */
+  public ImmutableList<Object> toSubscribeList(String subscriptionName, String sinceCursor) {
+    return ImmutableList.of(
+        "subscribe",
+        getQueryPath(),
+        subscriptionName,
+        ImmutableMap.<String, Object>builder()
+            .put("since", sinceCursor)
+            .putAll(getQueryParams())
+            .build());
+  }
 }
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.io.watchman;
+
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.file.MorePaths;
+import com.facebook.buck.util.Threads;
+import com.google.common.collect.ImmutableList;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A Watchman subscription to the files of one cell.
+ *
+ * <p>A {@code since} query makes Watchman compute every change when a command starts. A
+ * subscription instead keeps a connection open across commands, over which Watchman streams
+ * changes as they settle. They are accumulated here, coalesced per directory, until {@link
+ * WatchmanWatcher} drains them at the start of the next command.
+ */
+public class WatchmanSubscription implements Closeable {
+
+  private static final Logger LOG = Logger.get(WatchmanSubscription.class);
+
+  /** How long the reader waits for a message before checking whether it was closed. */
+  private static final long POLL_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final AbsPath cellPath;
+  private final WatchmanClient client;
+  private final int maxChanges;
+  private final Thread reader;
+
+  /** Changes keyed by the directory containing them, then by their path. */
+  @GuardedBy("this")
+  private final Map<Path, Map<Path, WatchmanMultiplePathEvent.Change>> changesByDirectory =
+      new LinkedHashMap<>();
+
+  @GuardedBy("this")
+  private int numChanges = 0;
+
+  /** Clock of the last notification, up to which all changes are accounted for. */
+  @GuardedBy("this")
+  private String clock;
+
+  @GuardedBy("this")
+  @Nullable
+  private String overflowReason = null;
+
+  private volatile boolean alive = true;
+
+  private WatchmanSubscription(
+      AbsPath cellPath, WatchmanClient client, String sinceClock, int maxChanges) {
+    this.cellPath = cellPath;
+    this.client = client;
+    this.clock = sinceClock;
+    this.maxChanges = maxChanges;
+    this.reader = new Thread(this::readNotifications, "Watchman subscription " + cellPath);
+    this.reader.setDaemon(true);
+  }
+
+  /**
+   * Subscribes to the changes {@code query} returns after {@code sinceClock} and starts
+   * accumulating them.
+   *
+   * @param client a client which is owned by the subscription from now on, and closed with it.
+   * @param maxChanges the number of distinct changed paths after which changes stop being kept,
+   *     and an overflow is reported instead.
+   */
+  static WatchmanSubscription subscribe(
+      WatchmanClient client,
+      AbsPath cellPath,
+      WatchmanQuery query,
+      String sinceClock,
+      int maxChanges,
+      long timeoutNanos)
+      throws IOException, InterruptedException {
+    Optional<? extends Map<String, ? extends Object>> response =
+        client.queryWithTimeout(
+            timeoutNanos, query.toSubscribeList("buck-" + cellPath, sinceClock).toArray());
+    if (!response.isPresent()) {
+      throw new WatchmanQueryTimedOutException();
+    }
+    String error = (String) response.get().get("error");
+    if (error != null) {
+      throw new WatchmanWatcherException(error);
+    }
+    WatchmanSubscription subscription =
+        new WatchmanSubscription(cellPath, client, sinceClock, maxChanges);
+    subscription.reader.start();
+    LOG.debug("Subscribed to changes in %s since %s", cellPath, sinceClock);
+    return subscription;
+  }
+
+  /** @return whether notifications are still being received. */
+  public boolean isAlive() {
+    return alive;
+  }
+
+  /** @return all changes accumulated since the previous call, grouped by directory. */
+  synchronized Changes drain() {
+    ImmutableList.Builder<WatchmanMultiplePathEvent.Change> changes =
+        ImmutableList.builderWithExpectedSize(numChanges);
+    for (Map<Path, WatchmanMultiplePathEvent.Change> directoryChanges :
+        changesByDirectory.values()) {
+      changes.addAll(directoryChanges.values());
+    }
+    Changes drained = new Changes(clock, changes.build(), Optional.ofNullable(overflowReason));
+    changesByDirectory.clear();
+    numChanges = 0;
+    overflowReason = null;
+    return drained;
+  }
+
+  @Override
+  public void close() throws IOException {
+    alive = false;
+    client.close();
+  }
+
+  private void readNotifications() {
+    try {
+      while (alive) {
+        Optional<? extends Map<String, ? extends Object>> message =
+            client.receiveWithTimeout(POLL_TIMEOUT_NANOS);
+        if (message.isPresent()) {
+          onNotification(message.get());
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      if (alive) {
+        LOG.warn(e, "Lost Watchman subscription to %s", cellPath);
+      }
+    } catch (InterruptedException e) {
+      Threads.interruptCurrentThread();
+    } finally {
+      alive = false;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized void onNotification(Map<String, ? extends Object> message) {
+    String error = (String) message.get("error");
+    if (error != null) {
+      // Whatever was received so far is still valid, and the next since query picks up from the
+      // last clock, so the subscription can simply be replaced.
+      LOG.warn("Watchman subscription to %s failed: %s", cellPath, error);
+      alive = false;
+      return;
+    }
+
+    List<Map<String, Object>> files = (List<Map<String, Object>>) message.get("files");
+    if (files == null) {
+      // Not a change notification, e.g. a state-enter or state-leave.
+      return;
+    }
+
+    Boolean isFreshInstance = (Boolean) message.get("is_fresh_instance");
+    if (isFreshInstance != null && isFreshInstance) {
+      overflow("Watchman has been initialized recently.");
+    } else {
+      FileSystem fileSystem = cellPath.getFileSystem();
+      for (Map<String, Object> file : files) {
+        WatchmanMultiplePathEvent.Change change = WatchmanWatcher.parseChange(fileSystem, file);
+        if (change == null) {
+          LOG.warn("Filename missing from watchman file notification %s", file);
+          overflow("Filename missing from watchman response.");
+          break;
+        }
+        add(change);
+      }
+    }
+
+    String newClock = (String) message.get("clock");
+    if (newClock != null) {
+      clock = newClock;
+    }
+  }
+
+  @GuardedBy("this")
+  private void add(WatchmanMultiplePathEvent.Change change) {
+    if (overflowReason != null) {
+      return;
+    }
+    Path path = change.getPath();
+    Map<Path, WatchmanMultiplePathEvent.Change> directoryChanges =
+        changesByDirectory.computeIfAbsent(
+            MorePaths.getParentOrEmpty(path), ignored -> new LinkedHashMap<>());
+    WatchmanMultiplePathEvent.Change previous = directoryChanges.get(path);
+    if (previous == null) {
+      if (numChanges == maxChanges) {
+        overflow("Too many files changed.");
+        return;
+      }
+      numChanges++;
+    } else if (change.getKind() == WatchmanEvent.Kind.MODIFY) {
+      // A modification does not hide that the path was created or deleted earlier on.
+      change = ImmutableChange.of(change.getType(), path, previous.getKind());
+    }
+    directoryChanges.put(path, change);
+  }
+
+  @GuardedBy("this")
+  private void overflow(String reason) {
+    LOG.debug("Watchman subscription to %s overflowed: %s", cellPath, reason);
+    overflowReason = reason;
+    changesByDirectory.clear();
+    numChanges = 0;
+  }
+
+  /** Changes accumulated by a subscription between two calls to {@link #drain()}. */
+  static class Changes {
+    private final String clock;
+    private final ImmutableList<WatchmanMultiplePathEvent.Change> changes;
+    private final Optional<String> overflowReason;
+
+    Changes(
+        String clock,
+        ImmutableList<WatchmanMultiplePathEvent.Change> changes,
+        Optional<String> overflowReason) {
+      this.clock = clock;
+      this.changes = changes;
+      this.overflowReason = overflowReason;
+    }
+
+    /** @return the clock up to which changes are accounted for. */
+    String getClock() {
+      return clock;
+    }
+
+    ImmutableList<WatchmanMultiplePathEvent.Change> getChanges() {
+      return changes;
+    }
+
+    /** @return why changes could not be tracked precisely, if they could not. */
+    Optional<String> getOverflowReason() {
+      return overflowReason;
+    }
+  }
+}
@@ -22,6 +22,7 @@ import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.bser.BserDeserializer;
+import com.facebook.buck.util.bser.BserReader;
 import com.facebook.buck.util.bser.BserSerializer;
 import com.facebook.buck.util.timing.Clock;
 import com.google.common.collect.ImmutableList;
@@ -34,6 +35,8 @@ import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 class WatchmanTransportClient implements WatchmanClient, AutoCloseable {
 
@@ -46,9 +49,14 @@ class WatchmanTransportClient implements WatchmanClient, AutoCloseable {
   private final Console console;
   private final BserSerializer bserSerializer;
   private final BserDeserializer bserDeserializer;
+  private final BserReader bserReader;
 
   private boolean disabledWarningShown = false;
 
+  @GuardedBy("this")
+  @Nullable
+  private ListenableFuture<Map<String, Object>> pendingReceive = null;
+
   public WatchmanTransportClient(Console console, Clock clock, Transport transport) {
     this.listeningExecutorService = listeningDecorator(newSingleThreadExecutor("Watchman"));
     this.console = console;
@@ -56,6 +64,7 @@ class WatchmanTransportClient implements WatchmanClient, AutoCloseable {
     this.transport = transport;
     this.bserSerializer = new BserSerializer();
     this.bserDeserializer = new BserDeserializer(BserDeserializer.KeyOrdering.UNSORTED);
+    this.bserReader = new BserReader();
   }
 
   @Override
@@ -64,14 +73,29 @@ class WatchmanTransportClient implements WatchmanClient, AutoCloseable {
     return queryListWithTimeout(timeoutNanos, ImmutableList.copyOf(query));
   }
 
+  @Override
+  public <T> Optional<T> queryWithTimeout(
+      long timeoutNanos, BserReader.ValueReader<T> responseReader, Object... query)
+      throws IOException, InterruptedException {
+    ImmutableList<Object> queryList = ImmutableList.copyOf(query);
+    return waitForQuery(
+        listeningExecutorService.submit(() -> sendWatchmanQuery(queryList, responseReader)),
+        timeoutNanos,
+        queryList);
+  }
+
   private Optional<Map<String, Object>> queryListWithTimeout(long timeoutNanos, List<Object> query)
       throws IOException, InterruptedException {
-    ListenableFuture<Optional<Map<String, Object>>> future =
-        listeningExecutorService.submit(() -> sendWatchmanQuery(query));
+    return waitForQuery(
+        listeningExecutorService.submit(() -> sendWatchmanQuery(query)), timeoutNanos, query);
+  }
+
+  private <T> Optional<T> waitForQuery(
+      ListenableFuture<Optional<T>> future, long timeoutNanos, List<Object> query)
+      throws IOException, InterruptedException {
     try {
       long startTimeNanos = clock.nanoTime();
-      Optional<Map<String, Object>> result =
-          waitForQueryNotifyingUserIfSlow(future, timeoutNanos, query);
+      Optional<T> result = waitForQueryNotifyingUserIfSlow(future, timeoutNanos, query);
       long elapsedNanos = clock.nanoTime() - startTimeNanos;
       LOG.debug("Query %s returned in %d ms", query, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
       return result;
@@ -84,6 +108,30 @@ class WatchmanTransportClient implements WatchmanClient, AutoCloseable {
     }
   }
 
+  @Override
+  public synchronized Optional<Map<String, Object>> receiveWithTimeout(long timeoutNanos)
+      throws IOException, InterruptedException {
+    // A read which timed out is still pending on the executor and will get the next message, so
+    // wait for it again rather than queueing a second read behind it.
+    if (pendingReceive == null) {
+      pendingReceive = listeningExecutorService.submit(this::receiveWatchmanMessage);
+    }
+    try {
+      Map<String, Object> result = pendingReceive.get(timeoutNanos, TimeUnit.NANOSECONDS);
+      pendingReceive = null;
+      return Optional.of(result);
+    } catch (TimeoutException e) {
+      return Optional.empty();
+    } catch (ExecutionException e) {
+      pendingReceive = null;
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
   @Override
   public void close() throws IOException {
     LOG.debug("Closing Watchman transport.");
@@ -107,8 +155,8 @@ class WatchmanTransportClient implements WatchmanClient, AutoCloseable {
             TimeUnit.NANOSECONDS.toSeconds(timeoutNanos));
   }
 
-  private Optional<Map<String, Object>> waitForQueryNotifyingUserIfSlow(
-      ListenableFuture<Optional<Map<String, Object>>> future, long timeoutNanos, List<Object> query)
+  private <T> Optional<T> waitForQueryNotifyingUserIfSlow(
+      ListenableFuture<Optional<T>> future, long timeoutNanos, List<Object> query)
       throws InterruptedException, ExecutionException {
     long queryStartNanos = clock.nanoTime();
     try {
@@ -147,4 +195,21 @@ class WatchmanTransportClient implements WatchmanClient, AutoCloseable {
     }
     return Optional.of(responseMap);
   }
+
+  private <T> Optional<T> sendWatchmanQuery(
+      List<Object> query, BserReader.ValueReader<T> responseReader) throws IOException {
+    LOG.verbose("Sending query: %s", query);
+    bserSerializer.serializeToStream(query, transport.getOutputStream());
+    return Optional.of(bserReader.readFrom(transport.getInputChannel()).read(responseReader));
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> receiveWatchmanMessage() throws IOException {
+    Object message = bserDeserializer.deserializeBserValue(transport.getInputStream());
+    LOG.verbose("Got message: %s", message);
+    if (!(message instanceof Map)) {
+      throw new IOException("Unrecognized Watchman message: " + message);
+    }
+    return (Map<String, Object>) message;
+  }
 }
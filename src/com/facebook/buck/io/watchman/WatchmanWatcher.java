@@ -25,6 +25,7 @@ import com.facebook.buck.event.WatchmanStatusEvent;
 import com.facebook.buck.io.filesystem.PathMatcher;
 import com.facebook.buck.io.watchman.WatchmanEvent.Type;
 import com.facebook.buck.util.Threads;
+import com.facebook.buck.util.bser.BserReader;
 import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.types.Unit;
 import com.google.common.annotations.VisibleForTesting;
@@ -43,11 +44,13 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
 
 /** Queries Watchman for changes to a path. */
 public class WatchmanWatcher {
@@ -86,6 +89,7 @@ public class WatchmanWatcher {
   private final WatchmanClientFactory watchmanClientFactory;
   private final ImmutableMap<AbsPath, WatchmanQuery> queries;
   private final Map<AbsPath, WatchmanCursor> cursors;
+  private final Optional<ConcurrentMap<AbsPath, WatchmanSubscription>> subscriptions;
   private final int numThreads;
 
   private final long timeoutMillis;
@@ -101,6 +105,7 @@ public class WatchmanWatcher {
       EventBus fileChangeEventBus,
       ImmutableSet<PathMatcher> ignorePaths,
       Map<AbsPath, WatchmanCursor> cursors,
+      Optional<ConcurrentMap<AbsPath, WatchmanSubscription>> subscriptions,
       int numThreads) {
     this(
         fileChangeEventBus,
@@ -108,6 +113,7 @@ public class WatchmanWatcher {
         DEFAULT_TIMEOUT_MILLIS,
         createQueries(watchman.getProjectWatches(), ignorePaths, watchman.getCapabilities()),
         cursors,
+        subscriptions,
         numThreads);
   }
 
@@ -119,11 +125,35 @@ public class WatchmanWatcher {
       ImmutableMap<AbsPath, WatchmanQuery> queries,
       Map<AbsPath, WatchmanCursor> cursors,
       int numThreads) {
+    this(
+        fileChangeEventBus,
+        watchmanClientFactory,
+        timeoutMillis,
+        queries,
+        cursors,
+        Optional.empty(),
+        numThreads);
+  }
+
+  /**
+   * @param subscriptions if present, Watchman subscriptions are kept here across commands, and
+   *     queried for changes before the regular {@code since} query.
+   */
+  @VisibleForTesting
+  WatchmanWatcher(
+      EventBus fileChangeEventBus,
+      WatchmanClientFactory watchmanClientFactory,
+      long timeoutMillis,
+      ImmutableMap<AbsPath, WatchmanQuery> queries,
+      Map<AbsPath, WatchmanCursor> cursors,
+      Optional<ConcurrentMap<AbsPath, WatchmanSubscription>> subscriptions,
+      int numThreads) {
     this.fileChangeEventBus = fileChangeEventBus;
     this.watchmanClientFactory = watchmanClientFactory;
     this.timeoutMillis = timeoutMillis;
     this.queries = queries;
     this.cursors = cursors;
+    this.subscriptions = subscriptions;
     this.numThreads = numThreads;
   }
 
@@ -219,6 +249,7 @@ public class WatchmanWatcher {
                   // Include the cellPath in the finished event so it can be matched with the begin
                   // event.
                   perfEvent.appendFinishedInfo("cell", cellPath);
+                  postSubscribedEvents(buckEventBus, cellPath, cursor, filesHaveChanged);
                   postEvents(
                       buckEventBus,
                       freshInstanceAction,
@@ -229,6 +260,7 @@ public class WatchmanWatcher {
                       filesHaveChanged,
                       perfEvent);
                 }
+                subscribe(cellPath, query, cursor);
               }
               return Unit.UNIT;
             });
@@ -260,7 +292,6 @@ public class WatchmanWatcher {
     }
   }
 
-  @SuppressWarnings("unchecked")
   private void postEvents(
       BuckEventBus buckEventBus,
       FreshInstanceAction freshInstanceAction,
@@ -272,11 +303,14 @@ public class WatchmanWatcher {
       SimplePerfEvent.Scope perfEvent)
       throws IOException, InterruptedException {
     try {
-      Optional<? extends Map<String, ? extends Object>> queryResponse;
+      Optional<QueryResponse> queryResponse;
       try (SimplePerfEvent.Scope ignored = SimplePerfEvent.scope(buckEventBus, "query")) {
+        FileSystem fileSystem = cellPath.getFileSystem();
         queryResponse =
             client.queryWithTimeout(
-                TimeUnit.MILLISECONDS.toNanos(timeoutMillis), query.toList(cursor.get()).toArray());
+                TimeUnit.MILLISECONDS.toNanos(timeoutMillis),
+                reader -> QueryResponse.read(reader, fileSystem),
+                query.toList(cursor.get()).toArray());
       }
 
       try (SimplePerfEvent.Scope ignored =
@@ -296,8 +330,8 @@ public class WatchmanWatcher {
           return;
         }
 
-        Map<String, ? extends Object> response = queryResponse.get();
-        String error = (String) response.get("error");
+        QueryResponse response = queryResponse.get();
+        String error = response.error;
         if (error != null) {
           // This message is not de-duplicated via WatchmanDiagnostic.
           WatchmanWatcherException e = new WatchmanWatcherException(error);
@@ -312,21 +346,19 @@ public class WatchmanWatcher {
         if (cursor.get().startsWith("c:")) {
           // Update the clockId
           String newCursor =
-              Optional.ofNullable((String) response.get("clock"))
-                  .orElse(WatchmanFactory.NULL_CLOCK);
+              Optional.ofNullable(response.clock).orElse(WatchmanFactory.NULL_CLOCK);
           LOG.debug("Updating Watchman Cursor from %s to %s", cursor.get(), newCursor);
           cursor.set(newCursor);
         }
 
-        String warning = (String) response.get("warning");
+        String warning = response.warning;
         if (warning != null) {
           buckEventBus.post(
               new WatchmanDiagnosticEvent(
                   WatchmanDiagnostic.of(WatchmanDiagnostic.Level.WARNING, warning)));
         }
 
-        Boolean isFreshInstance = (Boolean) response.get("is_fresh_instance");
-        if (isFreshInstance != null && isFreshInstance) {
+        if (response.isFreshInstance) {
           LOG.debug(
               "Watchman indicated a fresh instance (fresh instance action %s)",
               freshInstanceAction);
@@ -344,85 +376,44 @@ public class WatchmanWatcher {
           return;
         }
 
-        List<Map<String, Object>> files = (List<Map<String, Object>>) response.get("files");
-        if (files == null) {
+        if (response.numFiles < 0) {
           if (freshInstanceAction == FreshInstanceAction.NONE) {
             filesHaveChanged.set(true);
           }
           return;
         }
-        LOG.debug("Watchman indicated %d changes", files.size());
-        if (files.size() > OVERFLOW_THRESHOLD) {
+        LOG.debug("Watchman indicated %d changes", response.numFiles);
+        if (response.numFiles > OVERFLOW_THRESHOLD) {
           LOG.warn(
               "Posting overflow event: too many files changed: %d > %d",
-              files.size(), OVERFLOW_THRESHOLD);
+              response.numFiles, OVERFLOW_THRESHOLD);
           postWatchEvent(
               buckEventBus, ImmutableWatchmanOverflowEvent.of(cellPath, "Too many files changed."));
           filesHaveChanged.set(true);
           return;
         }
-        if (files.size() < TRACE_CHANGES_THRESHOLD) {
-          perfEvent.appendFinishedInfo("files", files);
+        List<WatchmanMultiplePathEvent.Change> changes = response.changes;
+        if (changes.size() < TRACE_CHANGES_THRESHOLD) {
+          perfEvent.appendFinishedInfo("files", changes);
         } else {
-          perfEvent.appendFinishedInfo("files_sample", files.subList(0, TRACE_CHANGES_THRESHOLD));
+          perfEvent.appendFinishedInfo("files_sample", changes.subList(0, TRACE_CHANGES_THRESHOLD));
         }
 
-        FileSystem fileSystem = cellPath.getFileSystem();
-        List<WatchmanMultiplePathEvent.Change> changes = new ArrayList<>(files.size());
-        for (Map<String, Object> file : files) {
-          String fileName = (String) file.get("name");
-          if (fileName == null) {
-            LOG.warn("Filename missing from watchman file response %s", file);
-            postWatchEvent(
-                buckEventBus,
-                ImmutableWatchmanOverflowEvent.of(
-                    cellPath, "Filename missing from watchman response."));
-            filesHaveChanged.set(true);
-            return;
-          }
-          Boolean fileNew = (Boolean) file.get("new");
-          WatchmanEvent.Kind kind = WatchmanEvent.Kind.MODIFY;
-          if (fileNew != null && fileNew) {
-            kind = WatchmanEvent.Kind.CREATE;
-          }
-          Boolean fileExists = (Boolean) file.get("exists");
-          if (fileExists != null && !fileExists) {
-            kind = WatchmanEvent.Kind.DELETE;
-          }
-
-          // Following legacy behavior, everything we get from Watchman is interpreted as file
-          // changes unless explicitly specified with `type` field
-          WatchmanEvent.Type type = Type.FILE;
-          String stype = (String) file.get("type");
-          if (stype != null) {
-            switch (stype) {
-              case "d":
-                type = Type.DIRECTORY;
-                break;
-              case "l":
-                type = Type.SYMLINK;
-                break;
-            }
-          }
-
-          RelPath filePath = RelPath.of(fileSystem.getPath(fileName));
-
-          changes.add(ImmutableChange.of(type, filePath.getPath(), kind));
-
-          if (type != WatchmanEvent.Type.DIRECTORY) {
-            // WatchmanPathEvent is sent for everything but directories - this is legacy
-            // behavior and we want to keep it.
-            // TODO(buck_team): switch everything to use WatchmanMultiplePathEvent and retire
-            // WatchmanPathEvent
-            postWatchEvent(buckEventBus, ImmutableWatchmanPathEvent.of(cellPath, kind, filePath));
-          }
+        if (response.isFileNameMissing) {
+          LOG.warn("Filename missing from watchman file response");
+          postWatchEvent(
+              buckEventBus,
+              ImmutableWatchmanOverflowEvent.of(
+                  cellPath, "Filename missing from watchman response."));
+          filesHaveChanged.set(true);
+          return;
         }
 
         if (!changes.isEmpty()) {
-          postWatchEvent(buckEventBus, ImmutableWatchmanMultiplePathEvent.of(cellPath, changes));
+          postChanges(buckEventBus, cellPath, changes);
         }
 
-        if (!files.isEmpty() || freshInstanceAction == FreshInstanceAction.NONE) {
+        if (response.numFiles > 0 || freshInstanceAction == FreshInstanceAction.NONE) {
           filesHaveChanged.set(true);
         }
       }
@@ -443,6 +434,274 @@ public class WatchmanWatcher {
     }
   }
 
+  /**
+   * The parts of a Watchman query response the watcher uses, decoded without building the list of
+   * files as maps. Once there are more files than {@link #OVERFLOW_THRESHOLD}, the remaining ones
+   * are only counted.
+   */
+  private static class QueryResponse {
+    private static final int ERROR_KEY = 0;
+    private static final int CLOCK_KEY = 1;
+    private static final int WARNING_KEY = 2;
+    private static final int IS_FRESH_INSTANCE_KEY = 3;
+    private static final int FILES_KEY = 4;
+    private static final BserReader.Keys RESPONSE_KEYS =
+        BserReader.Keys.of("error", "clock", "warning", "is_fresh_instance", "files");
+
+    private static final int NAME_KEY = 0;
+    private static final int NEW_KEY = 1;
+    private static final int EXISTS_KEY = 2;
+    private static final int TYPE_KEY = 3;
+    private static final BserReader.Keys FILE_KEYS =
+        BserReader.Keys.of("name", "new", "exists", "type");
+
+    @Nullable private String error;
+    @Nullable private String clock;
+    @Nullable private String warning;
+    private boolean isFreshInstance;
+    /** The number of files reported, or -1 if the response did not list files. */
+    private int numFiles = -1;
+
+    private final List<WatchmanMultiplePathEvent.Change> changes = new ArrayList<>();
+    private boolean isFileNameMissing;
+
+    static QueryResponse read(BserReader reader, FileSystem fileSystem) throws IOException {
+      QueryResponse response = new QueryResponse();
+      reader.readObject(
+          RESPONSE_KEYS,
+          (key, value) -> {
+            switch (key) {
+              case ERROR_KEY:
+                response.error = value.readString();
+                break;
+              case CLOCK_KEY:
+                response.clock = value.readNullableString();
+                break;
+              case WARNING_KEY:
+                response.warning = value.readString();
+                break;
+              case IS_FRESH_INSTANCE_KEY:
+                response.isFreshInstance = value.readBoolean();
+                break;
+              case FILES_KEY:
+                response.numFiles =
+                    value.readObjects(FILE_KEYS, response.new FileReader(fileSystem));
+                break;
+              default:
+                value.skipValue();
+            }
+          });
+      return response;
+    }
+
+    /** Turns the objects describing files into changes, see {@link #parseChange}. */
+    private class FileReader implements BserReader.ObjectVisitor {
+      private final FileSystem fileSystem;
+      private int numFilesRead = 0;
+      @Nullable private String name;
+      private boolean isNew;
+      private boolean exists = true;
+      @Nullable private String type;
+
+      FileReader(FileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+      }
+
+      @Override
+      public void visitField(int keyIndex, BserReader reader) throws IOException {
+        if (numFilesRead >= OVERFLOW_THRESHOLD) {
+          reader.skipValue();
+          return;
+        }
+        switch (keyIndex) {
+          case NAME_KEY:
+            name = reader.readString();
+            break;
+          case NEW_KEY:
+            isNew = reader.readBoolean();
+            break;
+          case EXISTS_KEY:
+            exists = reader.readBoolean();
+            break;
+          case TYPE_KEY:
+            type = reader.readString();
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+
+      @Override
+      public void endObject() {
+        if (numFilesRead++ >= OVERFLOW_THRESHOLD) {
+          return;
+        }
+        if (name == null) {
+          isFileNameMissing = true;
+        } else {
+          changes.add(toChange(fileSystem, name, isNew, exists, type));
+        }
+        name = null;
+        isNew = false;
+        exists = true;
+        type = null;
+      }
+    }
+  }
+
+  /**
+   * Parses a file reported by Watchman.
+   *
+   * @return the change, or {@code null} if Watchman did not report the file name.
+   */
+  @Nullable
+  static WatchmanMultiplePathEvent.Change parseChange(
+      FileSystem fileSystem, Map<String, Object> file) {
+    String fileName = (String) file.get("name");
+    if (fileName == null) {
+      return null;
+    }
+    Boolean fileNew = (Boolean) file.get("new");
+    Boolean fileExists = (Boolean) file.get("exists");
+    return toChange(
+        fileSystem,
+        fileName,
+        fileNew != null && fileNew,
+        fileExists == null || fileExists,
+        (String) file.get("type"));
+  }
+
+  private static WatchmanMultiplePathEvent.Change toChange(
+      FileSystem fileSystem,
+      String fileName,
+      boolean fileNew,
+      boolean fileExists,
+      @Nullable String stype) {
+    WatchmanEvent.Kind kind = WatchmanEvent.Kind.MODIFY;
+    if (fileNew) {
+      kind = WatchmanEvent.Kind.CREATE;
+    }
+    if (!fileExists) {
+      kind = WatchmanEvent.Kind.DELETE;
+    }
+
+    // Following legacy behavior, everything we get from Watchman is interpreted as file
+    // changes unless explicitly specified with `type` field
+    WatchmanEvent.Type type = Type.FILE;
+    if (stype != null) {
+      switch (stype) {
+        case "d":
+          type = Type.DIRECTORY;
+          break;
+        case "l":
+          type = Type.SYMLINK;
+          break;
+      }
+    }
+
+    return ImmutableChange.of(type, RelPath.of(fileSystem.getPath(fileName)).getPath(), kind);
+  }
+
+  /**
+   * Posts the changes accumulated by the subscription to {@code cellPath}, if there is one, and
+   * moves the cursor past them, so that the {@code since} query which follows only has to return
+   * the changes Watchman has not notified the subscription of yet.
+   */
+  private void postSubscribedEvents(
+      BuckEventBus buckEventBus,
+      AbsPath cellPath,
+      WatchmanCursor cursor,
+      AtomicBoolean filesHaveChanged) {
+    WatchmanSubscription subscription =
+        subscriptions.map(subscriptionsByCell -> subscriptionsByCell.get(cellPath)).orElse(null);
+    if (subscription == null) {
+      return;
+    }
+    WatchmanSubscription.Changes changes = subscription.drain();
+    LOG.debug("Watchman subscription indicated %d changes", changes.getChanges().size());
+    if (changes.getOverflowReason().isPresent()) {
+      postWatchEvent(
+          buckEventBus,
+          ImmutableWatchmanOverflowEvent.of(cellPath, changes.getOverflowReason().get()));
+      filesHaveChanged.set(true);
+    } else if (!changes.getChanges().isEmpty()) {
+      postChanges(buckEventBus, cellPath, changes.getChanges());
+      filesHaveChanged.set(true);
+    }
+    LOG.debug("Updating Watchman Cursor from %s to %s", cursor.get(), changes.getClock());
+    cursor.set(changes.getClock());
+  }
+
+  /**
+   * Makes sure a live subscription to {@code cellPath} exists if subscriptions are enabled. Only
+   * clock cursors can be shared between queries and subscriptions, so named cursors never use
+   * them.
+   */
+  private void subscribe(AbsPath cellPath, WatchmanQuery query, WatchmanCursor cursor)
+      throws InterruptedException {
+    if (!subscriptions.isPresent() || !cursor.get().startsWith("c:")) {
+      return;
+    }
+    ConcurrentMap<AbsPath, WatchmanSubscription> subscriptionsByCell = subscriptions.get();
+    WatchmanSubscription existing = subscriptionsByCell.get(cellPath);
+    if (existing != null) {
+      if (existing.isAlive()) {
+        return;
+      }
+      subscriptionsByCell.remove(cellPath);
+      closeQuietly(existing);
+    }
+
+    WatchmanClient client = null;
+    try {
+      client = watchmanClientFactory.newInstance();
+      subscriptionsByCell.put(
+          cellPath,
+          WatchmanSubscription.subscribe(
+              client,
+              cellPath,
+              query,
+              cursor.get(),
+              OVERFLOW_THRESHOLD,
+              TimeUnit.MILLISECONDS.toNanos(timeoutMillis)));
+    } catch (IOException | WatchmanWatcherException e) {
+      LOG.warn(e, "Could not subscribe to changes in %s, only querying for them.", cellPath);
+      if (client != null) {
+        closeQuietly(client);
+      }
+    }
+  }
+
+  private static void closeQuietly(AutoCloseable closeable) {
+    try {
+      closeable.close();
+    } catch (Exception e) {
+      LOG.warn(e, "Failed to close %s", closeable);
+    }
+  }
+
+  /** Posts {@code changes} as one batch, along with the matching status events. */
+  private void postChanges(
+      BuckEventBus buckEventBus,
+      AbsPath cellPath,
+      List<WatchmanMultiplePathEvent.Change> changes) {
+    postWatchEvent(buckEventBus, ImmutableWatchmanMultiplePathEvent.of(cellPath, changes));
+
+    for (WatchmanMultiplePathEvent.Change change : changes) {
+      if (change.getType() == WatchmanEvent.Type.DIRECTORY
+          || change.getKind() == WatchmanEvent.Kind.MODIFY) {
+        continue;
+      }
+      String description =
+          ImmutableWatchmanPathEvent.of(cellPath, change.getKind(), RelPath.of(change.getPath()))
+              .toString();
+      buckEventBus.post(
+          change.getKind() == WatchmanEvent.Kind.CREATE
+              ? WatchmanStatusEvent.fileCreation(description)
+              : WatchmanStatusEvent.fileDeletion(description));
+    }
+  }
+
   private void postWatchEvent(BuckEventBus eventBus, WatchmanEvent event) {
     LOG.debug("Posting WatchEvent: %s", event);
     fileChangeEventBus.post(event);
@@ -454,20 +713,6 @@ public class WatchmanWatcher {
       eventBus.post(
           WatchmanStatusEvent.overflow(
               overflowEvent.getReason(), overflowEvent.getCellPath().getPath()));
-    } else if (event instanceof WatchmanPathEvent) {
-      WatchmanPathEvent pathEvent = (WatchmanPathEvent) event;
-      switch (pathEvent.getKind()) {
-        case CREATE:
-          eventBus.post(WatchmanStatusEvent.fileCreation(pathEvent.toString()));
-          return;
-        case DELETE:
-          eventBus.post(WatchmanStatusEvent.fileDeletion(pathEvent.toString()));
-          return;
-        case MODIFY:
-          // No analog for this event.
-          return;
-      }
-      throw new IllegalStateException("Unhandled case: " + pathEvent.getKind());
     }
   }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
+import com.facebook.buck.jvm.java.abi.AbiGenerationMode;
+import com.facebook.buck.jvm.java.abi.source.api.SourceOnlyAbiRuleInfoFactory;
+import com.facebook.buck.jvm.java.javacd.JavacDaemon;
+import com.facebook.buck.jvm.java.javacd.JavacDaemonClient;
+import com.facebook.buck.util.env.BuckClasspath;
+import com.google.common.base.Joiner;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+/**
+ * The JDK's javac, run in a long-lived {@link JavacDaemon} rather than in Buck's own heap.
+ *
+ * <p>Generating ABI jars, tracking class usage and tracing javac phases all need hooks into an
+ * in-process compiler, so invocations that ask for any of those run in-process as usual.
+ */
+public class DaemonJavac extends JdkProvidedInMemoryJavac {
+
+  @Override
+  public Invocation newBuildInvocation(
+      JavacExecutionContext context,
+      SourcePathResolverAdapter resolver,
+      BuildTarget invokingRule,
+      ImmutableList<String> options,
+      ImmutableList<JavacPluginJsr199Fields> annotationProcessors,
+      ImmutableList<JavacPluginJsr199Fields> javacPlugins,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path pathToSrcsList,
+      Path workingDirectory,
+      boolean trackClassUsage,
+      boolean trackJavacPhaseEvents,
+      @Nullable JarParameters abiJarParameters,
+      @Nullable JarParameters libraryJarParameters,
+      AbiGenerationMode abiGenerationMode,
+      AbiGenerationMode abiCompatibilityMode,
+      @Nullable SourceOnlyAbiRuleInfoFactory ruleInfoFactory) {
+    if (abiJarParameters != null
+        || libraryJarParameters != null
+        || abiGenerationMode != AbiGenerationMode.CLASS
+        || trackClassUsage
+        || trackJavacPhaseEvents) {
+      return super.newBuildInvocation(
+          context,
+          resolver,
+          invokingRule,
+          options,
+          annotationProcessors,
+          javacPlugins,
+          javaSourceFilePaths,
+          pathToSrcsList,
+          workingDirectory,
+          trackClassUsage,
+          trackJavacPhaseEvents,
+          abiJarParameters,
+          libraryJarParameters,
+          abiGenerationMode,
+          abiCompatibilityMode,
+          ruleInfoFactory);
+    }
+
+    return new Invocation() {
+      @Override
+      public int buildSourceOnlyAbiJar() {
+        throw new UnsupportedOperationException(
+            "Cannot build source-only ABI jar with the javac daemon.");
+      }
+
+      @Override
+      public int buildSourceAbiJar() {
+        throw new UnsupportedOperationException(
+            "Cannot build source ABI jar with the javac daemon.");
+      }
+
+      @Override
+      public int buildClasses() throws InterruptedException {
+        ImmutableList<Path> expandedSources;
+        try {
+          expandedSources =
+              JavaPaths.extractArchivesAndGetPaths(
+                  context.getProjectFilesystem(),
+                  context.getProjectFilesystemFactory(),
+                  javaSourceFilePaths,
+                  workingDirectory);
+        } catch (IOException e) {
+          throw new HumanReadableException(
+              "Unable to expand sources for %s into %s", invokingRule, workingDirectory);
+        }
+
+        // Same as ExternalJavac: having nothing to compile is not an error.
+        if (expandedSources.isEmpty()) {
+          return 0;
+        }
+
+        try {
+          // Keep the list of compiled files around for debugging, like the in-process javac does.
+          context
+              .getProjectFilesystem()
+              .writeLinesToPath(
+                  FluentIterable.from(expandedSources)
+                      .transform(Object::toString)
+                      .transform(ARGFILES_ESCAPER::apply),
+                  pathToSrcsList);
+
+          JavacDaemonClient client =
+              JavacDaemonClient.getOrLaunch(
+                  context.getProjectFilesystem().getRootPath().getPath(), getLaunchCommand());
+          // Like AnnotationProcessorFactory, only share class loaders between rules if every
+          // plugin allows it.
+          boolean reuseProcessorClassLoaders =
+              Stream.concat(annotationProcessors.stream(), javacPlugins.stream())
+                  .allMatch(JavacPluginJsr199Fields::getCanReuseClassLoader);
+          JavacDaemonClient.Result result =
+              client.compile(
+                  options,
+                  expandedSources.stream()
+                      .map(Object::toString)
+                      .collect(ImmutableList.toImmutableList()),
+                  reuseProcessorClassLoaders);
+          context.getStdErr().print(result.getOutput());
+          return result.getExitCode();
+        } catch (IOException e) {
+          context
+              .getEventSink()
+              .reportThrowable(e, "Unable to compile %s with the javac daemon.", invokingRule);
+          return 1;
+        }
+      }
+
+      @Override
+      public void close() {
+        // Nothing to do
+      }
+    };
+  }
+
+  private static ImmutableList<String> getLaunchCommand() throws IOException {
+    Path java =
+        Paths.get(Objects.requireNonNull(System.getProperty("java.home")), "bin", "java");
+    return ImmutableList.of(
+        java.toString(),
+        "-cp",
+        Joiner.on(File.pathSeparator).join(BuckClasspath.getClasspath()),
+        JavacDaemon.class.getName());
+  }
+}
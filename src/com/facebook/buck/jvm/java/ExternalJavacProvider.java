@@ -76,7 +76,8 @@ public class ExternalJavacProvider implements JavacProvider {
         Preconditions.checkState(spec.getJavacJarPath().isPresent());
         return new JarBackedJavacProvider(spec.getJavacJarPath().get(), compilerClassName);
       case JDK:
-        return new ConstantJavacProvider(new JdkProvidedInMemoryJavac());
+        return new ConstantJavacProvider(
+            spec.isJavacDaemonEnabled() ? new DaemonJavac() : new JdkProvidedInMemoryJavac());
     }
     throw new AssertionError("Unknown javac source: " + javacSource);
   }
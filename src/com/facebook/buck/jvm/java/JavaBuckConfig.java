@@ -69,6 +69,7 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
                 .setJavacPath(getJavacPath(targetConfiguration))
                 .setJavacJarPath(getJavacJarPath(targetConfiguration))
                 .setCompilerClassName(delegate.getValue("tools", "compiler_class_name"))
+                .setJavacDaemonEnabled(isJavacDaemonEnabled())
                 .build();
   }
 
@@ -167,10 +168,19 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
       return false;
     }
 
-    Javac.Source javacSource = getJavacSpec(targetConfiguration).getJavacSource();
+    JavacSpec javacSpec = getJavacSpec(targetConfiguration);
+    Javac.Source javacSource = javacSpec.getJavacSource();
+    if (javacSource == Javac.Source.JDK && javacSpec.isJavacDaemonEnabled()) {
+      // Class usage is tracked through hooks into an in-process compiler.
+      return false;
+    }
     return (javacSource == Javac.Source.JAR || javacSource == Javac.Source.JDK);
   }
 
+  public boolean isJavacDaemonEnabled() {
+    return delegate.getBooleanValue(SECTION, "javac_daemon", false);
+  }
+
   public boolean shouldDesugarInterfaceMethods() {
     return delegate.getBoolean(SECTION, "desugar_interface_methods").orElse(false);
   }
@@ -30,6 +30,12 @@ public abstract class JavacSpec {
 
   public abstract Optional<String> getCompilerClassName();
 
+  /** Whether the JDK's javac should run in a long-lived daemon rather than in Buck's process. */
+  @Value.Default
+  public boolean isJavacDaemonEnabled() {
+    return false;
+  }
+
   @Value.Lazy
   public JavacProvider getJavacProvider() {
     return ExternalJavacProvider.getProviderForSpec(this);
@@ -0,0 +1,486 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.javacd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Runs javac while keeping file managers and annotation processor class loaders alive between
+ * compilations.
+ *
+ * <p>javac's standard file manager caches the index of every jar it opens. Reusing a file manager
+ * therefore avoids re-reading the central directory of every classpath jar for every rule, which
+ * dominates the cost of compiling small libraries against large classpaths. A file manager only
+ * reads path options the first time it is used, so the options that configure locations are
+ * applied with {@link StandardJavaFileManager#setLocation} before each compilation instead of
+ * being handed to javac. A file manager is reused for compilations whose remaining options match
+ * the ones it was created with, and it is dropped as soon as one of the jars it may have cached
+ * changes on disk.
+ *
+ * <p>Annotation processor class loaders are shared the same way, but only for compilations whose
+ * plugins all allow it: processors that keep static state get a fresh loader every time, as they
+ * do in-process. The least recently used shared loaders are closed once there are too many of them
+ * and no running compilation uses them anymore.
+ */
+final class CachingJavacCompiler {
+
+  /** Options that configure a location, and the location they configure. */
+  private static final Map<String, StandardLocation> LOCATION_OPTIONS = new HashMap<>();
+
+  static {
+    LOCATION_OPTIONS.put("-d", StandardLocation.CLASS_OUTPUT);
+    LOCATION_OPTIONS.put("-s", StandardLocation.SOURCE_OUTPUT);
+    LOCATION_OPTIONS.put("-h", StandardLocation.NATIVE_HEADER_OUTPUT);
+    LOCATION_OPTIONS.put("-cp", StandardLocation.CLASS_PATH);
+    LOCATION_OPTIONS.put("-classpath", StandardLocation.CLASS_PATH);
+    LOCATION_OPTIONS.put("--class-path", StandardLocation.CLASS_PATH);
+    LOCATION_OPTIONS.put("-sourcepath", StandardLocation.SOURCE_PATH);
+    LOCATION_OPTIONS.put("--source-path", StandardLocation.SOURCE_PATH);
+    LOCATION_OPTIONS.put("-bootclasspath", StandardLocation.PLATFORM_CLASS_PATH);
+    LOCATION_OPTIONS.put("--boot-class-path", StandardLocation.PLATFORM_CLASS_PATH);
+    LOCATION_OPTIONS.put("-processorpath", StandardLocation.ANNOTATION_PROCESSOR_PATH);
+    LOCATION_OPTIONS.put("--processor-path", StandardLocation.ANNOTATION_PROCESSOR_PATH);
+  }
+
+  private static final StandardLocation[] MANAGED_LOCATIONS = {
+    StandardLocation.CLASS_OUTPUT,
+    StandardLocation.SOURCE_OUTPUT,
+    StandardLocation.NATIVE_HEADER_OUTPUT,
+    StandardLocation.CLASS_PATH,
+    StandardLocation.SOURCE_PATH,
+    StandardLocation.PLATFORM_CLASS_PATH,
+    StandardLocation.ANNOTATION_PROCESSOR_PATH,
+  };
+
+  /** Locations whose jars javac may open and cache. */
+  private static final StandardLocation[] CACHED_LOCATIONS = {
+    StandardLocation.CLASS_PATH,
+    StandardLocation.PLATFORM_CLASS_PATH,
+    StandardLocation.ANNOTATION_PROCESSOR_PATH,
+  };
+
+  /**
+   * Options that affect locations in ways {@link #MANAGED_LOCATIONS} cannot express. Compilations
+   * using them get a fresh file manager.
+   */
+  private static final Set<String> UNCACHEABLE_OPTIONS =
+      new HashSet<>(
+          Arrays.asList(
+              "-extdirs",
+              "-endorseddirs",
+              "--release",
+              "--system",
+              "-p",
+              "--module-path",
+              "--upgrade-module-path",
+              "--processor-module-path",
+              "--module-source-path"));
+
+  private final JavaCompiler compiler;
+  private final int maxIdleFileManagers;
+  private final int maxProcessorClassLoaders;
+
+  /** Idle file managers, most recently used first. Guarded by {@code this}. */
+  private final Deque<CachedFileManager> idleFileManagers = new ArrayDeque<>();
+
+  /**
+   * Shared processor class loaders keyed by processor path, least recently used first. Guarded by
+   * itself.
+   */
+  private final LinkedHashMap<List<String>, SharedClassLoader> processorClassLoaders =
+      new LinkedHashMap<>(16, 0.75f, /* accessOrder */ true);
+
+  private final AtomicInteger fileManagersCreated = new AtomicInteger();
+  private final AtomicInteger processorClassLoadersCreated = new AtomicInteger();
+  private final AtomicInteger processorClassLoadersClosed = new AtomicInteger();
+
+  CachingJavacCompiler(
+      JavaCompiler compiler, int maxIdleFileManagers, int maxProcessorClassLoaders) {
+    this.compiler = compiler;
+    this.maxIdleFileManagers = maxIdleFileManagers;
+    this.maxProcessorClassLoaders = maxProcessorClassLoaders;
+  }
+
+  /**
+   * Compiles {@code sourceFiles} with {@code options}, writing diagnostics to {@code out}.
+   * Annotation processors are loaded with a shared class loader only if {@code
+   * reuseProcessorClassLoaders} is set.
+   *
+   * @return javac's exit code: 0 on success, 1 on compilation errors, 2 on invalid options and 4
+   *     if the compiler or an annotation processor crashed.
+   */
+  int compile(
+      List<String> options,
+      List<String> sourceFiles,
+      boolean reuseProcessorClassLoaders,
+      Writer out)
+      throws IOException {
+    ParsedOptions parsedOptions = ParsedOptions.parse(options);
+    if (parsedOptions == null) {
+      fileManagersCreated.incrementAndGet();
+      try (StandardJavaFileManager fileManager =
+          compiler.getStandardFileManager(null, null, null)) {
+        return runTask(fileManager, fileManager, options, sourceFiles, out);
+      }
+    }
+
+    Map<String, String> stamps = parsedOptions.getJarStamps();
+    CachedFileManager fileManager = borrowFileManager(parsedOptions.getCacheKey(), stamps);
+    fileManager.reuseProcessorClassLoaders = reuseProcessorClassLoaders;
+    try {
+      for (StandardLocation location : MANAGED_LOCATIONS) {
+        List<File> path = parsedOptions.locations.get(location);
+        if (path == null && location == StandardLocation.CLASS_PATH) {
+          // Don't fall back to the daemon's own CLASSPATH or working directory.
+          path = Collections.emptyList();
+        }
+        fileManager.standardFileManager.setLocation(location, path);
+      }
+    } catch (IOException e) {
+      // Thrown for output directories that do not exist, which javac reports as a usage error.
+      returnFileManager(fileManager);
+      out.write(e.getMessage());
+      out.write(System.lineSeparator());
+      return 2;
+    }
+
+    int exitCode = 4;
+    try {
+      exitCode =
+          runTask(
+              fileManager.standardFileManager,
+              fileManager.forwardingFileManager,
+              parsedOptions.otherOptions,
+              sourceFiles,
+              out);
+      return exitCode;
+    } finally {
+      fileManager.releaseProcessorClassLoaders();
+      if (exitCode == 4) {
+        // Whatever went wrong may have left the file manager in a bad state.
+        fileManager.standardFileManager.close();
+      } else {
+        returnFileManager(fileManager);
+      }
+    }
+  }
+
+  int getFileManagersCreated() {
+    return fileManagersCreated.get();
+  }
+
+  int getProcessorClassLoadersCreated() {
+    return processorClassLoadersCreated.get();
+  }
+
+  int getProcessorClassLoadersClosed() {
+    return processorClassLoadersClosed.get();
+  }
+
+  private int runTask(
+      StandardJavaFileManager standardFileManager,
+      JavaFileManager fileManager,
+      List<String> options,
+      List<String> sourceFiles,
+      Writer out)
+      throws IOException {
+    try {
+      Boolean success =
+          compiler
+              .getTask(
+                  out,
+                  fileManager,
+                  null,
+                  options,
+                  null,
+                  standardFileManager.getJavaFileObjectsFromStrings(sourceFiles))
+              .call();
+      return success ? 0 : 1;
+    } catch (IllegalArgumentException e) {
+      out.write(e.getMessage());
+      out.write(System.lineSeparator());
+      return 2;
+    } catch (RuntimeException e) {
+      PrintWriter printWriter = new PrintWriter(out);
+      e.printStackTrace(printWriter);
+      printWriter.flush();
+      return 4;
+    }
+  }
+
+  private CachedFileManager borrowFileManager(String key, Map<String, String> stamps)
+      throws IOException {
+    synchronized (this) {
+      Iterator<CachedFileManager> iterator = idleFileManagers.iterator();
+      while (iterator.hasNext()) {
+        CachedFileManager candidate = iterator.next();
+        if (!candidate.key.equals(key)) {
+          continue;
+        }
+        iterator.remove();
+        if (candidate.isUpToDate(stamps)) {
+          candidate.stamps.putAll(stamps);
+          return candidate;
+        }
+        candidate.standardFileManager.close();
+      }
+    }
+
+    fileManagersCreated.incrementAndGet();
+    CachedFileManager fileManager =
+        new CachedFileManager(key, compiler.getStandardFileManager(null, null, null));
+    fileManager.stamps.putAll(stamps);
+    return fileManager;
+  }
+
+  private void returnFileManager(CachedFileManager fileManager) throws IOException {
+    CachedFileManager evicted = null;
+    synchronized (this) {
+      idleFileManagers.addFirst(fileManager);
+      if (idleFileManagers.size() > maxIdleFileManagers) {
+        evicted = idleFileManagers.removeLast();
+      }
+    }
+    if (evicted != null) {
+      evicted.standardFileManager.close();
+    }
+  }
+
+  /**
+   * Returns the shared class loader for {@code processorPath}, which the caller must pass to {@link
+   * #releaseProcessorClassLoader} once its compilation is done.
+   */
+  private SharedClassLoader acquireProcessorClassLoader(Iterable<? extends File> processorPath) {
+    List<String> key = new ArrayList<>();
+    List<URL> urls = new ArrayList<>();
+    for (File file : processorPath) {
+      key.add(file.getAbsolutePath() + "@" + getStamp(file));
+      try {
+        urls.add(file.toURI().toURL());
+      } catch (MalformedURLException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    SharedClassLoader classLoader;
+    List<SharedClassLoader> evicted = new ArrayList<>();
+    synchronized (processorClassLoaders) {
+      classLoader = processorClassLoaders.get(key);
+      if (classLoader == null) {
+        processorClassLoadersCreated.incrementAndGet();
+        classLoader =
+            new SharedClassLoader(
+                new URLClassLoader(urls.toArray(new URL[0]), compiler.getClass().getClassLoader()));
+        processorClassLoaders.put(Collections.unmodifiableList(key), classLoader);
+      }
+      classLoader.users++;
+
+      Iterator<SharedClassLoader> iterator = processorClassLoaders.values().iterator();
+      while (processorClassLoaders.size() > maxProcessorClassLoaders && iterator.hasNext()) {
+        SharedClassLoader eldest = iterator.next();
+        if (eldest == classLoader) {
+          continue;
+        }
+        iterator.remove();
+        eldest.evicted = true;
+        // Loaders still in use are closed by the last compilation to release them.
+        if (eldest.users == 0) {
+          evicted.add(eldest);
+        }
+      }
+    }
+    for (SharedClassLoader loader : evicted) {
+      closeProcessorClassLoader(loader);
+    }
+    return classLoader;
+  }
+
+  private void releaseProcessorClassLoader(SharedClassLoader classLoader) {
+    boolean close;
+    synchronized (processorClassLoaders) {
+      classLoader.users--;
+      close = classLoader.evicted && classLoader.users == 0;
+    }
+    if (close) {
+      closeProcessorClassLoader(classLoader);
+    }
+  }
+
+  private void closeProcessorClassLoader(SharedClassLoader classLoader) {
+    try {
+      classLoader.classLoader.close();
+    } catch (IOException e) {
+      // Only leaks the loader's open jars, which is no worse than not closing it at all.
+      e.printStackTrace();
+    }
+    processorClassLoadersClosed.incrementAndGet();
+  }
+
+  private static String getStamp(File file) {
+    return file.lastModified() + ":" + file.length();
+  }
+
+  /** Javac options split into locations, which are applied directly, and everything else. */
+  private static class ParsedOptions {
+    private final Map<StandardLocation, List<File>> locations =
+        new EnumMap<>(StandardLocation.class);
+    private final List<String> otherOptions = new ArrayList<>();
+
+    /** Returns null if the options cannot be applied to a reused file manager. */
+    static ParsedOptions parse(List<String> options) {
+      ParsedOptions result = new ParsedOptions();
+      for (int i = 0; i < options.size(); i++) {
+        String option = options.get(i);
+        if (UNCACHEABLE_OPTIONS.contains(option)
+            || option.startsWith("-Xbootclasspath")
+            || (option.startsWith("--") && option.contains("="))) {
+          return null;
+        }
+
+        StandardLocation location = LOCATION_OPTIONS.get(option);
+        if (location == null || i + 1 == options.size()) {
+          result.otherOptions.add(option);
+          continue;
+        }
+
+        i++;
+        List<File> path = new ArrayList<>();
+        for (String entry : options.get(i).split(File.pathSeparator)) {
+          if (!entry.isEmpty()) {
+            path.add(new File(entry));
+          }
+        }
+        result.locations.put(location, path);
+      }
+      return result;
+    }
+
+    String getCacheKey() {
+      return String.join("\0", otherOptions);
+    }
+
+    /** Returns the stamps of the jars javac may open, keyed by absolute path. */
+    Map<String, String> getJarStamps() {
+      Map<String, String> stamps = new HashMap<>();
+      for (StandardLocation location : CACHED_LOCATIONS) {
+        for (File entry : locations.getOrDefault(location, Collections.emptyList())) {
+          File file = entry.getAbsoluteFile();
+          // javac only caches archives; directories are listed afresh by every compilation.
+          if (file.isFile()) {
+            stamps.put(file.getPath(), getStamp(file));
+          }
+        }
+      }
+      return stamps;
+    }
+  }
+
+  /** A processor class loader shared between compilations. */
+  private static class SharedClassLoader {
+    private final URLClassLoader classLoader;
+
+    /** Compilations currently using the loader. Guarded by {@code processorClassLoaders}. */
+    private int users;
+
+    /** Whether the loader was dropped from the cache. Guarded by {@code processorClassLoaders}. */
+    private boolean evicted;
+
+    SharedClassLoader(URLClassLoader classLoader) {
+      this.classLoader = classLoader;
+    }
+  }
+
+  private class CachedFileManager {
+    private final String key;
+    private final StandardJavaFileManager standardFileManager;
+    private final JavaFileManager forwardingFileManager;
+
+    /** Stamps of the jars this file manager may have opened, keyed by absolute path. */
+    private final Map<String, String> stamps = new HashMap<>();
+
+    /** Whether the compilation using this file manager may share processor class loaders. */
+    private boolean reuseProcessorClassLoaders;
+
+    /** Shared processor class loaders acquired by the compilation using this file manager. */
+    private final List<SharedClassLoader> borrowedClassLoaders = new ArrayList<>();
+
+    CachedFileManager(String key, StandardJavaFileManager standardFileManager) {
+      this.key = key;
+      this.standardFileManager = standardFileManager;
+      this.forwardingFileManager =
+          new ForwardingJavaFileManager<StandardJavaFileManager>(standardFileManager) {
+            @Override
+            public ClassLoader getClassLoader(Location location) {
+              Iterable<? extends File> path = standardFileManager.getLocation(location);
+              if (!reuseProcessorClassLoaders
+                  || location != StandardLocation.ANNOTATION_PROCESSOR_PATH
+                  || path == null
+                  || !path.iterator().hasNext()) {
+                return super.getClassLoader(location);
+              }
+              SharedClassLoader classLoader = acquireProcessorClassLoader(path);
+              borrowedClassLoaders.add(classLoader);
+              // javac closes the processor class loader once annotation processing is done. Hand
+              // it a loader that is not Closeable so the shared one survives.
+              return new ClassLoader(classLoader.classLoader) {};
+            }
+          };
+    }
+
+    void releaseProcessorClassLoaders() {
+      for (SharedClassLoader classLoader : borrowedClassLoaders) {
+        releaseProcessorClassLoader(classLoader);
+      }
+      borrowedClassLoaders.clear();
+    }
+
+    boolean isUpToDate(Map<String, String> currentStamps) {
+      for (Map.Entry<String, String> entry : currentStamps.entrySet()) {
+        String cachedStamp = stamps.get(entry.getKey());
+        if (cachedStamp != null && !cachedStamp.equals(entry.getValue())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
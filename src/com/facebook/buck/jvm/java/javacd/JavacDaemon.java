@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.javacd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * A long-lived javac process. Buck launches one per project root (see {@link JavacDaemonClient})
+ * so that compilations run outside of Buck's heap while still sharing parsed classpath jars and
+ * annotation processor class loaders between rules.
+ *
+ * <p>The daemon listens on an ephemeral loopback port, announces it and the file holding its secret
+ * token on stdout and exits as soon as its stdin is closed, which happens when the Buck process
+ * that launched it goes away. Connections that do not start with the token are dropped.
+ */
+public class JavacDaemon implements AutoCloseable {
+
+  private static final int MAX_IDLE_FILE_MANAGERS = 16;
+  private static final int MAX_PROCESSOR_CLASS_LOADERS = 64;
+
+  private final ServerSocket serverSocket;
+  private final byte[] token;
+  private final CachingJavacCompiler compiler;
+  private final ExecutorService executor =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "javacd");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  JavacDaemon(ServerSocket serverSocket, byte[] token, JavaCompiler compiler) {
+    this.serverSocket = serverSocket;
+    this.token = token.clone();
+    this.compiler =
+        new CachingJavacCompiler(compiler, MAX_IDLE_FILE_MANAGERS, MAX_PROCESSOR_CLASS_LOADERS);
+  }
+
+  public static void main(String[] args) throws IOException {
+    JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
+    if (javaCompiler == null) {
+      System.err.println("No system compiler found. Is javacd running on a JRE instead of a JDK?");
+      System.exit(1);
+    }
+
+    Thread parentWatcher = new Thread(() -> exitWhenClosed(System.in), "javacd-parent-watcher");
+    parentWatcher.setDaemon(true);
+    parentWatcher.start();
+
+    byte[] token = new byte[JavacDaemonProtocol.TOKEN_LENGTH];
+    new SecureRandom().nextBytes(token);
+    Path tokenFile = JavacDaemonProtocol.writeTokenFile(token);
+    // The client deletes the file once it has read it; this covers a client that died first.
+    tokenFile.toFile().deleteOnExit();
+
+    try (JavacDaemon daemon =
+        new JavacDaemon(
+            new ServerSocket(0, 50, InetAddress.getLoopbackAddress()), token, javaCompiler)) {
+      System.out.println(JavacDaemonProtocol.READY_PREFIX + daemon.getPort() + " " + tokenFile);
+      System.out.flush();
+      // Nobody reads our stdout past this point, so keep chatty annotation processors from filling
+      // up the pipe and blocking the daemon.
+      System.setOut(System.err);
+      daemon.serve();
+    }
+  }
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  CachingJavacCompiler getCompiler() {
+    return compiler;
+  }
+
+  /** Accepts connections until the server socket is closed. */
+  void serve() {
+    while (!serverSocket.isClosed()) {
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException e) {
+        if (serverSocket.isClosed()) {
+          return;
+        }
+        e.printStackTrace();
+        continue;
+      }
+      executor.execute(() -> handle(socket));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+
+  private void handle(Socket socket) {
+    try (Socket closeMe = socket;
+        DataInputStream in =
+            new DataInputStream(new BufferedInputStream(closeMe.getInputStream()));
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(closeMe.getOutputStream()))) {
+      if (!JavacDaemonProtocol.readAndCheckToken(in, token)) {
+        System.err.println("javacd: dropping connection with an invalid token");
+        return;
+      }
+      boolean reuseProcessorClassLoaders = in.readBoolean();
+      List<String> options = JavacDaemonProtocol.readStrings(in);
+      List<String> sourceFiles = JavacDaemonProtocol.readStrings(in);
+
+      StringWriter output = new StringWriter();
+      int exitCode = compiler.compile(options, sourceFiles, reuseProcessorClassLoaders, output);
+      JavacDaemonProtocol.writeResponse(out, exitCode, output.toString());
+    } catch (IOException e) {
+      // The client went away; there is nobody left to report this to but our own stderr.
+      e.printStackTrace();
+    }
+  }
+
+  private static void exitWhenClosed(InputStream parent) {
+    byte[] buffer = new byte[1024];
+    try {
+      while (parent.read(buffer) != -1) {
+        // Nothing is ever sent on stdin; we only care about it being closed.
+      }
+    } catch (IOException e) {
+      // Treat a broken pipe the same way as a closed one.
+    }
+    System.exit(0);
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.javacd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Launches {@link JavacDaemon} processes and sends compilations to them. */
+public class JavacDaemonClient implements AutoCloseable {
+
+  /**
+   * Running daemons, keyed by the directory relative paths in javac options resolve against.
+   * Clients are removed as soon as their daemon exits.
+   */
+  private static final Map<Path, JavacDaemonClient> CLIENTS = new HashMap<>();
+
+  private final Process process;
+  private final int port;
+  private final byte[] token;
+
+  private JavacDaemonClient(Process process, int port, byte[] token) {
+    this.process = process;
+    this.port = port;
+    this.token = token;
+  }
+
+  /**
+   * Returns the daemon running in {@code workingDirectory}, launching it with {@code
+   * launchCommand} if there is none or if the previous one died.
+   */
+  public static synchronized JavacDaemonClient getOrLaunch(
+      Path workingDirectory, List<String> launchCommand) throws IOException {
+    JavacDaemonClient client = CLIENTS.get(workingDirectory);
+    if (client == null || !client.isAlive()) {
+      client = launch(workingDirectory, launchCommand);
+      CLIENTS.put(workingDirectory, client);
+      forgetWhenExited(workingDirectory, client);
+    }
+    return client;
+  }
+
+  /** Drops {@code client} from {@link #CLIENTS} once its daemon exits, for whatever reason. */
+  private static void forgetWhenExited(Path workingDirectory, JavacDaemonClient client) {
+    Thread reaper =
+        new Thread(
+            () -> {
+              try {
+                client.process.waitFor();
+              } catch (InterruptedException e) {
+                client.close();
+              }
+              forget(workingDirectory, client);
+            },
+            "javacd-reaper");
+    reaper.setDaemon(true);
+    reaper.start();
+  }
+
+  private static synchronized void forget(Path workingDirectory, JavacDaemonClient client) {
+    CLIENTS.remove(workingDirectory, client);
+  }
+
+  /** Launches a new daemon and waits until it is ready to accept compilations. */
+  static JavacDaemonClient launch(Path workingDirectory, List<String> launchCommand)
+      throws IOException {
+    Process process =
+        new ProcessBuilder(launchCommand)
+            .directory(workingDirectory.toFile())
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    // Do not close the reader: that would close the daemon's stdout.
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    String line = reader.readLine();
+    if (line == null || !line.startsWith(JavacDaemonProtocol.READY_PREFIX)) {
+      process.destroy();
+      throw new IOException(
+          String.format("javacd failed to start, %s printed: %s", launchCommand, line));
+    }
+    String[] portAndTokenFile =
+        line.substring(JavacDaemonProtocol.READY_PREFIX.length()).split(" ", 2);
+    byte[] token;
+    try {
+      Path tokenFile = Paths.get(portAndTokenFile[1]);
+      token = Files.readAllBytes(tokenFile);
+      Files.delete(tokenFile);
+    } catch (IOException | RuntimeException e) {
+      process.destroy();
+      throw new IOException(
+          String.format("javacd did not provide a readable token, it printed: %s", line), e);
+    }
+    if (token.length != JavacDaemonProtocol.TOKEN_LENGTH) {
+      process.destroy();
+      throw new IOException(String.format("javacd token has unexpected length %d", token.length));
+    }
+    return new JavacDaemonClient(process, Integer.parseInt(portAndTokenFile[0]), token);
+  }
+
+  public boolean isAlive() {
+    return process.isAlive();
+  }
+
+  /**
+   * Compiles {@code sourceFiles} in the daemon and waits for the result. Annotation processors are
+   * loaded with class loaders shared with other compilations only if {@code
+   * reuseProcessorClassLoaders} is set. The daemon is stopped if the connection fails, so that the
+   * next compilation starts a fresh one.
+   */
+  public Result compile(
+      List<String> options, List<String> sourceFiles, boolean reuseProcessorClassLoaders)
+      throws IOException {
+    try {
+      return send(options, sourceFiles, reuseProcessorClassLoaders);
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  private Result send(
+      List<String> options, List<String> sourceFiles, boolean reuseProcessorClassLoaders)
+      throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in =
+            new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+      JavacDaemonProtocol.writeRequest(
+          out, token, reuseProcessorClassLoaders, options, sourceFiles);
+      int exitCode = in.readInt();
+      String output = JavacDaemonProtocol.readString(in);
+      return new Result(exitCode, output);
+    }
+  }
+
+  /** Stops the daemon. */
+  @Override
+  public void close() {
+    try {
+      // Closing its stdin makes the daemon exit cleanly.
+      process.getOutputStream().close();
+    } catch (IOException e) {
+      // Destroying the process below is enough.
+    }
+    process.destroy();
+  }
+
+  /** Outcome of a compilation run by the daemon. */
+  public static class Result {
+    private final int exitCode;
+    private final String output;
+
+    Result(int exitCode, String output) {
+      this.exitCode = exitCode;
+      this.output = output;
+    }
+
+    public int getExitCode() {
+      return exitCode;
+    }
+
+    /** Everything javac printed, including diagnostics. */
+    public String getOutput() {
+      return output;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.javacd;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format shared by {@link JavacDaemon} and {@link JavacDaemonClient}.
+ *
+ * <p>Each connection carries exactly one compilation. The request starts with the daemon's secret
+ * token, followed by whether annotation processor class loaders may be shared with other
+ * compilations, the list of javac options and the list of source files; the response is
+ * javac's exit code followed by everything the compiler printed. The token is generated at launch
+ * and handed to the client through a file only the current user can read, so that other local
+ * users cannot make the daemon run arbitrary annotation processors on their behalf.
+ *
+ * <p>Strings are written as a length-prefixed UTF-8 byte array because classpaths routinely exceed
+ * the 64K limit of {@link DataOutputStream#writeUTF}.
+ */
+final class JavacDaemonProtocol {
+
+  /**
+   * Printed by the daemon on its stdout, followed by the port it listens on, a space and the path
+   * of the file holding its token.
+   */
+  static final String READY_PREFIX = "javacd listening on port ";
+
+  static final int TOKEN_LENGTH = 32;
+
+  private static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+
+  private JavacDaemonProtocol() {}
+
+  static void writeRequest(
+      DataOutputStream out,
+      byte[] token,
+      boolean reuseProcessorClassLoaders,
+      List<String> options,
+      List<String> sourceFiles)
+      throws IOException {
+    out.write(token);
+    out.writeBoolean(reuseProcessorClassLoaders);
+    writeStrings(out, options);
+    writeStrings(out, sourceFiles);
+    out.flush();
+  }
+
+  static void writeResponse(DataOutputStream out, int exitCode, String output) throws IOException {
+    out.writeInt(exitCode);
+    writeString(out, output);
+    out.flush();
+  }
+
+  /** Reads the token that starts a request and checks it in constant time. */
+  static boolean readAndCheckToken(DataInputStream in, byte[] expected) throws IOException {
+    byte[] token = new byte[TOKEN_LENGTH];
+    in.readFully(token);
+    return MessageDigest.isEqual(token, expected);
+  }
+
+  /** Writes {@code token} to a new file that only the current user can read. */
+  static Path writeTokenFile(byte[] token) throws IOException {
+    Path file;
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      file =
+          Files.createTempFile(
+              "javacd",
+              ".token",
+              PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } else {
+      // The temporary directory is private to the user on platforms without POSIX permissions.
+      file = Files.createTempFile("javacd", ".token");
+    }
+    Files.write(file, token);
+    return file;
+  }
+
+  static List<String> readStrings(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException("Invalid string count: " + count);
+    }
+    List<String> strings = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      strings.add(readString(in));
+    }
+    return strings;
+  }
+
+  static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_STRING_LENGTH) {
+      throw new IOException("Invalid string length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> strings)
+      throws IOException {
+    out.writeInt(strings.size());
+    for (String string : strings) {
+      writeString(out, string);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+}
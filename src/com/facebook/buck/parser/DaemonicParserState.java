@@ -33,7 +33,10 @@ import com.facebook.buck.counters.IntegerCounter;
 import com.facebook.buck.counters.TagSetCounter;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ParsingEvent;
+import com.facebook.buck.io.file.MorePaths;
+import com.facebook.buck.io.watchman.WatchmanEvent;
 import com.facebook.buck.io.watchman.WatchmanEvent.Kind;
+import com.facebook.buck.io.watchman.WatchmanMultiplePathEvent;
 import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.parser.api.BuildFileManifest;
@@ -58,7 +61,10 @@ import com.google.common.collect.MapDifference;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -489,37 +495,49 @@ public class DaemonicParserState {
   public void invalidateBasedOn(WatchmanPathEvent event) {
     LOG.verbose("Parser watched event %s %s", event.getKind(), event.getPath());
 
-    filesChangedCounter.inc();
+    invalidateBasedOn(
+        event.getCellPath(),
+        ImmutableList.of(
+            WatchmanMultiplePathEvent.Change.of(
+                WatchmanEvent.Type.FILE, event.getPath().getPath(), event.getKind())));
+  }
 
-    RelPath path = event.getPath();
-    AbsPath fullPath = event.getCellPath().resolve(event.getPath());
+  /**
+   * Invalidates everything affected by a batch of changes in one pass. Changes are grouped by
+   * directory, since the packages which own a file are determined by its directory alone.
+   */
+  @Subscribe
+  public void invalidateBasedOn(WatchmanMultiplePathEvent event) {
+    LOG.verbose("Parser watched %d changes in %s", event.getChanges().size(), event.getCellPath());
+
+    invalidateBasedOn(event.getCellPath(), event.getChanges());
+  }
+
+  private void invalidateBasedOn(
+      AbsPath cellPath, ImmutableList<WatchmanMultiplePathEvent.Change> changes) {
+    filesChangedCounter.inc(changes.size());
 
     // We only care about creation and deletion events because modified should result in a
     // rule key change.  For parsing, these are the only events we need to care about.
-    if (isPathCreateOrDeleteEvent(event)) {
+    Map<RelPath, List<RelPath>> createdOrDeletedPathsByDirectory = new LinkedHashMap<>();
+    for (WatchmanMultiplePathEvent.Change change : changes) {
+      if (isCreateOrDelete(change.getKind())) {
+        RelPath path = RelPath.of(change.getPath());
+        RelPath directory =
+            change.getType() == WatchmanEvent.Type.DIRECTORY
+                ? path
+                : MorePaths.getParentOrEmpty(path);
+        createdOrDeletedPathsByDirectory
+            .computeIfAbsent(directory, ignored -> new ArrayList<>())
+            .add(path);
+      }
+    }
+
+    if (!createdOrDeletedPathsByDirectory.isEmpty()) {
       try (AutoCloseableLock readLock = cellStateLock.readLock()) {
         for (DaemonicCellState state : cellPathToDaemonicState.values()) {
           try {
-            Cell cell = state.getCell();
-            BuildFileTree buildFiles = buildFileTrees.get(cell);
-
-            if (fullPath.endsWith(cell.getBuckConfigView(ParserConfig.class).getBuildFileName())) {
-              LOG.debug(
-                  "Build file %s changed, invalidating build file tree for cell %s",
-                  fullPath, cell);
-              // If a build file has been added or removed, reconstruct the build file tree.
-              buildFileTrees.invalidate(cell);
-            }
-
-            // Added or removed files can affect globs, so invalidate the package build file
-            // "containing" {@code path} unless its filename matches a temp file pattern.
-            if (!cell.getFilesystem().isIgnored(path)) {
-              invalidateContainingBuildFile(state, cell, buildFiles, path);
-            } else {
-              LOG.debug(
-                  "Not invalidating the owning build file of %s because it is a temporary file.",
-                  fullPath);
-            }
+            invalidateContainingBuildFiles(state, cellPath, createdOrDeletedPathsByDirectory);
           } catch (ExecutionException | UncheckedExecutionException e) {
             try {
               Throwables.throwIfInstanceOf(e, BuildFileParseException.class);
@@ -533,13 +551,75 @@ public class DaemonicParserState {
       }
     }
 
-    if (configurationBuildFiles.contains(fullPath) || configurationRulesDependOn(path.getPath())) {
-      invalidateAllCaches();
-    } else {
+    for (WatchmanMultiplePathEvent.Change change : changes) {
+      Path path = change.getPath();
+      AbsPath fullPath = cellPath.resolve(path);
+      if (configurationBuildFiles.contains(fullPath) || configurationRulesDependOn(path)) {
+        // Everything is gone, there is no point in looking at the rest of the batch.
+        invalidateAllCaches();
+        return;
+      }
       invalidatePath(fullPath);
     }
   }
 
+  /**
+   * Invalidates the packages of {@code state}'s cell which own the created or deleted paths, given
+   * grouped by the directory used to look up their owners.
+   */
+  private void invalidateContainingBuildFiles(
+      DaemonicCellState state,
+      AbsPath cellPath,
+      Map<RelPath, List<RelPath>> createdOrDeletedPathsByDirectory)
+      throws ExecutionException {
+    Cell cell = state.getCell();
+    BuildFileTree buildFiles = buildFileTrees.get(cell);
+    String buildFileName = cell.getBuckConfigView(ParserConfig.class).getBuildFileName();
+
+    boolean buildFileTreeChanged = false;
+    Map<RelPath, List<RelPath>> notIgnoredPathsByDirectory = new LinkedHashMap<>();
+    for (Map.Entry<RelPath, List<RelPath>> entry : createdOrDeletedPathsByDirectory.entrySet()) {
+      List<RelPath> notIgnoredPaths = new ArrayList<>(entry.getValue().size());
+      for (RelPath path : entry.getValue()) {
+        AbsPath fullPath = cellPath.resolve(path);
+        if (fullPath.endsWith(buildFileName)) {
+          LOG.debug(
+              "Build file %s changed, invalidating build file tree for cell %s", fullPath, cell);
+          // If a build file has been added or removed, reconstruct the build file tree.
+          buildFileTrees.invalidate(cell);
+          buildFileTreeChanged = true;
+        }
+
+        // Added or removed files can affect globs, so invalidate the package build file
+        // "containing" {@code path} unless its filename matches a temp file pattern.
+        if (!cell.getFilesystem().isIgnored(path)) {
+          notIgnoredPaths.add(path);
+        } else {
+          LOG.debug(
+              "Not invalidating the owning build file of %s because it is a temporary file.",
+              fullPath);
+        }
+      }
+      if (!notIgnoredPaths.isEmpty()) {
+        notIgnoredPathsByDirectory.put(entry.getKey(), notIgnoredPaths);
+      }
+    }
+
+    for (Map.Entry<RelPath, List<RelPath>> entry : notIgnoredPathsByDirectory.entrySet()) {
+      invalidateContainingBuildFile(state, cell, buildFiles, entry.getKey(), entry.getValue());
+    }
+
+    // Owners were looked up in the tree as it was before the batch. If the batch added or removed
+    // build files, packages may have changed hands, so also invalidate the owners in the new tree.
+    if (buildFileTreeChanged) {
+      BuildFileTree newBuildFiles = buildFileTrees.get(cell);
+      for (Map.Entry<RelPath, List<RelPath>> entry : notIgnoredPathsByDirectory.entrySet()) {
+        invalidateContainingBuildFile(
+            state, cell, newBuildFiles, entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
   /**
    * Check whether at least one build file in {@link #configurationBuildFiles} depends on the given
    * file.
@@ -568,29 +648,40 @@ public class DaemonicParserState {
   }
 
   /**
-   * Finds the build file responsible for the given {@link Path} and invalidates all of the cached
-   * rules dependent on it.
+   * Finds the build files responsible for the given {@link Path}s and invalidates all of the cached
+   * rules dependent on them.
    *
-   * @param path A {@link Path}, relative to the project root and "contained" within the build file
+   * @param directory The directory, relative to the project root, containing {@code paths}, or the
+   *     path itself if it is a directory.
+   * @param paths {@link Path}s, relative to the project root and "contained" within the build file
    *     to find and invalidate.
    */
   private void invalidateContainingBuildFile(
-      DaemonicCellState state, Cell cell, BuildFileTree buildFiles, RelPath path) {
-    LOG.verbose("Invalidating rules dependent on change to %s in cell %s", path, cell);
+      DaemonicCellState state,
+      Cell cell,
+      BuildFileTree buildFiles,
+      RelPath directory,
+      List<RelPath> paths) {
+    LOG.verbose("Invalidating rules dependent on change to %s in cell %s", paths, cell);
     Set<RelPath> packageBuildFiles = new HashSet<>();
 
-    // Find the closest ancestor package for the input path.  We'll definitely need to invalidate
+    // Find the closest ancestor package for the input paths.  We'll definitely need to invalidate
     // that.
-    Optional<RelPath> packageBuildFile = buildFiles.getBasePathOfAncestorTarget(path);
+    Optional<RelPath> packageBuildFile = buildFiles.getBasePathOfAncestorTarget(directory);
     if (packageBuildFile.isPresent()) {
       packageBuildFiles.add(packageBuildFile.get());
     }
 
     // If we're *not* enforcing package boundary checks, it's possible for multiple ancestor
     // packages to reference the same file
-    if (cell.getBuckConfigView(ParserConfig.class)
-            .getPackageBoundaryEnforcementPolicy(path.getPath())
-        != ParserConfig.PackageBoundaryEnforcement.ENFORCE) {
+    boolean enforced = true;
+    for (RelPath path : paths) {
+      enforced &=
+          cell.getBuckConfigView(ParserConfig.class)
+                  .getPackageBoundaryEnforcementPolicy(path.getPath())
+              == ParserConfig.PackageBoundaryEnforcement.ENFORCE;
+    }
+    if (!enforced) {
       while (packageBuildFile.isPresent() && packageBuildFile.get().getParent() != null) {
         packageBuildFile =
             buildFiles.getBasePathOfAncestorTarget(packageBuildFile.get().getParent());
@@ -601,12 +692,14 @@ public class DaemonicParserState {
     }
 
     if (packageBuildFiles.isEmpty()) {
-      LOG.debug("%s is not owned by any build file.  Not invalidating anything.", path);
+      LOG.debug("%s is not owned by any build file.  Not invalidating anything.", paths);
       return;
     }
 
     buildFilesInvalidatedByFileAddOrRemoveCounter.inc(packageBuildFiles.size());
-    pathsAddedOrRemovedInvalidatingBuildFiles.add(path.toString());
+    for (RelPath path : paths) {
+      pathsAddedOrRemovedInvalidatingBuildFiles.add(path.toString());
+    }
 
     // Invalidate all the packages we found.
     for (RelPath buildFile : packageBuildFiles) {
@@ -635,7 +728,11 @@ public class DaemonicParserState {
   }
 
   public static boolean isPathCreateOrDeleteEvent(WatchmanPathEvent event) {
-    return event.getKind() == Kind.CREATE || event.getKind() == Kind.DELETE;
+    return isCreateOrDelete(event.getKind());
+  }
+
+  private static boolean isCreateOrDelete(Kind kind) {
+    return kind == Kind.CREATE || kind == Kind.DELETE;
   }
 
   private boolean invalidateIfBuckConfigOrEnvHasChanged(
@@ -190,6 +190,15 @@ public abstract class ParserConfig implements ConfigView<BuckConfig> {
     return getDelegate().getBooleanValue("project", "watch_cells", true);
   }
 
+  /**
+   * @return whether the daemon should keep a Watchman subscription per cell, which streams changes
+   *     in between commands, rather than only querying for them when a command starts.
+   */
+  @Value.Lazy
+  public boolean getWatchmanSubscription() {
+    return getDelegate().getBooleanValue("project", "watchman_subscription", false);
+  }
+
   @Value.Lazy
   public WatchmanWatcher.CursorType getWatchmanCursor() {
     return getDelegate()
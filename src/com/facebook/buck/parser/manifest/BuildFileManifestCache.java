@@ -22,6 +22,7 @@ import com.facebook.buck.event.FileHashCacheEvent;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystemView;
 import com.facebook.buck.io.watchman.WatchmanEvent.Kind;
+import com.facebook.buck.io.watchman.WatchmanMultiplePathEvent;
 import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.parser.api.BuildFileManifest;
@@ -155,14 +156,24 @@ public class BuildFileManifestCache
     /** Invoked asynchronously by event bus when file system change is detected with Watchman */
     @Subscribe
     public void onFileSystemChange(WatchmanPathEvent event) {
+      onFileSystemChange(event.getCellPath().getPath(), event.getKind(), event.getPath());
+    }
+
+    /** Invoked by event bus with all the changes Watchman detected in a cell at once */
+    @Subscribe
+    public void onFileSystemChange(WatchmanMultiplePathEvent event) {
+      for (WatchmanMultiplePathEvent.Change change : event.getChanges()) {
+        onFileSystemChange(
+            event.getCellPath().getPath(), change.getKind(), RelPath.of(change.getPath()));
+      }
+    }
 
+    private void onFileSystemChange(Path cellPath, Kind kind, RelPath path) {
       // If dependency file is modified or deleted, invalidate packages that depend on it
       // Dependent files may come from different cells
-      if (event.getKind() == Kind.MODIFY || event.getKind() == Kind.DELETE) {
-        RelPath eventPath = event.getPath();
-
+      if (kind == Kind.MODIFY || kind == Kind.DELETE) {
         // Convert any path to be relative to super root, because that's how we store dependencies
-        Path relativeToSuperRootPath = rootToSuperRootRelativePath.resolve(eventPath.getPath());
+        Path relativeToSuperRootPath = rootToSuperRootRelativePath.resolve(path.getPath());
         invalidateDependencies(relativeToSuperRootPath);
 
         // We do not stop here and can also potentially invalidate the package that has, but does
@@ -171,14 +182,14 @@ public class BuildFileManifestCache
       }
 
       // other changes are only applicable to current cell
-      if (!rootPath.equals(event.getCellPath().getPath())) {
+      if (!rootPath.equals(cellPath)) {
         return;
       }
 
       // Build file was altered
-      if (event.getPath().endsWith(buildFileName)) {
-        RelPath packagePath = MorePaths.getParentOrEmpty(event.getPath());
-        switch (event.getKind()) {
+      if (path.endsWith(buildFileName)) {
+        RelPath packagePath = MorePaths.getParentOrEmpty(path);
+        switch (kind) {
           case MODIFY:
             // If build file is modified, just invalidate containing package
             invalidatePackage(packagePath.getPath());
@@ -192,25 +203,25 @@ public class BuildFileManifestCache
             invalidateContainingPackage(MorePaths.getParentOrEmpty(packagePath).getPath());
             break;
           default:
-            throw new UnsupportedOperationException(event.getKind().getClass().getName());
+            throw new UnsupportedOperationException(kind.getClass().getName());
         }
         return;
       }
 
       // some other regular file was altered
-      switch (event.getKind()) {
+      switch (kind) {
         case MODIFY:
           // modifications to regular files do not affect packages
           break;
         case CREATE:
         case DELETE:
-          RelPath packagePath = MorePaths.getParentOrEmpty(event.getPath());
+          RelPath packagePath = MorePaths.getParentOrEmpty(path);
           // if regular file is created or deleted, invalidate containing package
           // TODO: consider package boundary violations
           invalidateContainingPackage(packagePath.getPath());
           break;
         default:
-          throw new UnsupportedOperationException(event.getKind().getClass().getName());
+          throw new UnsupportedOperationException(kind.getClass().getName());
       }
     }
 
@@ -92,7 +92,7 @@ public class AllPathsFunction<T extends QueryTarget> implements QueryFunction<T,
     Set<T> result = intersection(reachableFromX, toSet);
     Collection<T> worklist = result;
     while (!worklist.isEmpty()) {
-      Collection<T> reverseDeps = env.getReverseDeps(worklist);
+      Collection<T> reverseDeps = FrontierExpansion.expand(env, worklist, env::getReverseDeps);
       worklist = new ArrayList<>();
       for (T target : reverseDeps) {
         if (reachableFromX.contains(target) && result.add(target)) {
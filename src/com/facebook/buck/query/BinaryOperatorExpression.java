@@ -122,6 +122,11 @@ final class BinaryOperatorExpression<NODE_TYPE> extends QueryExpression<NODE_TYP
     Set<QueryTarget> lhsValue = new LinkedHashSet<>(evaluator.eval(operands.get(0), env));
 
     for (int i = 1; i < operands.size(); i++) {
+      // Nothing can be intersected with or taken away from an empty set, so don't evaluate the
+      // remaining operands, which may be as expensive as an `rdeps()` over the whole repo.
+      if (lhsValue.isEmpty() && getOperator() != Operator.UNION) {
+        break;
+      }
       Set<QueryTarget> rhsValue = evaluator.eval(operands.get(i), env);
       switch (getOperator()) {
         case INTERSECT:
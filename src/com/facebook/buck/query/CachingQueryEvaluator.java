@@ -18,6 +18,7 @@ package com.facebook.buck.query;
 
 import com.facebook.buck.core.model.QueryTarget;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import java.util.Objects;
@@ -31,6 +32,21 @@ public class CachingQueryEvaluator<ENV_NODE_TYPE> implements QueryEvaluator<ENV_
     this.cache = CacheBuilder.newBuilder().build();
   }
 
+  /**
+   * Creates an evaluator which keeps at most about {@code maxCachedTargets} targets across all the
+   * results it remembers, dropping the least recently used results first.
+   */
+  public CachingQueryEvaluator(long maxCachedTargets) {
+    this.cache =
+        CacheBuilder.newBuilder()
+            // Apply the bound to the cache as a whole rather than to each of its segments.
+            .concurrencyLevel(1)
+            .maximumWeight(maxCachedTargets)
+            // Empty results still cost an entry.
+            .weigher((QueryExpression<?> exp, Set<?> result) -> result.size() + 1)
+            .build();
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public <OUTPUT_TYPE extends QueryTarget> Set<OUTPUT_TYPE> eval(
@@ -39,6 +55,8 @@ public class CachingQueryEvaluator<ENV_NODE_TYPE> implements QueryEvaluator<ENV_
     try {
       return (Set<OUTPUT_TYPE>) cache.get(exp, () -> exp.eval(this, env));
     } catch (ExecutionException e) {
+      // Report errors the same way as an uncached evaluation would.
+      Throwables.throwIfInstanceOf(e.getCause(), QueryException.class);
       throw new QueryException(e, "Failed executing query [%s]", exp);
     }
   }
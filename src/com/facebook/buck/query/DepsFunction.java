@@ -133,6 +133,8 @@ public class DepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
           };
       if (deps.isPresent()) {
         forEachDep(env, deps.get(), current, consumer);
+      } else if (env.getTraversalExecutor().isPresent()) {
+        FrontierExpansion.expand(env, current, env::getFwdDeps).forEach(consumer);
       } else {
         env.forEachFwdDep(current, consumer);
       }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.query;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Expands the frontier of the breadth-first searches done by {@link DepsFunction}, {@link
+ * RdepsFunction} and {@link AllPathsFunction}.
+ *
+ * <p>When the environment provides a {@link QueryEnvironment#getTraversalExecutor()}, large
+ * frontiers are split into chunks which are expanded concurrently on it. The results of the chunks
+ * are merged in order, so the expansion iterates in the same order as expanding the whole frontier
+ * at once.
+ */
+final class FrontierExpansion {
+
+  /** Frontiers smaller than this are not worth splitting. */
+  private static final int MIN_CHUNK_SIZE = 256;
+
+  /** Larger frontiers are split into this many chunks so one slow chunk can't stall a level. */
+  private static final int MAX_CHUNKS = 64;
+
+  private FrontierExpansion() {}
+
+  /** Looks up the neighbours of some targets, e.g. {@link QueryEnvironment#getFwdDeps}. */
+  interface Expander<T> {
+    Set<T> expand(Iterable<T> targets) throws QueryException;
+  }
+
+  /** Returns the union of {@code expander} applied to every target of {@code frontier}. */
+  static <T> Set<T> expand(QueryEnvironment<?> env, Iterable<T> frontier, Expander<T> expander)
+      throws QueryException {
+    Optional<ExecutorService> executor = env.getTraversalExecutor();
+    if (!executor.isPresent()) {
+      return expander.expand(frontier);
+    }
+    List<T> targets = ImmutableList.copyOf(frontier);
+    int chunkSize = Math.max(MIN_CHUNK_SIZE, (targets.size() + MAX_CHUNKS - 1) / MAX_CHUNKS);
+    if (targets.size() <= chunkSize) {
+      return expander.expand(targets);
+    }
+
+    List<Callable<Set<T>>> tasks = new ArrayList<>();
+    for (List<T> chunk : Lists.partition(targets, chunkSize)) {
+      tasks.add(() -> expander.expand(chunk));
+    }
+    Set<T> result = new LinkedHashSet<>();
+    try {
+      for (Future<Set<T>> future : executor.get().invokeAll(tasks)) {
+        result.addAll(future.get());
+      }
+    } catch (RejectedExecutionException e) {
+      // The executor is shutting down; the calling thread can still do the work on its own.
+      return expander.expand(targets);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new QueryException(e, "Interrupted while traversing the target graph");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), QueryException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new QueryException(e.getCause(), "Failed traversing the target graph");
+    }
+    return result;
+  }
+}
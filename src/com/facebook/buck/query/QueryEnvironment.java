@@ -34,7 +34,9 @@ import com.facebook.buck.core.model.QueryTarget;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import javax.annotation.Nullable;
@@ -241,6 +243,16 @@ public interface QueryEnvironment<NODE_TYPE> {
   /** Returns the direct reverse dependencies of the specified targets. */
   Set<NODE_TYPE> getReverseDeps(Iterable<NODE_TYPE> targets) throws QueryException;
 
+  /**
+   * Returns an executor on which graph traversals may call {@link #getFwdDeps} and {@link
+   * #getReverseDeps} from several threads at once to expand large sets of targets, if the
+   * environment allows it. The lookups may block, e.g. on the parser, so the executor should be
+   * dedicated to this rather than shared with unrelated work.
+   */
+  default Optional<ExecutorService> getTraversalExecutor() {
+    return Optional.empty();
+  }
+
   Set<QueryFileTarget> getInputs(NODE_TYPE target) throws QueryException;
 
   /**
@@ -100,7 +100,8 @@ public class RdepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
     int depthBound = args.size() > 2 ? args.get(2).getInteger() : Integer.MAX_VALUE;
     // Iterating depthBound+1 times because the first one processes the given argument set.
     for (int i = 0; i <= depthBound; i++) {
-      Set<T> next = env.getReverseDeps(Iterables.filter(current, filter));
+      Set<T> next =
+          FrontierExpansion.expand(env, Iterables.filter(current, filter), env::getReverseDeps);
       if (next.isEmpty()) {
         break;
       }
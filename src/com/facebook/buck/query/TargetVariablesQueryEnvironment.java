@@ -19,7 +19,9 @@ package com.facebook.buck.query;
 import com.facebook.buck.core.model.QueryTarget;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Predicate;
 
 /**
@@ -52,6 +54,11 @@ public class TargetVariablesQueryEnvironment<NODE_TYPE> implements QueryEnvironm
     return delegate.getReverseDeps(targets);
   }
 
+  @Override
+  public Optional<ExecutorService> getTraversalExecutor() {
+    return delegate.getTraversalExecutor();
+  }
+
   @Override
   public Set<QueryFileTarget> getInputs(NODE_TYPE target) throws QueryException {
     return delegate.getInputs(target);
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.remoteexecution.event;
+
+import com.facebook.buck.event.AbstractBuckEvent;
+import com.facebook.buck.event.EventKey;
+
+/**
+ * Sent once the serialized form of a remote action's rule has been prepared. Serialized values
+ * are shared between the actions of a build, so {@link #getNewSerializedBytes()} is the part of
+ * {@link #getSerializedBytes()} that no earlier action needed.
+ */
+public class ActionSerializationEvent extends AbstractBuckEvent {
+  private final String buildTarget;
+  private final long serializedBytes;
+  private final long newSerializedBytes;
+
+  public ActionSerializationEvent(
+      String buildTarget, long serializedBytes, long newSerializedBytes) {
+    super(EventKey.unique());
+    this.buildTarget = buildTarget;
+    this.serializedBytes = serializedBytes;
+    this.newSerializedBytes = newSerializedBytes;
+  }
+
+  public String getBuildTarget() {
+    return buildTarget;
+  }
+
+  /** Total size of all the serialized values the action references. */
+  public long getSerializedBytes() {
+    return serializedBytes;
+  }
+
+  /** Size of the serialized values this action was the first in the build to reference. */
+  public long getNewSerializedBytes() {
+    return newSerializedBytes;
+  }
+
+  @Override
+  protected String getValueString() {
+    return String.format(
+        "BuildTarget=[%s] SerializedBytes=[%d] NewSerializedBytes=[%d]",
+        buildTarget, serializedBytes, newSerializedBytes);
+  }
+
+  @Override
+  public String getEventName() {
+    return getClass().getSimpleName();
+  }
+}
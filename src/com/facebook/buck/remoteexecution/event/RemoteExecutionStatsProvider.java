@@ -52,6 +52,12 @@ public interface RemoteExecutionStatsProvider {
   /** Metadata for total time spent running actions remotely. */
   long getTotalRemoteTimeMs();
 
+  /** Total size of the serialized rules referenced by all remote actions. */
+  long getSerializedBytes();
+
+  /** Size of the distinct serialized values, after sharing them between actions. */
+  long getNewSerializedBytes();
+
   /** Export all the above metadata in a Map format */
   ImmutableMap<String, String> exportFieldsToMap();
 }
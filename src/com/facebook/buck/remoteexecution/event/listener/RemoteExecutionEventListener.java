@@ -18,6 +18,7 @@ package com.facebook.buck.remoteexecution.event.listener;
 
 import com.facebook.buck.core.build.event.BuildRuleEvent;
 import com.facebook.buck.event.BuckEventListener;
+import com.facebook.buck.remoteexecution.event.ActionSerializationEvent;
 import com.facebook.buck.remoteexecution.event.CasBlobDownloadEvent;
 import com.facebook.buck.remoteexecution.event.CasBlobUploadEvent.Finished;
 import com.facebook.buck.remoteexecution.event.LocalFallbackEvent;
@@ -55,6 +56,9 @@ public class RemoteExecutionEventListener
   private final LongAdder remoteQueueTimeMs;
   private final LongAdder totalRemoteTimeMs;
 
+  private final LongAdder serializedBytes;
+  private final LongAdder newSerializedBytes;
+
   private final AtomicBoolean hasFirstRemoteActionStarted;
 
   private final LongAdder localFallbackTotalExecutions;
@@ -69,6 +73,8 @@ public class RemoteExecutionEventListener
     this.remoteCpuTimeMs = new LongAdder();
     this.remoteQueueTimeMs = new LongAdder();
     this.totalRemoteTimeMs = new LongAdder();
+    this.serializedBytes = new LongAdder();
+    this.newSerializedBytes = new LongAdder();
     this.totalBuildRules = new LongAdder();
     this.hasFirstRemoteActionStarted = new AtomicBoolean(false);
 
@@ -161,6 +167,13 @@ public class RemoteExecutionEventListener
     getStateCount(event.getStartedEvent().getState()).decrement();
   }
 
+  /** Event specific subscriber method. */
+  @Subscribe
+  public void onActionSerialized(ActionSerializationEvent event) {
+    serializedBytes.add(event.getSerializedBytes());
+    newSerializedBytes.add(event.getNewSerializedBytes());
+  }
+
   /** Events from the LocalFallback stats. */
   @Subscribe
   public void onLocalFallbackEventFinished(LocalFallbackEvent.Finished event) {
@@ -233,6 +246,16 @@ public class RemoteExecutionEventListener
     return totalRemoteTimeMs.sum();
   }
 
+  @Override
+  public long getSerializedBytes() {
+    return serializedBytes.sum();
+  }
+
+  @Override
+  public long getNewSerializedBytes() {
+    return newSerializedBytes.sum();
+  }
+
   @Override
   public ImmutableMap<String, String> exportFieldsToMap() {
     ImmutableMap.Builder<String, String> retval = ImmutableMap.builderWithExpectedSize(16);
@@ -249,7 +272,9 @@ public class RemoteExecutionEventListener
             localFallbackSuccessfulLocalExecutions.toString())
         .put("remote_cpu_time_ms", Long.toString(getRemoteCpuTimeMs()))
         .put("remote_queue_time_ms", Long.toString(getRemoteQueueTimeMs()))
-        .put("remote_total_time_ms", Long.toString(getTotalRemoteTimeMs()));
+        .put("remote_total_time_ms", Long.toString(getTotalRemoteTimeMs()))
+        .put("serialized_bytes", Long.toString(getSerializedBytes()))
+        .put("serialized_new_bytes", Long.toString(getNewSerializedBytes()));
 
     for (ImmutableMap.Entry<State, Integer> entry : getActionsPerState().entrySet()) {
       retval.put(
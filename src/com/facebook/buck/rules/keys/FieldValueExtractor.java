@@ -16,15 +16,19 @@
 
 package com.facebook.buck.rules.keys;
 
+import com.facebook.buck.util.reflect.ValueGetter;
+import com.facebook.buck.util.reflect.ValueGetters;
 import java.lang.reflect.Field;
 import javax.annotation.Nullable;
 
 /** Extracts a value of a given field, that is assumed to be accessible. */
 public class FieldValueExtractor implements ValueExtractor {
   private final Field field;
+  private final ValueGetter getter;
 
   FieldValueExtractor(Field field) {
     this.field = field;
+    this.getter = ValueGetters.forField(field);
   }
 
   @Override
@@ -40,10 +44,6 @@ public class FieldValueExtractor implements ValueExtractor {
   @Override
   @Nullable
   public Object getValue(Object obj) {
-    try {
-      return field.get(obj);
-    } catch (IllegalAccessException e) {
-      throw new RuntimeException(e);
-    }
+    return getter.get(obj);
   }
 }
@@ -23,6 +23,7 @@ import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.watchman.WatchmanMultiplePathEvent;
 import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.util.cache.InstrumentingCacheStatsTracker;
@@ -32,7 +33,9 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import java.nio.file.Path;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
 import javax.annotation.Nullable;
@@ -90,6 +93,29 @@ public class RuleKeyCacheRecycler<V> {
     }
   }
 
+  /**
+   * Invalidates all the paths of a batch of changes with a single call into the cache. Changed
+   * files commonly share directories, so their common parents are only invalidated once.
+   */
+  @Subscribe
+  public void onFilesystemChange(WatchmanMultiplePathEvent event) {
+    Set<Path> paths = new LinkedHashSet<>();
+    for (WatchmanMultiplePathEvent.Change change : event.getChanges()) {
+      Path path = change.getPath().normalize();
+      for (int end = path.getNameCount(); end > 0 && paths.add(path.subpath(0, end)); end--) {}
+    }
+    for (ProjectFilesystem filesystem : watchedFilesystems) {
+      LOG.verbose(
+          "invalidating %d paths from filesystem at \"%s\" due to event (%s)",
+          paths.size(), filesystem.getRootPath(), event);
+      cache.invalidateInputs(
+          paths.stream()
+              .map(path -> ImmutableRuleKeyInput.of(filesystem, path))
+              .collect(ImmutableList.toImmutableList()),
+          new NoOpCacheStatsTracker());
+    }
+  }
+
   public void invalidatePath(ProjectFilesystem filesystem, Path path) {
     cache.invalidateInputs(
         // As inputs to rule keys can be directories, make sure we also invalidate any
@@ -16,8 +16,9 @@
 
 package com.facebook.buck.rules.keys;
 
+import com.facebook.buck.util.reflect.ValueGetter;
+import com.facebook.buck.util.reflect.ValueGetters;
 import com.google.common.base.Preconditions;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
@@ -27,7 +28,7 @@ public class ValueMethodValueExtractor implements ValueExtractor {
   private static final Pattern GET_PATTERN = Pattern.compile("get[A-Z].*");
   private static final Pattern IS_PATTERN = Pattern.compile("is[A-Z].*");
 
-  private final Method method;
+  private final ValueGetter getter;
   private final String name;
   private final String qualifiedName;
 
@@ -36,7 +37,7 @@ public class ValueMethodValueExtractor implements ValueExtractor {
     Preconditions.checkArgument(!method.getReturnType().equals(Void.class));
     // TODO(cjhopman): Should this do any other verification of the signature/annotations on the
     // method?
-    this.method = method;
+    this.getter = ValueGetters.forMethod(method);
     this.qualifiedName = method.getDeclaringClass() + "." + method.getName();
     String methodName = method.getName();
 
@@ -63,10 +64,6 @@ public class ValueMethodValueExtractor implements ValueExtractor {
   @Override
   @Nullable
   public Object getValue(Object obj) {
-    try {
-      return method.invoke(obj);
-    } catch (IllegalAccessException | InvocationTargetException e) {
-      throw new RuntimeException(e);
-    }
+    return getter.get(obj);
   }
 }
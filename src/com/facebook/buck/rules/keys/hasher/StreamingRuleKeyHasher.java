@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.rules.keys.hasher;
+
+import com.facebook.buck.core.filesystems.BuckUnixPath;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.RuleType;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.sourcepath.BuildTargetSourcePath;
+import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
+import com.facebook.buck.core.sourcepath.ForwardingBuildTargetSourcePath;
+import com.facebook.buck.io.file.FastPaths;
+import com.facebook.buck.util.sha1.Sha1HashCode;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * A SHA-1 {@link RuleKeyHasher} that produces exactly the same hashes as a {@link
+ * GuavaRuleKeyHasher} wrapping {@code Hashing.sha1().newHasher()}, without allocating per value.
+ *
+ * <p>Values are encoded straight into a scratch buffer which is only handed to the underlying
+ * {@link MessageDigest} when full, instead of going through one {@code MessageDigest.update} call
+ * per primitive. Strings are UTF-8 encoded into the buffer rather than through {@link
+ * String#getBytes}, and path segments are written as unencoded chars one segment at a time. The
+ * digest and the buffer are recycled through a small per-thread pool once {@link #hash()} is
+ * called, so a builder only pays for them the first time a thread computes a rule key.
+ */
+public class StreamingRuleKeyHasher implements RuleKeyHasher<HashCode> {
+
+  private static final int BUFFER_SIZE = 4096;
+
+  /** Number of idle scratch states kept per thread. Rule keys nest only a few levels deep. */
+  private static final int MAX_POOLED_PER_THREAD = 8;
+
+  private static final ThreadLocal<ArrayDeque<Scratch>> POOL =
+      ThreadLocal.withInitial(ArrayDeque::new);
+
+  @Nullable private Scratch scratch;
+  private final MessageDigest digest;
+  private final byte[] buffer;
+  private int position;
+
+  private StreamingRuleKeyHasher(Scratch scratch) {
+    this.scratch = scratch;
+    this.digest = scratch.digest;
+    this.buffer = scratch.buffer;
+  }
+
+  /** @return a hasher computing a SHA-1, reusing a digest previously released on this thread. */
+  public static StreamingRuleKeyHasher newSha1Hasher() {
+    Scratch scratch = POOL.get().pollFirst();
+    return new StreamingRuleKeyHasher(scratch != null ? scratch : new Scratch());
+  }
+
+  private void ensureCapacity(int numBytes) {
+    Preconditions.checkState(scratch != null, "Cannot re-use a hasher after calling hash() on it");
+    if (buffer.length - position < numBytes) {
+      flush();
+    }
+  }
+
+  private void flush() {
+    digest.update(buffer, 0, position);
+    position = 0;
+  }
+
+  private void writeByte(byte b) {
+    ensureCapacity(1);
+    buffer[position++] = b;
+  }
+
+  private void writeChar(char c) {
+    ensureCapacity(2);
+    buffer[position++] = (byte) c;
+    buffer[position++] = (byte) (c >>> 8);
+  }
+
+  private void writeInt(int i) {
+    ensureCapacity(4);
+    buffer[position++] = (byte) i;
+    buffer[position++] = (byte) (i >>> 8);
+    buffer[position++] = (byte) (i >>> 16);
+    buffer[position++] = (byte) (i >>> 24);
+  }
+
+  private void writeLong(long l) {
+    ensureCapacity(8);
+    for (int i = 0; i < 8; i++) {
+      buffer[position++] = (byte) (l >>> (8 * i));
+    }
+  }
+
+  private void writeBytes(byte[] bytes) {
+    if (bytes.length > buffer.length) {
+      ensureCapacity(buffer.length);
+      flush();
+      digest.update(bytes);
+      return;
+    }
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+    position += bytes.length;
+  }
+
+  private void writeUnencodedChars(CharSequence chars) {
+    for (int i = 0; i < chars.length(); i++) {
+      writeChar(chars.charAt(i));
+    }
+  }
+
+  /**
+   * Writes {@code val} as UTF-8, replacing unpaired surrogates with {@code '?'} like {@link
+   * String#getBytes} does.
+   *
+   * @return the number of bytes written.
+   */
+  private int writeUtf8(String val) {
+    int numBytes = 0;
+    int length = val.length();
+    for (int i = 0; i < length; i++) {
+      char c = val.charAt(i);
+      ensureCapacity(4);
+      if (c < 0x80) {
+        buffer[position++] = (byte) c;
+        numBytes += 1;
+      } else if (c < 0x800) {
+        buffer[position++] = (byte) (0xc0 | (c >>> 6));
+        buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        numBytes += 2;
+      } else if (!Character.isSurrogate(c)) {
+        buffer[position++] = (byte) (0xe0 | (c >>> 12));
+        buffer[position++] = (byte) (0x80 | ((c >>> 6) & 0x3f));
+        buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        numBytes += 3;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < length
+          && Character.isLowSurrogate(val.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, val.charAt(++i));
+        buffer[position++] = (byte) (0xf0 | (codePoint >>> 18));
+        buffer[position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3f));
+        buffer[position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3f));
+        buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+        numBytes += 4;
+      } else {
+        buffer[position++] = '?';
+        numBytes += 1;
+      }
+    }
+    return numBytes;
+  }
+
+  private StreamingRuleKeyHasher putBytes(byte type, byte[] bytes) {
+    writeBytes(bytes);
+    writeInt(bytes.length);
+    writeByte(type);
+    return this;
+  }
+
+  private StreamingRuleKeyHasher putHashCode(byte type, HashCode hash) {
+    int numBytes = hash.bits() / 8;
+    ensureCapacity(numBytes);
+    hash.writeBytesTo(buffer, position, numBytes);
+    position += numBytes;
+    writeInt(numBytes);
+    writeByte(type);
+    return this;
+  }
+
+  private StreamingRuleKeyHasher putStringified(byte type, String val) {
+    writeInt(writeUtf8(val));
+    writeByte(type);
+    return this;
+  }
+
+  private StreamingRuleKeyHasher putPathFast(byte type, Path path) {
+    if (path instanceof BuckUnixPath) {
+      if (path.isAbsolute()) {
+        writeChar('/');
+      }
+      for (int i = 0; i < path.getNameCount(); i++) {
+        if (i != 0) {
+          writeChar('/');
+        }
+        writeUnencodedChars(FastPaths.getNameString(path, i));
+      }
+    } else {
+      writeUnencodedChars(path.toString());
+    }
+    writeByte(type);
+    return this;
+  }
+
+  private StreamingRuleKeyHasher putBuildTarget(byte type, BuildTarget target) {
+    return putStringified(type, target.getFullyQualifiedName());
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putKey(String key) {
+    return putStringified(RuleKeyHasherTypes.KEY, key);
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putKeyPath(Path key) {
+    return putPathFast(RuleKeyHasherTypes.KEY, key);
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putNull() {
+    writeByte(RuleKeyHasherTypes.NULL);
+    return this;
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putCharacter(char val) {
+    writeChar(val);
+    return this;
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putBoolean(boolean val) {
+    writeByte(val ? RuleKeyHasherTypes.TRUE : RuleKeyHasherTypes.FALSE);
+    return this;
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putNumber(Number val) {
+    if (val instanceof Integer) { // most common, so test first
+      writeInt(val.intValue());
+      writeByte(RuleKeyHasherTypes.INTEGER);
+    } else if (val instanceof Long) {
+      writeLong(val.longValue());
+      writeByte(RuleKeyHasherTypes.LONG);
+    } else if (val instanceof Short) {
+      short s = val.shortValue();
+      ensureCapacity(2);
+      buffer[position++] = (byte) s;
+      buffer[position++] = (byte) (s >>> 8);
+      writeByte(RuleKeyHasherTypes.SHORT);
+    } else if (val instanceof Byte) {
+      writeByte(val.byteValue());
+      writeByte(RuleKeyHasherTypes.BYTE);
+    } else if (val instanceof Float) {
+      writeInt(Float.floatToRawIntBits(val.floatValue()));
+      writeByte(RuleKeyHasherTypes.FLOAT);
+    } else if (val instanceof Double) {
+      writeLong(Double.doubleToRawLongBits(val.doubleValue()));
+      writeByte(RuleKeyHasherTypes.DOUBLE);
+    } else {
+      throw new UnsupportedOperationException(("Unsupported Number type: " + val.getClass()));
+    }
+    return this;
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putString(String val) {
+    return putStringified(RuleKeyHasherTypes.STRING, val);
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putBytes(byte[] bytes) {
+    return putBytes(RuleKeyHasherTypes.BYTE_ARRAY, bytes);
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putPattern(Pattern pattern) {
+    return putStringified(RuleKeyHasherTypes.PATTERN, pattern.toString());
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putSha1(Sha1HashCode sha1) {
+    ensureCapacity(20);
+    sha1.copyBytesTo(buffer, position);
+    position += 20;
+    writeByte(RuleKeyHasherTypes.SHA1);
+    return this;
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putPath(Path path, HashCode hash) {
+    putPathFast(RuleKeyHasherTypes.PATH, path);
+    return putHashCode(RuleKeyHasherTypes.PATH, hash);
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putArchiveMemberPath(
+      Path relativeArchivePath, Path archiveMemberPath, HashCode hash) {
+    putPathFast(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, relativeArchivePath);
+    putPathFast(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, archiveMemberPath);
+    return putHashCode(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, hash);
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putNonHashingPath(Path path) {
+    return putPathFast(RuleKeyHasherTypes.NON_HASHING_PATH, path);
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putRuleKey(RuleKey ruleKey) {
+    return putHashCode(RuleKeyHasherTypes.RULE_KEY, ruleKey.getHashCode());
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putRuleType(RuleType ruleType) {
+    return putStringified(RuleKeyHasherTypes.RULE_TYPE, ruleType.toString());
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putBuildTarget(BuildTarget buildTarget) {
+    return putBuildTarget(RuleKeyHasherTypes.TARGET, buildTarget);
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putBuildTargetSourcePath(BuildTargetSourcePath targetSourcePath) {
+    putBuildTarget(RuleKeyHasherTypes.TARGET_SOURCE_PATH, targetSourcePath.getTarget());
+    if (targetSourcePath instanceof ExplicitBuildTargetSourcePath) {
+      putPathFast(
+          RuleKeyHasherTypes.TARGET_SOURCE_PATH,
+          ((ExplicitBuildTargetSourcePath) targetSourcePath).getResolvedPath());
+    } else if (targetSourcePath instanceof ForwardingBuildTargetSourcePath) {
+      putStringified(
+          RuleKeyHasherTypes.TARGET_SOURCE_PATH, targetSourcePath.representationForRuleKey());
+    }
+    return this;
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putContainer(Container container, int length) {
+    writeByte(RuleKeyHasherTypes.containerSubType(container));
+    writeInt(length);
+    writeByte(RuleKeyHasherTypes.CONTAINER);
+    return this;
+  }
+
+  @Override
+  public StreamingRuleKeyHasher putWrapper(Wrapper wrapper) {
+    writeByte(RuleKeyHasherTypes.wrapperSubType(wrapper));
+    writeByte(RuleKeyHasherTypes.WRAPPER);
+    return this;
+  }
+
+  @Override
+  public HashCode hash() {
+    ensureCapacity(0);
+    flush();
+    HashCode hash = HashCode.fromBytes(digest.digest());
+    ArrayDeque<Scratch> pool = POOL.get();
+    if (pool.size() < MAX_POOLED_PER_THREAD) {
+      pool.addFirst(scratch);
+    }
+    scratch = null;
+    return hash;
+  }
+
+  /** The reusable state behind a hasher: a reset digest and its scratch buffer. */
+  private static class Scratch {
+    private final MessageDigest digest;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    Scratch() {
+      try {
+        digest = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e) {
+        throw new AssertionError("SHA-1 is guaranteed to be available", e);
+      }
+    }
+  }
+}
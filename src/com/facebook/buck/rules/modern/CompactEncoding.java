@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.rules.modern;
+
+import com.google.common.base.Preconditions;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Helpers for the compact parts of the {@link Serializer} format that {@link Deserializer} reads
+ * back.
+ *
+ * <p>Lengths and counts are written as unsigned LEB128 varints, so the common small values take a
+ * single byte instead of four. Strings are dictionary encoded per serialized object: the first
+ * occurrence is written as {@code varint(utf8Length << 1)} followed by the UTF-8 bytes, and every
+ * later occurrence as {@code varint(index << 1 | 1)}, where index counts the distinct strings
+ * written so far. Path segments repeat heavily within an object, so most of them shrink to a
+ * single byte.
+ */
+final class CompactEncoding {
+
+  private CompactEncoding() {}
+
+  /** Writes a non-negative int as an unsigned LEB128 varint. */
+  static void writeVarInt(DataOutput out, int value) throws IOException {
+    Preconditions.checkArgument(value >= 0, "Cannot write negative varint %s.", value);
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  /** Reads a varint written by {@link #writeVarInt}. */
+  static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = in.readByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint.");
+  }
+}
@@ -52,8 +52,11 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
@@ -119,6 +122,8 @@ public class Deserializer {
   private class Creator implements ValueCreator<IOException> {
     private final DataInputStream stream;
     private final DataProvider provider;
+    // The strings read so far from this object, indexed as in CompactEncoding.
+    private final List<String> strings = new ArrayList<>();
 
     private Creator(DataProvider provider, DataInputStream stream) {
       this.stream = stream;
@@ -171,7 +176,7 @@ public class Deserializer {
 
     @Override
     public <T> ImmutableList<T> createList(ValueTypeInfo<T> innerType) throws IOException {
-      int size = stream.readInt();
+      int size = CompactEncoding.readVarInt(stream);
       ImmutableList.Builder<T> builder = ImmutableList.builderWithExpectedSize(size);
       for (int i = 0; i < size; i++) {
         builder.add(innerType.createNotNull(this));
@@ -181,7 +186,7 @@ public class Deserializer {
 
     @Override
     public <T> ImmutableSet<T> createSet(ValueTypeInfo<T> innerType) throws IOException {
-      int size = stream.readInt();
+      int size = CompactEncoding.readVarInt(stream);
       ImmutableSet.Builder<T> builder = ImmutableSet.builderWithExpectedSize(size);
       for (int i = 0; i < size; i++) {
         builder.add(innerType.createNotNull(this));
@@ -192,7 +197,7 @@ public class Deserializer {
     @Override
     public <T> ImmutableSortedSet<T> createSortedSet(ValueTypeInfo<T> innerType)
         throws IOException {
-      int size = stream.readInt();
+      int size = CompactEncoding.readVarInt(stream);
       @SuppressWarnings("unchecked")
       ImmutableSortedSet.Builder<T> builder =
           (ImmutableSortedSet.Builder<T>) ImmutableSortedSet.naturalOrder();
@@ -251,22 +256,34 @@ public class Deserializer {
     }
 
     private Path createRelativePath() throws IOException {
-      int nameCount = stream.readInt();
+      int nameCount = CompactEncoding.readVarInt(stream);
       if (nameCount < 1) {
-        return Paths.get(stream.readUTF());
+        return Paths.get(readString());
       }
 
-      String first = stream.readUTF();
+      String first = readString();
       String[] rest = new String[nameCount - 1];
       for (int i = 0; i < nameCount - 1; i++) {
-        rest[i] = stream.readUTF();
+        rest[i] = readString();
       }
       return Paths.get(first, rest);
     }
 
+    private String readString() throws IOException {
+      int header = CompactEncoding.readVarInt(stream);
+      if ((header & 1) != 0) {
+        return strings.get(header >>> 1);
+      }
+      byte[] bytes = new byte[header >>> 1];
+      stream.readFully(bytes);
+      String value = new String(bytes, StandardCharsets.UTF_8);
+      strings.add(value);
+      return value;
+    }
+
     @Override
     public String createString() throws IOException {
-      return stream.readUTF();
+      return readString();
     }
 
     @Override
@@ -310,7 +327,7 @@ public class Deserializer {
     }
 
     private byte[] readBytes() throws IOException {
-      int size = stream.readInt();
+      int size = CompactEncoding.readVarInt(stream);
       byte[] data = new byte[size];
       ByteStreams.readFully(stream, data);
       return data;
@@ -321,7 +338,7 @@ public class Deserializer {
     }
 
     public <T extends AddsToRuleKey> T create(Class<T> requestedClass) throws IOException {
-      String className = stream.readUTF();
+      String className = readString();
       Class<?> instanceClass;
       try {
         instanceClass = classFinder.find(className);
@@ -410,7 +427,7 @@ public class Deserializer {
     @Override
     public <K, V> ImmutableMap<K, V> createMap(ValueTypeInfo<K> keyType, ValueTypeInfo<V> valueType)
         throws IOException {
-      int size = stream.readInt();
+      int size = CompactEncoding.readVarInt(stream);
       ImmutableMap.Builder<K, V> builder = ImmutableMap.builderWithExpectedSize(size);
       for (int i = 0; i < size; i++) {
         builder.put(keyType.createNotNull(this), valueType.createNotNull(this));
@@ -421,7 +438,7 @@ public class Deserializer {
     @Override
     public <K, V> ImmutableSortedMap<K, V> createSortedMap(
         ValueTypeInfo<K> keyType, ValueTypeInfo<V> valueType) throws IOException {
-      int size = stream.readInt();
+      int size = CompactEncoding.readVarInt(stream);
       @SuppressWarnings("unchecked")
       ImmutableSortedMap.Builder<K, V> builder =
           (ImmutableSortedMap.Builder<K, V>) ImmutableSortedMap.naturalOrder();
@@ -18,12 +18,15 @@ package com.facebook.buck.rules.modern;
 
 import com.facebook.buck.core.rulekey.AddsToRuleKey;
 import com.facebook.buck.core.rulekey.CustomFieldBehaviorTag;
+import com.facebook.buck.util.reflect.ValueGetter;
+import com.facebook.buck.util.reflect.ValueGetters;
 import java.lang.reflect.Field;
 import java.util.List;
 
 /** Holds a java.lang.reflect.Field and a ValueTypeInfo for a field referenced from a Buildable. */
 public class FieldInfo<T> {
   private final Field field;
+  private final ValueGetter getter;
   private final ValueTypeInfo<T> valueTypeInfo;
   private final List<Class<? extends CustomFieldBehaviorTag>> customBehavior;
 
@@ -32,22 +35,19 @@ public class FieldInfo<T> {
       ValueTypeInfo<T> valueTypeInfo,
       List<Class<? extends CustomFieldBehaviorTag>> customBehavior) {
     this.field = field;
+    this.getter = ValueGetters.forField(field);
     this.valueTypeInfo = valueTypeInfo;
     this.customBehavior = customBehavior;
   }
 
-  private T getValue(AddsToRuleKey value, Field field) {
-    try {
-      @SuppressWarnings("unchecked")
-      T converted = (T) field.get(value);
-      return converted;
-    } catch (IllegalAccessException e) {
-      throw new RuntimeException(e);
-    }
+  private T getValue(AddsToRuleKey value) {
+    @SuppressWarnings("unchecked")
+    T converted = (T) getter.get(value);
+    return converted;
   }
 
   public <E extends Exception> void visit(AddsToRuleKey value, ValueVisitor<E> visitor) throws E {
-    visitor.visitField(field, getValue(value, field), valueTypeInfo, getCustomBehavior());
+    visitor.visitField(field, getValue(value), valueTypeInfo, getCustomBehavior());
   }
 
   public ValueTypeInfo<T> getValueTypeInfo() {
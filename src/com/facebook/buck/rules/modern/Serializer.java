@@ -57,7 +57,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -177,6 +179,8 @@ public class Serializer {
     ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
     DataOutputStream stream = new DataOutputStream(byteStream);
     Stream.Builder<HashCode> children = Stream.builder();
+    // Indices of the strings already written for this object, see CompactEncoding.
+    private final Map<String, Integer> stringIndices = new HashMap<>();
 
     public Visitor(Class<? extends AddsToRuleKey> clazz) throws IOException {
       writeString(clazz.getName());
@@ -185,7 +189,7 @@ public class Serializer {
     @Override
     public <T> void visitList(ImmutableList<T> value, ValueTypeInfo<T> innerType)
         throws IOException {
-      stream.writeInt(value.size());
+      CompactEncoding.writeVarInt(stream, value.size());
       for (T e : value) {
         innerType.visit(e, this);
       }
@@ -193,7 +197,7 @@ public class Serializer {
 
     @Override
     public <T> void visitSet(ImmutableSet<T> value, ValueTypeInfo<T> innerType) throws IOException {
-      stream.writeInt(value.size());
+      CompactEncoding.writeVarInt(stream, value.size());
       for (T e : value) {
         innerType.visit(e, this);
       }
@@ -221,9 +225,15 @@ public class Serializer {
     }
 
     private void writeString(String value) throws IOException {
-      // TODO(cjhopman): This doesn't correctly handle large strings.
-      Preconditions.checkState(value.length() < 10000);
-      stream.writeUTF(value);
+      Integer index = stringIndices.get(value);
+      if (index != null) {
+        CompactEncoding.writeVarInt(stream, index << 1 | 1);
+        return;
+      }
+      stringIndices.put(value, stringIndices.size());
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      CompactEncoding.writeVarInt(stream, bytes.length << 1);
+      stream.write(bytes);
     }
 
     @Override
@@ -339,7 +349,7 @@ public class Serializer {
     private void writeRelativePath(Path path) throws IOException {
       Verify.verify(!path.isAbsolute());
       int nameCount = path.getNameCount();
-      stream.writeInt(nameCount);
+      CompactEncoding.writeVarInt(stream, nameCount);
       if (nameCount == 0) {
         writeString(path.toString());
       }
@@ -394,7 +404,7 @@ public class Serializer {
     }
 
     private void writeBytes(byte[] bytes) throws IOException {
-      this.stream.writeInt(bytes.length);
+      CompactEncoding.writeVarInt(stream, bytes.length);
       this.stream.write(bytes);
     }
 
@@ -402,7 +412,7 @@ public class Serializer {
     public <K, V> void visitMap(
         ImmutableMap<K, V> value, ValueTypeInfo<K> keyType, ValueTypeInfo<V> valueType)
         throws IOException {
-      this.stream.writeInt(value.size());
+      CompactEncoding.writeVarInt(stream, value.size());
       RichStream.from(value.entrySet())
           .forEachThrowing(
               entry -> {
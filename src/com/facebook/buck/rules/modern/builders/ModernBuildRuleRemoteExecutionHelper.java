@@ -33,6 +33,7 @@ import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.PathMatcher;
 import com.facebook.buck.jvm.java.version.JavaVersion;
 import com.facebook.buck.remoteexecution.UploadDataSupplier;
+import com.facebook.buck.remoteexecution.event.ActionSerializationEvent;
 import com.facebook.buck.remoteexecution.interfaces.Protocol;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Directory;
@@ -85,6 +86,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -216,18 +218,23 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
 
     this.loggedMessagesByClass = new ConcurrentHashMap<>();
 
+    // Values are keyed by the hash of their serialized form, so equal values reached through
+    // different instances (e.g. the same classpath recomputed for several rules) are held and
+    // uploaded once per build.
     Delegate delegate =
         (instance, data, children) -> {
           HashCode hash = hasher.hashBytes(data);
-          Node node =
-              new Node(
-                  instance,
-                  data,
-                  hash,
-                  children.stream()
-                      .map(nodeMap::get)
-                      .collect(ImmutableSortedSet.toImmutableSortedSet(Ordering.natural())));
-          nodeMap.put(hash, node);
+          nodeMap.computeIfAbsent(
+              hash,
+              ignored ->
+                  new Node(
+                      instance,
+                      data,
+                      hash,
+                      children.stream()
+                          .map(nodeMap::get)
+                          .collect(
+                              ImmutableSortedSet.toImmutableSortedSet(Ordering.natural()))));
           return hash;
         };
     this.serializer = new Serializer(ruleFinder, cellResolver, delegate);
@@ -400,7 +407,11 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
       getSharedFilesData(requiredDataPredicate).forEach(requiredDataBuilder::add);
 
       allNodes.add(
-          getSerializationTreeAndInputs(hash, requiredDataPredicate, requiredDataBuilder::add));
+          getSerializationTreeAndInputs(
+              rule.getFullyQualifiedName(),
+              hash,
+              requiredDataPredicate,
+              requiredDataBuilder::add));
 
       MerkleTreeNode inputsMerkleTree = resolveInputs(inputsMapBuilder.getInputs(rule));
 
@@ -697,6 +708,8 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
 
     private WeakReference<byte[]> dataRef;
 
+    private final AtomicBoolean referenced = new AtomicBoolean();
+
     Node(AddsToRuleKey instance, byte[] data, HashCode hash, ImmutableSortedSet<Node> children) {
       this.instance = instance;
       this.data = data;
@@ -729,18 +742,35 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
     public void dropData() {
       this.data = null;
     }
+
+    /** Returns true the first time any action references this value. */
+    public boolean markReferenced() {
+      return referenced.compareAndSet(false, true);
+    }
   }
 
   private MerkleTreeNode getSerializationTreeAndInputs(
+      String buildTarget,
       HashCode hash,
       BiPredicate<Digest, String> requiredDataPredicate,
       Consumer<UploadDataSupplier> dataBuilder)
       throws IOException {
     Map<Path, FileNode> fileNodes = new HashMap<>();
     class DataAdder {
+      long serializedBytes = 0;
+      long newSerializedBytes = 0;
+
       void addData(Path root, Node node) throws IOException {
         String fileName = "__value__";
         Path valuePath = root.resolve(node.hash).resolve(fileName);
+        if (fileNodes.containsKey(valuePath)) {
+          // Shared subtrees of the value graph only need to be visited once.
+          return;
+        }
+        serializedBytes += node.dataLength;
+        if (node.markReferenced()) {
+          newSerializedBytes += node.dataLength;
+        }
         Digest digest = protocol.newDigest(node.hash, node.dataLength);
         fileNodes.put(valuePath, protocol.newFileNode(digest, fileName, false));
         if (!requiredDataPredicate.test(digest, node.instance.getClass().getName())) {
@@ -774,7 +804,11 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
       }
     }
 
-    new DataAdder().addData(Paths.get("__data__"), Objects.requireNonNull(nodeMap.get(hash)));
+    DataAdder dataAdder = new DataAdder();
+    dataAdder.addData(Paths.get("__data__"), Objects.requireNonNull(nodeMap.get(hash)));
+    eventBus.post(
+        new ActionSerializationEvent(
+            buildTarget, dataAdder.serializedBytes, dataAdder.newSerializedBytes));
 
     return nodeCache.createNode(fileNodes, ImmutableMap.of(), ImmutableMap.of());
   }
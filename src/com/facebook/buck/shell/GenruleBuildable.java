@@ -762,6 +762,7 @@ public class GenruleBuildable implements Buildable {
                   workerMacroArg.getEnvironment(),
                   workerMacroArg.getMaxWorkers(),
                   workerMacroArg.isAsync(),
+                  workerMacroArg.isMultiplexed(),
                   workerMacroArg.getPersistentWorkerKey().isPresent()
                       ? Optional.of(
                           WorkerProcessIdentity.of(
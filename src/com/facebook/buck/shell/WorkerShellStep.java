@@ -32,6 +32,7 @@ import com.facebook.buck.worker.WorkerProcessPoolFactory;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Optional;
@@ -80,8 +81,13 @@ public class WorkerShellStep implements Step {
     WorkerProcessPool pool =
         factory.getWorkerProcessPool(context, paramsToUse.getWorkerProcessParams());
     WorkerJobResult result = null;
+    ListenableFuture<WorkerJobResult> job = pool.submitJob(getExpandedJobArgs(context));
     try {
-      result = pool.submitJob(getExpandedJobArgs(context)).get();
+      result = job.get();
+    } catch (InterruptedException e) {
+      // Let workers that support it abandon the job instead of finishing it for nobody.
+      job.cancel(true);
+      throw e;
     } catch (ExecutionException e) {
       if (e.getCause() != null) {
         Throwables.throwIfUnchecked(e.getCause());
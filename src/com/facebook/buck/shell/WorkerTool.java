@@ -36,4 +36,7 @@ public interface WorkerTool extends AddsToRuleKey {
   HashCode getInstanceKey();
 
   boolean isAsync();
+
+  /** Whether the tool serves concurrent jobs over the multiplexed binary worker protocol. */
+  boolean isMultiplexed();
 }
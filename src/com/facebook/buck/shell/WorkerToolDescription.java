@@ -124,7 +124,9 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
       builder.addEnv(e.getKey(), macrosConverter.convert(e.getValue()));
     }
 
-    boolean async = args.getSoloAsync().orElse(false);
+    // A multiplexed worker serves all concurrent jobs from a single process.
+    boolean multiplexed = args.getMultiplexed().orElse(false);
+    boolean async = args.getSoloAsync().orElse(false) || multiplexed;
 
     Preconditions.checkArgument(
         !(args.getMaxWorkers().isPresent() && args.getMaxWorkersPerThreadPercent().isPresent()),
@@ -157,6 +159,7 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
         tool,
         maxWorkers,
         async,
+        multiplexed,
         args.getPersistent()
             .orElse(buckConfig.getBooleanValue(CONFIG_SECTION, CONFIG_PERSISTENT_KEY, false)));
   }
@@ -202,5 +205,7 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
     Optional<Boolean> getPersistent();
 
     Optional<Boolean> getSoloAsync();
+
+    Optional<Boolean> getMultiplexed();
   }
 }
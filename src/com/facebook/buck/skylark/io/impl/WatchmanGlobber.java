@@ -18,6 +18,7 @@ package com.facebook.buck.skylark.io.impl;
 
 import com.facebook.buck.io.watchman.WatchmanClient;
 import com.facebook.buck.io.watchman.WatchmanQueryFailedException;
+import com.facebook.buck.util.bser.BserReader;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -25,10 +26,10 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.EnumSet;
-import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
@@ -92,6 +93,9 @@ public class WatchmanGlobber {
 
   private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
   private static final ImmutableList<String> FIELDS_TO_INCLUDE = ImmutableList.of("name");
+  private static final int ERROR_KEY = 0;
+  private static final int FILES_KEY = 1;
+  private static final BserReader.Keys RESPONSE_KEYS = BserReader.Keys.of("error", "files");
   private final WatchmanClient watchmanClient;
   /** Path used as a root when resolving patterns. */
   private final String basePath;
@@ -144,21 +148,70 @@ public class WatchmanGlobber {
   public Optional<ImmutableSet<String>> run(
       Collection<String> include, Collection<String> exclude, EnumSet<Option> options)
       throws IOException, InterruptedException, WatchmanQueryFailedException {
+    return run(include, exclude, options, ImmutableSet.toImmutableSet());
+  }
+
+  /**
+   * Same as {@link #run(Collection, Collection, EnumSet)}, but accumulates every path with {@code
+   * collector} as it is decoded from the Watchman response, without collecting them all first.
+   */
+  public <A, R> Optional<R> run(
+      Collection<String> include,
+      Collection<String> exclude,
+      EnumSet<Option> options,
+      Collector<String, A, R> collector)
+      throws IOException, InterruptedException, WatchmanQueryFailedException {
     ImmutableMap<String, ?> watchmanQuery = createWatchmanQuery(include, exclude, options);
 
-    Optional<? extends Map<String, ?>> result =
-        watchmanClient.queryWithTimeout(TIMEOUT_NANOS, "query", watchmanWatchRoot, watchmanQuery);
+    Optional<GlobResponse<A>> result =
+        watchmanClient.queryWithTimeout(
+            TIMEOUT_NANOS,
+            reader -> readResponse(reader, collector),
+            "query",
+            watchmanWatchRoot,
+            watchmanQuery);
     if (!result.isPresent()) {
       return Optional.empty();
     }
 
-    @Nullable Object error = result.get().get("error");
-    if (error != null) {
-      throw new WatchmanQueryFailedException(error.toString());
+    if (result.get().error != null) {
+      throw new WatchmanQueryFailedException(result.get().error);
     }
-    @SuppressWarnings("unchecked")
-    List<String> files = (List<String>) result.get().get("files");
-    return Optional.of(ImmutableSet.copyOf(files));
+    return Optional.of(collector.finisher().apply(result.get().files));
+  }
+
+  /** What is left of a query response once the matching paths have been accumulated. */
+  private static class GlobResponse<A> {
+    private final A files;
+    @Nullable private String error;
+
+    private GlobResponse(A files) {
+      this.files = files;
+    }
+  }
+
+  private static <A> GlobResponse<A> readResponse(
+      BserReader reader, Collector<String, A, ?> collector) throws IOException {
+    GlobResponse<A> response = new GlobResponse<>(collector.supplier().get());
+    BiConsumer<A, String> accumulator = collector.accumulator();
+    reader.readObject(
+        RESPONSE_KEYS,
+        (key, value) -> {
+          switch (key) {
+            case ERROR_KEY:
+              response.error = value.readString();
+              break;
+            case FILES_KEY:
+              int numFiles = value.readArrayLength();
+              for (int i = 0; i < numFiles; i++) {
+                accumulator.accept(response.files, value.readString());
+              }
+              break;
+            default:
+              value.skipValue();
+          }
+        });
+    return response;
   }
 
   /**
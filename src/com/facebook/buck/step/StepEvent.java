@@ -70,7 +70,15 @@ public abstract class StepEvent extends AbstractBuckEvent
   }
 
   public static Finished finished(Started started, int exitCode) {
-    return new Finished(started, exitCode);
+    return finished(started, exitCode, 0);
+  }
+
+  /**
+   * @param durationNanos wall time spent executing the step, not counting the time spent posting
+   *     its events
+   */
+  public static Finished finished(Started started, int exitCode, long durationNanos) {
+    return new Finished(started, exitCode, durationNanos);
   }
 
   public static class Started extends StepEvent {
@@ -86,16 +94,23 @@ public abstract class StepEvent extends AbstractBuckEvent
 
   public static class Finished extends StepEvent {
     private final int exitCode;
+    private final long durationNanos;
 
-    protected Finished(Started started, int exitCode) {
+    protected Finished(Started started, int exitCode, long durationNanos) {
       super(started.getShortStepName(), started.getDescription(), started.getUuid());
       this.exitCode = exitCode;
+      this.durationNanos = durationNanos;
     }
 
     public int getExitCode() {
       return exitCode;
     }
 
+    /** @return how long the step took to execute, or 0 if it was not measured. */
+    public long getDurationNanos() {
+      return durationNanos;
+    }
+
     @Override
     public String getEventName() {
       return STEP_FINISHED;
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.step;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.util.concurrent.ExecutorPool;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Step} made of other steps that may run concurrently once the steps they depend on have
+ * finished.
+ *
+ * <p>Rules opt into this for groups of independent steps, such as the copies and mkdirs that
+ * assemble a bundle, by adding the group to their step list in place of the individual steps. The
+ * calling thread always takes part in running the graph, and up to {@code cpu - 1} helpers are
+ * borrowed from the build's CPU executor, where {@code cpu} comes from {@link
+ * ExecutionContext#getRuleResourceAmounts()}. A rule that was granted a single CPU therefore runs
+ * its steps one at a time, in the order they were added.
+ *
+ * <p>Each inner step is run through {@link StepRunner}, so it gets its own {@link StepEvent}s. If a
+ * step fails, no further steps are started, the ones already running are waited for, and the graph
+ * fails with the first failure as its cause. Unchecked exceptions and errors thrown by a step, on
+ * whichever thread it ran, are rethrown as they are once the running steps have finished.
+ */
+public final class StepGraph implements Step {
+
+  private final String shortName;
+  private final BuildTarget buildTarget;
+  private final ImmutableList<Node> nodes;
+
+  private StepGraph(String shortName, BuildTarget buildTarget, ImmutableList<Node> nodes) {
+    this.shortName = shortName;
+    this.buildTarget = buildTarget;
+    this.nodes = nodes;
+  }
+
+  public static Builder builder(String shortName, BuildTarget buildTarget) {
+    return new Builder(shortName, buildTarget);
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
+    Execution execution = new Execution(context);
+    int helpers = Math.min(context.getRuleResourceAmounts().getCpu(), nodes.size()) - 1;
+    ListeningExecutorService executor = context.getExecutors().get(ExecutorPool.CPU);
+    if (executor != null) {
+      try {
+        for (int i = 0; i < helpers; i++) {
+          execution.helpers.add(executor.submit(execution::runAsHelper));
+        }
+      } catch (RejectedExecutionException e) {
+        // The calling thread can run everything on its own.
+      }
+    }
+
+    try {
+      execution.runAsCaller();
+    } finally {
+      execution.helpers.forEach(future -> future.cancel(false));
+    }
+
+    StepFailedException failure = execution.getFirstFailure();
+    if (failure == null) {
+      return StepExecutionResults.SUCCESS;
+    }
+    return StepExecutionResult.builder()
+        .setExitCode(failure.getExitCode().orElse(StepExecutionResults.ERROR_EXIT_CODE))
+        .setCause(failure)
+        .build();
+  }
+
+  @Override
+  public String getShortName() {
+    return shortName;
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    // The inner steps print their own descriptions as they run.
+    return String.format("%s (%d steps)", shortName, nodes.size());
+  }
+
+  /** A step in the graph that later steps can depend on. */
+  public static final class Node {
+    private final int index;
+    private final Step step;
+    private final ImmutableList<Node> dependencies;
+
+    private Node(int index, Step step, ImmutableList<Node> dependencies) {
+      this.index = index;
+      this.step = step;
+      this.dependencies = dependencies;
+    }
+
+    public Step getStep() {
+      return step;
+    }
+  }
+
+  /** Builds a {@link StepGraph}. Steps can only depend on steps that were added before them. */
+  public static final class Builder {
+    private final String shortName;
+    private final BuildTarget buildTarget;
+    private final ImmutableList.Builder<Node> nodes = ImmutableList.builder();
+    private final Map<Path, List<Node>> writersByDestination = new HashMap<>();
+    private int size = 0;
+
+    private Builder(String shortName, BuildTarget buildTarget) {
+      this.shortName = shortName;
+      this.buildTarget = buildTarget;
+    }
+
+    /** Adds {@code step}, to be run after all of {@code dependencies} have succeeded. */
+    public Node add(Step step, Node... dependencies) {
+      for (Node dependency : dependencies) {
+        Preconditions.checkArgument(
+            dependency.index < size, "Dependency %s is not part of this graph", dependency.step);
+      }
+      Node node = new Node(size++, step, ImmutableList.copyOf(dependencies));
+      nodes.add(node);
+      return node;
+    }
+
+    /**
+     * Adds {@code step}, which writes into {@code destination}, to be run after all of {@code
+     * dependencies} and after every step added before it that writes into the same directory, or
+     * one above or below it. Recursive copies create the directories they need as they go, so
+     * they race with other steps writing into the same tree.
+     */
+    public Node addWritingTo(Path destination, Step step, Node... dependencies) {
+      Path normalized = destination.normalize();
+      Set<Node> allDependencies = new LinkedHashSet<>(Arrays.asList(dependencies));
+      for (Map.Entry<Path, List<Node>> writers : writersByDestination.entrySet()) {
+        if (writers.getKey().startsWith(normalized) || normalized.startsWith(writers.getKey())) {
+          allDependencies.addAll(writers.getValue());
+        }
+      }
+      Node node = add(step, allDependencies.toArray(new Node[0]));
+      writersByDestination.computeIfAbsent(normalized, ignored -> new ArrayList<>()).add(node);
+      return node;
+    }
+
+    /** Adds each of {@code steps}, all depending on {@code dependencies} but not each other. */
+    public ImmutableList<Node> addAll(Iterable<? extends Step> steps, Node... dependencies) {
+      ImmutableList.Builder<Node> added = ImmutableList.builder();
+      for (Step step : steps) {
+        added.add(add(step, dependencies));
+      }
+      return added.build();
+    }
+
+    /**
+     * Adds {@code steps} to run one after another, the first of them after all of {@code
+     * dependencies}.
+     */
+    public ImmutableList<Node> addChain(Iterable<? extends Step> steps, Node... dependencies) {
+      ImmutableList.Builder<Node> added = ImmutableList.builder();
+      Node[] previous = dependencies;
+      for (Step step : steps) {
+        Node node = add(step, previous);
+        added.add(node);
+        previous = new Node[] {node};
+      }
+      return added.build();
+    }
+
+    public StepGraph build() {
+      return new StepGraph(shortName, buildTarget, nodes.build());
+    }
+  }
+
+  /** The state of one run of the graph, shared between the caller and its helpers. */
+  private class Execution {
+    private final ExecutionContext context;
+    private final List<Future<?>> helpers = new ArrayList<>();
+    private final int[] remainingDependencies;
+    private final List<List<Node>> dependents;
+    private final ArrayDeque<Node> ready = new ArrayDeque<>();
+    private int running = 0;
+    private int finished = 0;
+    @Nullable private StepFailedException firstFailure = null;
+    @Nullable private InterruptedException interruption = null;
+    @Nullable private Throwable unexpectedFailure = null;
+
+    Execution(ExecutionContext context) {
+      this.context = context;
+      this.remainingDependencies = new int[nodes.size()];
+      this.dependents = new ArrayList<>(nodes.size());
+      for (Node node : nodes) {
+        dependents.add(new ArrayList<>());
+        remainingDependencies[node.index] = node.dependencies.size();
+        for (Node dependency : node.dependencies) {
+          dependents.get(dependency.index).add(node);
+        }
+        if (node.dependencies.isEmpty()) {
+          ready.add(node);
+        }
+      }
+    }
+
+    void runAsHelper() {
+      try {
+        run();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    void runAsCaller() throws InterruptedException {
+      try {
+        run();
+      } catch (InterruptedException e) {
+        synchronized (this) {
+          if (interruption == null) {
+            interruption = e;
+          }
+          notifyAll();
+        }
+        helpers.forEach(future -> future.cancel(true));
+      }
+      awaitRunningSteps();
+      synchronized (this) {
+        if (unexpectedFailure != null) {
+          if (interruption != null) {
+            Thread.currentThread().interrupt();
+          }
+          Throwables.throwIfUnchecked(unexpectedFailure);
+        }
+        if (interruption != null) {
+          throw interruption;
+        }
+      }
+    }
+
+    private void run() throws InterruptedException {
+      while (true) {
+        Node node;
+        synchronized (this) {
+          while (ready.isEmpty() && !isDone()) {
+            wait();
+          }
+          if (isDone()) {
+            return;
+          }
+          node = ready.removeFirst();
+          running++;
+        }
+        Throwable thrown = null;
+        try {
+          StepRunner.runStep(context, node.step, Optional.of(buildTarget));
+        } catch (StepFailedException | InterruptedException | RuntimeException | Error e) {
+          thrown = e;
+        }
+        onStepFinished(node, thrown);
+        if (thrown instanceof InterruptedException) {
+          throw (InterruptedException) thrown;
+        }
+      }
+    }
+
+    private synchronized void onStepFinished(Node node, @Nullable Throwable thrown) {
+      running--;
+      finished++;
+      if (thrown instanceof StepFailedException) {
+        if (firstFailure == null) {
+          firstFailure = (StepFailedException) thrown;
+        }
+      } else if (thrown instanceof InterruptedException) {
+        if (interruption == null) {
+          interruption = (InterruptedException) thrown;
+        }
+      } else if (thrown != null) {
+        // Kept for the caller to rethrow, as a helper's own exceptions would go unnoticed.
+        if (unexpectedFailure == null) {
+          unexpectedFailure = thrown;
+        }
+      } else {
+        for (Node dependent : dependents.get(node.index)) {
+          if (--remainingDependencies[dependent.index] == 0) {
+            ready.add(dependent);
+          }
+        }
+      }
+      notifyAll();
+    }
+
+    /** Whether no more steps should be started. */
+    private boolean isDone() {
+      return finished == nodes.size()
+          || firstFailure != null
+          || interruption != null
+          || unexpectedFailure != null;
+    }
+
+    private synchronized void awaitRunningSteps() {
+      boolean interrupted = false;
+      while (running > 0) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Nullable
+    synchronized StepFailedException getFirstFailure() {
+      return firstFailure;
+    }
+  }
+}
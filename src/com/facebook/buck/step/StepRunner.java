@@ -54,12 +54,15 @@ public final class StepRunner {
     logStepEvent(context, started, buildTargetName);
     context.getBuckEventBus().post(started);
     StepExecutionResult executionResult = StepExecutionResults.ERROR;
+    long startNanos = System.nanoTime();
     try {
       executionResult = step.execute(context);
     } catch (IOException | RuntimeException e) {
       throw StepFailedException.createForFailingStepWithException(step, context, e);
     } finally {
-      StepEvent.Finished finished = StepEvent.finished(started, executionResult.getExitCode());
+      StepEvent.Finished finished =
+          StepEvent.finished(
+              started, executionResult.getExitCode(), System.nanoTime() - startNanos);
       logStepEvent(context, finished, buildTargetName, executionResult.getExecutedCommand());
       context.getBuckEventBus().post(finished);
     }
@@ -29,6 +29,7 @@ import com.facebook.buck.event.FileHashCacheEvent;
 import com.facebook.buck.httpserver.WebServer;
 import com.facebook.buck.io.watchman.Watchman;
 import com.facebook.buck.io.watchman.WatchmanCursor;
+import com.facebook.buck.io.watchman.WatchmanSubscription;
 import com.facebook.buck.io.watchman.WatchmanWatcher;
 import com.facebook.buck.parser.DaemonicParserState;
 import com.facebook.buck.parser.manifest.BuildFileManifestCache;
@@ -39,6 +40,7 @@ import com.facebook.buck.util.cache.impl.WatchedFileHashCache;
 import com.facebook.buck.util.timing.Clock;
 import com.facebook.buck.versions.VersionedTargetGraphCache;
 import com.facebook.buck.worker.WorkerProcessPool;
+import com.facebook.buck.worker.WorkerProcessPoolEvictor;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -47,6 +49,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -74,10 +77,13 @@ public final class BuckGlobalState implements Closeable {
   private final EventBus fileEventBus;
   private final Optional<WebServer> webServer;
   private final ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools;
+  private final Optional<WorkerProcessPoolEvictor> workerProcessPoolEvictor;
   private final VersionedTargetGraphCache versionedTargetGraphCache;
   private final ActionGraphCache actionGraphCache;
   private final RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler;
   private final ImmutableMap<AbsPath, WatchmanCursor> cursor;
+  private final ConcurrentMap<AbsPath, WatchmanSubscription> watchmanSubscriptions =
+      new ConcurrentHashMap<>();
   private final KnownRuleTypesProvider knownRuleTypesProvider;
   private final Clock clock;
   private final long startTime;
@@ -94,6 +100,7 @@ public final class BuckGlobalState implements Closeable {
       EventBus fileEventBus,
       Optional<WebServer> webServer,
       ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools,
+      Optional<WorkerProcessPoolEvictor> workerProcessPoolEvictor,
       VersionedTargetGraphCache versionedTargetGraphCache,
       ActionGraphCache actionGraphCache,
       RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler,
@@ -111,6 +118,7 @@ public final class BuckGlobalState implements Closeable {
     this.fileEventBus = fileEventBus;
     this.webServer = webServer;
     this.persistentWorkerPools = persistentWorkerPools;
+    this.workerProcessPoolEvictor = workerProcessPoolEvictor;
     this.versionedTargetGraphCache = versionedTargetGraphCache;
     this.actionGraphCache = actionGraphCache;
     this.defaultRuleKeyFactoryCacheRecycler = defaultRuleKeyFactoryCacheRecycler;
@@ -239,6 +247,11 @@ public final class BuckGlobalState implements Closeable {
     return cursor;
   }
 
+  /** Watchman subscriptions per cell, kept alive for as long as this state is. */
+  public ConcurrentMap<AbsPath, WatchmanSubscription> getWatchmanSubscriptions() {
+    return watchmanSubscriptions;
+  }
+
   /** @return true if state was created with Watchman service initialized */
   public boolean getUsesWatchman() {
     return usesWatchman;
@@ -248,9 +261,22 @@ public final class BuckGlobalState implements Closeable {
   public void close() {
     shutdownPersistentWorkerPools();
     shutdownWebServer();
+    closeWatchmanSubscriptions();
+  }
+
+  private void closeWatchmanSubscriptions() {
+    for (WatchmanSubscription subscription : watchmanSubscriptions.values()) {
+      try {
+        subscription.close();
+      } catch (IOException e) {
+        LOG.error(e);
+      }
+    }
+    watchmanSubscriptions.clear();
   }
 
   private void shutdownPersistentWorkerPools() {
+    workerProcessPoolEvictor.ifPresent(WorkerProcessPoolEvictor::close);
     for (WorkerProcessPool pool : persistentWorkerPools.values()) {
       try {
         pool.close();
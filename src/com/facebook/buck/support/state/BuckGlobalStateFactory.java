@@ -53,6 +53,7 @@ import com.facebook.buck.util.stream.RichStream;
 import com.facebook.buck.util.timing.Clock;
 import com.facebook.buck.versions.VersionedTargetGraphCache;
 import com.facebook.buck.worker.WorkerProcessPool;
+import com.facebook.buck.worker.WorkerProcessPoolEvictor;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -64,12 +65,16 @@ import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /** Factory for {@link BuckGlobalState}. */
 public class BuckGlobalStateFactory {
 
   private static final Logger LOG = Logger.get(BuckGlobalStateFactory.class);
 
+  private static final String WORKER_SECTION = "worker";
+  private static final long WORKER_EVICTION_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
   /** @return a new instance of {@link BuckGlobalState} for execution of buck */
   public static BuckGlobalState create(
       Cells rootCell,
@@ -158,6 +163,9 @@ public class BuckGlobalStateFactory {
     }
     LOG.debug("Using Watchman Cursor: %s", cursor);
     ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools = new ConcurrentHashMap<>();
+    Optional<WorkerProcessPoolEvictor> workerProcessPoolEvictor =
+        createWorkerProcessPoolEvictor(
+            rootCell.getRootCell().getBuckConfig(), persistentWorkerPools);
 
     return new BuckGlobalState(
         rootCell.getRootCell(),
@@ -170,6 +178,7 @@ public class BuckGlobalStateFactory {
         fileEventBus,
         webServer,
         persistentWorkerPools,
+        workerProcessPoolEvictor,
         versionedTargetGraphCache,
         actionGraphCache,
         defaultRuleKeyFactoryCacheRecycler,
@@ -232,6 +241,26 @@ public class BuckGlobalStateFactory {
             });
   }
 
+  /**
+   * Create an evictor for the persistent worker pools if idle or memory based eviction is enabled
+   * in the {@code [worker]} section.
+   */
+  private static Optional<WorkerProcessPoolEvictor> createWorkerProcessPoolEvictor(
+      BuckConfig config, ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools) {
+    long maxIdleTimeSeconds = config.getLong(WORKER_SECTION, "max_idle_time_seconds").orElse(0L);
+    float minFreeMemoryPercent =
+        config.getFloat(WORKER_SECTION, "min_free_memory_percent").orElse(0f);
+    if (maxIdleTimeSeconds <= 0 && minFreeMemoryPercent <= 0) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        WorkerProcessPoolEvictor.start(
+            persistentWorkerPools,
+            TimeUnit.SECONDS.toMillis(maxIdleTimeSeconds),
+            minFreeMemoryPercent / 100.0,
+            WORKER_EVICTION_CHECK_INTERVAL_MILLIS));
+  }
+
   private static Optional<WebServer> createWebServer(
       BuckConfig config, ProjectFilesystem filesystem, Clock clock) {
     OptionalInt port = getValidWebServerPort(config);
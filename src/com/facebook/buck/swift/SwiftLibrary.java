@@ -50,6 +50,7 @@ import com.facebook.buck.rules.args.FileListableLinkerInputArg;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.coercer.FrameworkPath;
 import com.facebook.buck.swift.toolchain.UnresolvedSwiftPlatform;
+import com.facebook.buck.util.collect.HashTrieMap;
 import com.facebook.buck.util.stream.RichStream;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -308,4 +309,14 @@ class SwiftLibrary extends NoopBuildRuleWithDeclaredAndExtraDeps
       return transitiveCxxPreprocessorInputCache.getUnchecked(cxxPlatform, graphBuilder);
     }
   }
+
+  @Override
+  public HashTrieMap<BuildTarget, CxxPreprocessorInput> getSharedTransitiveCxxPreprocessorInput(
+      CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+    if (getBuildTarget().getFlavors().contains(SWIFT_COMPANION_FLAVOR)) {
+      return HashTrieMap.of(getBuildTarget(), getCxxPreprocessorInput(cxxPlatform, graphBuilder));
+    } else {
+      return transitiveCxxPreprocessorInputCache.getSharedUnchecked(cxxPlatform, graphBuilder);
+    }
+  }
 }
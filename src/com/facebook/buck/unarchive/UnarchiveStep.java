@@ -24,6 +24,7 @@ import com.facebook.buck.step.StepExecutionResults;
 import com.facebook.buck.util.PatternsMatcher;
 import com.facebook.buck.util.unarchive.ArchiveFormat;
 import com.facebook.buck.util.unarchive.ExistingFileMode;
+import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Optional;
@@ -31,12 +32,16 @@ import java.util.Optional;
 /** A step that extracts arbitrary archives */
 public abstract class UnarchiveStep implements Step {
 
+  /** Extraction is bound by the disk more than the CPU, so a few threads are enough. */
+  private static final int MAX_EXTRACTION_THREADS = 4;
+
   private final ArchiveFormat format;
   protected final ProjectFilesystem filesystem;
   protected final Path archiveFile;
   protected final Path destinationDirectory;
   protected final PatternsMatcher entriesToExclude;
   private final Optional<Path> stripPrefix;
+  private final ExistingFileMode existingFileMode;
 
   /**
    * Create an instance of UnarchiveStep
@@ -54,12 +59,41 @@ public abstract class UnarchiveStep implements Step {
       Path destinationDirectory,
       Optional<Path> stripPrefix,
       PatternsMatcher entriesToExclude) {
+    this(
+        format,
+        filesystem,
+        archiveFile,
+        destinationDirectory,
+        stripPrefix,
+        entriesToExclude,
+        ExistingFileMode.OVERWRITE);
+  }
+
+  /**
+   * Create an instance of UnarchiveStep
+   *
+   * @param format The type of file that will be extracted
+   * @param filesystem The filesystem that the archive will be extracted into
+   * @param archiveFile The path to the file to extract
+   * @param destinationDirectory The directory to extract files into
+   * @param stripPrefix If present, strip this prefix from paths inside of the archive
+   * @param existingFileMode How to treat files already in {@code destinationDirectory}
+   */
+  public UnarchiveStep(
+      ArchiveFormat format,
+      ProjectFilesystem filesystem,
+      Path archiveFile,
+      Path destinationDirectory,
+      Optional<Path> stripPrefix,
+      PatternsMatcher entriesToExclude,
+      ExistingFileMode existingFileMode) {
     this.format = format;
     this.filesystem = filesystem;
     this.archiveFile = archiveFile;
     this.destinationDirectory = destinationDirectory;
     this.stripPrefix = stripPrefix;
     this.entriesToExclude = entriesToExclude;
+    this.existingFileMode = existingFileMode;
   }
 
   @Override
@@ -73,13 +107,26 @@ public abstract class UnarchiveStep implements Step {
 
     format
         .getUnarchiver()
+        .withMaxThreads(getExtractionThreads(context))
         .extractArchive(
             context.getProjectFilesystemFactory(),
             archive,
             out,
             stripPrefix,
             entriesToExclude,
-            ExistingFileMode.OVERWRITE);
+            existingFileMode);
     return StepExecutionResults.SUCCESS;
   }
+
+  /**
+   * Rules that declare resource amounts get as many threads as the weighted executor granted them
+   * CPUs. Every other rule runs with the default single CPU, which says nothing about how busy the
+   * machine is, so it may use a few of the build's threads.
+   */
+  @VisibleForTesting
+  static int getExtractionThreads(ExecutionContext context) {
+    return Math.max(
+        context.getRuleResourceAmounts().getCpu(),
+        Math.min(MAX_EXTRACTION_THREADS, context.getConcurrencyLimit().threadLimit));
+  }
 }
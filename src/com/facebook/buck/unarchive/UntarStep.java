@@ -21,6 +21,7 @@ import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.pathformat.PathFormatter;
 import com.facebook.buck.util.PatternsMatcher;
 import com.facebook.buck.util.unarchive.ArchiveFormat;
+import com.facebook.buck.util.unarchive.ExistingFileMode;
 import java.nio.file.Path;
 import java.util.Optional;
 
@@ -43,7 +44,41 @@ public class UntarStep extends UnarchiveStep {
       Path destinationDirectory,
       Optional<Path> stripPrefix,
       ArchiveFormat format) {
-    super(format, filesystem, archiveFile, destinationDirectory, stripPrefix, PatternsMatcher.NONE);
+    this(
+        filesystem,
+        archiveFile,
+        destinationDirectory,
+        stripPrefix,
+        format,
+        ExistingFileMode.OVERWRITE);
+  }
+
+  /**
+   * Create an instance of UntarStep
+   *
+   * @param filesystem The filesystem that the archive will be extracted into
+   * @param archiveFile The path to the file to extract
+   * @param destinationDirectory The directory to extract files into
+   * @param stripPrefix If present, strip this prefix from paths inside of the archive
+   * @param format The format to extract
+   * @param existingFileMode How to treat files already in {@code destinationDirectory}
+   * @throws RuntimeException if a non-tar format is provided
+   */
+  public UntarStep(
+      ProjectFilesystem filesystem,
+      Path archiveFile,
+      Path destinationDirectory,
+      Optional<Path> stripPrefix,
+      ArchiveFormat format,
+      ExistingFileMode existingFileMode) {
+    super(
+        format,
+        filesystem,
+        archiveFile,
+        destinationDirectory,
+        stripPrefix,
+        PatternsMatcher.NONE,
+        existingFileMode);
 
     switch (format) {
       case TAR:
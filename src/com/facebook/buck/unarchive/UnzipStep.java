@@ -21,6 +21,7 @@ import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.pathformat.PathFormatter;
 import com.facebook.buck.util.PatternsMatcher;
 import com.facebook.buck.util.unarchive.ArchiveFormat;
+import com.facebook.buck.util.unarchive.ExistingFileMode;
 import java.nio.file.Path;
 import java.util.Optional;
 
@@ -73,6 +74,31 @@ public class UnzipStep extends UnarchiveStep {
         entriesToExclude);
   }
 
+  /**
+   * Create an instance of UnzipStep
+   *
+   * @param filesystem The filesystem that the archive will be extracted into
+   * @param zipFile The path to the file to extract
+   * @param destinationDirectory The directory to extract files into
+   * @param stripPrefix If present, strip this prefix from paths inside of the archive
+   * @param existingFileMode How to treat files already in {@code destinationDirectory}
+   */
+  public UnzipStep(
+      ProjectFilesystem filesystem,
+      Path zipFile,
+      Path destinationDirectory,
+      Optional<Path> stripPrefix,
+      ExistingFileMode existingFileMode) {
+    super(
+        ArchiveFormat.ZIP,
+        filesystem,
+        zipFile,
+        destinationDirectory,
+        stripPrefix,
+        PatternsMatcher.NONE,
+        existingFileMode);
+  }
+
   @Override
   public String getShortName() {
     return "unzip";
@@ -17,17 +17,17 @@
 package com.facebook.buck.util;
 
 import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.file.FileIoPool;
 import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.file.ParallelFileTreeWalker;
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class DirectoryCleaner {
   private static final Logger LOG = Logger.get(DirectoryCleaner.class);
@@ -113,18 +113,16 @@ public class DirectoryCleaner {
   }
 
   private static long computeDirSizeBytesRecursively(Path directoryPath) throws IOException {
-    AtomicLong totalSizeBytes = new AtomicLong(0);
-    Files.walkFileTree(
-        directoryPath,
-        new SimpleFileVisitor<Path>() {
-          @Override
-          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-            totalSizeBytes.addAndGet(attrs.size());
-            return FileVisitResult.CONTINUE;
-          }
-        });
-
-    return totalSizeBytes.get();
+    LongAdder totalSizeBytes = new LongAdder();
+    ParallelFileTreeWalker.create(FileIoPool.get())
+        .walk(
+            directoryPath,
+            (file, attrs) -> {
+              totalSizeBytes.add(attrs.size());
+              return null;
+            });
+
+    return totalSizeBytes.sum();
   }
 
   public static class PathStats {
@@ -0,0 +1,541 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.bser;
+
+import static com.facebook.buck.util.bser.BserConstants.BSER_ARRAY;
+import static com.facebook.buck.util.bser.BserConstants.BSER_FALSE;
+import static com.facebook.buck.util.bser.BserConstants.BSER_INT16;
+import static com.facebook.buck.util.bser.BserConstants.BSER_INT32;
+import static com.facebook.buck.util.bser.BserConstants.BSER_INT64;
+import static com.facebook.buck.util.bser.BserConstants.BSER_INT8;
+import static com.facebook.buck.util.bser.BserConstants.BSER_NULL;
+import static com.facebook.buck.util.bser.BserConstants.BSER_OBJECT;
+import static com.facebook.buck.util.bser.BserConstants.BSER_REAL;
+import static com.facebook.buck.util.bser.BserConstants.BSER_SKIP;
+import static com.facebook.buck.util.bser.BserConstants.BSER_STRING;
+import static com.facebook.buck.util.bser.BserConstants.BSER_TEMPLATE;
+import static com.facebook.buck.util.bser.BserConstants.BSER_TRUE;
+
+import com.facebook.buck.util.bser.BserDeserializer.BserEofException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nullable;
+
+/**
+ * Streaming decoder for the BSER binary JSON format used by the Watchman service:
+ *
+ * <p>https://facebook.github.io/watchman/docs/bser.html
+ *
+ * <p>Unlike {@link BserDeserializer}, which turns a whole PDU into {@code Map}s and {@code List}s,
+ * this is a cursor over the encoded bytes: callers pull the values they are interested in and skip
+ * the rest, so large responses (like a {@code query} listing every file of a repository) are
+ * decoded without building an intermediate tree. PDUs read from a channel are kept in a direct
+ * buffer which is reused from one PDU to the next and grows up to a fixed size; larger PDUs are
+ * read into a heap buffer of their own.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public class BserReader {
+
+  /** Decodes a value out of a {@link BserReader}. */
+  @FunctionalInterface
+  public interface ValueReader<T> {
+    T read(BserReader reader) throws IOException;
+  }
+
+  /** Receives the fields of objects decoded by {@link #readObject} and {@link #readObjects}. */
+  public interface ObjectVisitor {
+    /**
+     * Called for every field whose key is one of the {@link Keys} the object is read with. The
+     * implementation must consume exactly one value from {@code reader}.
+     */
+    void visitField(int keyIndex, BserReader reader) throws IOException;
+
+    /** Called once all fields of an object have been visited. */
+    default void endObject() throws IOException {}
+  }
+
+  /** Object keys to look for, pre-encoded so that they can be matched without decoding. */
+  public static class Keys {
+    private final byte[][] encodedKeys;
+
+    private Keys(byte[][] encodedKeys) {
+      this.encodedKeys = encodedKeys;
+    }
+
+    /** Keys are reported to {@link ObjectVisitor#visitField} by their index in {@code keys}. */
+    public static Keys of(String... keys) {
+      byte[][] encodedKeys = new byte[keys.length][];
+      for (int i = 0; i < keys.length; i++) {
+        encodedKeys[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+      }
+      return new Keys(encodedKeys);
+    }
+  }
+
+  /** The type of a BSER value. */
+  public enum Type {
+    ARRAY,
+    OBJECT,
+    STRING,
+    INTEGER,
+    REAL,
+    BOOLEAN,
+    NULL,
+    TEMPLATE,
+  }
+
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  /** The largest the reused direct buffer grows to. */
+  private static final int MAX_CHANNEL_BUFFER_SIZE = 1024 * 1024;
+
+  /**
+   * Reads into a heap buffer go through a temporary direct buffer of the same size, which the JDK
+   * caches per thread, so heap buffers are filled at most this many bytes at a time.
+   */
+  private static final int MAX_HEAP_READ_SIZE = 64 * 1024;
+
+  // 2 bytes marker, 1 byte int size
+  private static final int INITIAL_SNIFF_LEN = 3;
+
+  private final CharsetDecoder utf8Decoder;
+  /** Reused for every PDU read from a channel that fits in it. */
+  private ByteBuffer channelBuffer;
+  private ByteBuffer buffer;
+  private char[] chars = new char[256];
+
+  public BserReader() {
+    this.utf8Decoder =
+        StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT);
+    this.channelBuffer = allocate(INITIAL_BUFFER_SIZE);
+    this.buffer = channelBuffer;
+    this.buffer.limit(0);
+  }
+
+  private static ByteBuffer allocate(int capacity) {
+    return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Reads the next PDU from {@code channel} and positions the cursor on its value. Exactly the
+   * bytes of one PDU are consumed from the channel.
+   */
+  public BserReader readFrom(ReadableByteChannel channel) throws IOException {
+    // Drop the buffer of a previous oversized PDU before reading the next one.
+    buffer = channelBuffer;
+    ByteBuffer header = channelBuffer;
+    header.clear();
+    readFully(channel, header, INITIAL_SNIFF_LEN);
+    int lengthBytes = getLengthBytes(header);
+    readFully(channel, header, INITIAL_SNIFF_LEN + lengthBytes);
+    header.flip();
+    header.position(INITIAL_SNIFF_LEN - 1);
+    int length = readLength(header);
+
+    // The shared buffer grows for moderately large PDUs. Anything larger gets a heap buffer of its
+    // own, which the garbage collector reclaims once the next PDU is read, instead of pinning
+    // native memory for the largest response for as long as the connection lives.
+    if (length > channelBuffer.capacity()) {
+      if (length <= MAX_CHANNEL_BUFFER_SIZE) {
+        channelBuffer =
+            allocate(Math.min(MAX_CHANNEL_BUFFER_SIZE, Integer.highestOneBit(length) * 2));
+        buffer = channelBuffer;
+      } else {
+        buffer = ByteBuffer.allocate(length).order(ByteOrder.nativeOrder());
+      }
+    }
+    buffer.clear();
+    readFully(channel, buffer, length);
+    buffer.flip();
+    return this;
+  }
+
+  /** Positions the cursor on the value of the PDU between the position and limit of {@code pdu}. */
+  public BserReader readFrom(ByteBuffer pdu) throws IOException {
+    ByteBuffer buffer = pdu.slice().order(ByteOrder.nativeOrder());
+    try {
+      getLengthBytes(buffer);
+      buffer.position(INITIAL_SNIFF_LEN - 1);
+      int length = readLength(buffer);
+      if (buffer.remaining() < length) {
+        throw new BserEofException(
+            String.format(
+                "Invalid BSER header (expected %d bytes, got %d bytes)",
+                length, buffer.remaining()));
+      }
+      buffer.limit(buffer.position() + length);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new BserEofException("Prematurely reached end of BSER buffer", e);
+    }
+    this.buffer = buffer;
+    return this;
+  }
+
+  private static void readFully(ReadableByteChannel channel, ByteBuffer buffer, int limit)
+      throws IOException {
+    while (buffer.position() < limit) {
+      buffer.limit(
+          buffer.isDirect() ? limit : Math.min(limit, buffer.position() + MAX_HEAP_READ_SIZE));
+      if (channel.read(buffer) < 0) {
+        throw new BserEofException(
+            String.format(
+                "Prematurely reached end of BSER stream (expected %d bytes, got %d bytes)",
+                limit, buffer.position()));
+      }
+    }
+  }
+
+  private static int getLengthBytes(ByteBuffer header) throws IOException {
+    if (header.get(0) != 0x00 || header.get(1) != 0x01) {
+      throw new IOException("Invalid BSER header");
+    }
+    byte lengthType = header.get(2);
+    switch (lengthType) {
+      case BSER_INT8:
+        return 1;
+      case BSER_INT16:
+        return 2;
+      case BSER_INT32:
+        return 4;
+      case BSER_INT64:
+        return 8;
+      default:
+        throw new IOException(String.format("Unrecognized BSER header length type %d", lengthType));
+    }
+  }
+
+  /** Runs {@code valueReader} on the current value, translating a truncated PDU to an error. */
+  public <T> T read(ValueReader<T> valueReader) throws IOException {
+    try {
+      return valueReader.read(this);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new BserEofException("Prematurely reached end of BSER buffer", e);
+    }
+  }
+
+  /** Returns the type of the next value without consuming it. */
+  public Type peekType() throws IOException {
+    byte type = buffer.get(buffer.position());
+    switch (type) {
+      case BSER_INT8:
+      case BSER_INT16:
+      case BSER_INT32:
+      case BSER_INT64:
+        return Type.INTEGER;
+      case BSER_REAL:
+        return Type.REAL;
+      case BSER_TRUE:
+      case BSER_FALSE:
+        return Type.BOOLEAN;
+      case BSER_NULL:
+        return Type.NULL;
+      case BSER_STRING:
+        return Type.STRING;
+      case BSER_ARRAY:
+        return Type.ARRAY;
+      case BSER_OBJECT:
+        return Type.OBJECT;
+      case BSER_TEMPLATE:
+        return Type.TEMPLATE;
+      default:
+        throw new IOException(String.format("Unrecognized BSER value type %d", type));
+    }
+  }
+
+  /** Consumes the header of an array and returns the number of items which follow it. */
+  public int readArrayLength() throws IOException {
+    expect(BSER_ARRAY, "ARRAY");
+    return readLength(buffer);
+  }
+
+  public long readLong() throws IOException {
+    byte type = buffer.get();
+    switch (type) {
+      case BSER_INT8:
+        return buffer.get();
+      case BSER_INT16:
+        return buffer.getShort();
+      case BSER_INT32:
+        return buffer.getInt();
+      case BSER_INT64:
+        return buffer.getLong();
+      default:
+        throw new IOException(String.format("Expected integer, got BSER value type %d", type));
+    }
+  }
+
+  public double readDouble() throws IOException {
+    expect(BSER_REAL, "REAL");
+    return buffer.getDouble();
+  }
+
+  public boolean readBoolean() throws IOException {
+    byte type = buffer.get();
+    switch (type) {
+      case BSER_TRUE:
+        return true;
+      case BSER_FALSE:
+        return false;
+      default:
+        throw new IOException(String.format("Expected boolean, got BSER value type %d", type));
+    }
+  }
+
+  public String readString() throws IOException {
+    expect(BSER_STRING, "STRING");
+    return readStringBody();
+  }
+
+  /**
+   * Reads the next value as a string, unless it is {@code null}.
+   *
+   * @return the string, or {@code null} if the value was {@code null}.
+   */
+  @Nullable
+  public String readNullableString() throws IOException {
+    if (buffer.get(buffer.position()) == BSER_NULL) {
+      buffer.get();
+      return null;
+    }
+    return readString();
+  }
+
+  private String readStringBody() throws IOException {
+    int length = readLength(buffer);
+    int start = buffer.position();
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    if (chars.length < length) {
+      chars = new char[Math.max(length, chars.length * 2)];
+    }
+    // Paths are overwhelmingly ASCII, which maps to chars one to one. Anything else goes through
+    // the decoder, which rejects input that isn't valid UTF-8.
+    for (int i = 0; i < length; i++) {
+      byte b = buffer.get(start + i);
+      if (b < 0) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(start + length);
+        String result = utf8Decoder.decode(bytes).toString();
+        buffer.position(start + length);
+        return result;
+      }
+      chars[i] = (char) b;
+    }
+    buffer.position(start + length);
+    return new String(chars, 0, length);
+  }
+
+  /**
+   * Reads an object, passing the values of the fields in {@code keys} to {@code visitor} and
+   * skipping all the others.
+   */
+  public void readObject(Keys keys, ObjectVisitor visitor) throws IOException {
+    expect(BSER_OBJECT, "OBJECT");
+    int numFields = readLength(buffer);
+    for (int i = 0; i < numFields; i++) {
+      expect(BSER_STRING, "STRING object key");
+      int keyIndex = readKeyIndex(keys);
+      if (keyIndex < 0) {
+        skipValue();
+      } else {
+        visitor.visitField(keyIndex, this);
+      }
+    }
+    visitor.endObject();
+  }
+
+  /**
+   * Reads an array of objects, which Watchman may encode either as an array or as a template, and
+   * calls {@link #readObject} for each of them.
+   *
+   * @return the number of objects read.
+   */
+  public int readObjects(Keys keys, ObjectVisitor visitor) throws IOException {
+    byte type = buffer.get(buffer.position());
+    if (type == BSER_ARRAY) {
+      int numItems = readArrayLength();
+      for (int i = 0; i < numItems; i++) {
+        readObject(keys, visitor);
+      }
+      return numItems;
+    }
+    expect(BSER_TEMPLATE, "ARRAY or TEMPLATE");
+    int numKeys = readArrayLength();
+    int[] keyIndexes = new int[numKeys];
+    for (int i = 0; i < numKeys; i++) {
+      expect(BSER_STRING, "STRING template key");
+      keyIndexes[i] = readKeyIndex(keys);
+    }
+    int numItems = readLength(buffer);
+    for (int item = 0; item < numItems; item++) {
+      for (int keyIndex : keyIndexes) {
+        if (buffer.get(buffer.position()) == BSER_SKIP) {
+          buffer.get();
+        } else if (keyIndex < 0) {
+          skipValue();
+        } else {
+          visitor.visitField(keyIndex, this);
+        }
+      }
+      visitor.endObject();
+    }
+    return numItems;
+  }
+
+  /** Returns the index of the key at the cursor in {@code keys}, or -1, and consumes it. */
+  private int readKeyIndex(Keys keys) throws IOException {
+    int length = readLength(buffer);
+    int start = buffer.position();
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    buffer.position(start + length);
+    for (int i = 0; i < keys.encodedKeys.length; i++) {
+      if (matches(start, length, keys.encodedKeys[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean matches(int start, int length, byte[] key) {
+    if (key.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (buffer.get(start + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Consumes the next value, whatever its type. */
+  public void skipValue() throws IOException {
+    byte type = buffer.get();
+    skipValue(type);
+  }
+
+  private void skipValue(byte type) throws IOException {
+    switch (type) {
+      case BSER_INT8:
+        skipBytes(1);
+        break;
+      case BSER_INT16:
+        skipBytes(2);
+        break;
+      case BSER_INT32:
+        skipBytes(4);
+        break;
+      case BSER_INT64:
+      case BSER_REAL:
+        skipBytes(8);
+        break;
+      case BSER_TRUE:
+      case BSER_FALSE:
+      case BSER_NULL:
+        break;
+      case BSER_STRING:
+        skipBytes(readLength(buffer));
+        break;
+      case BSER_ARRAY:
+        {
+          int numItems = readLength(buffer);
+          for (int i = 0; i < numItems; i++) {
+            skipValue();
+          }
+          break;
+        }
+      case BSER_OBJECT:
+        {
+          int numFields = readLength(buffer);
+          for (int i = 0; i < numFields; i++) {
+            skipValue();
+            skipValue();
+          }
+          break;
+        }
+      case BSER_TEMPLATE:
+        {
+          int numKeys = readArrayLength();
+          for (int i = 0; i < numKeys; i++) {
+            skipValue();
+          }
+          int numItems = readLength(buffer);
+          for (int i = 0; i < numItems * numKeys; i++) {
+            byte valueType = buffer.get();
+            if (valueType != BSER_SKIP) {
+              skipValue(valueType);
+            }
+          }
+          break;
+        }
+      default:
+        throw new IOException(String.format("Unrecognized BSER value type %d", type));
+    }
+  }
+
+  private void skipBytes(int count) {
+    if (count > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    buffer.position(buffer.position() + count);
+  }
+
+  private void expect(byte expectedType, String expected) throws IOException {
+    byte type = buffer.get();
+    if (type != expectedType) {
+      throw new IOException(String.format("Expected %s, got BSER value type %d", expected, type));
+    }
+  }
+
+  private static int readLength(ByteBuffer buffer) throws IOException {
+    byte type = buffer.get();
+    long value;
+    switch (type) {
+      case BSER_INT8:
+        value = buffer.get();
+        break;
+      case BSER_INT16:
+        value = buffer.getShort();
+        break;
+      case BSER_INT32:
+        value = buffer.getInt();
+        break;
+      case BSER_INT64:
+        value = buffer.getLong();
+        break;
+      default:
+        throw new IOException(String.format("Invalid BSER number encoding %d", type));
+    }
+    if (value > Integer.MAX_VALUE) {
+      throw new IOException(
+          String.format("BSER length out of range (%d > %d)", value, Integer.MAX_VALUE));
+    } else if (value < 0) {
+      throw new IOException(String.format("BSER length out of range (%d < 0)", value));
+    }
+    return (int) value;
+  }
+}
@@ -20,6 +20,7 @@ import com.facebook.buck.event.AbstractBuckEvent;
 import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import javax.annotation.Nullable;
@@ -51,6 +52,11 @@ public class DelegatingFileHashCacheEngine implements FileHashCacheEngine {
     delegate.invalidateWithParents(path);
   }
 
+  @Override
+  public void invalidateWithParents(Collection<Path> paths) {
+    delegate.invalidateWithParents(paths);
+  }
+
   @Override
   public HashCode get(Path path) throws IOException {
     return delegate.get(path);
@@ -20,6 +20,7 @@ import com.facebook.buck.event.AbstractBuckEvent;
 import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import javax.annotation.Nullable;
@@ -43,6 +44,17 @@ public interface FileHashCacheEngine {
 
   void invalidateWithParents(Path path);
 
+  /**
+   * Same as {@link #invalidateWithParents(Path)} for every path in {@code paths}. Engines which
+   * have to scan their contents to find parents should override this to do a single scan per
+   * batch.
+   */
+  default void invalidateWithParents(Collection<Path> paths) {
+    for (Path path : paths) {
+      invalidateWithParents(path);
+    }
+  }
+
   HashCode get(Path path) throws IOException;
 
   HashCode getForArchiveMember(Path archiveRelativePath, Path memberPath) throws IOException;
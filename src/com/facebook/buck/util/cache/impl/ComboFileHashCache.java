@@ -25,6 +25,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
@@ -75,6 +76,13 @@ class ComboFileHashCache implements FileHashCacheEngine {
     }
   }
 
+  @Override
+  public void invalidateWithParents(Collection<Path> paths) {
+    for (FileHashCacheEngine fileHashCacheEngine : fileHashCacheEngines) {
+      fileHashCacheEngine.invalidateWithParents(paths);
+    }
+  }
+
   @Override
   public HashCode get(Path path) {
     List<HashCode> hashes =
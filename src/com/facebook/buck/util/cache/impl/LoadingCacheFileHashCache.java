@@ -31,7 +31,9 @@ import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -130,6 +132,40 @@ class LoadingCacheFileHashCache implements FileHashCacheEngine {
     }
   }
 
+  @Override
+  public void invalidateWithParents(Collection<Path> paths) {
+    // Same predicate as above, but with both sides precomputed so that the cache is scanned once
+    // for the whole batch instead of once per changed path.
+    Set<Path> changedPaths = new HashSet<>(paths);
+    Set<Path> changedPathsAndParents = new HashSet<>();
+    for (Path path : paths) {
+      for (Path current = path;
+          current != null && changedPathsAndParents.add(current);
+          current = current.getParent()) {}
+    }
+    Iterable<Path> pathsToInvalidate =
+        Maps.filterEntries(
+                loadingCache.asMap(),
+                entry -> {
+                  Objects.requireNonNull(entry);
+                  if (changedPathsAndParents.contains(entry.getKey())) {
+                    return true;
+                  }
+                  for (Path current = entry.getKey();
+                      current != null;
+                      current = current.getParent()) {
+                    if (changedPaths.contains(current)) {
+                      return true;
+                    }
+                  }
+                  return false;
+                })
+            .keySet();
+    for (Path pathToInvalidate : pathsToInvalidate) {
+      invalidate(pathToInvalidate);
+    }
+  }
+
   @Override
   public void invalidate(Path path) {
     loadingCache.invalidate(path);
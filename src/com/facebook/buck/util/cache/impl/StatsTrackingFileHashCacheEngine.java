@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 
 public class StatsTrackingFileHashCacheEngine extends DelegatingFileHashCacheEngine {
@@ -55,6 +56,14 @@ public class StatsTrackingFileHashCacheEngine extends DelegatingFileHashCacheEng
     numberOfInvalidations++;
   }
 
+  @Override
+  public void invalidateWithParents(Collection<Path> paths) {
+    long start = System.nanoTime();
+    super.invalidateWithParents(paths);
+    cacheInvalidationAggregatedNanoTime += System.nanoTime() - start;
+    numberOfInvalidations += paths.size();
+  }
+
   @Override
   public HashCode get(Path path) throws IOException {
     long start = System.nanoTime();
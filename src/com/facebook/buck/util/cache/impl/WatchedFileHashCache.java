@@ -19,11 +19,14 @@ package com.facebook.buck.util.cache.impl;
 import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.watchman.WatchmanMultiplePathEvent;
 import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.util.cache.FileHashCacheMode;
 import com.google.common.eventbus.Subscribe;
 import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class WatchedFileHashCache extends DefaultFileHashCache {
 
@@ -47,6 +50,20 @@ public class WatchedFileHashCache extends DefaultFileHashCache {
     fileHashCacheEngine.invalidateWithParents(path.getPath());
   }
 
+  /**
+   * Invalidates all paths of a batch of changes at once, which lets the engine find the affected
+   * entries in a single pass instead of one pass per changed file.
+   */
+  @Subscribe
+  public synchronized void onFileSystemChange(WatchmanMultiplePathEvent event) {
+    Set<Path> paths = new LinkedHashSet<>(event.getChanges().size());
+    for (WatchmanMultiplePathEvent.Change change : event.getChanges()) {
+      paths.add(change.getPath().normalize());
+    }
+    LOG.verbose("Invalidating %d paths", paths.size());
+    fileHashCacheEngine.invalidateWithParents(paths);
+  }
+
   @SuppressWarnings("unused")
   @Subscribe
   public synchronized void onFileSystemChange(WatchmanOverflowEvent event) {
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.collect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.BiConsumer;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable map stored as a hash array mapped trie.
+ *
+ * <p>Maps are never modified. {@link #plus} and {@link #union} return new maps which reuse every
+ * subtree of their inputs that they did not have to change, and return an input itself when the
+ * other one adds nothing to it. A map built on top of other maps therefore only costs memory for
+ * what it adds, which makes this a good fit for transitive closures over a DAG, where each node's
+ * closure is mostly the union of its children's.
+ *
+ * <p>Iteration order is determined by the hash codes of the keys.
+ */
+public final class HashTrieMap<K, V> {
+
+  private static final int BITS_PER_LEVEL = 5;
+  private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+  private static final HashTrieMap<Object, Object> EMPTY = new HashTrieMap<>(null);
+
+  @Nullable private final Node<K, V> root;
+
+  private HashTrieMap(@Nullable Node<K, V> root) {
+    this.root = root;
+  }
+
+  /** Returns the empty map. */
+  @SuppressWarnings("unchecked")
+  public static <K, V> HashTrieMap<K, V> of() {
+    return (HashTrieMap<K, V>) EMPTY;
+  }
+
+  /** Returns a map containing a single entry. */
+  public static <K, V> HashTrieMap<K, V> of(K key, V value) {
+    return new HashTrieMap<>(new Leaf<>(key, value));
+  }
+
+  /** Returns a map containing the entries of {@code map}. */
+  public static <K, V> HashTrieMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+    HashTrieMap<K, V> result = of();
+    for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+      result = result.plus(entry.getKey(), entry.getValue());
+    }
+    return result;
+  }
+
+  public int size() {
+    return root == null ? 0 : root.size();
+  }
+
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  /** Returns the value mapped to {@code key}, or {@code null} if there is none. */
+  @Nullable
+  public V get(Object key) {
+    return root == null ? null : root.get(key, hash(key), 0);
+  }
+
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  /** Returns a map with {@code key} mapped to {@code value}, replacing any existing mapping. */
+  public HashTrieMap<K, V> plus(K key, V value) {
+    return of(key, value).union(this);
+  }
+
+  /**
+   * Returns a map containing the entries of both maps. Where both map the same key, the value from
+   * this map is kept.
+   */
+  public HashTrieMap<K, V> union(HashTrieMap<K, V> other) {
+    if (other.root == null) {
+      return this;
+    }
+    if (root == null) {
+      return other;
+    }
+    Node<K, V> merged = union(root, other.root, 0);
+    if (merged == root) {
+      return this;
+    }
+    if (merged == other.root) {
+      return other;
+    }
+    return new HashTrieMap<>(merged);
+  }
+
+  /** Calls {@code action} with every entry in this map. */
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    if (root != null) {
+      root.forEach(action);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringJoiner joiner = new StringJoiner(", ", "{", "}");
+    forEach((key, value) -> joiner.add(key + "=" + value));
+    return joiner.toString();
+  }
+
+  private static int hash(Object key) {
+    int hash = key.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  private static <K, V> Node<K, V> union(Node<K, V> a, Node<K, V> b, int shift) {
+    if (a == b) {
+      return a;
+    }
+    if (shift >= Integer.SIZE) {
+      // Every bit of the hash has been used, so all keys below here have the same hash.
+      return Collision.union(a, b);
+    }
+    if (a instanceof Leaf && b instanceof Leaf) {
+      if (((Leaf<K, V>) a).hasSameKey((Leaf<K, V>) b)) {
+        return a;
+      }
+    }
+    Branch<K, V> branchA = Branch.of(a, shift);
+    Branch<K, V> branchB = Branch.of(b, shift);
+    Branch<K, V> merged = Branch.union(branchA, branchB, shift);
+    if (merged == branchA) {
+      return a;
+    }
+    if (merged == branchB) {
+      return b;
+    }
+    return merged;
+  }
+
+  private abstract static class Node<K, V> {
+    abstract int size();
+
+    @Nullable
+    abstract V get(Object key, int hash, int shift);
+
+    abstract void forEach(BiConsumer<? super K, ? super V> action);
+  }
+
+  private static final class Leaf<K, V> extends Node<K, V> {
+    private final K key;
+    private final V value;
+    private final int hash;
+
+    Leaf(K key, V value) {
+      this.key = Objects.requireNonNull(key);
+      this.value = Objects.requireNonNull(value);
+      this.hash = hash(key);
+    }
+
+    boolean hasSameKey(Leaf<K, V> other) {
+      return hash == other.hash && key.equals(other.key);
+    }
+
+    @Override
+    int size() {
+      return 1;
+    }
+
+    @Nullable
+    @Override
+    V get(Object key, int hash, int shift) {
+      return this.hash == hash && this.key.equals(key) ? value : null;
+    }
+
+    @Override
+    void forEach(BiConsumer<? super K, ? super V> action) {
+      action.accept(key, value);
+    }
+  }
+
+  /** An inner node, with a child for each set bit of {@code bitmap}. */
+  private static final class Branch<K, V> extends Node<K, V> {
+    private final int bitmap;
+    private final Node<K, V>[] children;
+    private final int size;
+
+    Branch(int bitmap, Node<K, V>[] children, int size) {
+      this.bitmap = bitmap;
+      this.children = children;
+      this.size = size;
+    }
+
+    /** Returns {@code node} as a branch at the given level, wrapping it if it is a leaf. */
+    static <K, V> Branch<K, V> of(Node<K, V> node, int shift) {
+      if (node instanceof Branch) {
+        return (Branch<K, V>) node;
+      }
+      Leaf<K, V> leaf = (Leaf<K, V>) node;
+      Node<K, V>[] children = newArray(1);
+      children[0] = leaf;
+      return new Branch<>(bit(leaf.hash, shift), children, 1);
+    }
+
+    static <K, V> Branch<K, V> union(Branch<K, V> a, Branch<K, V> b, int shift) {
+      int bitmap = a.bitmap | b.bitmap;
+      Node<K, V>[] children = newArray(Integer.bitCount(bitmap));
+      boolean sameAsA = bitmap == a.bitmap;
+      boolean sameAsB = bitmap == b.bitmap;
+      int size = 0;
+      int indexA = 0;
+      int indexB = 0;
+      for (int i = 0, remaining = bitmap; remaining != 0; i++, remaining &= remaining - 1) {
+        int bit = remaining & -remaining;
+        Node<K, V> fromA = (a.bitmap & bit) != 0 ? a.children[indexA++] : null;
+        Node<K, V> fromB = (b.bitmap & bit) != 0 ? b.children[indexB++] : null;
+        Node<K, V> child;
+        if (fromA == null) {
+          child = Objects.requireNonNull(fromB);
+        } else if (fromB == null) {
+          child = fromA;
+        } else {
+          child = HashTrieMap.union(fromA, fromB, shift + BITS_PER_LEVEL);
+        }
+        sameAsA &= child == fromA;
+        sameAsB &= child == fromB;
+        children[i] = child;
+        size += child.size();
+      }
+      if (sameAsA) {
+        return a;
+      }
+      if (sameAsB) {
+        return b;
+      }
+      return new Branch<>(bitmap, children, size);
+    }
+
+    private static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & LEVEL_MASK);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V>[] newArray(int size) {
+      return (Node<K, V>[]) new Node<?, ?>[size];
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    @Nullable
+    @Override
+    V get(Object key, int hash, int shift) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      return children[Integer.bitCount(bitmap & (bit - 1))].get(key, hash, shift + BITS_PER_LEVEL);
+    }
+
+    @Override
+    void forEach(BiConsumer<? super K, ? super V> action) {
+      for (Node<K, V> child : children) {
+        child.forEach(action);
+      }
+    }
+  }
+
+  /** Leaves for distinct keys with the same hash, which the trie cannot tell apart. */
+  private static final class Collision<K, V> extends Node<K, V> {
+    private final List<Leaf<K, V>> leaves;
+
+    Collision(List<Leaf<K, V>> leaves) {
+      this.leaves = leaves;
+    }
+
+    static <K, V> Node<K, V> union(Node<K, V> a, Node<K, V> b) {
+      List<Leaf<K, V>> leaves = new ArrayList<>(leavesOf(a));
+      for (Leaf<K, V> leaf : leavesOf(b)) {
+        if (leaves.stream().noneMatch(leaf::hasSameKey)) {
+          leaves.add(leaf);
+        }
+      }
+      return leaves.size() == a.size() ? a : new Collision<>(leaves);
+    }
+
+    private static <K, V> List<Leaf<K, V>> leavesOf(Node<K, V> node) {
+      if (node instanceof Collision) {
+        return ((Collision<K, V>) node).leaves;
+      }
+      List<Leaf<K, V>> leaves = new ArrayList<>(1);
+      leaves.add((Leaf<K, V>) node);
+      return leaves;
+    }
+
+    @Override
+    int size() {
+      return leaves.size();
+    }
+
+    @Nullable
+    @Override
+    V get(Object key, int hash, int shift) {
+      for (Leaf<K, V> leaf : leaves) {
+        V value = leaf.get(key, hash, shift);
+        if (value != null) {
+          return value;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    void forEach(BiConsumer<? super K, ? super V> action) {
+      for (Leaf<K, V> leaf : leaves) {
+        leaf.forEach(action);
+      }
+    }
+  }
+}
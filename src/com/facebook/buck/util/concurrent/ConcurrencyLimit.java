@@ -35,6 +35,11 @@ public class ConcurrencyLimit {
   public final ResourceAmounts defaultAmounts;
   /** Maximum resource amounts that are available on the system for all jobs to share. */
   public final ResourceAmounts maximumAmounts;
+  /**
+   * Whether jobs should be gated by a {@link LockFreeListeningMultiSemaphore} instead of the
+   * monitor based {@link ListeningMultiSemaphore}.
+   */
+  public final boolean lockFreeSemaphore;
 
   public ConcurrencyLimit(
       int threadLimit,
@@ -42,11 +47,28 @@ public class ConcurrencyLimit {
       int managedThreadCount,
       ResourceAmounts defaultAmounts,
       ResourceAmounts maximumAmounts) {
+    this(
+        threadLimit,
+        resourceAllocationFairness,
+        managedThreadCount,
+        defaultAmounts,
+        maximumAmounts,
+        false);
+  }
+
+  public ConcurrencyLimit(
+      int threadLimit,
+      ResourceAllocationFairness resourceAllocationFairness,
+      int managedThreadCount,
+      ResourceAmounts defaultAmounts,
+      ResourceAmounts maximumAmounts,
+      boolean lockFreeSemaphore) {
     this.threadLimit = threadLimit;
     this.resourceAllocationFairness = resourceAllocationFairness;
     this.managedThreadCount = managedThreadCount;
     this.defaultAmounts = defaultAmounts;
     this.maximumAmounts = maximumAmounts;
+    this.lockFreeSemaphore = lockFreeSemaphore;
 
     Preconditions.checkArgument(
         threadLimit <= managedThreadCount,
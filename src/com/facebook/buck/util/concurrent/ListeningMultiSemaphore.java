@@ -25,12 +25,14 @@ import com.google.common.util.concurrent.SettableFuture;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 
 /**
- * A semaphore using {@link ListenableFuture}s for acquisition of different resource types rather
- * than blocking.
+ * A {@link MultiResourceSemaphore} which guards its state with the object monitor.
+ *
+ * @see LockFreeListeningMultiSemaphore
  */
-public class ListeningMultiSemaphore {
+public class ListeningMultiSemaphore implements MultiResourceSemaphore {
 
   private ResourceAmounts usedValues;
   private final ResourceAmounts maximumValues;
@@ -44,17 +46,8 @@ public class ListeningMultiSemaphore {
     this.fairness = fairness;
   }
 
-  /**
-   * Returns the future which will be completed by the moment when resources will be acquired.
-   * Future may be returned already completed. You should subscribe to the future and perform your
-   * resource requiring job once the future will be completed and not cancelled. When you finish
-   * your job, you must release acquired resources by calling release() method below.
-   *
-   * @param resources Resource amounts that need to be acquired. If they are higher than maximum
-   *     amounts, they will be capped to them.
-   * @return Future that will be completed once resource will be acquired.
-   */
-  public synchronized ListenableFuture<Unit> acquire(ResourceAmounts resources) {
+  @Override
+  public synchronized ListenableFuture<Unit> acquire(ResourceAmounts resources, long priority) {
     if (resources.equals(ResourceAmounts.zero())) {
       return Futures.immediateFuture(Unit.UNIT);
     }
@@ -62,19 +55,15 @@ public class ListeningMultiSemaphore {
     resources = capResourceAmounts(resources);
     if (!checkIfResourcesAvailable(resources)) {
       SettableFuture<Unit> pendingFuture = SettableFuture.create();
-      pending.add(ImmutableListeningSemaphoreArrayPendingItem.of(pendingFuture, resources));
+      addPendingItem(
+          ImmutableListeningSemaphoreArrayPendingItem.of(pendingFuture, resources, priority));
       return pendingFuture;
     }
     increaseUsedResources(resources);
     return Futures.immediateFuture(null);
   }
 
-  /**
-   * Releases previously acquired resources.
-   *
-   * @param resources Resource amounts that need to be released. This argument should match one you
-   *     used during resource acquiring.
-   */
+  @Override
   public void release(ResourceAmounts resources) {
     if (resources.equals(ResourceAmounts.zero())) {
       return;
@@ -85,6 +74,19 @@ public class ListeningMultiSemaphore {
     processPendingFutures(getPendingItemsThatCanBeProcessed());
   }
 
+  /** Inserts the item after all pending items with the same or higher priority. */
+  private synchronized void addPendingItem(ListeningSemaphoreArrayPendingItem item) {
+    ListIterator<ListeningSemaphoreArrayPendingItem> iterator =
+        pending.listIterator(pending.size());
+    while (iterator.hasPrevious()) {
+      if (iterator.previous().getPriority() >= item.getPriority()) {
+        iterator.next();
+        break;
+      }
+    }
+    iterator.add(item);
+  }
+
   private synchronized ImmutableList<ListeningSemaphoreArrayPendingItem>
       getPendingItemsThatCanBeProcessed() {
     ImmutableList.Builder<ListeningSemaphoreArrayPendingItem> builder = ImmutableList.builder();
@@ -103,14 +105,17 @@ public class ListeningMultiSemaphore {
     return builder.build();
   }
 
+  @Override
   public synchronized ResourceAmounts getAvailableResources() {
     return maximumValues.subtract(usedValues);
   }
 
+  @Override
   public synchronized ResourceAmounts getMaximumValues() {
     return maximumValues;
   }
 
+  @Override
   public synchronized int getQueueLength() {
     return pending.size();
   }
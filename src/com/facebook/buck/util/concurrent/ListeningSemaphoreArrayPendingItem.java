@@ -25,4 +25,6 @@ interface ListeningSemaphoreArrayPendingItem {
   SettableFuture<Unit> getFuture();
 
   ResourceAmounts getResources();
+
+  long getPriority();
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.util.concurrent;
+
+import com.facebook.buck.util.types.Unit;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MultiResourceSemaphore} which does not take a lock on the acquire and release paths.
+ *
+ * <p>Used amounts of all resource types are packed into a single {@code long}, 16 bits per
+ * resource, and updated with compare-and-set. Requests which cannot be satisfied immediately are
+ * pushed onto a concurrent inbox; whichever thread happens to call {@link #drainPending()} while
+ * no other thread is doing so moves them into the priority ordered pending set and grants as many
+ * of them as fit. Threads that find a drain already in progress only bump a counter, which makes
+ * the active drainer do another pass, so no thread ever blocks on another.
+ *
+ * <p>Because of the packing, every maximum amount must fit into {@link #MAX_RESOURCE_VALUE}. Use
+ * {@link #canRepresent(ResourceAmounts)} to check that before constructing an instance.
+ */
+public class LockFreeListeningMultiSemaphore implements MultiResourceSemaphore {
+
+  /**
+   * Largest amount of a single resource type this semaphore can track. The top bit of every 16 bit
+   * lane is kept free so that adding two in-range amounts never carries into the next lane.
+   */
+  public static final int MAX_RESOURCE_VALUE = 0x7FFF;
+
+  private static final int BITS_PER_RESOURCE = 16;
+  private static final long RESOURCE_MASK = 0xFFFFL;
+
+  private static final Comparator<PendingItem> PENDING_ORDER =
+      Comparator.<PendingItem>comparingLong(item -> item.priority)
+          .reversed()
+          .thenComparingLong(item -> item.sequence);
+
+  private final ResourceAmounts maximumValues;
+  private final long maximumPacked;
+  private final ResourceAllocationFairness fairness;
+
+  private final AtomicLong usedPacked = new AtomicLong();
+  private final AtomicLong sequence = new AtomicLong();
+  private final AtomicInteger queueLength = new AtomicInteger();
+  private final Queue<PendingItem> inbox = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger drainRequests = new AtomicInteger();
+
+  /** Only accessed by the thread that currently owns the drain loop. */
+  private final NavigableSet<PendingItem> pending = new TreeSet<>(PENDING_ORDER);
+
+  public LockFreeListeningMultiSemaphore(
+      ResourceAmounts availableResources, ResourceAllocationFairness fairness) {
+    Preconditions.checkArgument(
+        canRepresent(availableResources),
+        "Maximum resource amounts (%s) must be between 0 and %s",
+        availableResources,
+        MAX_RESOURCE_VALUE);
+    this.maximumValues = availableResources;
+    this.maximumPacked = pack(availableResources);
+    this.fairness = fairness;
+  }
+
+  /** @return whether the given maximum amounts can be tracked by this semaphore. */
+  public static boolean canRepresent(ResourceAmounts amounts) {
+    return isInRange(amounts.getCpu())
+        && isInRange(amounts.getMemory())
+        && isInRange(amounts.getDiskIO())
+        && isInRange(amounts.getNetworkIO());
+  }
+
+  @Override
+  public ListenableFuture<Unit> acquire(ResourceAmounts resources, long priority) {
+    if (resources.equals(ResourceAmounts.zero())) {
+      return Futures.immediateFuture(Unit.UNIT);
+    }
+
+    long requested = pack(capResourceAmounts(resources));
+    if (tryAcquire(requested)) {
+      return Futures.immediateFuture(null);
+    }
+
+    SettableFuture<Unit> pendingFuture = SettableFuture.create();
+    queueLength.incrementAndGet();
+    inbox.add(new PendingItem(pendingFuture, requested, priority, sequence.getAndIncrement()));
+    // Resources might have been released between the failed attempt and the enqueue above, in
+    // which case the releasing thread did not see this item. Drain to make sure it is not lost.
+    drainPending();
+    return pendingFuture;
+  }
+
+  @Override
+  public void release(ResourceAmounts resources) {
+    if (resources.equals(ResourceAmounts.zero())) {
+      return;
+    }
+
+    releasePacked(pack(capResourceAmounts(resources)));
+    drainPending();
+  }
+
+  @Override
+  public ResourceAmounts getAvailableResources() {
+    return unpack(maximumPacked - usedPacked.get());
+  }
+
+  @Override
+  public ResourceAmounts getMaximumValues() {
+    return maximumValues;
+  }
+
+  @Override
+  public int getQueueLength() {
+    return queueLength.get();
+  }
+
+  private boolean tryAcquire(long requested) {
+    while (true) {
+      long used = usedPacked.get();
+      long updated = used + requested;
+      if (!fitsIntoMaximum(updated)) {
+        return false;
+      }
+      if (usedPacked.compareAndSet(used, updated)) {
+        return true;
+      }
+    }
+  }
+
+  private void releasePacked(long released) {
+    while (true) {
+      long used = usedPacked.get();
+      Preconditions.checkArgument(
+          allLanesLessThanOrEqual(released, used),
+          "Cannot increase available resources by %s. Current: %s, Maximum: %s",
+          unpack(released),
+          unpack(used),
+          maximumValues);
+      if (usedPacked.compareAndSet(used, used - released)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Grants pending requests that fit into the currently available resources. Only one thread runs
+   * the loop at a time; concurrent callers record their request and return immediately.
+   */
+  private void drainPending() {
+    if (drainRequests.getAndIncrement() != 0) {
+      return;
+    }
+    int requests = 1;
+    do {
+      List<PendingItem> granted = new ArrayList<>();
+      boolean releasedCancelled = false;
+      for (PendingItem item = inbox.poll(); item != null; item = inbox.poll()) {
+        pending.add(item);
+      }
+      Iterator<PendingItem> iterator = pending.iterator();
+      while (iterator.hasNext()) {
+        PendingItem item = iterator.next();
+        if (tryAcquire(item.amounts)) {
+          iterator.remove();
+          queueLength.decrementAndGet();
+          granted.add(item);
+        } else if (!fairnessAllowsReordering()) {
+          break;
+        }
+      }
+      // Completing futures runs their listeners, which may call back into this semaphore. Any such
+      // call only bumps drainRequests, so it is picked up by the next iteration of this loop.
+      for (PendingItem item : granted) {
+        if (!item.future.set(null)) {
+          releasePacked(item.amounts);
+          releasedCancelled = true;
+        }
+      }
+      if (releasedCancelled) {
+        // Give the resources of cancelled requests to the remaining ones before leaving the loop.
+        continue;
+      }
+      requests = drainRequests.addAndGet(-requests);
+    } while (requests != 0);
+  }
+
+  private boolean fairnessAllowsReordering() {
+    return fairness == ResourceAllocationFairness.FAST;
+  }
+
+  private boolean fitsIntoMaximum(long packed) {
+    return allLanesLessThanOrEqual(packed, maximumPacked);
+  }
+
+  /** See {@link ListeningMultiSemaphore} for why requests larger than the maximum are capped. */
+  private ResourceAmounts capResourceAmounts(ResourceAmounts amounts) {
+    return ResourceAmounts.of(
+        Math.min(amounts.getCpu(), maximumValues.getCpu()),
+        Math.min(amounts.getMemory(), maximumValues.getMemory()),
+        Math.min(amounts.getDiskIO(), maximumValues.getDiskIO()),
+        Math.min(amounts.getNetworkIO(), maximumValues.getNetworkIO()));
+  }
+
+  private static boolean isInRange(int value) {
+    return value >= 0 && value <= MAX_RESOURCE_VALUE;
+  }
+
+  private static boolean allLanesLessThanOrEqual(long left, long right) {
+    for (int i = 0; i < ResourceAmounts.RESOURCE_TYPE_COUNT; i++) {
+      if (lane(left, i) > lane(right, i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long lane(long packed, int index) {
+    return (packed >>> (index * BITS_PER_RESOURCE)) & RESOURCE_MASK;
+  }
+
+  private static long pack(ResourceAmounts amounts) {
+    return amounts.getCpu()
+        | ((long) amounts.getMemory() << BITS_PER_RESOURCE)
+        | ((long) amounts.getDiskIO() << (2 * BITS_PER_RESOURCE))
+        | ((long) amounts.getNetworkIO() << (3 * BITS_PER_RESOURCE));
+  }
+
+  private static ResourceAmounts unpack(long packed) {
+    return ResourceAmounts.of(
+        (int) lane(packed, 0), (int) lane(packed, 1), (int) lane(packed, 2), (int) lane(packed, 3));
+  }
+
+  private static class PendingItem {
+    private final SettableFuture<Unit> future;
+    private final long amounts;
+    private final long priority;
+    private final long sequence;
+
+    private PendingItem(SettableFuture<Unit> future, long amounts, long priority, long sequence) {
+      this.future = future;
+      this.amounts = amounts;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.util.concurrent;
+
+import com.facebook.buck.util.types.Unit;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A semaphore using {@link ListenableFuture}s for acquisition of different resource types rather
+ * than blocking.
+ */
+public interface MultiResourceSemaphore {
+
+  /**
+   * Returns the future which will be completed by the moment when resources will be acquired.
+   * Future may be returned already completed. You should subscribe to the future and perform your
+   * resource requiring job once the future will be completed and not cancelled. When you finish
+   * your job, you must release acquired resources by calling release() method below.
+   *
+   * @param resources Resource amounts that need to be acquired. If they are higher than maximum
+   *     amounts, they will be capped to them.
+   * @return Future that will be completed once resource will be acquired.
+   */
+  default ListenableFuture<Unit> acquire(ResourceAmounts resources) {
+    return acquire(resources, 0);
+  }
+
+  /**
+   * Same as {@link #acquire(ResourceAmounts)}, but if the resources are not immediately available
+   * the request is queued ahead of all pending requests with a lower priority. Requests with the
+   * same priority are served in the order they were made.
+   *
+   * @param resources Resource amounts that need to be acquired.
+   * @param priority Priority of the request; higher values are served first.
+   * @return Future that will be completed once resource will be acquired.
+   */
+  ListenableFuture<Unit> acquire(ResourceAmounts resources, long priority);
+
+  /**
+   * Releases previously acquired resources.
+   *
+   * @param resources Resource amounts that need to be released. This argument should match one you
+   *     used during resource acquiring.
+   */
+  void release(ResourceAmounts resources);
+
+  ResourceAmounts getAvailableResources();
+
+  ResourceAmounts getMaximumValues();
+
+  int getQueueLength();
+}
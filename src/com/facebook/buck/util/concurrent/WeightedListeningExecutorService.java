@@ -27,7 +27,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /**
- * A {@link ListeningExecutorService} which gates execution using a {@link ListeningMultiSemaphore}
+ * A {@link ListeningExecutorService} which gates execution using a {@link MultiResourceSemaphore}
  * and allows resources to be assigned to submitted tasks.
  *
  * <p>NOTE: If futures for submitted jobs are cancelled while they are running, it's possible that
@@ -35,16 +35,26 @@ import javax.annotation.Nullable;
  * may be scheduled than expected.
  */
 public class WeightedListeningExecutorService extends AbstractListeningExecutorService {
-  private final ListeningMultiSemaphore semaphore;
+  private final MultiResourceSemaphore semaphore;
   private final ResourceAmounts defaultValues;
+  private final long defaultPriority;
   private final ListeningExecutorService delegate;
 
   public WeightedListeningExecutorService(
-      ListeningMultiSemaphore semaphore,
+      MultiResourceSemaphore semaphore,
       ResourceAmounts defaultValues,
       ListeningExecutorService delegate) {
+    this(semaphore, defaultValues, 0, delegate);
+  }
+
+  private WeightedListeningExecutorService(
+      MultiResourceSemaphore semaphore,
+      ResourceAmounts defaultValues,
+      long defaultPriority,
+      ListeningExecutorService delegate) {
     this.semaphore = semaphore;
     this.defaultValues = defaultValues;
+    this.defaultPriority = defaultPriority;
     this.delegate = delegate;
   }
 
@@ -61,14 +71,31 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
     if (newDefaultAmounts.equals(defaultValues)) {
       return this;
     }
-    return new WeightedListeningExecutorService(semaphore, newDefaultAmounts, delegate);
+    return new WeightedListeningExecutorService(
+        semaphore, newDefaultAmounts, defaultPriority, delegate);
+  }
+
+  /**
+   * Creates a new service whose tasks wait for resources with the given priority. Tasks with a
+   * higher priority are started first when several of them are waiting for the same resources.
+   *
+   * @param newDefaultPriority new priority for the submitted tasks
+   * @return Service that uses the same semaphore, delegate and default resource amounts but with
+   *     the given priority.
+   */
+  public WeightedListeningExecutorService withDefaultPriority(long newDefaultPriority) {
+    if (newDefaultPriority == defaultPriority) {
+      return this;
+    }
+    return new WeightedListeningExecutorService(
+        semaphore, defaultValues, newDefaultPriority, delegate);
   }
 
   private <T> ListenableFuture<T> submitWithSemaphore(
       Callable<T> callable, ResourceAmounts amounts) {
     ListenableFuture<T> future =
         Futures.transformAsync(
-            semaphore.acquire(amounts),
+            semaphore.acquire(amounts, defaultPriority),
             input -> {
               try {
                 return Futures.immediateFuture(callable.call());
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.reflect;
+
+import javax.annotation.Nullable;
+
+/**
+ * Reads a field or calls a no-argument method on an object. See {@link ValueGetters} for how to
+ * obtain one that avoids {@link java.lang.reflect.Field#get} and {@link
+ * java.lang.reflect.Method#invoke}.
+ */
+@FunctionalInterface
+public interface ValueGetter {
+  @Nullable
+  Object get(Object target);
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.reflect;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.primitives.Primitives;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import javax.annotation.Nullable;
+
+/**
+ * Creates {@link ValueGetter}s that do not go through core reflection on every call.
+ *
+ * <p>Public methods of classes visible to Buck's class loader get a class spun by {@link
+ * LambdaMetafactory}, which the JIT compiles to a plain virtual call. Everything else, including
+ * all fields, gets a {@link MethodHandle}, which skips the access and argument checks that {@link
+ * Field#get} and {@link Method#invoke} repeat on every call.
+ */
+public final class ValueGetters {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType FACTORY_TYPE = MethodType.methodType(ValueGetter.class);
+
+  private ValueGetters() {}
+
+  /** Returns a getter for the given instance field. */
+  public static ValueGetter forField(Field field) {
+    Preconditions.checkArgument(
+        !Modifier.isStatic(field.getModifiers()), "%s must not be static", field);
+    field.setAccessible(true);
+    try {
+      return new MethodHandleValueGetter(LOOKUP.unreflectGetter(field).asType(GETTER_TYPE));
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Returns a getter that calls the given no-argument instance method. */
+  public static ValueGetter forMethod(Method method) {
+    Preconditions.checkArgument(
+        !Modifier.isStatic(method.getModifiers()) && method.getParameterCount() == 0,
+        "%s must be an instance method without parameters",
+        method);
+    method.setAccessible(true);
+    MethodHandle handle;
+    try {
+      handle = LOOKUP.unreflect(method);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+
+    if (canSpinLambda(method)) {
+      try {
+        return (ValueGetter)
+            LambdaMetafactory.metafactory(
+                    LOOKUP,
+                    "get",
+                    FACTORY_TYPE,
+                    GETTER_TYPE,
+                    handle,
+                    MethodType.methodType(
+                        Primitives.wrap(method.getReturnType()), method.getDeclaringClass()))
+                .getTarget()
+                .invokeExact();
+      } catch (LambdaConversionException e) {
+        // Fall back to invoking the handle directly.
+      } catch (Throwable t) {
+        Throwables.throwIfUnchecked(t);
+        throw new IllegalStateException(t);
+      }
+    }
+    return new MethodHandleValueGetter(handle.asType(GETTER_TYPE));
+  }
+
+  /**
+   * The spun class is defined next to this one and calls the method directly, so both the method
+   * and its class have to be accessible from here, by the same name. It would also let checked
+   * exceptions escape unwrapped, so methods declaring them are left to the method handle.
+   */
+  private static boolean canSpinLambda(Method method) {
+    Class<?> declaringClass = method.getDeclaringClass();
+    if (!Modifier.isPublic(method.getModifiers())
+        || !Modifier.isPublic(declaringClass.getModifiers())
+        || method.getReturnType() == void.class) {
+      return false;
+    }
+    for (Class<?> exceptionType : method.getExceptionTypes()) {
+      if (!RuntimeException.class.isAssignableFrom(exceptionType)
+          && !Error.class.isAssignableFrom(exceptionType)) {
+        return false;
+      }
+    }
+    for (Class<?> enclosing = declaringClass;
+        enclosing != null;
+        enclosing = enclosing.getEnclosingClass()) {
+      if (!Modifier.isPublic(enclosing.getModifiers())) {
+        return false;
+      }
+    }
+    try {
+      return Class.forName(declaringClass.getName(), false, ValueGetters.class.getClassLoader())
+          == declaringClass;
+    } catch (ClassNotFoundException e) {
+      // Loaded by a plugin's class loader.
+      return false;
+    }
+  }
+
+  private static class MethodHandleValueGetter implements ValueGetter {
+    private final MethodHandle handle;
+
+    MethodHandleValueGetter(MethodHandle handle) {
+      this.handle = handle;
+    }
+
+    @Override
+    @Nullable
+    public Object get(Object target) {
+      try {
+        Object value = handle.invokeExact(target);
+        return value;
+      } catch (Throwable t) {
+        Throwables.throwIfUnchecked(t);
+        throw new IllegalStateException(t);
+      }
+    }
+  }
+}
@@ -99,6 +99,23 @@ public final class Sha1HashCode {
     return hasher;
   }
 
+  /**
+   * Copies the 20 bytes of this SHA-1 into {@code dest} starting at {@code offset}, in the same
+   * order that {@link #update(Hasher)} feeds them to a {@link Hasher}.
+   */
+  public void copyBytesTo(byte[] dest, int offset) {
+    Preconditions.checkPositionIndexes(offset, offset + NUM_BYTES_IN_HASH, dest.length);
+    putLittleEndian(dest, offset, firstFourBytes, 4);
+    putLittleEndian(dest, offset + 4, nextEightBytes, 8);
+    putLittleEndian(dest, offset + 12, lastEightBytes, 8);
+  }
+
+  private static void putLittleEndian(byte[] dest, int offset, long value, int numBytes) {
+    for (int i = 0; i < numBytes; i++) {
+      dest[offset + i] = (byte) (value >>> (8 * i));
+    }
+  }
+
   /**
    * <strong>This method should be used sparingly as we are trying to favor {@link Sha1HashCode}
    * over {@link HashCode}, where appropriate.</strong> Currently, the {@code FileHashCache} API is
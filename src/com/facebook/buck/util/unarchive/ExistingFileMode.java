@@ -28,4 +28,21 @@ public enum ExistingFileMode {
    * not in the archive
    */
   OVERWRITE_AND_CLEAN_DIRECTORIES,
+  /**
+   * Like {@link #OVERWRITE_AND_CLEAN_DIRECTORIES}, but also clean the destination directory itself,
+   * and leave alone files which already have the contents of their entry: for zip files, the same
+   * size and CRC-32, for tar files, the same size and modification time. This is meant to extract
+   * an archive on top of the result of a previous extraction, which is much cheaper when most files
+   * did not change.
+   */
+  OVERWRITE_CHANGED_AND_CLEAN_DIRECTORIES,
+  ;
+
+  boolean shouldCleanDirectories() {
+    return this != OVERWRITE;
+  }
+
+  boolean shouldSkipUnchangedFiles() {
+    return this == OVERWRITE_CHANGED_AND_CLEAN_DIRECTORIES;
+  }
 }
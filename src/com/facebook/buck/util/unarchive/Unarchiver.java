@@ -31,6 +31,12 @@ import java.util.Optional;
 /** Simple interface to extract archives of varying types */
 public abstract class Unarchiver {
 
+  /**
+   * Returns an unarchiver that may use up to {@code maxThreads} threads to extract an archive.
+   * Formats that can only be read sequentially ignore the limit and extract on the calling thread.
+   */
+  public abstract Unarchiver withMaxThreads(int maxThreads);
+
   /**
    * Extract a given archive to a destination
    *
@@ -57,6 +57,12 @@ public class Untar extends Unarchiver {
     this.compressorType = compressorType;
   }
 
+  /** Tar archives can only be read front to back, so they are always extracted on one thread. */
+  @Override
+  public Untar withMaxThreads(int maxThreads) {
+    return this;
+  }
+
   public static Untar tarUnarchiver() {
     return new Untar(Optional.empty());
   }
@@ -117,6 +123,12 @@ public class Untar extends Unarchiver {
     // all files are extracted, and /then/ try to do the links
     Map<Path, Path> windowsSymlinkMap = new HashMap<>();
 
+    if (existingFileMode.shouldSkipUnchangedFiles()) {
+      // Files are left in place rather than deleted up front, so anything that is not in the
+      // archive has to be cleaned up afterwards.
+      dirsToTidy.add(filesystemRelativePath);
+    }
+
     try (TarArchiveInputStream archiveStream = getArchiveInputStream(archiveFile)) {
       TarArchiveEntry entry;
       while ((entry = archiveStream.getNextTarEntry()) != null) {
@@ -149,7 +161,10 @@ public class Untar extends Unarchiver {
           paths.add(destPath);
           setAttributes(filesystem, destPath, entry);
         } else if (entry.isFile()) {
-          writeFile(creator, archiveStream, destPath);
+          if (!existingFileMode.shouldSkipUnchangedFiles()
+              || !isUnchanged(filesystem, destPath, entry)) {
+            writeFile(creator, archiveStream, destPath);
+          }
           paths.add(destPath);
           setAttributes(filesystem, destPath, entry);
         }
@@ -164,7 +179,7 @@ public class Untar extends Unarchiver {
     setDirectoryModificationTimes(filesystem, dirCreationTimes);
 
     ImmutableSet<Path> filePaths = paths.build();
-    if (existingFileMode == ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES) {
+    if (existingFileMode.shouldCleanDirectories()) {
       // Clean out directories of files that were not in the archive
       tidyDirectories(filesystem, dirsToTidy, filePaths);
     }
@@ -183,11 +198,30 @@ public class Untar extends Unarchiver {
     }
   }
 
+  /**
+   * Whether {@code path} is a regular file with the size and modification time of {@code entry}.
+   * Tar archives carry no checksum of the contents, so this relies on the modification time that a
+   * previous extraction set from the same entry.
+   */
+  private boolean isUnchanged(ProjectFilesystem filesystem, Path path, TarArchiveEntry entry)
+      throws IOException {
+    if (!filesystem.isFile(path, LinkOption.NOFOLLOW_LINKS)) {
+      return false;
+    }
+    AbsPath filePath = filesystem.getRootPath().resolve(path);
+    File file = filePath.toFile();
+    return file.length() == entry.getSize()
+        && file.lastModified() == entry.getModTime().getTime();
+  }
+
   /** Cleans up any files that exist on the filesystem that were not in the archive */
   private void tidyDirectories(
       ProjectFilesystem filesystem, Set<Path> dirsToTidy, ImmutableSet<Path> createdFiles)
       throws IOException {
     for (Path directory : dirsToTidy) {
+      if (!filesystem.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+        continue;
+      }
       for (Path foundFile :
           filesystem.asView().getFilesUnderPath(directory, EnumSet.noneOf(FileVisitOption.class))) {
         if (!createdFiles.contains(foundFile) && !dirsToTidy.contains(foundFile)) {
@@ -20,27 +20,50 @@ import com.facebook.buck.io.file.MorePosixFilePermissions;
 import com.facebook.buck.io.file.MostFiles;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.PatternsMatcher;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.facebook.buck.util.types.Unit;
 import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.MoreFiles;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipError;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
@@ -48,23 +71,115 @@ import org.apache.commons.compress.archivers.zip.ZipFile;
 /** A simple utility class that extracts zip files */
 public class Unzip extends Unarchiver {
 
-  private void writeZipContents(
+  /**
+   * Below this many bytes of files to extract, handing entries to other threads costs more than it
+   * saves.
+   */
+  private static final long PARALLEL_EXTRACTION_THRESHOLD = 8 * 1024 * 1024;
+
+  /**
+   * Stored (uncompressed) entries are copied in chunks of this size, concurrently, so that a single
+   * large entry does not serialize the extraction.
+   */
+  private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  private final int maxThreads;
+
+  public Unzip() {
+    this(1);
+  }
+
+  private Unzip(int maxThreads) {
+    Preconditions.checkArgument(maxThreads > 0, "maxThreads must be positive");
+    this.maxThreads = maxThreads;
+  }
+
+  /**
+   * Returns an {@link Unzip} that writes files on up to {@code maxThreads} threads, the calling
+   * thread excluded since it only waits for them.
+   */
+  @Override
+  public Unzip withMaxThreads(int maxThreads) {
+    return maxThreads == this.maxThreads ? this : new Unzip(maxThreads);
+  }
+
+  private void writeSymlink(
       ZipFile zip, ZipArchiveEntry entry, ProjectFilesystem filesystem, Path target)
       throws IOException {
-    // Write file
     try (InputStream is = zip.getInputStream(entry)) {
-      if (entry.isUnixSymlink()) {
-        filesystem.createSymLink(
-            target,
-            filesystem.getPath(new String(ByteStreams.toByteArray(is), Charsets.UTF_8)),
-            /* force */ true);
-      } else {
-        try (OutputStream out = filesystem.newFileOutputStream(target)) {
-          ByteStreams.copy(is, out);
-        }
+      filesystem.createSymLink(
+          target,
+          filesystem.getPath(new String(ByteStreams.toByteArray(is), Charsets.UTF_8)),
+          /* force */ true);
+    }
+  }
+
+  private void writeFile(
+      ZipFile zip, ZipArchiveEntry entry, ProjectFilesystem filesystem, Path target)
+      throws IOException {
+    try (InputStream is = zip.getInputStream(entry);
+        OutputStream out = filesystem.newFileOutputStream(target)) {
+      ByteStreams.copy(is, out);
+    }
+  }
+
+  /**
+   * Copies {@code length} bytes of a stored entry, starting {@code offset} bytes into its data,
+   * with positional reads and writes so that chunks of the same entry can be copied concurrently.
+   */
+  private static void copyStoredChunk(
+      FileChannel archive, ZipArchiveEntry entry, FileChannel out, long offset, long length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(COPY_BUFFER_SIZE, length));
+    long position = offset;
+    long end = offset + length;
+    while (position < end) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      int read = archive.read(buffer, entry.getDataOffset() + position);
+      if (read < 0) {
+        throw new EOFException(
+            String.format("Unexpected end of archive reading %s", entry.getName()));
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        position += out.write(buffer, position);
       }
     }
+  }
+
+  private static boolean isChunked(ZipArchiveEntry entry) {
+    return entry.getMethod() == ZipEntry.STORED
+        && entry.getSize() > CHUNK_SIZE
+        && entry.getDataOffset() >= 0;
+  }
+
+  /**
+   * Whether {@code target} is a regular file with the size and CRC-32 recorded for {@code entry}
+   * in the central directory.
+   */
+  private static boolean hasContentsOf(
+      ProjectFilesystem filesystem, Path target, ZipArchiveEntry entry) throws IOException {
+    if (entry.getCrc() == -1 || entry.getSize() < 0) {
+      return false;
+    }
+    Path path = filesystem.resolve(target);
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    if (!attributes.isRegularFile() || attributes.size() != entry.getSize()) {
+      return false;
+    }
+    return MoreFiles.asByteSource(path).hash(Hashing.crc32()).padToLong() == entry.getCrc();
+  }
 
+  private void setAttributes(ZipArchiveEntry entry, ProjectFilesystem filesystem, Path target)
+      throws IOException {
     Path filePath = filesystem.resolve(target);
     File file = filePath.toFile();
 
@@ -168,13 +283,7 @@ public class Unzip extends Unarchiver {
     }
   }
 
-  private void extractFile(
-      ImmutableSet.Builder<Path> filesWritten,
-      ZipFile zip,
-      DirectoryCreator creator,
-      Path target,
-      ZipArchiveEntry entry)
-      throws IOException {
+  private void prepareForFile(DirectoryCreator creator, Path target) throws IOException {
     ProjectFilesystem filesystem = creator.getFilesystem();
     if (filesystem.isFile(target, LinkOption.NOFOLLOW_LINKS)) { // NOPMD for clarity
       // pass
@@ -183,8 +292,107 @@ public class Unzip extends Unarchiver {
     } else if (target.getParent() != null) {
       creator.forcefullyCreateDirs(target.getParent());
     }
-    filesWritten.add(target);
-    writeZipContents(zip, entry, filesystem, target);
+  }
+
+  /**
+   * Writes the contents of regular files, on multiple threads if there is enough to write.
+   *
+   * <p>Entries are read concurrently from {@code zip}, which supports it for archives on disk.
+   * Large stored entries are split into chunks copied straight from {@code archiveFile}.
+   */
+  private void writeFiles(
+      Path archiveFile,
+      ZipFile zip,
+      ProjectFilesystem filesystem,
+      Map<Path, ZipArchiveEntry> files,
+      boolean skipUnchangedFiles)
+      throws IOException {
+    long totalSize = 0;
+    for (ZipArchiveEntry entry : files.values()) {
+      totalSize += Math.max(entry.getSize(), 0);
+    }
+    int numThreads = totalSize < PARALLEL_EXTRACTION_THRESHOLD ? 1 : maxThreads;
+    ExecutorService executor =
+        numThreads == 1
+            ? MoreExecutors.newDirectExecutorService()
+            : MostExecutors.newMultiThreadExecutor("unzip", numThreads);
+    List<FileChannel> chunkedOutputs = new ArrayList<>();
+    try (FileChannel archive = FileChannel.open(archiveFile, StandardOpenOption.READ)) {
+      Map<Path, ZipArchiveEntry> filesToWrite = files;
+      if (skipUnchangedFiles) {
+        List<Map.Entry<Path, ZipArchiveEntry>> candidates = new ArrayList<>(files.entrySet());
+        List<Boolean> unchanged =
+            runAll(
+                executor,
+                candidates.stream()
+                    .map(
+                        file ->
+                            (Callable<Boolean>)
+                                () -> hasContentsOf(filesystem, file.getKey(), file.getValue()))
+                    .collect(Collectors.toList()));
+        filesToWrite = new LinkedHashMap<>();
+        for (int i = 0; i < candidates.size(); i++) {
+          if (!unchanged.get(i)) {
+            filesToWrite.put(candidates.get(i).getKey(), candidates.get(i).getValue());
+          }
+        }
+      }
+
+      List<Callable<Unit>> writes = new ArrayList<>();
+      for (Map.Entry<Path, ZipArchiveEntry> file : filesToWrite.entrySet()) {
+        Path target = file.getKey();
+        ZipArchiveEntry entry = file.getValue();
+        if (numThreads > 1 && isChunked(entry)) {
+          FileChannel out =
+              FileChannel.open(
+                  filesystem.resolve(target),
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.WRITE,
+                  StandardOpenOption.TRUNCATE_EXISTING);
+          chunkedOutputs.add(out);
+          for (long offset = 0; offset < entry.getSize(); offset += CHUNK_SIZE) {
+            long chunkOffset = offset;
+            long chunkLength = Math.min(CHUNK_SIZE, entry.getSize() - offset);
+            writes.add(
+                () -> {
+                  copyStoredChunk(archive, entry, out, chunkOffset, chunkLength);
+                  return Unit.UNIT;
+                });
+          }
+        } else {
+          writes.add(
+              () -> {
+                writeFile(zip, entry, filesystem, target);
+                return Unit.UNIT;
+              });
+        }
+      }
+      runAll(executor, writes);
+    } finally {
+      executor.shutdownNow();
+      for (FileChannel out : chunkedOutputs) {
+        out.close();
+      }
+    }
+  }
+
+  /** Runs all {@code tasks} on {@code executor} and returns their results, in order. */
+  private static <T> List<T> runAll(ExecutorService executor, List<Callable<T>> tasks)
+      throws IOException {
+    try {
+      List<T> results = new ArrayList<>(tasks.size());
+      for (Future<T> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while extracting files");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
   }
 
   private void extractDirectory(
@@ -196,12 +404,8 @@ public class Unzip extends Unarchiver {
     ProjectFilesystem filesystem = creator.getFilesystem();
     if (filesystem.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
       // We have a pre-existing directory: delete its contents if they aren't in the zip.
-      if (existingFileMode == ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES) {
-        for (Path path : filesystem.getDirectoryContents(target)) {
-          if (!pathMap.containsKey(path)) {
-            filesystem.deleteRecursivelyIfExists(path);
-          }
-        }
+      if (existingFileMode.shouldCleanDirectories()) {
+        deleteContentsNotInArchive(filesystem, pathMap, target);
       }
     } else if (filesystem.exists(target, LinkOption.NOFOLLOW_LINKS)) {
       filesystem.deleteFileAtPath(target);
@@ -211,6 +415,16 @@ public class Unzip extends Unarchiver {
     }
   }
 
+  private static void deleteContentsNotInArchive(
+      ProjectFilesystem filesystem, SortedMap<Path, ZipArchiveEntry> pathMap, Path directory)
+      throws IOException {
+    for (Path path : filesystem.getDirectoryContents(directory)) {
+      if (!pathMap.containsKey(path)) {
+        filesystem.deleteRecursivelyIfExists(path);
+      }
+    }
+  }
+
   /**
    * Get a listing of all files in a zip file that start with a prefix, ignore others
    *
@@ -296,15 +510,40 @@ public class Unzip extends Unarchiver {
 
       DirectoryCreator creator = new DirectoryCreator(filesystem);
 
+      if (existingFileMode.shouldSkipUnchangedFiles()
+          && filesystem.isDirectory(relativePath, LinkOption.NOFOLLOW_LINKS)) {
+        deleteContentsNotInArchive(filesystem, pathMap, relativePath);
+      }
+
+      // Directories and symlinks are created in order, so that parents exist before their
+      // contents. The contents of regular files are written afterwards, possibly concurrently.
+      Map<Path, ZipArchiveEntry> files = new LinkedHashMap<>();
       for (SortedMap.Entry<Path, ZipArchiveEntry> p : pathMap.entrySet()) {
         Path target = p.getKey();
         ZipArchiveEntry entry = p.getValue();
         if (entry.isDirectory()) {
           extractDirectory(existingFileMode, pathMap, creator, target);
         } else {
-          extractFile(filesWritten, zip, creator, target, entry);
+          prepareForFile(creator, target);
+          filesWritten.add(target);
+          if (entry.isUnixSymlink()) {
+            writeSymlink(zip, entry, filesystem, target);
+            setAttributes(entry, filesystem, target);
+          } else {
+            files.put(target, entry);
+          }
         }
       }
+      // A file entry may have been replaced by the directory of a later entry that is nested
+      // under it, in which case there is nothing left to write.
+      files.keySet().removeIf(path -> filesystem.isDirectory(path, LinkOption.NOFOLLOW_LINKS));
+      writeFiles(
+          archiveFile, zip, filesystem, files, existingFileMode.shouldSkipUnchangedFiles());
+
+      // Only set attributes once everything is written, since writes would update the mtimes.
+      for (Map.Entry<Path, ZipArchiveEntry> file : files.entrySet()) {
+        setAttributes(file.getValue(), filesystem, file.getKey());
+      }
     }
     return filesWritten.build();
   }
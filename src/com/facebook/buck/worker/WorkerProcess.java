@@ -37,6 +37,7 @@ import java.util.HashSet;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -50,6 +51,7 @@ public class WorkerProcess implements Closeable {
   private final ProjectFilesystem filesystem;
   private final Path tmpPath;
   private final Path stdErr;
+  private final boolean multiplexed;
   private final AtomicInteger currentMessageID = new AtomicInteger();
   private boolean handshakePerformed = false;
   private final ConcurrentHashMap<Integer, SettableFuture<Integer>> commandExitCodes =
@@ -78,8 +80,23 @@ public class WorkerProcess implements Closeable {
       ProjectFilesystem filesystem,
       Path stdErr,
       Path tmpPath) {
+    this(executor, processParams, filesystem, stdErr, tmpPath, false);
+  }
+
+  /**
+   * Same as above, but allows to talk to the process using the multiplexed binary {@link
+   * WorkerProcessProtocolOne} instead of {@link WorkerProcessProtocolZero}.
+   */
+  public WorkerProcess(
+      ProcessExecutor executor,
+      ProcessExecutorParams processParams,
+      ProjectFilesystem filesystem,
+      Path stdErr,
+      Path tmpPath,
+      boolean multiplexed) {
     this.executor = executor;
     this.stdErr = stdErr;
+    this.multiplexed = multiplexed;
     this.processParams =
         processParams.withRedirectError(ProcessBuilder.Redirect.to(stdErr.toFile()));
     this.filesystem = filesystem;
@@ -102,17 +119,22 @@ public class WorkerProcess implements Closeable {
         "Starting up process %d using command: '%s'",
         this.hashCode(), Joiner.on(' ').join(processParams.getCommand()));
     launchedProcess = executor.launchProcess(processParams);
-    protocol =
-        new WorkerProcessProtocolZero.CommandSender(
-            launchedProcess.getStdin(),
-            launchedProcess.getStdout(),
-            stdErr,
-            () -> {
-              if (launchedProcess != null) {
-                executor.destroyLaunchedProcess(launchedProcess);
-              }
-            },
-            () -> launchedProcess != null && launchedProcess.isAlive());
+    Runnable onClose =
+        () -> {
+          if (launchedProcess != null) {
+            executor.destroyLaunchedProcess(launchedProcess);
+          }
+        };
+    Supplier<Boolean> isAlive = () -> launchedProcess != null && launchedProcess.isAlive();
+    if (multiplexed) {
+      protocol =
+          new WorkerProcessProtocolOne.CommandSender(
+              launchedProcess.getStdin(), launchedProcess.getStdout(), stdErr, onClose, isAlive);
+    } else {
+      protocol =
+          new WorkerProcessProtocolZero.CommandSender(
+              launchedProcess.getStdin(), launchedProcess.getStdout(), stdErr, onClose, isAlive);
+    }
 
     LOG.debug("Handshaking with process %d", this.hashCode());
     protocol.handshake(currentMessageID.getAndIncrement());
@@ -133,18 +155,33 @@ public class WorkerProcess implements Closeable {
     commandExitCodes.put(messageID, exitCodeFuture);
 
     try {
+      WorkerProcessProtocol.CommandSender protocol;
       synchronized (this) {
+        protocol = this.protocol;
         Preconditions.checkState(
             protocol != null,
             "Tried to submit a job to the worker process before the handshake was performed.");
+      }
 
-        Preconditions.checkState(!shutdownReaderThread, "Submitting job to a closed worker");
+      // Waiting for the worker to accept another command must not hold the monitor, otherwise a
+      // worker that stops accepting commands would also block cancelJob() and close().
+      protocol.reserveSlot();
+      boolean sent = false;
+      try {
+        synchronized (this) {
+          Preconditions.checkState(!shutdownReaderThread, "Submitting job to a closed worker");
 
-        LOG.debug(
-            "Sending job %d to process %d \n" + " job arguments: '%s'",
-            messageID, this.hashCode(), jobArgs);
-        protocol.send(
-            messageID, ImmutableWorkerProcessCommand.of(argsPath, stdoutPath, stderrPath));
+          LOG.debug(
+              "Sending job %d to process %d \n" + " job arguments: '%s'",
+              messageID, this.hashCode(), jobArgs);
+          protocol.send(
+              messageID, ImmutableWorkerProcessCommand.of(argsPath, stdoutPath, stderrPath));
+          sent = true;
+        }
+      } finally {
+        if (!sent) {
+          protocol.releaseSlot();
+        }
       }
 
     } catch (Throwable t) {
@@ -157,6 +194,16 @@ public class WorkerProcess implements Closeable {
       readerThread.notify();
     }
 
+    // Cancelling the returned future cancels this one as well. The waiter stays registered, as the
+    // worker still responds to the cancelled command.
+    exitCodeFuture.addListener(
+        () -> {
+          if (exitCodeFuture.isCancelled()) {
+            cancelJob(messageID);
+          }
+        },
+        MoreExecutors.directExecutor());
+
     return exitCodeFuture.transform(
         (exitCode) -> {
           LOG.debug(
@@ -176,6 +223,18 @@ public class WorkerProcess implements Closeable {
         MoreExecutors.directExecutor());
   }
 
+  private synchronized void cancelJob(int messageID) {
+    if (protocol == null || shutdownReaderThread) {
+      return;
+    }
+    LOG.debug("Cancelling job %d of process %d", messageID, this.hashCode());
+    try {
+      protocol.cancel(messageID);
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to cancel job %d of process %d", messageID, this.hashCode());
+    }
+  }
+
   @Override
   public synchronized void close() {
     LOG.debug("Closing process %d", this.hashCode());
@@ -50,6 +50,12 @@ public interface WorkerProcessParams {
    */
   boolean isAsync();
 
+  /**
+   * Whether the worker speaks the multiplexed binary {@link WorkerProcessProtocolOne} instead of
+   * the JSON based {@link WorkerProcessProtocolZero}.
+   */
+  boolean isMultiplexed();
+
   /**
    * Identifies the instance of the persisted worker process pool. Defines when worker process pool
    * should be invalidated.
@@ -65,8 +71,15 @@ public interface WorkerProcessParams {
       ImmutableMap<String, String> startupEnvironment,
       int maxWorkers,
       boolean isAsync,
+      boolean isMultiplexed,
       Optional<WorkerProcessIdentity> workerProcessIdentity) {
     return ImmutableWorkerProcessParams.of(
-        tempDir, startupCommand, startupEnvironment, maxWorkers, isAsync, workerProcessIdentity);
+        tempDir,
+        startupCommand,
+        startupEnvironment,
+        maxWorkers,
+        isAsync,
+        isMultiplexed,
+        workerProcessIdentity);
   }
 }
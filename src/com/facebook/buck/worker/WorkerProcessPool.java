@@ -29,6 +29,14 @@ public interface WorkerProcessPool extends Closeable {
   ListenableFuture<WorkerJobResult> submitJob(String expandedJobArgs)
       throws IOException, InterruptedException;
 
+  /**
+   * Shuts down worker processes that are not running a job and have not finished one for at least
+   * the given amount of time. Stopped workers are started again when the pool needs them.
+   *
+   * @return the number of worker processes that were stopped.
+   */
+  int stopIdleWorkers(long maxIdleNanos);
+
   @Override
   void close();
 }
@@ -22,6 +22,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.util.concurrent.Semaphore;
+import java.util.function.LongSupplier;
 import javax.annotation.Nullable;
 
 public class WorkerProcessPoolAsync implements WorkerProcessPool {
@@ -30,16 +31,29 @@ public class WorkerProcessPoolAsync implements WorkerProcessPool {
   private final int maxRequests;
   private final ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess;
   private final Semaphore concurrencyLimiter;
+  private final LongSupplier nanoTime;
   @Nullable private WorkerProcess workerProcess;
+  private int runningJobs = 0;
+  private long lastUsedNanos;
 
   public WorkerProcessPoolAsync(
       int maxRequests,
       HashCode poolHash,
       ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess) {
+    this(maxRequests, poolHash, startWorkerProcess, System::nanoTime);
+  }
+
+  WorkerProcessPoolAsync(
+      int maxRequests,
+      HashCode poolHash,
+      ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess,
+      LongSupplier nanoTime) {
     this.poolHash = poolHash;
     this.maxRequests = maxRequests;
     this.startWorkerProcess = startWorkerProcess;
     this.concurrencyLimiter = new Semaphore(maxRequests <= 0 ? Integer.MAX_VALUE : maxRequests);
+    this.nanoTime = nanoTime;
+    this.lastUsedNanos = nanoTime.getAsLong();
   }
 
   @Override
@@ -55,23 +69,51 @@ public class WorkerProcessPoolAsync implements WorkerProcessPool {
   @Override
   public ListenableFuture<WorkerJobResult> submitJob(String expandedJobArgs)
       throws IOException, InterruptedException {
+    concurrencyLimiter.acquire();
+    WorkerProcess process;
     synchronized (this) {
-      if (workerProcess == null || !workerProcess.isAlive()) {
-        workerProcess = startWorkerProcess.get();
+      try {
+        if (workerProcess == null || !workerProcess.isAlive()) {
+          workerProcess = startWorkerProcess.get();
+        }
+      } catch (Throwable t) {
+        concurrencyLimiter.release();
+        throw t;
       }
+      process = workerProcess;
+      runningJobs++;
     }
 
-    concurrencyLimiter.acquire();
     try {
-      ListenableFuture<WorkerJobResult> result = workerProcess.submitJob(expandedJobArgs);
-      result.addListener(concurrencyLimiter::release, MoreExecutors.directExecutor());
+      ListenableFuture<WorkerJobResult> result = process.submitJob(expandedJobArgs);
+      result.addListener(this::onJobFinished, MoreExecutors.directExecutor());
       return result;
     } catch (Throwable t) {
-      concurrencyLimiter.release();
+      onJobFinished();
       throw t;
     }
   }
 
+  private void onJobFinished() {
+    synchronized (this) {
+      runningJobs--;
+      lastUsedNanos = nanoTime.getAsLong();
+    }
+    concurrencyLimiter.release();
+  }
+
+  @Override
+  public synchronized int stopIdleWorkers(long maxIdleNanos) {
+    if (workerProcess == null
+        || runningJobs > 0
+        || nanoTime.getAsLong() - lastUsedNanos < maxIdleNanos) {
+      return 0;
+    }
+    workerProcess.close();
+    workerProcess = null;
+    return 1;
+  }
+
   @Override
   public void close() {
     synchronized (this) {
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.worker;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.management.OperatingSystemMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Periodically stops idle worker processes of the persistent worker pools kept by the daemon.
+ *
+ * <p>A worker is stopped once it has been idle for longer than the configured maximum idle time.
+ * When the free physical memory of the machine drops below the configured fraction, every idle
+ * worker is stopped regardless of how long it has been idle. Stopped workers are started again the
+ * next time a build needs them.
+ */
+public class WorkerProcessPoolEvictor implements AutoCloseable {
+  private static final Logger LOG = Logger.get(WorkerProcessPoolEvictor.class);
+
+  private final ConcurrentMap<String, WorkerProcessPool> pools;
+  private final long maxIdleNanos;
+  private final double minFreeMemoryFraction;
+  private final DoubleSupplier freeMemoryFraction;
+  private final ScheduledExecutorService scheduler;
+
+  @VisibleForTesting
+  WorkerProcessPoolEvictor(
+      ConcurrentMap<String, WorkerProcessPool> pools,
+      long maxIdleNanos,
+      double minFreeMemoryFraction,
+      DoubleSupplier freeMemoryFraction,
+      ScheduledExecutorService scheduler) {
+    this.pools = pools;
+    this.maxIdleNanos = maxIdleNanos;
+    this.minFreeMemoryFraction = minFreeMemoryFraction;
+    this.freeMemoryFraction = freeMemoryFraction;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Starts evicting idle workers from the given pools.
+   *
+   * @param pools persistent worker pools, keyed by their persistent worker key.
+   * @param maxIdleTimeMillis time after which an idle worker is stopped, or 0 to keep idle workers
+   *     alive as long as there is enough memory.
+   * @param minFreeMemoryFraction fraction of physical memory below which all idle workers are
+   *     stopped, or 0 to ignore memory pressure.
+   * @param checkIntervalMillis how often the pools are checked.
+   */
+  public static WorkerProcessPoolEvictor start(
+      ConcurrentMap<String, WorkerProcessPool> pools,
+      long maxIdleTimeMillis,
+      double minFreeMemoryFraction,
+      long checkIntervalMillis) {
+    ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("worker-pool-evictor-%d")
+                .setDaemon(true)
+                .build());
+    long maxIdleNanos =
+        maxIdleTimeMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(maxIdleTimeMillis) : Long.MAX_VALUE;
+    WorkerProcessPoolEvictor evictor =
+        new WorkerProcessPoolEvictor(
+            pools,
+            maxIdleNanos,
+            minFreeMemoryFraction,
+            WorkerProcessPoolEvictor::getFreePhysicalMemoryFraction,
+            scheduler);
+    scheduler.scheduleWithFixedDelay(
+        evictor::evictIdleWorkers, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    return evictor;
+  }
+
+  /** Stops workers that are idle for too long, or all idle workers if memory is running low. */
+  @VisibleForTesting
+  void evictIdleWorkers() {
+    boolean underMemoryPressure = freeMemoryFraction.getAsDouble() < minFreeMemoryFraction;
+    long idleThreshold = underMemoryPressure ? 0 : maxIdleNanos;
+    for (Map.Entry<String, WorkerProcessPool> entry : pools.entrySet()) {
+      try {
+        int stopped = entry.getValue().stopIdleWorkers(idleThreshold);
+        if (stopped > 0) {
+          LOG.debug(
+              "Stopped %d idle worker(s) of %s%s.",
+              stopped, entry.getKey(), underMemoryPressure ? " due to memory pressure" : "");
+        }
+      } catch (RuntimeException e) {
+        LOG.warn(e, "Failed to stop idle workers of %s.", entry.getKey());
+      }
+    }
+  }
+
+  private static double getFreePhysicalMemoryFraction() {
+    OperatingSystemMXBean osBean =
+        (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    long total = osBean.getTotalPhysicalMemorySize();
+    return total <= 0 ? 1.0 : (double) osBean.getFreePhysicalMemorySize() / total;
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+}
@@ -126,7 +126,8 @@ public class WorkerProcessPoolFactory {
           Path tmpDir = workerTmpDir.resolve(Integer.toString(workerNumber.getAndIncrement()));
           filesystem.mkdirs(tmpDir);
           WorkerProcess process =
-              WorkerProcessPoolFactory.this.createWorkerProcess(processParams, context, tmpDir);
+              WorkerProcessPoolFactory.this.createWorkerProcess(
+                  processParams, context, tmpDir, paramsToUse.isMultiplexed());
           process.ensureLaunchAndHandshake();
           return process;
         };
@@ -174,10 +175,13 @@ public class WorkerProcessPoolFactory {
 
   @VisibleForTesting
   public WorkerProcess createWorkerProcess(
-      ProcessExecutorParams processParams, ExecutionContext context, Path tmpDir)
+      ProcessExecutorParams processParams,
+      ExecutionContext context,
+      Path tmpDir,
+      boolean multiplexed)
       throws IOException {
     Path stdErr = Files.createTempFile("buck-worker-", "-stderr.log");
     return new WorkerProcess(
-        context.getProcessExecutor(), processParams, filesystem, stdErr, tmpDir);
+        context.getProcessExecutor(), processParams, filesystem, stdErr, tmpDir, multiplexed);
   }
 }
@@ -17,7 +17,6 @@
 package com.facebook.buck.worker;
 
 import com.facebook.buck.core.util.log.Logger;
-import com.facebook.buck.util.concurrent.LinkedBlockingStack;
 import com.facebook.buck.util.function.ThrowingSupplier;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -31,15 +30,25 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
-/** A synchronous pool of {@link WorkerProcess} instances. */
+/**
+ * A synchronous pool of {@link WorkerProcess} instances.
+ *
+ * <p>Jobs are routed to the warmest available worker: one whose process is already running and
+ * has run the most jobs, and therefore had the most time to load classes and JIT compile its
+ * hot paths. Idle workers can be stopped with {@link #stopIdleWorkers(long)} and are restarted on
+ * demand.
+ */
 @ThreadSafe
 public class WorkerProcessPoolSync implements Closeable, WorkerProcessPool {
   private static final Logger LOG = Logger.get(WorkerProcessPoolSync.class);
@@ -48,19 +57,31 @@ public class WorkerProcessPoolSync implements Closeable, WorkerProcessPool {
   private final BlockingQueue<WorkerLifecycle> availableWorkers;
   private final WorkerLifecycle[] workerLifecycles;
   private final HashCode poolHash;
+  private final LongSupplier nanoTime;
 
   public WorkerProcessPoolSync(
       int maxWorkers,
       HashCode poolHash,
       ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess) {
+    this(maxWorkers, poolHash, startWorkerProcess, System::nanoTime);
+  }
+
+  @VisibleForTesting
+  WorkerProcessPoolSync(
+      int maxWorkers,
+      HashCode poolHash,
+      ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess,
+      LongSupplier nanoTime) {
     capacity = maxWorkers;
-    availableWorkers = new LinkedBlockingStack<>();
+    availableWorkers =
+        new PriorityBlockingQueue<>(Math.max(1, maxWorkers), WorkerLifecycle.WARMEST_FIRST);
     workerLifecycles = new WorkerLifecycle[maxWorkers];
     this.poolHash = poolHash;
+    this.nanoTime = nanoTime;
 
     Arrays.setAll(
         workerLifecycles,
-        ignored -> new WorkerLifecycle(startWorkerProcess, availableWorkers::add));
+        ignored -> new WorkerLifecycle(startWorkerProcess, availableWorkers::add, nanoTime));
     Collections.addAll(availableWorkers, workerLifecycles);
   }
 
@@ -102,6 +123,28 @@ public class WorkerProcessPoolSync implements Closeable, WorkerProcessPool {
         .map(BorrowedWorkerProcess::new);
   }
 
+  @Override
+  public int stopIdleWorkers(long maxIdleNanos) {
+    long now = nanoTime.getAsLong();
+    int stopped = 0;
+    for (WorkerLifecycle lifecycle : workerLifecycles) {
+      if (!lifecycle.isStarted() || now - lifecycle.getLastUsedNanos() < maxIdleNanos) {
+        continue;
+      }
+      // Only workers that are not borrowed can be stopped. Taking the worker out of the queue
+      // makes sure nobody borrows it while its process is being shut down.
+      if (availableWorkers.remove(lifecycle)) {
+        try {
+          lifecycle.stopProcess();
+          stopped++;
+        } finally {
+          availableWorkers.add(lifecycle);
+        }
+      }
+    }
+    return stopped;
+  }
+
   @Override
   public synchronized void close() {
     Throwable caughtWhileClosing = null;
@@ -147,16 +190,58 @@ public class WorkerProcessPoolSync implements Closeable, WorkerProcessPool {
   private static class WorkerLifecycle
       implements Closeable, ThrowingSupplier<WorkerProcess, IOException> {
 
+    /**
+     * Orders running workers before stopped ones, then by the number of jobs submitted to them and
+     * then by how recently they were used. The fields used here only change while the worker is
+     * borrowed or removed from the queue, so the ordering is stable while it is queued.
+     */
+    private static final Comparator<WorkerLifecycle> WARMEST_FIRST =
+        Comparator.comparing(WorkerLifecycle::isStarted)
+            .thenComparingInt(WorkerLifecycle::getSubmittedJobs)
+            .thenComparingLong(WorkerLifecycle::getLastUsedNanos)
+            .reversed();
+
     private final ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess;
     private final Consumer<WorkerLifecycle> onWorkerProcessReturn;
+    private final LongSupplier nanoTime;
     private boolean isClosed = false;
     @Nullable private WorkerProcess workerProcess;
 
+    /** Warm-up statistics of the current process, reset whenever the process is replaced. */
+    private volatile boolean isStarted = false;
+
+    private volatile int submittedJobs = 0;
+    private volatile long lastUsedNanos;
+
     private WorkerLifecycle(
         ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess,
-        Consumer<WorkerLifecycle> onWorkerProcessReturn) {
+        Consumer<WorkerLifecycle> onWorkerProcessReturn,
+        LongSupplier nanoTime) {
       this.startWorkerProcess = startWorkerProcess;
       this.onWorkerProcessReturn = onWorkerProcessReturn;
+      this.nanoTime = nanoTime;
+      this.lastUsedNanos = nanoTime.getAsLong();
+    }
+
+    private boolean isStarted() {
+      return isStarted;
+    }
+
+    private int getSubmittedJobs() {
+      return submittedJobs;
+    }
+
+    private long getLastUsedNanos() {
+      return lastUsedNanos;
+    }
+
+    /**
+     * Records that a job was submitted to the current worker process. This is called by the
+     * borrower, before the worker is made available again, so it never changes the ordering of a
+     * queued worker; counting completions instead would race with {@link #makeAvailable()}.
+     */
+    private void onJobSubmitted() {
+      submittedJobs++;
     }
 
     /** Allows to retrieve the wrapped worker process, starting it up if necessary. */
@@ -171,21 +256,42 @@ public class WorkerProcessPoolSync implements Closeable, WorkerProcessPool {
           LOG.error(ex, "Failed to close dead worker process; ignoring.");
         } finally {
           workerProcess = null;
+          resetStatistics();
         }
       }
 
       // start a worker if necessary, this might throw IOException
       if (workerProcess == null) {
         workerProcess = startWorkerProcess.get();
+        isStarted = true;
       }
 
       return workerProcess;
     }
 
     public void makeAvailable() {
+      lastUsedNanos = nanoTime.getAsLong();
       onWorkerProcessReturn.accept(this);
     }
 
+    /** Shuts down the worker process; it is started again the next time the worker is used. */
+    private synchronized void stopProcess() {
+      if (workerProcess != null) {
+        try {
+          workerProcess.close();
+        } finally {
+          workerProcess = null;
+          resetStatistics();
+        }
+      }
+    }
+
+    private void resetStatistics() {
+      isStarted = false;
+      submittedJobs = 0;
+      lastUsedNanos = nanoTime.getAsLong();
+    }
+
     @Override
     public synchronized void close() {
       isClosed = true;
@@ -232,7 +338,11 @@ public class WorkerProcessPoolSync implements Closeable, WorkerProcessPool {
      * @throws IOException
      */
     public ListenableFuture<WorkerJobResult> submitJob(String expandedJobArgs) throws IOException {
-      return get().submitJob(expandedJobArgs);
+      Preconditions.checkState(lifecycle != null, "BorrowedWorker has already been closed.");
+      WorkerLifecycle lifecycle = this.lifecycle;
+      ListenableFuture<WorkerJobResult> result = lifecycle.get().submitJob(expandedJobArgs);
+      lifecycle.onJobSubmitted();
+      return result;
     }
 
     @VisibleForTesting
@@ -41,10 +41,27 @@ public interface WorkerProcessProtocol {
   interface CommandSender extends Closeable {
     void handshake(int messageId) throws IOException;
 
+    /**
+     * Blocks until the worker is willing to accept another command and reserves a slot for it.
+     * Callers must not hold locks that {@link #cancel} or {@link #close} need while waiting here.
+     * Protocols without flow control return immediately.
+     */
+    default void reserveSlot() throws IOException {}
+
+    /** Gives back a slot reserved with {@link #reserveSlot()} for a command that was not sent. */
+    default void releaseSlot() {}
+
+    /** Sends a command. The caller must have reserved a slot for it with {@link #reserveSlot()}. */
     void send(int messageId, WorkerProcessCommand command) throws IOException;
 
     CommandResponse receiveNextCommandResponse() throws IOException;
 
+    /**
+     * Asks the worker to abandon the command with the given id. The worker still responds to the
+     * command. Protocols without cancellation support ignore this.
+     */
+    void cancel(int messageId) throws IOException;
+
     /** Instructs the CommandReceiver to shut itself down. */
     @Override
     void close() throws IOException;
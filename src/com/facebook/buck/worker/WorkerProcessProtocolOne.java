@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.worker;
+
+import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Multiplexed binary worker protocol.
+ *
+ * <p>Unlike {@link WorkerProcessProtocolZero}, which frames messages as a JSON array, every message
+ * is a length-prefixed binary frame:
+ *
+ * <pre>
+ *   int32  length of the rest of the frame
+ *   int8   message type
+ *   int32  message id
+ *   byte[] payload
+ * </pre>
+ *
+ * All integers are big-endian and strings are encoded as an int32 byte count followed by UTF-8
+ * bytes. Message types and their payloads are:
+ *
+ * <ul>
+ *   <li>{@code HANDSHAKE} (0): protocol version, maximum number of in-flight commands. Buck sends
+ *       0 as the maximum; the worker replies with the number of commands it is willing to process
+ *       concurrently.
+ *   <li>{@code COMMAND} (1): args path, stdout path, stderr path.
+ *   <li>{@code RESULT} (2): exit code.
+ *   <li>{@code ERROR} (3): exit code, sent when the worker could not interpret the command.
+ *   <li>{@code CANCEL} (4): no payload. The worker should abandon the command with the given id
+ *       as soon as possible.
+ * </ul>
+ *
+ * The worker must answer every command exactly once with a {@code RESULT} or {@code ERROR}, in any
+ * order and including cancelled commands. Buck never has more commands in flight than the worker
+ * announced in its handshake. Closing the worker's stdin asks it to shut down.
+ */
+public class WorkerProcessProtocolOne {
+
+  private static final Logger LOG = Logger.get(WorkerProcessProtocolOne.class);
+
+  @VisibleForTesting static final int PROTOCOL_VERSION = 1;
+
+  @VisibleForTesting static final byte TYPE_HANDSHAKE = 0;
+  @VisibleForTesting static final byte TYPE_COMMAND = 1;
+  @VisibleForTesting static final byte TYPE_RESULT = 2;
+  @VisibleForTesting static final byte TYPE_ERROR = 3;
+  @VisibleForTesting static final byte TYPE_CANCEL = 4;
+
+  /** Size of the type and id fields that follow the length prefix. */
+  private static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+  /** Upper bound for incoming frames, so that a corrupted length does not exhaust the heap. */
+  private static final int MAX_FRAME_SIZE = 1 << 20;
+
+  private static final long PERMIT_POLL_INTERVAL_MILLIS = 100;
+
+  public static class CommandSender implements WorkerProcessProtocol.CommandSender {
+    private final DataOutputStream processStdinWriter;
+    private final DataInputStream processStdoutReader;
+    private final Path stdErr;
+    private final Runnable onClose;
+    private final Supplier<Boolean> isAlive;
+    /** One permit per command the worker is still willing to accept. */
+    private final Semaphore inFlightPermits = new Semaphore(0);
+
+    private volatile boolean isClosed = false;
+
+    public CommandSender(
+        OutputStream processStdin,
+        InputStream processStdout,
+        Path stdErr,
+        Runnable onClose,
+        Supplier<Boolean> isAlive) {
+      this.processStdinWriter = new DataOutputStream(new BufferedOutputStream(processStdin));
+      this.processStdoutReader = new DataInputStream(new BufferedInputStream(processStdout));
+      this.stdErr = stdErr;
+      this.onClose = onClose;
+      this.isAlive = isAlive;
+    }
+
+    @Override
+    public void handshake(int messageId) throws IOException {
+      writeFrame(
+          TYPE_HANDSHAKE,
+          messageId,
+          ByteBuffer.allocate(2 * Integer.BYTES).putInt(PROTOCOL_VERSION).putInt(0).array());
+
+      Frame response = readFrame("handshake response");
+      if (response.type != TYPE_HANDSHAKE) {
+        throw new HumanReadableException(
+            "Expected handshake response's type to be %d, got %d instead.",
+            TYPE_HANDSHAKE, response.type);
+      }
+      if (response.id != messageId) {
+        throw new HumanReadableException(
+            "Expected handshake response's id to be %d, got %d instead.", messageId, response.id);
+      }
+      int protocolVersion = response.payload.getInt();
+      if (protocolVersion != PROTOCOL_VERSION) {
+        throw new HumanReadableException(
+            "Expected handshake response's protocol version to be %d, got %d instead.",
+            PROTOCOL_VERSION, protocolVersion);
+      }
+      int maxInFlight = response.payload.getInt();
+      if (maxInFlight <= 0) {
+        throw new HumanReadableException(
+            "Expected handshake response's maximum number of in-flight commands to be positive, "
+                + "got %d instead.",
+            maxInFlight);
+      }
+      inFlightPermits.release(maxInFlight);
+    }
+
+    @Override
+    public void reserveSlot() throws IOException {
+      try {
+        while (!inFlightPermits.tryAcquire(PERMIT_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+          if (isClosed || !isAlive.get()) {
+            throw new IOException("Worker process exited while waiting to send a command.");
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting to send a command.");
+      }
+    }
+
+    @Override
+    public void releaseSlot() {
+      inFlightPermits.release();
+    }
+
+    @Override
+    public void send(int messageId, WorkerProcessCommand command) throws IOException {
+      byte[] argsPath = encode(command.getArgsPath().toString());
+      byte[] stdoutPath = encode(command.getStdOutPath().toString());
+      byte[] stderrPath = encode(command.getStdErrPath().toString());
+      ByteBuffer payload =
+          ByteBuffer.allocate(
+              3 * Integer.BYTES + argsPath.length + stdoutPath.length + stderrPath.length);
+      putString(payload, argsPath);
+      putString(payload, stdoutPath);
+      putString(payload, stderrPath);
+
+      writeFrame(TYPE_COMMAND, messageId, payload.array());
+    }
+
+    @Override
+    public void cancel(int messageId) throws IOException {
+      writeFrame(TYPE_CANCEL, messageId, new byte[0]);
+    }
+
+    @Override
+    public WorkerProcessProtocol.CommandResponse receiveNextCommandResponse() throws IOException {
+      Frame response = readFrame("command response");
+      if (response.type != TYPE_RESULT && response.type != TYPE_ERROR) {
+        throw new HumanReadableException(
+            "Expected response's type to be one of [%d, %d], got %d instead.",
+            TYPE_RESULT, TYPE_ERROR, response.type);
+      }
+      inFlightPermits.release();
+      return new WorkerProcessProtocol.CommandResponse(response.id, response.payload.getInt());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (isClosed) {
+        return;
+      }
+      isClosed = true;
+      try {
+        processStdinWriter.close();
+        processStdoutReader.close();
+      } catch (IOException e) {
+        if (!isAlive.get()) {
+          LOG.warn(e, "Streams already closed when closing protocol.");
+        } else {
+          throw e;
+        }
+      } finally {
+        onClose.run();
+      }
+    }
+
+    private synchronized void writeFrame(byte type, int messageId, byte[] payload)
+        throws IOException {
+      processStdinWriter.writeInt(HEADER_SIZE + payload.length);
+      processStdinWriter.writeByte(type);
+      processStdinWriter.writeInt(messageId);
+      processStdinWriter.write(payload);
+      processStdinWriter.flush();
+    }
+
+    /** Only called from one thread at a time: the handshake, then the worker's reader thread. */
+    private Frame readFrame(String description) throws IOException {
+      try {
+        int length = processStdoutReader.readInt();
+        if (length < HEADER_SIZE || length > MAX_FRAME_SIZE) {
+          throw new IOException(String.format("Invalid frame length %d.", length));
+        }
+        byte type = processStdoutReader.readByte();
+        int id = processStdoutReader.readInt();
+        byte[] payload = new byte[length - HEADER_SIZE];
+        processStdoutReader.readFully(payload);
+        return new Frame(type, id, ByteBuffer.wrap(payload));
+      } catch (IOException e) {
+        throw new HumanReadableException(
+            e,
+            "Error receiving %s from external process.\nStderr from external process:\n%s",
+            description,
+            WorkerProcessProtocolZero.getStdErrorOutput(stdErr));
+      }
+    }
+  }
+
+  private static byte[] encode(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void putString(ByteBuffer buffer, byte[] encoded) {
+    buffer.putInt(encoded.length).put(encoded);
+  }
+
+  private static class Frame {
+    private final byte type;
+    private final int id;
+    private final ByteBuffer payload;
+
+    private Frame(byte type, int id, ByteBuffer payload) {
+      this.type = type;
+      this.id = id;
+      this.payload = payload;
+    }
+  }
+}
@@ -128,6 +128,11 @@ public class WorkerProcessProtocolZero {
           exit_code: 2
         }
     */
+    @Override
+    public void cancel(int messageId) {
+      // Protocol zero has no way to cancel a command; the worker runs it to completion.
+    }
+
     @Override
     public WorkerProcessProtocol.CommandResponse receiveNextCommandResponse() throws IOException {
       int id = -1;
@@ -289,7 +294,7 @@ public class WorkerProcessProtocolZero {
     }
   }
 
-  private static String getStdErrorOutput(Path stdErr) throws IOException {
+  static String getStdErrorOutput(Path stdErr) throws IOException {
     StringBuilder sb = new StringBuilder();
     try (InputStream inputStream = Files.newInputStream(stdErr);
         BufferedReader errorReader = new BufferedReader(new InputStreamReader(inputStream))) {
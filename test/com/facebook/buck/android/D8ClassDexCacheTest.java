@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.Diagnostic;
+import com.android.tools.r8.DiagnosticsHandler;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class D8ClassDexCacheTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static final Consumer<D8Command.Builder> COMPILATION =
+      builder -> builder.setDisableDesugaring(true).setMinApiLevel(24);
+
+  private static final DiagnosticsHandler DIAGNOSTICS =
+      new DiagnosticsHandler() {
+        @Override
+        public void warning(Diagnostic warning) {}
+      };
+
+  private static final ExecutorService D8_WORKERS = MoreExecutors.newDirectExecutorService();
+
+  private Path cacheDir;
+
+  @Before
+  public void setUp() {
+    cacheDir = tmp.getRoot().toPath().resolve("cache");
+  }
+
+  @Test
+  public void dexesMissingClassesOnceAndReusesTheirFragments() throws Exception {
+    Path jar = writeJar("lib.jar", Greeting.class);
+
+    Optional<ImmutableList<byte[]>> dexed =
+        new D8ClassDexCache(cacheDir, D8_WORKERS)
+            .getDexData(ImmutableList.of(jar), COMPILATION, DIAGNOSTICS);
+    assertTrue(dexed.isPresent());
+    assertEquals(1, dexed.get().size());
+    assertEquals(1, countFragments());
+
+    // Another cache over the same directory, as another rule would have, must not run d8 again.
+    Optional<ImmutableList<byte[]>> cached =
+        new D8ClassDexCache(cacheDir, D8_WORKERS)
+            .getDexData(
+                ImmutableList.of(writeJar("other.jar", Greeting.class)),
+                builder -> {
+                  throw new AssertionError("Cached classes should not be dexed again.");
+                },
+                DIAGNOSTICS);
+    assertTrue(cached.isPresent());
+    assertArrayEquals(dexed.get().get(0), cached.get().get(0));
+  }
+
+  @Test
+  public void onlyDexesClassesThatChanged() throws Exception {
+    D8ClassDexCache cache = new D8ClassDexCache(cacheDir, D8_WORKERS);
+    cache.getDexData(ImmutableList.of(writeJar("a.jar", Greeting.class)), COMPILATION, DIAGNOSTICS);
+
+    int[] dexedClasses = {0};
+    Optional<ImmutableList<byte[]>> dexed =
+        cache.getDexData(
+            ImmutableList.of(writeJar("b.jar", Greeting.class, Farewell.class)),
+            builder -> {
+              dexedClasses[0]++;
+              COMPILATION.accept(builder);
+            },
+            DIAGNOSTICS);
+    assertTrue(dexed.isPresent());
+    assertEquals(2, dexed.get().size());
+    assertEquals(1, dexedClasses[0]);
+    assertEquals(2, countFragments());
+  }
+
+  @Test
+  public void inputsWithoutClassesAreLeftToTheCaller() throws Exception {
+    Path jar = tmp.getRoot().toPath().resolve("resources.jar");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("classes.dex"));
+      out.write(new byte[] {0});
+    }
+
+    assertFalse(
+        new D8ClassDexCache(cacheDir, D8_WORKERS)
+            .getDexData(ImmutableList.of(jar), COMPILATION, DIAGNOSTICS)
+            .isPresent());
+    assertFalse(Files.exists(cacheDir));
+  }
+
+  @Test
+  public void pruningEvictsTheOldestFragmentsAcrossOptions() throws Exception {
+    Path oldest = writeFragment("options-a/aa/old.dex", 1000);
+    Path older = writeFragment("options-b/bb/older.dex", 2000);
+    Path newest = writeFragment("options-a/cc/new.dex", 3000);
+
+    D8ClassDexCache.prune(cacheDir, 300);
+    assertTrue(Files.exists(oldest));
+
+    // Over the limit, pruning leaves less than three quarters of it.
+    D8ClassDexCache.prune(cacheDir, 250);
+    assertFalse(Files.exists(oldest));
+    assertFalse(Files.exists(older));
+    assertTrue(Files.exists(newest));
+  }
+
+  private Path writeFragment(String path, long lastModifiedMillis) throws IOException {
+    Path fragment = cacheDir.resolve(path);
+    Files.createDirectories(fragment.getParent());
+    Files.write(fragment, new byte[100]);
+    Files.setLastModifiedTime(fragment, FileTime.fromMillis(lastModifiedMillis));
+    return fragment;
+  }
+
+  private long countFragments() throws IOException {
+    try (Stream<Path> files = Files.walk(cacheDir)) {
+      return files.filter(path -> path.toString().endsWith(".dex")).count();
+    }
+  }
+
+  private Path writeJar(String name, Class<?>... classes) throws IOException {
+    Path jar = tmp.getRoot().toPath().resolve(name);
+    try (OutputStream fileOut = Files.newOutputStream(jar);
+        ZipOutputStream out = new ZipOutputStream(fileOut)) {
+      for (Class<?> clazz : classes) {
+        String entryName = clazz.getName().replace('.', '/') + ".class";
+        out.putNextEntry(new ZipEntry(entryName));
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(entryName)) {
+          ByteStreams.copy(in, out);
+        }
+      }
+    }
+    return jar;
+  }
+
+  static class Greeting {
+    @Override
+    public String toString() {
+      return "hello";
+    }
+  }
+
+  static class Farewell {
+    @Override
+    public String toString() {
+      return "goodbye";
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.android.toolchain.AndroidPlatformTarget;
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.toolchain.tool.impl.testutil.SimpleTool;
+import com.facebook.buck.core.toolchain.toolprovider.impl.ConstantToolProvider;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.TestExecutionContext;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures the wall time of dexing secondary dex shards in-process with d8 through {@link DxStep},
+ * several at once as {@link SmartDexingStep} does. The shards are made of the classes of the Guava
+ * jar on the classpath.
+ *
+ * <p>{@link #coldDaemon} dexes once per fresh JVM, the way the first build after starting Buck
+ * does, when d8 has yet to be loaded and JIT compiled. {@link #warmDaemon} dexes repeatedly in the
+ * same JVM, the way later builds in a long-lived daemon do.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DxStepBenchmark {
+
+  private static final int CLASSES_PER_SHARD = 500;
+  private static final int MIN_SDK_VERSION = 26;
+
+  @Param({"1", "4"})
+  public int shards;
+
+  private Path root;
+  private ProjectFilesystem filesystem;
+  private AndroidPlatformTarget androidPlatformTarget;
+  private ExecutionContext context;
+  private List<Path> inputs;
+  private ListeningExecutorService dxExecutor;
+
+  @Setup
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("dx-step-benchmark");
+    filesystem = TestProjectFilesystems.createProjectFilesystem(root);
+    context = TestExecutionContext.newInstance();
+    dxExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(shards));
+
+    // No desugaring is done, so d8 needs nothing from the library classpath. Guava's lambdas then
+    // need a min SDK with native invokedynamic support.
+    Path androidJar = root.resolve("android.jar");
+    new ZipOutputStream(Files.newOutputStream(androidJar)).close();
+    androidPlatformTarget =
+        AndroidPlatformTarget.of(
+            "android",
+            androidJar,
+            Collections.emptyList(),
+            () -> new SimpleTool(""),
+            new ConstantToolProvider(new SimpleTool("")),
+            Paths.get(""),
+            Paths.get(""),
+            Paths.get(""),
+            Paths.get(""),
+            Paths.get(""),
+            Paths.get(""),
+            Paths.get(""),
+            Paths.get(""));
+
+    inputs = writeShards();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    dxExecutor.shutdownNow();
+    filesystem.deleteRecursivelyIfExists(root);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @Warmup(iterations = 0)
+  @Measurement(iterations = 1)
+  @Fork(10)
+  public void coldDaemon() throws Exception {
+    dexShards();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @Warmup(iterations = 5)
+  @Measurement(iterations = 10)
+  @Fork(1)
+  public void warmDaemon() throws Exception {
+    dexShards();
+  }
+
+  private void dexShards() throws ExecutionException, InterruptedException {
+    List<ListenableFuture<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < inputs.size(); i++) {
+      DxStep step =
+          new DxStep(
+              filesystem,
+              androidPlatformTarget,
+              root.resolve("classes" + (i + 2) + ".dex.jar"),
+              ImmutableList.of(inputs.get(i)),
+              EnumSet.of(DxStep.Option.NO_DESUGAR),
+              Optional.empty(),
+              DxStep.D8,
+              false,
+              null,
+              Optional.empty(),
+              Optional.of(MIN_SDK_VERSION));
+      results.add(dxExecutor.submit(() -> step.execute(context).getExitCode()));
+    }
+    for (ListenableFuture<Integer> result : results) {
+      Preconditions.checkState(result.get() == DxStep.SUCCESS_EXIT_CODE);
+    }
+  }
+
+  private List<Path> writeShards() throws IOException {
+    Path guavaJar =
+        Paths.get(
+            ImmutableList.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+    List<Path> shardJars = new ArrayList<>();
+    try (ZipFile guava = new ZipFile(guavaJar.toFile())) {
+      Enumeration<? extends ZipEntry> entries = guava.entries();
+      for (int shard = 0; shard < shards; shard++) {
+        Path shardJar = root.resolve("secondary-" + shard + ".jar");
+        int classes = 0;
+        try (OutputStream fileOut = Files.newOutputStream(shardJar);
+            ZipOutputStream out = new ZipOutputStream(fileOut)) {
+          while (classes < CLASSES_PER_SHARD && entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.getName().endsWith(".class")) {
+              continue;
+            }
+            out.putNextEntry(new ZipEntry(entry.getName()));
+            try (InputStream in = guava.getInputStream(entry)) {
+              ByteStreams.copy(in, out);
+            }
+            classes++;
+          }
+        }
+        shardJars.add(shardJar);
+      }
+    }
+    return shardJars;
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {DxStepBenchmark.class.getName()});
+  }
+}
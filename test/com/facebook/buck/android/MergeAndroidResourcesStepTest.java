@@ -25,6 +25,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.android.MergeAndroidResourcesStep.DuplicateResourceException;
 import com.facebook.buck.android.aapt.RDotTxtEntry;
@@ -52,6 +53,7 @@ import com.google.common.collect.SortedSetMultimap;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -833,6 +835,150 @@ public class MergeAndroidResourcesStepTest {
     assertThat(resR2Java, StringContains.containsString("static final int id2=0x07f01002;"));
   }
 
+  @Test
+  public void testUnchangedRDotJavaIsNotRewritten() throws Exception {
+    BuildTarget res1Target = BuildTargetFactory.newInstance("//:res1");
+    BuildTarget res2Target = BuildTargetFactory.newInstance("//:res2");
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path res2SymbolsFile =
+        BuildTargetPaths.getGenPath(filesystem, res2Target, "__%s_text_symbols__/R.txt");
+    RDotTxtEntryBuilder entriesBuilder = new RDotTxtEntryBuilder(filesystem);
+    entriesBuilder.add(
+        new RDotTxtFile(
+            "res1",
+            BuildTargetPaths.getGenPath(filesystem, res1Target, "__%s_text_symbols__/R.txt")
+                .toString(),
+            ImmutableList.of("int id id1 0x7f020000")));
+    entriesBuilder.add(
+        new RDotTxtFile(
+            "res2", res2SymbolsFile.toString(), ImmutableList.of("int id id2 0x7f020000")));
+
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+    AndroidResource res1 =
+        AndroidResourceRuleBuilder.newBuilder()
+            .setRuleFinder(graphBuilder)
+            .setBuildTarget(res1Target)
+            .setRes(FakeSourcePath.of("res1"))
+            .setRDotJavaPackage("res1")
+            .build();
+    graphBuilder.addToIndex(res1);
+    AndroidResource res2 =
+        AndroidResourceRuleBuilder.newBuilder()
+            .setRuleFinder(graphBuilder)
+            .setBuildTarget(res2Target)
+            .setRes(FakeSourcePath.of("res2"))
+            .setRDotJavaPackage("res2")
+            .build();
+    graphBuilder.addToIndex(res2);
+
+    MergeAndroidResourcesStep mergeStep =
+        MergeAndroidResourcesStep.createStepForDummyRDotJava(
+            filesystem,
+            graphBuilder.getSourcePathResolver(),
+            ImmutableList.of(res1, res2),
+            Paths.get("output"),
+            /* forceFinalResourceIds */ false,
+            /* unionPackage */ Optional.empty(),
+            /* rName */ Optional.empty(),
+            /* useOldStyleableFormat */ false,
+            /* skipNonUnionRDotJava */ false);
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+    assertTrue(filesystem.isFile(mergeStep.getPathToSymbolsIndex()));
+
+    Path res1Java = Paths.get("output/res1/R.java");
+    Path res2Java = Paths.get("output/res2/R.java");
+    FileTime firstBuild = FileTime.fromMillis(0);
+    filesystem.setLastModifiedTime(res1Java, firstBuild);
+    filesystem.setLastModifiedTime(res2Java, firstBuild);
+
+    filesystem.writeLinesToPath(
+        ImmutableList.of("int id id2 0x7f020000", "int id id3 0x7f020001"), res2SymbolsFile);
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+
+    assertEquals(firstBuild, filesystem.getLastModifiedTime(res1Java));
+    assertNotEquals(firstBuild, filesystem.getLastModifiedTime(res2Java));
+    assertThat(
+        filesystem.readFileIfItExists(res2Java).get(),
+        StringContains.containsString("id3=0x07f01003;"));
+  }
+
+  @Test
+  public void testRDotJavaForRemovedPackageIsDeleted() throws Exception {
+    BuildTarget res1Target = BuildTargetFactory.newInstance("//:res1");
+    BuildTarget res2Target = BuildTargetFactory.newInstance("//:res2");
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    RDotTxtEntryBuilder entriesBuilder = new RDotTxtEntryBuilder(filesystem);
+    entriesBuilder.add(
+        new RDotTxtFile(
+            "res1",
+            BuildTargetPaths.getGenPath(filesystem, res1Target, "__%s_text_symbols__/R.txt")
+                .toString(),
+            ImmutableList.of("int id id1 0x7f020000")));
+    entriesBuilder.add(
+        new RDotTxtFile(
+            "res2",
+            BuildTargetPaths.getGenPath(filesystem, res2Target, "__%s_text_symbols__/R.txt")
+                .toString(),
+            ImmutableList.of("int id id2 0x7f020000")));
+
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+    AndroidResource res1 =
+        AndroidResourceRuleBuilder.newBuilder()
+            .setRuleFinder(graphBuilder)
+            .setBuildTarget(res1Target)
+            .setRes(FakeSourcePath.of("res1"))
+            .setRDotJavaPackage("res1")
+            .build();
+    graphBuilder.addToIndex(res1);
+    AndroidResource res2 =
+        AndroidResourceRuleBuilder.newBuilder()
+            .setRuleFinder(graphBuilder)
+            .setBuildTarget(res2Target)
+            .setRes(FakeSourcePath.of("res2"))
+            .setRDotJavaPackage("res2")
+            .build();
+    graphBuilder.addToIndex(res2);
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    assertEquals(
+        0,
+        MergeAndroidResourcesStep.createStepForDummyRDotJava(
+                filesystem,
+                graphBuilder.getSourcePathResolver(),
+                ImmutableList.of(res1, res2),
+                Paths.get("output"),
+                /* forceFinalResourceIds */ false,
+                /* unionPackage */ Optional.empty(),
+                /* rName */ Optional.empty(),
+                /* useOldStyleableFormat */ false,
+                /* skipNonUnionRDotJava */ false)
+            .execute(executionContext)
+            .getExitCode());
+    // Written by the step for another R class sharing the output directory.
+    filesystem.writeContentsToPath(
+        "package res2;\n\npublic class R2 {}\n", Paths.get("output/res2/R2.java"));
+
+    assertEquals(
+        0,
+        MergeAndroidResourcesStep.createStepForDummyRDotJava(
+                filesystem,
+                graphBuilder.getSourcePathResolver(),
+                ImmutableList.of(res1),
+                Paths.get("output"),
+                /* forceFinalResourceIds */ false,
+                /* unionPackage */ Optional.empty(),
+                /* rName */ Optional.empty(),
+                /* useOldStyleableFormat */ false,
+                /* skipNonUnionRDotJava */ false)
+            .execute(executionContext)
+            .getExitCode());
+
+    assertTrue(filesystem.isFile(Paths.get("output/res1/R.java")));
+    assertFalse(filesystem.exists(Paths.get("output/res2/R.java")));
+    assertTrue(filesystem.isFile(Paths.get("output/res2/R2.java")));
+  }
+
   @Test
   public void testDuplicateBanning() throws Exception {
     BuildTarget res1Target = BuildTargetFactory.newInstance("//:res1");
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry;
+import com.facebook.buck.android.aapt.RDotTxtEntry.CustomDrawableType;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.Test;
+
+public class ResourceSymbolsIndexTest {
+
+  private static final Path INDEX = Paths.get("symbols.bin");
+  private static final Path SYMBOLS_FILE = Paths.get("res/R.txt");
+
+  @Test
+  public void testEntriesSurviveARoundTrip() throws IOException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeLinesToPath(
+        ImmutableList.of(
+            "int attr title 0x7f010000",
+            "int drawable icon 0x7f020000 #",
+            "int drawable mono 0x7f020001 G",
+            "int styleable Header_title 0",
+            "int[] styleable Header { 0x7f010000 }"),
+        SYMBOLS_FILE);
+
+    ResourceSymbolsIndex index = ResourceSymbolsIndex.load(filesystem, INDEX);
+    List<RDotTxtEntry> parsed = index.readSymbolsFile(filesystem, SYMBOLS_FILE);
+    index.save(filesystem, INDEX);
+
+    List<RDotTxtEntry> loaded =
+        ResourceSymbolsIndex.load(filesystem, INDEX).readSymbolsFile(filesystem, SYMBOLS_FILE);
+
+    assertEquals(parsed.size(), loaded.size());
+    for (int i = 0; i < parsed.size(); i++) {
+      RDotTxtEntry expected = parsed.get(i);
+      RDotTxtEntry actual = loaded.get(i);
+      assertEquals(expected.idType, actual.idType);
+      assertEquals(expected.type, actual.type);
+      assertEquals(expected.name, actual.name);
+      assertEquals(expected.idValue, actual.idValue);
+      assertEquals(expected.parent, actual.parent);
+      assertEquals(expected.customType, actual.customType);
+    }
+    assertEquals(CustomDrawableType.CUSTOM, loaded.get(1).customType);
+  }
+
+  @Test
+  public void testChangedSymbolsFileIsParsedAgain() throws IOException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeLinesToPath(ImmutableList.of("int id first 0x7f010000"), SYMBOLS_FILE);
+    ResourceSymbolsIndex index = ResourceSymbolsIndex.load(filesystem, INDEX);
+    index.readSymbolsFile(filesystem, SYMBOLS_FILE);
+    index.save(filesystem, INDEX);
+
+    filesystem.writeLinesToPath(
+        ImmutableList.of("int id first 0x7f010000", "int id second 0x7f010001"), SYMBOLS_FILE);
+    List<RDotTxtEntry> entries =
+        ResourceSymbolsIndex.load(filesystem, INDEX).readSymbolsFile(filesystem, SYMBOLS_FILE);
+
+    assertEquals(2, entries.size());
+    assertEquals("second", entries.get(1).name);
+  }
+
+  @Test
+  public void testCorruptIndexIsIgnored() throws IOException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeBytesToPath(new byte[] {0, 0, 0, 1, 0, 0}, INDEX);
+    filesystem.writeLinesToPath(ImmutableList.of("int id first 0x7f010000"), SYMBOLS_FILE);
+
+    List<RDotTxtEntry> entries =
+        ResourceSymbolsIndex.load(filesystem, INDEX).readSymbolsFile(filesystem, SYMBOLS_FILE);
+
+    assertEquals(1, entries.size());
+  }
+}
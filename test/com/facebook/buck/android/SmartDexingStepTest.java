@@ -32,6 +32,7 @@ import com.facebook.buck.step.Step;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.step.fs.XzStep;
 import com.facebook.buck.testutil.MoreAsserts;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
@@ -373,6 +374,55 @@ public class SmartDexingStepTest {
         Optional.empty());
   }
 
+  @Test
+  public void testInProcessDexingReservesHeapForItsInputs() throws Exception {
+    File testIn = new File(tmpDir.getRoot(), "testIn.jar");
+    Files.write(new byte[30 * 1024 * 1024], testIn);
+    ProjectFilesystem filesystem =
+        TestProjectFilesystems.createProjectFilesystem(tmpDir.getRoot().toPath());
+
+    ResourceAmounts d8Amounts =
+        createPseudoRule(filesystem, testIn, DxStep.D8).getResourceAmounts();
+    assertEquals(1, d8Amounts.getCpu());
+    assertEquals(3, d8Amounts.getMemory());
+
+    ResourceAmounts dxAmounts =
+        createPseudoRule(filesystem, testIn, DxStep.DX).getResourceAmounts();
+    assertEquals(ResourceAmounts.of(1, 0, 0, 0), dxAmounts);
+  }
+
+  private DxPseudoRule createPseudoRule(ProjectFilesystem filesystem, File input, String dexTool) {
+    return new DxPseudoRule(
+        createAndroidPlatformTarget(),
+        FakeBuildContext.NOOP_CONTEXT,
+        filesystem,
+        ImmutableMap.of(input.toPath(), Sha1HashCode.of(Strings.repeat("a", 40))),
+        ImmutableSet.of(input.toPath()),
+        Paths.get("classes2.dex.jar"),
+        Paths.get("classes2.dex.jar.hash"),
+        EnumSet.noneOf(DxStep.Option.class),
+        XzStep.DEFAULT_COMPRESSION_LEVEL,
+        Optional.empty(),
+        dexTool,
+        null,
+        false,
+        Optional.empty());
+  }
+
+  @Test
+  public void testClassDexCacheIsOnlyUsedWhenClassesCanBeDexedAlone() {
+    EnumSet<DxStep.Option> noDesugar = EnumSet.of(DxStep.Option.NO_DESUGAR);
+    EnumSet<DxStep.Option> desugar = EnumSet.noneOf(DxStep.Option.class);
+
+    assertTrue(SmartDexingStep.canUseClassDexCache(DxStep.D8, noDesugar, null, Optional.empty()));
+    assertTrue(SmartDexingStep.canUseClassDexCache(DxStep.D8, desugar, null, Optional.of(24)));
+    assertFalse(SmartDexingStep.canUseClassDexCache(DxStep.D8, desugar, null, Optional.of(21)));
+    assertFalse(
+        SmartDexingStep.canUseClassDexCache(
+            DxStep.D8, noDesugar, ImmutableList.of(Paths.get("other.jar")), Optional.empty()));
+    assertFalse(SmartDexingStep.canUseClassDexCache(DxStep.DX, noDesugar, null, Optional.empty()));
+  }
+
   private AndroidPlatformTarget createAndroidPlatformTarget() {
     return AndroidPlatformTarget.of(
         "android",
@@ -160,7 +160,8 @@ public class BuckQueryEnvironmentTest {
             parserState,
             targetPatternEvaluator,
             eventBus,
-            TYPE_COERCER_FACTORY);
+            TYPE_COERCER_FACTORY,
+            Optional.empty());
     cellRoot = workspace.getDestPath();
   }
 
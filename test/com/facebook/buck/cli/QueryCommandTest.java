@@ -42,6 +42,8 @@ import com.facebook.buck.parser.ParsingContext;
 import com.facebook.buck.parser.PerBuildState;
 import com.facebook.buck.parser.PerBuildStateFactory;
 import com.facebook.buck.parser.SpeculativeParsing;
+import com.facebook.buck.query.QueryBuildTarget;
+import com.facebook.buck.query.QueryEvaluator;
 import com.facebook.buck.query.QueryException;
 import com.facebook.buck.rules.coercer.DefaultConstructorArgMarshaller;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
@@ -178,6 +180,12 @@ public class QueryCommandTest {
       return ImmutableSet.of();
     }
 
+    @Override
+    public ImmutableSet<QueryTarget> evaluateQuery(
+        String query, QueryEvaluator<QueryBuildTarget> evaluator) {
+      return evaluateQuery(query);
+    }
+
     @Override
     public void preloadTargetPatterns(Iterable<String> patterns) {}
   }
@@ -151,6 +151,7 @@ public class CachingBuildEngineFactory {
           targetConfigurationSerializer,
           ruleKeyFactories.get(),
           resourceAwareSchedulingInfo,
+          Optional.empty(),
           RuleKeyDiagnostics.nop(),
           logBuildRuleFailuresInline);
     }
@@ -168,6 +169,7 @@ public class CachingBuildEngineFactory {
         targetConfigurationSerializer,
         buildInfoStoreManager,
         resourceAwareSchedulingInfo,
+        Optional.empty(),
         logBuildRuleFailuresInline,
         RuleKeyFactories.of(
             TestRuleKeyConfigurationFactory.create(),
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.core.build.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.build.action.resolver.BuildEngineActionToBuildRuleResolver;
+import com.facebook.buck.core.build.engine.CriticalPathEntry;
+import com.facebook.buck.core.build.engine.CriticalPathSummary;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.impl.FakeBuildRule;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.SortedSet;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CriticalPathSchedulerTest {
+
+  private ProjectFilesystem filesystem;
+  private BuildRule ruleA;
+  private BuildRule ruleB;
+  private BuildRule ruleC;
+  private BuildRule ruleD;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    // D -> B -> A
+    // D -> C
+    ruleA = new FakeBuildRule("//:a");
+    ruleB = new FakeBuildRule("//:b", ruleA);
+    ruleC = new FakeBuildRule("//:c");
+    ruleD = new FakeBuildRule("//:d", ruleB, ruleC);
+  }
+
+  private CriticalPathScheduler createScheduler(RuleDurationHistory history) {
+    return createScheduler(history, new ArrayList<>());
+  }
+
+  /** Creates a scheduler that records the rules whose deps it looks up in {@code walked}. */
+  private CriticalPathScheduler createScheduler(
+      RuleDurationHistory history, List<BuildRule> walked) {
+    return new CriticalPathScheduler(
+        history,
+        new DefaultRuleDepsCache(
+            new TestActionGraphBuilder(), new BuildEngineActionToBuildRuleResolver()) {
+          @Override
+          public SortedSet<BuildRule> get(BuildRule rule) {
+            walked.add(rule);
+            return super.get(rule);
+          }
+        });
+  }
+
+  private RuleDurationHistory createHistory() {
+    RuleDurationHistory history = RuleDurationHistory.load(filesystem);
+    history.record(ruleA.getBuildTarget(), 100);
+    history.record(ruleB.getBuildTarget(), 10);
+    history.record(ruleC.getBuildTarget(), 50);
+    history.record(ruleD.getBuildTarget(), 5);
+    return history;
+  }
+
+  @Test
+  public void priorityIsRemainingCriticalPathLength() {
+    CriticalPathScheduler scheduler = createScheduler(createHistory());
+    scheduler.addTopLevelRules(ImmutableList.of(ruleD));
+
+    assertEquals(115, scheduler.getPriority(ruleA));
+    assertEquals(15, scheduler.getPriority(ruleB));
+    assertEquals(55, scheduler.getPriority(ruleC));
+    assertEquals(5, scheduler.getPriority(ruleD));
+  }
+
+  @Test
+  public void laterTopLevelRulesUpdateThePrioritiesOfSharedDeps() {
+    // E -> A, and E takes long enough to make it the critical path to A.
+    BuildRule ruleE = new FakeBuildRule("//:e", ruleA);
+    RuleDurationHistory history = createHistory();
+    history.record(ruleE.getBuildTarget(), 1000);
+
+    CriticalPathScheduler scheduler = createScheduler(history);
+    scheduler.addTopLevelRules(ImmutableList.of(ruleD));
+    scheduler.addTopLevelRules(ImmutableList.of(ruleE));
+
+    CriticalPathScheduler batched = createScheduler(history);
+    batched.addTopLevelRules(ImmutableList.of(ruleD, ruleE));
+
+    for (BuildRule rule : ImmutableList.of(ruleA, ruleB, ruleC, ruleD, ruleE)) {
+      assertEquals(batched.getPriority(rule), scheduler.getPriority(rule));
+    }
+    assertEquals(1100, scheduler.getPriority(ruleA));
+    assertEquals(15, scheduler.getPriority(ruleB));
+    assertEquals(1000, scheduler.getPriority(ruleE));
+    assertEquals(
+        ImmutableList.of(
+            CriticalPathEntry.of(ruleA.getBuildTarget(), 100),
+            CriticalPathEntry.of(ruleE.getBuildTarget(), 1000)),
+        scheduler.getSummary().getPredicted());
+  }
+
+  @Test
+  public void laterTopLevelRulesOnlyWalkTheRulesTheyAffect() {
+    BuildRule ruleE = new FakeBuildRule("//:e", ruleA);
+    BuildRule ruleF = new FakeBuildRule("//:f", ruleC);
+    RuleDurationHistory history = createHistory();
+    history.record(ruleE.getBuildTarget(), 1000);
+    history.record(ruleF.getBuildTarget(), 1);
+    List<BuildRule> walked = new ArrayList<>();
+    CriticalPathScheduler scheduler = createScheduler(history, walked);
+    scheduler.addTopLevelRules(ImmutableList.of(ruleD));
+
+    // Already registered rules are not walked again.
+    walked.clear();
+    scheduler.addTopLevelRules(ImmutableList.of(ruleD, ruleB));
+    assertEquals(ImmutableList.of(), walked);
+
+    // E lengthens the path through A, so A is revisited, but nothing else that was known is.
+    scheduler.addTopLevelRules(ImmutableList.of(ruleE));
+    assertEquals(1100, scheduler.getPriority(ruleA));
+    assertEquals(0, walked.stream().filter(rule -> rule != ruleE && rule != ruleA).count());
+
+    // F does not lengthen the path through C, so C keeps its priority and its deps are not walked.
+    walked.clear();
+    scheduler.addTopLevelRules(ImmutableList.of(ruleF));
+    assertEquals(55, scheduler.getPriority(ruleC));
+    assertEquals(0, walked.stream().filter(rule -> rule != ruleF).count());
+  }
+
+  @Test
+  public void unknownRulesUseAverageDuration() {
+    RuleDurationHistory history = RuleDurationHistory.load(filesystem);
+    history.record(ruleA.getBuildTarget(), 30);
+    history.record(ruleC.getBuildTarget(), 10);
+    CriticalPathScheduler scheduler = createScheduler(history);
+    scheduler.addTopLevelRules(ImmutableList.of(ruleD));
+
+    assertEquals(20, scheduler.getPriority(ruleD));
+    assertEquals(40, scheduler.getPriority(ruleB));
+    assertEquals(70, scheduler.getPriority(ruleA));
+  }
+
+  @Test
+  public void summaryContainsPredictedAndActualPaths() {
+    CriticalPathScheduler scheduler = createScheduler(createHistory());
+    scheduler.addTopLevelRules(ImmutableList.of(ruleD));
+    scheduler.recordDuration(ruleA, 10);
+    scheduler.recordDuration(ruleB, 10);
+    scheduler.recordDuration(ruleC, 200);
+    scheduler.recordDuration(ruleD, 5);
+
+    CriticalPathSummary summary = scheduler.getSummary();
+    assertEquals(
+        ImmutableList.of(
+            CriticalPathEntry.of(ruleA.getBuildTarget(), 100),
+            CriticalPathEntry.of(ruleB.getBuildTarget(), 10),
+            CriticalPathEntry.of(ruleD.getBuildTarget(), 5)),
+        summary.getPredicted());
+    assertEquals(
+        ImmutableList.of(
+            CriticalPathEntry.of(ruleC.getBuildTarget(), 200),
+            CriticalPathEntry.of(ruleD.getBuildTarget(), 5)),
+        summary.getActual());
+  }
+
+  @Test
+  public void recordedDurationsArePersisted() throws Exception {
+    CriticalPathScheduler scheduler = createScheduler(createHistory());
+    scheduler.recordDuration(ruleA, 300);
+    scheduler.saveHistory();
+
+    RuleDurationHistory reloaded = RuleDurationHistory.load(filesystem);
+    assertEquals(OptionalLong.of(200), reloaded.get(ruleA.getBuildTarget()));
+    assertEquals(OptionalLong.of(10), reloaded.get(ruleB.getBuildTarget()));
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.util.timing.SettableFakeClock;
+import java.util.OptionalLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RuleDurationHistoryTest {
+  private static final long START_MS = 1_500_000_000_000L;
+
+  private ProjectFilesystem filesystem;
+  private SettableFakeClock clock;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    clock = new SettableFakeClock(START_MS, 0);
+  }
+
+  @Test
+  public void entriesNotRecordedRecentlyAreDroppedOnSave() throws Exception {
+    BuildTarget stale = BuildTargetFactory.newInstance("//:stale");
+    BuildTarget fresh = BuildTargetFactory.newInstance("//:fresh");
+    RuleDurationHistory history = RuleDurationHistory.load(filesystem, clock);
+    history.record(stale, 10);
+    history.record(fresh, 20);
+    clock.setCurrentTimeMillis(START_MS + RuleDurationHistory.MAX_AGE_MS);
+    history.record(fresh, 40);
+    clock.setCurrentTimeMillis(START_MS + RuleDurationHistory.MAX_AGE_MS + 1);
+    history.save();
+
+    RuleDurationHistory reloaded = RuleDurationHistory.load(filesystem, clock);
+    assertEquals(OptionalLong.empty(), reloaded.get(stale));
+    assertEquals(OptionalLong.of(30), reloaded.get(fresh));
+  }
+
+  @Test
+  public void leastRecentlyRecordedEntriesAreDroppedOverTheCap() throws Exception {
+    RuleDurationHistory history = RuleDurationHistory.load(filesystem, clock);
+    for (int i = 0; i <= RuleDurationHistory.MAX_ENTRIES; i++) {
+      clock.setCurrentTimeMillis(START_MS + i);
+      history.record(BuildTargetFactory.newInstance("//:r" + i), 1);
+    }
+    history.save();
+
+    RuleDurationHistory reloaded = RuleDurationHistory.load(filesystem, clock);
+    assertEquals(OptionalLong.empty(), reloaded.get(BuildTargetFactory.newInstance("//:r0")));
+    assertEquals(OptionalLong.of(1), reloaded.get(BuildTargetFactory.newInstance("//:r1")));
+    assertEquals(
+        OptionalLong.of(1),
+        reloaded.get(BuildTargetFactory.newInstance("//:r" + RuleDurationHistory.MAX_ENTRIES)));
+  }
+}
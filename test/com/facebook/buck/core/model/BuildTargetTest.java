@@ -169,4 +169,19 @@ public class BuildTargetTest {
 
     assertSame(target1, target2);
   }
+
+  @Test
+  public void buildTargetsAndTheirPartsAreInterned() {
+    BuildTarget target1 =
+        BuildTargetFactory.newInstance("//foo/bar", "baz", InternalFlavor.of("biz"));
+    BuildTarget target2 =
+        BuildTargetFactory.newInstance("//foo/bar", "baz", InternalFlavor.of("biz"));
+    BuildTarget sibling =
+        BuildTargetFactory.newInstance("//foo/bar", "qux", InternalFlavor.of("biz"));
+
+    assertSame(target1, target2);
+    assertSame(target1.getCellRelativeBasePath(), sibling.getCellRelativeBasePath());
+    assertSame(target1.getFlavors(), sibling.getFlavors());
+    assertSame(target1, sibling.withShortName("baz"));
+  }
 }
@@ -62,4 +62,11 @@ public class CellRelativePathTest {
       }
     }
   }
+
+  @Test
+  public void interned() {
+    assertSame(
+        CellRelativePath.of(CanonicalCellName.rootCell(), ForwardRelativePath.of("bar/baz")),
+        CellRelativePath.of(CanonicalCellName.rootCell(), ForwardRelativePath.of("bar/baz")));
+  }
 }
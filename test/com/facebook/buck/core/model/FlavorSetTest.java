@@ -16,6 +16,7 @@
 
 package com.facebook.buck.core.model;
 
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.*;
 
 import org.junit.Test;
@@ -39,4 +40,25 @@ public class FlavorSetTest {
         FlavorSet.of(UserFlavor.of("aa", "bb"), UserFlavor.of("cc", "dd"))
             .toCommaSeparatedString());
   }
+
+  @Test
+  public void interned() {
+    assertSame(
+        FlavorSet.of(InternalFlavor.of("a"), InternalFlavor.of("b")),
+        FlavorSet.of(InternalFlavor.of("b"), InternalFlavor.of("a")));
+    assertSame(
+        FlavorSet.of(InternalFlavor.of("a"), InternalFlavor.of("b")),
+        FlavorSet.union(
+            FlavorSet.of(InternalFlavor.of("a")), FlavorSet.of(InternalFlavor.of("b"))));
+  }
+
+  @Test
+  public void internedSetsKeepTheClassOfTheirFlavors() {
+    FlavorSet internal = FlavorSet.of(InternalFlavor.of("a"));
+    FlavorSet user = FlavorSet.of(UserFlavor.of("a", "description"));
+
+    assertEquals(internal, user);
+    assertThat(internal.getSet().first(), instanceOf(InternalFlavor.class));
+    assertThat(user.getSet().first(), instanceOf(UserFlavor.class));
+  }
 }
@@ -231,6 +231,14 @@ public class WatchmanBuildPackageComputationTest extends AbstractBuildPackageCom
               long timeoutNanos, Object... query) throws IOException, InterruptedException {
             return mockQueryWithTimeout.apply(timeoutNanos, query);
           }
+
+          @Override
+          public Optional<? extends Map<String, ?>> receiveWithTimeout(long timeoutNanos)
+              throws InterruptedException {
+            // Nothing is ever pushed to this client.
+            TimeUnit.NANOSECONDS.sleep(timeoutNanos);
+            return Optional.empty();
+          }
         };
       }
     };
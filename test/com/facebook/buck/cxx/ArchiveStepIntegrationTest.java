@@ -16,6 +16,7 @@
 
 package com.facebook.buck.cxx;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assume.assumeTrue;
@@ -29,13 +30,16 @@ import com.facebook.buck.cxx.config.CxxBuckConfig;
 import com.facebook.buck.cxx.toolchain.Archiver;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
 import com.facebook.buck.cxx.toolchain.CxxPlatformUtils;
+import com.facebook.buck.cxx.toolchain.GnuArchiver;
 import com.facebook.buck.cxx.toolchain.objectfile.ObjectFileScrubbers;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.Step;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.step.fs.FileScrubberStep;
 import com.facebook.buck.testutil.TemporaryPaths;
 import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.testutil.integration.TestDataHelper;
 import com.facebook.buck.util.ObjectFileCommonModificationDate;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Preconditions;
@@ -276,6 +280,113 @@ public class ArchiveStepIntegrationTest {
     }
   }
 
+  @Test
+  public void inProcessArchivesMatchTheArchiver() throws IOException, InterruptedException {
+    assumeTrue(Platform.detect() == Platform.LINUX);
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    CxxPlatform platform =
+        CxxPlatformUtils.build(new CxxBuckConfig(FakeBuckConfig.builder().build()));
+    BuildRuleResolver ruleResolver = new TestActionGraphBuilder();
+    Archiver archiver =
+        platform.getAr().resolve(ruleResolver, UnconfiguredTargetConfiguration.INSTANCE);
+    assumeTrue(archiver instanceof GnuArchiver);
+
+    // The inputs cover a long member name, an odd-sized member, and global, weak, common and
+    // unique symbols next to local and undefined ones which must stay out of the symbol table.
+    Path objects = TestDataHelper.getTestDataDirectory(this).resolve("archive_objects");
+    ImmutableList<Path> inputs =
+        ImmutableList.of(
+            filesystem.getPath("objects/globals.o"),
+            filesystem.getPath("objects/a_member_with_a_long_name.o"),
+            filesystem.getPath("objects/sub/odd.o"));
+    for (Path input : inputs) {
+      filesystem.mkdirs(input.getParent());
+      Files.copy(
+          objects.resolve(filesystem.getPath("objects").relativize(input).toString()),
+          filesystem.resolve(input));
+    }
+
+    ExecutionContext executionContext = TestExecutionContext.newInstanceWithRealProcessExecutor();
+    TestConsole console = (TestConsole) executionContext.getConsole();
+    for (boolean thin : new boolean[] {false, true}) {
+      Path expected = filesystem.getPath("out/expected" + (thin ? "-thin" : "") + ".a");
+      Path actual = filesystem.getPath("out/actual" + (thin ? "-thin" : "") + ".a");
+      filesystem.mkdirs(expected.getParent());
+
+      ImmutableList<Step> archiverSteps =
+          ImmutableList.of(
+              new ArchiveStep(
+                  filesystem,
+                  archiver.getEnvironment(ruleResolver.getSourcePathResolver()),
+                  archiver.getCommandPrefix(ruleResolver.getSourcePathResolver()),
+                  ImmutableList.of(),
+                  getArchiveOptions(thin),
+                  expected,
+                  inputs,
+                  archiver,
+                  filesystem.getPath("scratchDir")),
+              new FileScrubberStep(filesystem, expected, archiver.getScrubbers()));
+      for (Step step : archiverSteps) {
+        int exitCode = step.execute(executionContext).getExitCode();
+        assertEquals("archiver failed: " + console.getTextWrittenToStdErr(), 0, exitCode);
+      }
+
+      int exitCode =
+          new InProcessArchiveStep(filesystem, actual, inputs, thin, ImmutableList.of())
+              .execute(executionContext)
+              .getExitCode();
+      assertEquals(0, exitCode);
+
+      assertArrayEquals(
+          "thin: " + thin,
+          Files.readAllBytes(filesystem.resolve(expected)),
+          Files.readAllBytes(filesystem.resolve(actual)));
+    }
+  }
+
+  @Test
+  public void inProcessArchivesFallBackToTheArchiver() throws IOException, InterruptedException {
+    assumeTrue(Platform.detect() == Platform.MACOS || Platform.detect() == Platform.LINUX);
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    CxxPlatform platform =
+        CxxPlatformUtils.build(new CxxBuckConfig(FakeBuckConfig.builder().build()));
+    BuildRuleResolver ruleResolver = new TestActionGraphBuilder();
+    Archiver archiver =
+        platform.getAr().resolve(ruleResolver, UnconfiguredTargetConfiguration.INSTANCE);
+    Path output = filesystem.getPath("output.a");
+    Path input = filesystem.getPath("input.dat");
+    filesystem.writeContentsToPath("blah", input);
+
+    // The input is not an ELF object, so the archiver has to do the work.
+    InProcessArchiveStep step =
+        new InProcessArchiveStep(
+            filesystem,
+            output,
+            ImmutableList.of(input),
+            false,
+            ImmutableList.of(
+                new ArchiveStep(
+                    filesystem,
+                    archiver.getEnvironment(ruleResolver.getSourcePathResolver()),
+                    archiver.getCommandPrefix(ruleResolver.getSourcePathResolver()),
+                    ImmutableList.of(),
+                    getArchiveOptions(false),
+                    output,
+                    ImmutableList.of(input),
+                    archiver,
+                    filesystem.getPath("scratchDir"))));
+    ExecutionContext executionContext = TestExecutionContext.newInstanceWithRealProcessExecutor();
+    TestConsole console = (TestConsole) executionContext.getConsole();
+    int exitCode = step.execute(executionContext).getExitCode();
+    assertEquals("archive step failed: " + console.getTextWrittenToStdErr(), 0, exitCode);
+
+    try (ArArchiveInputStream stream =
+        new ArArchiveInputStream(new FileInputStream(filesystem.resolve(output).toFile()))) {
+      ArArchiveEntry entry = stream.getNextArEntry();
+      assertThat(entry.getName(), Matchers.equalTo("input.dat"));
+    }
+  }
+
   private static ImmutableList<String> getArchiveOptions(boolean isThinArchive) {
     String options = isThinArchive ? "qcT" : "qc";
     return ImmutableList.of(options);
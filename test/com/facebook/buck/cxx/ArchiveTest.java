@@ -43,6 +43,7 @@ import com.facebook.buck.cxx.toolchain.BsdArchiver;
 import com.facebook.buck.cxx.toolchain.GnuArchiver;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.rules.args.Arg;
 import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.rules.keys.TestDefaultRuleKeyFactory;
 import com.facebook.buck.shell.Genrule;
@@ -104,6 +105,7 @@ public class ArchiveTest {
                     ArchiveContents.NORMAL,
                     DEFAULT_OUTPUT_FILE_NAME,
                     DEFAULT_INPUTS,
+                    /* inProcess */ false,
                     /* cacheable */ true));
 
     // Verify that changing the archiver causes a rulekey change.
@@ -123,6 +125,7 @@ public class ArchiveTest {
                     ArchiveContents.NORMAL,
                     DEFAULT_OUTPUT_FILE_NAME,
                     DEFAULT_INPUTS,
+                    /* inProcess */ false,
                     /* cacheable */ true));
     assertNotEquals(defaultRuleKey, archiverChange);
 
@@ -141,6 +144,7 @@ public class ArchiveTest {
                     ArchiveContents.NORMAL,
                     "different",
                     DEFAULT_INPUTS,
+                    /* inProcess */ false,
                     /* cacheable */ true));
     assertNotEquals(defaultRuleKey, outputChange);
 
@@ -159,6 +163,7 @@ public class ArchiveTest {
                     ArchiveContents.NORMAL,
                     DEFAULT_OUTPUT_FILE_NAME,
                     ImmutableList.of(FakeSourcePath.of("different")),
+                    /* inProcess */ false,
                     /* cacheable */ true));
     assertNotEquals(defaultRuleKey, inputChange);
 
@@ -177,8 +182,28 @@ public class ArchiveTest {
                     ArchiveContents.NORMAL,
                     DEFAULT_OUTPUT_FILE_NAME,
                     DEFAULT_INPUTS,
+                    /* inProcess */ false,
                     /* cacheable */ true));
     assertNotEquals(defaultRuleKey, archiverTypeChange);
+
+    // Verify that archiving in-process causes a rulekey change.
+    RuleKey inProcessChange =
+        new TestDefaultRuleKeyFactory(hashCache, ruleFinder)
+            .build(
+                new Archive(
+                    target,
+                    projectFilesystem,
+                    ruleFinder,
+                    DEFAULT_ARCHIVER,
+                    ImmutableList.of(),
+                    DEFAULT_RANLIB,
+                    ImmutableList.of(),
+                    ArchiveContents.NORMAL,
+                    DEFAULT_OUTPUT_FILE_NAME,
+                    DEFAULT_INPUTS,
+                    /* inProcess */ true,
+                    /* cacheable */ true));
+    assertNotEquals(defaultRuleKey, inProcessChange);
   }
 
   @Test
@@ -198,6 +223,7 @@ public class ArchiveTest {
             ArchiveContents.NORMAL,
             DEFAULT_OUTPUT_FILE_NAME,
             ImmutableList.of(FakeSourcePath.of("simple.o")),
+            /* inProcess */ false,
             /* cacheable */ true);
 
     BuildContext buildContext =
@@ -213,6 +239,43 @@ public class ArchiveTest {
         ranlibStep.getDescription(TestExecutionContext.newInstance()), containsString("-bar"));
   }
 
+  @Test
+  public void testThatRanlibFlagsDisableInProcessArchiving() {
+    BuildRuleResolver resolver = new TestActionGraphBuilder();
+    BuildContext buildContext =
+        FakeBuildContext.NOOP_CONTEXT.withSourcePathResolver(resolver.getSourcePathResolver());
+
+    ImmutableList<Step> plainSteps =
+        createInProcessArchive(resolver, ImmutableList.of())
+            .getBuildSteps(buildContext, new FakeBuildableContext());
+    assertEquals(1, FluentIterable.from(plainSteps).filter(InProcessArchiveStep.class).size());
+
+    ImmutableList<Step> steps =
+        createInProcessArchive(resolver, ImmutableList.of(StringArg.of("-bar")))
+            .getBuildSteps(buildContext, new FakeBuildableContext());
+    assertEquals(0, FluentIterable.from(steps).filter(InProcessArchiveStep.class).size());
+    Step ranlibStep = FluentIterable.from(steps).filter(RanlibStep.class).first().get();
+    assertThat(
+        ranlibStep.getDescription(TestExecutionContext.newInstance()), containsString("-bar"));
+  }
+
+  private Archive createInProcessArchive(
+      BuildRuleResolver resolver, ImmutableList<Arg> ranlibFlags) {
+    return new Archive(
+        BuildTargetFactory.newInstance("//foo:bar"),
+        new FakeProjectFilesystem(),
+        resolver,
+        DEFAULT_ARCHIVER,
+        ImmutableList.of(),
+        DEFAULT_RANLIB,
+        ranlibFlags,
+        ArchiveContents.NORMAL,
+        DEFAULT_OUTPUT_FILE_NAME,
+        ImmutableList.of(FakeSourcePath.of("simple.o")),
+        /* inProcess */ true,
+        /* cacheable */ true);
+  }
+
   @Test
   public void testThatBuildTargetSourcePathDepsAndPathsArePropagated() {
     ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
@@ -245,6 +308,7 @@ public class ArchiveTest {
                 FakeSourcePath.of("simple.o"),
                 genrule1.getSourcePathToOutput(),
                 genrule2.getSourcePathToOutput()),
+            /* inProcess */ false,
             /* cacheable */ true);
 
     // Verify that the archive dependencies include the genrules providing the
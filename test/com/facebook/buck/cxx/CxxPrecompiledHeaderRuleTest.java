@@ -379,6 +379,62 @@ public class CxxPrecompiledHeaderRuleTest {
     assertNotEquals(pchFlag2, pchFlag3);
   }
 
+  @Test
+  public void samePchForFlagsDifferingOnlyInWarnings() {
+    BuildTarget pchTarget = newTarget("//test:pch");
+    CxxPrecompiledHeaderTemplate pch = newPCH(pchTarget);
+    graphBuilder.addToIndex(pch);
+
+    BuildTarget lib1Target = newTarget("//test:lib1");
+    CxxSourceRuleFactory factory1 =
+        newFactory(
+            lib1Target,
+            new FakeProjectFilesystem(),
+            "-Wshadow",
+            DefaultBuildTargetSourcePath.of(pchTarget));
+    CxxPreprocessAndCompile lib1 =
+        factory1.requirePreprocessAndCompileBuildRule("lib1.cpp", newSource("lib1.cpp"));
+    graphBuilder.addToIndex(lib1);
+    ImmutableList<String> cmd1 = lib1.makeMainStep(context, false).getCommand();
+
+    BuildTarget lib2Target = newTarget("//test:lib2");
+    CxxSourceRuleFactory factory2 =
+        newFactory(
+            lib2Target,
+            new FakeProjectFilesystem(),
+            "-Wno-unused-variable",
+            DefaultBuildTargetSourcePath.of(pchTarget));
+    CxxPreprocessAndCompile lib2 =
+        factory2.requirePreprocessAndCompileBuildRule(
+            "lib2.cpp",
+            newCxxSource(FakeSourcePath.of("lib2.cpp"), ImmutableList.of("-fcolor-diagnostics")));
+    graphBuilder.addToIndex(lib2);
+    ImmutableList<String> cmd2 = lib2.makeMainStep(context, false).getCommand();
+
+    // The rules themselves keep their own flags...
+    assertTrue(seek(cmd1, "-Wshadow").size() > 0);
+    assertTrue(seek(cmd2, "-Wno-unused-variable").size() > 0);
+    assertTrue(seek(cmd2, "-fcolor-diagnostics").size() > 0);
+
+    // ...but share a PCH, which is built without any of them.
+    List<String> pchFlag1 = seek(cmd1, "-include-pch");
+    assertTrue(pchFlag1.size() >= 2);
+    List<String> pchFlag2 = seek(cmd2, "-include-pch");
+    assertTrue(pchFlag2.size() >= 2);
+    assertEquals(pchFlag1.subList(0, 2), pchFlag2.subList(0, 2));
+
+    CxxPrecompiledHeader pchInstance = null;
+    for (BuildRule dep : lib1.getBuildDeps()) {
+      if (dep instanceof CxxPrecompiledHeader) {
+        pchInstance = (CxxPrecompiledHeader) dep;
+      }
+    }
+    assertNotNull(pchInstance);
+    ImmutableList<String> pchCmd =
+        pchInstance.makeMainStep(context, Paths.get("/tmp/x")).getCommand();
+    assertFalse(seek(pchCmd, "-Wshadow").size() > 0);
+  }
+
   @Test
   public void userRuleChangesDependencyPCHRuleFlags() {
     BuildTarget pchTarget = newTarget("//test:pch");
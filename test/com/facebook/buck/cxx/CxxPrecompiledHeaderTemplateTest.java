@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.rules.args.Arg;
+import com.facebook.buck.rules.args.StringArg;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+public class CxxPrecompiledHeaderTemplateTest {
+
+  private static CxxToolFlags flags(ImmutableList<String> platformFlags, String... ruleFlags) {
+    return CxxToolFlags.copyOf(StringArg.from(platformFlags), StringArg.from(ruleFlags));
+  }
+
+  private static ImmutableList<String> stringify(Iterable<Arg> args) {
+    ImmutableList.Builder<String> builder = ImmutableList.builder();
+    for (Arg arg : args) {
+      builder.add(((StringArg) arg).getArg());
+    }
+    return builder.build();
+  }
+
+  @Test
+  public void diagnosticFlagsAreRemoved() {
+    CxxToolFlags result =
+        CxxPrecompiledHeaderTemplate.withoutDiagnosticFlags(
+            flags(
+                ImmutableList.of("-fPIC", "-Wall", "-fcolor-diagnostics"),
+                "-Wno-unused-parameter",
+                "-DFOO",
+                "-fdiagnostics-show-option",
+                "-ferror-limit=10",
+                "-std=c++14"));
+
+    assertEquals(ImmutableList.of("-fPIC"), stringify(result.getPlatformFlags()));
+    assertEquals(ImmutableList.of("-DFOO", "-std=c++14"), stringify(result.getRuleFlags()));
+  }
+
+  @Test
+  public void flagsThatCanAffectThePchAreKept() {
+    CxxToolFlags flags =
+        flags(
+            ImmutableList.of("-Werror", "-Werror=shadow", "-Wno-error=unused"),
+            "-Wp,-DFOO",
+            "-Wa,--noexecstack",
+            "-Xclang",
+            "-Wfoo",
+            "-w");
+
+    assertSame(flags, CxxPrecompiledHeaderTemplate.withoutDiagnosticFlags(flags));
+  }
+
+  @Test
+  public void keepsWarningFlagsWhenWarningsAreErrors() {
+    CxxToolFlags result =
+        CxxPrecompiledHeaderTemplate.withoutDiagnosticFlags(
+            flags(
+                ImmutableList.of("-fPIC", "-Werror", "-fcolor-diagnostics"),
+                "-Wno-deprecated-declarations",
+                "-DFOO"));
+
+    assertEquals(ImmutableList.of("-fPIC", "-Werror"), stringify(result.getPlatformFlags()));
+    assertEquals(
+        ImmutableList.of("-Wno-deprecated-declarations", "-DFOO"),
+        stringify(result.getRuleFlags()));
+  }
+
+  @Test
+  public void keepsWarningFlagsWhenSomeWarningsAreErrors() {
+    CxxToolFlags flags = flags(ImmutableList.of("-Werror=shadow"), "-Wno-shadow", "-Wall");
+
+    assertEquals(
+        ImmutableList.of("-Wno-shadow", "-Wall"),
+        stringify(CxxPrecompiledHeaderTemplate.withoutDiagnosticFlags(flags).getRuleFlags()));
+  }
+
+  @Test
+  public void passThroughPrefixIsTrackedAcrossPlatformAndRuleFlags() {
+    CxxToolFlags result =
+        CxxPrecompiledHeaderTemplate.withoutDiagnosticFlags(
+            flags(ImmutableList.of("-Wall", "-Xclang"), "-Wfoo", "-Wbar"));
+
+    assertEquals(ImmutableList.of("-Xclang"), stringify(result.getPlatformFlags()));
+    assertEquals(ImmutableList.of("-Wfoo"), stringify(result.getRuleFlags()));
+  }
+}
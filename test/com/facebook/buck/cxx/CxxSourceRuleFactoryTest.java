@@ -33,9 +33,12 @@ import com.facebook.buck.core.model.BuildTargetFactory;
 import com.facebook.buck.core.rules.ActionGraphBuilder;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.TestBuildRuleParams;
+import com.facebook.buck.core.rules.common.BuildableSupport;
 import com.facebook.buck.core.rules.impl.DependencyAggregationTestUtil;
 import com.facebook.buck.core.rules.impl.FakeBuildRule;
 import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.BuildTargetSourcePath;
+import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.core.sourcepath.FakeSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
@@ -60,7 +63,10 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collection;
@@ -250,6 +256,150 @@ public class CxxSourceRuleFactoryTest {
           contains((BuildRule) dep));
     }
 
+    @Test
+    public void thinOptRuleDependsOnItsOwnIndexFileAndTheIndexedInputs() {
+      BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+      ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+
+      FakeBuildRule object = createFakeBuildRule("//foo:object");
+      object.setOutputFile("foo/bar.cpp.o");
+      graphBuilder.addToIndex(object);
+      FakeBuildRule otherObject = createFakeBuildRule("//foo:other-object");
+      otherObject.setOutputFile("foo/baz.cpp.o");
+      graphBuilder.addToIndex(otherObject);
+      FakeBuildRule index = createFakeBuildRule("//foo:index");
+      index.setOutputFile("thinlto.indices");
+      graphBuilder.addToIndex(index);
+
+      CxxBuckConfig cxxBuckConfig =
+          new CxxBuckConfig(
+              FakeBuckConfig.builder()
+                  .setSections(ImmutableMap.of("cxx", ImmutableMap.of("thinlto_opt_weight", "3")))
+                  .build());
+      CxxSourceRuleFactory cxxSourceRuleFactory =
+          CxxSourceRuleFactory.of(
+              PROJECT_FILESYSTEM,
+              target,
+              graphBuilder,
+              graphBuilder.getSourcePathResolver(),
+              cxxBuckConfig,
+              CXX_PLATFORM,
+              ImmutableList.of(),
+              ImmutableMultimap.of(),
+              Optional.empty(),
+              Optional.empty(),
+              PicType.PDC);
+
+      ImmutableSortedSet<SourcePath> indexedInputs =
+          ImmutableSortedSet.of(
+              object.getSourcePathToOutput(), otherObject.getSourcePathToOutput());
+      CxxThinLTOOpt optRule =
+          Iterables.getOnlyElement(
+              cxxSourceRuleFactory
+                  .requireThinOptRules(
+                      ImmutableMap.of(
+                          "foo/bar.cpp.o",
+                          CxxSource.of(
+                              CxxSource.Type.CXX_THINLINK,
+                              object.getSourcePathToOutput(),
+                              ImmutableList.of())),
+                      (BuildTargetSourcePath) index.getSourcePathToOutput(),
+                      indexedInputs)
+                  .keySet());
+
+      SourcePath moduleIndex =
+          ExplicitBuildTargetSourcePath.of(
+              index.getBuildTarget(), Paths.get("thinlto.indices/foo/bar.cpp.o.thinlto.bc"));
+      ImmutableSet<SourcePath> inputs =
+          BuildableSupport.deriveInputs(optRule.getBuildable())
+              .collect(ImmutableSet.toImmutableSet());
+      assertThat(inputs, hasItems(moduleIndex));
+      assertThat(inputs, hasItems(indexedInputs.toArray(new SourcePath[0])));
+      assertFalse(inputs.contains(index.getSourcePathToOutput()));
+      BuildContext buildContext =
+          FakeBuildContext.withSourcePathResolver(graphBuilder.getSourcePathResolver());
+      assertThat(
+          optRule.getCommand(buildContext),
+          Matchers.hasItem("-fthinlto-index=thinlto.indices/foo/bar.cpp.o.thinlto.bc"));
+      assertEquals(3, optRule.getRuleScheduleInfo().getJobsMultiplier());
+    }
+
+    @Test
+    public void thinOptRuleUsesTheModulesItImportsAsItsDepFile() throws Exception {
+      BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+      ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+      ProjectFilesystem filesystem = new FakeProjectFilesystem();
+
+      FakeBuildRule object = createFakeBuildRule("//foo:object");
+      object.setOutputFile("foo/bar.cpp.o");
+      graphBuilder.addToIndex(object);
+      FakeBuildRule imported = createFakeBuildRule("//foo:imported");
+      imported.setOutputFile("foo/baz.cpp.o");
+      graphBuilder.addToIndex(imported);
+      FakeBuildRule notImported = createFakeBuildRule("//foo:not-imported");
+      notImported.setOutputFile("foo/qux.cpp.o");
+      graphBuilder.addToIndex(notImported);
+      FakeBuildRule index = createFakeBuildRule("//foo:index");
+      index.setOutputFile("thinlto.indices");
+      graphBuilder.addToIndex(index);
+
+      ImmutableSortedSet<SourcePath> indexedInputs =
+          ImmutableSortedSet.of(
+              object.getSourcePathToOutput(),
+              imported.getSourcePathToOutput(),
+              notImported.getSourcePathToOutput());
+      CxxThinLTOOpt optRule =
+          Iterables.getOnlyElement(
+              CxxSourceRuleFactory.of(
+                      filesystem,
+                      target,
+                      graphBuilder,
+                      graphBuilder.getSourcePathResolver(),
+                      CxxPlatformUtils.DEFAULT_CONFIG,
+                      CXX_PLATFORM,
+                      ImmutableList.of(),
+                      ImmutableMultimap.of(),
+                      Optional.empty(),
+                      Optional.empty(),
+                      PicType.PDC)
+                  .requireThinOptRules(
+                      ImmutableMap.of(
+                          "foo/bar.cpp.o",
+                          CxxSource.of(
+                              CxxSource.Type.CXX_THINLINK,
+                              object.getSourcePathToOutput(),
+                              ImmutableList.of())),
+                      (BuildTargetSourcePath) index.getSourcePathToOutput(),
+                      indexedInputs)
+                  .keySet());
+      BuildContext buildContext =
+          FakeBuildContext.withSourcePathResolver(graphBuilder.getSourcePathResolver());
+
+      assertTrue(optRule.useDependencyFileRuleKeys());
+      assertTrue(
+          optRule
+              .getCoveredByDepFilePredicate(graphBuilder.getSourcePathResolver())
+              .test(notImported.getSourcePathToOutput()));
+
+      // Without an imports file, every indexed input may have been read.
+      assertThat(
+          optRule.getInputsAfterBuildingLocally(buildContext, null),
+          hasItems(indexedInputs.toArray(new SourcePath[0])));
+
+      Path imports = Paths.get("thinlto.indices/foo/bar.cpp.o.imports");
+      filesystem.mkdirs(imports.getParent());
+      filesystem.writeContentsToPath("foo/baz.cpp.o\n", imports);
+      assertEquals(
+          ImmutableList.of(object.getSourcePathToOutput(), imported.getSourcePathToOutput()),
+          optRule.getInputsAfterBuildingLocally(buildContext, null));
+
+      // Imports the rule can't map back to an input make it fall back to all of them.
+      filesystem.writeContentsToPath("foo/libbaz.a(baz.cpp.o)\n", imports);
+      assertThat(
+          optRule.getInputsAfterBuildingLocally(buildContext, null),
+          hasItems(indexedInputs.toArray(new SourcePath[0])));
+    }
+
     @Test
     public void createCompileBuildRulePicOption() {
       BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
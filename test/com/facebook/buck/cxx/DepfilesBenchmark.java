@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.PathSourcePath;
+import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
+import com.facebook.buck.cxx.toolchain.DependencyTrackingMode;
+import com.facebook.buck.cxx.toolchain.HeaderVerification;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures the post-processing of the depfile of a single C++ compilation that includes {@link
+ * #headers} headers, spread over the exported header symlink trees of {@link #LIBRARIES} libraries.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DepfilesBenchmark {
+  private static final int LIBRARIES = 100;
+
+  @Param({"1000", "10000"})
+  public int headers;
+
+  private Path root;
+  private ProjectFilesystem filesystem;
+  private SourcePathResolverAdapter pathResolver;
+  private HeaderPathNormalizer headerPathNormalizer;
+  private HeaderVerification headerVerification;
+  private BuckEventBus eventBus;
+  private Path depFile;
+  private Path inputPath;
+  private int parsedPrereqs;
+
+  @Setup
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("depfiles-benchmark");
+    filesystem = TestProjectFilesystems.createProjectFilesystem(root);
+    pathResolver = new TestActionGraphBuilder().getSourcePathResolver();
+    eventBus = BuckEventBusForTests.newInstance();
+    inputPath = Paths.get("app/main.cpp");
+
+    HeaderPathNormalizer.Builder normalizer = new HeaderPathNormalizer.Builder(pathResolver);
+    List<String> lines = new ArrayList<>();
+    lines.add("buck-out/gen/app/main.cpp.o: \\");
+    lines.add("  " + inputPath + " \\");
+    int headersPerLibrary = headers / LIBRARIES;
+    for (int library = 0; library < LIBRARIES; library++) {
+      Path symlinkTree =
+          Paths.get(String.format("buck-out/gen/lib%d/lib%d#headers", library, library));
+      ImmutableMap.Builder<Path, SourcePath> headerMap = ImmutableMap.builder();
+      for (int header = 0; header < headersPerLibrary; header++) {
+        Path include = Paths.get(String.format("lib%d/include/header%d.h", library, header));
+        headerMap.put(
+            include, PathSourcePath.of(filesystem, Paths.get("lib" + library).resolve(include)));
+        lines.add("  " + symlinkTree.resolve(include) + " \\");
+      }
+      normalizer.addSymlinkTree(PathSourcePath.of(filesystem, symlinkTree), headerMap.build());
+    }
+    lines.add("  /usr/include/stdio.h");
+    headerPathNormalizer = normalizer.build();
+    headerVerification =
+        HeaderVerification.of(HeaderVerification.Mode.ERROR)
+            .withPlatformWhitelist(ImmutableList.of("^/usr/include/.*"));
+
+    depFile = Paths.get("main.cpp.o.dep");
+    filesystem.writeLinesToPath(lines, depFile);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    filesystem.deleteRecursivelyIfExists(root);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public int parse() throws IOException {
+    parsedPrereqs = 0;
+    try (InputStream input = filesystem.newFileInputStream(depFile)) {
+      Depfiles.parseDepfile(input, prereq -> parsedPrereqs++);
+    }
+    return parsedPrereqs;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public ImmutableList<Path> parseAndVerify()
+      throws IOException, Depfiles.HeaderVerificationException {
+    return Depfiles.parseAndVerifyDependencies(
+        eventBus,
+        filesystem,
+        pathResolver,
+        headerPathNormalizer,
+        headerVerification,
+        depFile,
+        inputPath,
+        Paths.get("buck-out/gen/app/main.cpp.o"),
+        DependencyTrackingMode.MAKEFILE,
+        /* useUnixPathSeparator */ false);
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {DepfilesBenchmark.class.getName()});
+  }
+}
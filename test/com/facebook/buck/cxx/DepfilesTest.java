@@ -19,10 +19,14 @@ package com.facebook.buck.cxx;
 import static org.junit.Assert.assertThat;
 
 import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -128,6 +132,11 @@ public class DepfilesTest {
             "output: input\\\\\\\twith\\\\\\\ttabs\r\n",
             "output",
             ImmutableList.of("input\\\twith\\\ttabs")
+          },
+          {
+            "output: caf\u00e9.h \u30d8\u30c3\u30c0.h\n",
+            "output",
+            ImmutableList.of("caf\u00e9.h", "\u30d8\u30c3\u30c0.h")
           }
         });
   }
@@ -148,4 +157,14 @@ public class DepfilesTest {
         Depfiles.parseDepfile(new StringReader(input)),
         Matchers.equalTo(new Depfiles.Depfile(expectedTarget, expectedPrereqs)));
   }
+
+  @Test
+  public void parseDepfileFromBytes() throws IOException {
+    List<String> prereqs = new ArrayList<>();
+    String target =
+        Depfiles.parseDepfile(
+            new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), prereqs::add);
+    assertThat(target, Matchers.equalTo(expectedTarget));
+    assertThat(prereqs, Matchers.equalTo(expectedPrereqs));
+  }
 }
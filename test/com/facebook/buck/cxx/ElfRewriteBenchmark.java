@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.cxx.toolchain.elf.ElfDynamicSection;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures scrubbing a large shared library the way {@link ElfSharedLibraryInterface} does, with
+ * {@link #symbols} exported functions, as many undefined references and {@link #PADDING_MB} MB of
+ * read-only data. {@link #sequential} runs the scrubbing steps one after the other, each mapping
+ * the file on its own, and {@link #staged} runs them through a single {@link ElfRewriteStep}.
+ *
+ * <p>The library is built with the {@code cc} on the {@code PATH}.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ElfRewriteBenchmark {
+  private static final int PADDING_MB = 256;
+
+  @Param({"10000", "100000"})
+  public int symbols;
+
+  private Path root;
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+  private Path pristine;
+  private Path lib;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, InterruptedException {
+    root = Files.createTempDirectory("elf-rewrite-benchmark");
+    filesystem = TestProjectFilesystems.createProjectFilesystem(root);
+    context = TestExecutionContext.newInstance();
+
+    List<String> lines = new ArrayList<>();
+    lines.add(String.format("const char padding[%d << 20] = {1};", PADDING_MB));
+    for (int i = 0; i < symbols; i++) {
+      lines.add(String.format("extern int undefined%d(void);", i));
+      lines.add(String.format("int defined%d(void) { return undefined%d() + %d; }", i, i, i));
+    }
+    Path source = root.resolve("lib.c");
+    Files.write(source, lines);
+    pristine = root.resolve("libpristine.so");
+    Process cc =
+        new ProcessBuilder("cc", "-shared", "-fPIC", "-o", pristine.toString(), source.toString())
+            .inheritIO()
+            .start();
+    Preconditions.checkState(cc.waitFor() == 0, "failed to build %s", pristine);
+    lib = filesystem.getPath("lib.so");
+  }
+
+  @Setup(Level.Invocation)
+  public void copyLibrary() throws IOException {
+    Files.copy(pristine, filesystem.resolve(lib), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    filesystem.deleteRecursivelyIfExists(root);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public void sequential() throws IOException, InterruptedException {
+    for (Step step :
+        ImmutableList.<Step>of(
+            dynSymScrubber(),
+            symTabScrubber(),
+            dynamicScrubber(),
+            ImmutableElfScrubFileHeaderStep.of(filesystem, lib),
+            ImmutableElfRewriteDynStrSectionStep.of(filesystem, lib),
+            ImmutableElfClearProgramHeadersStep.of(filesystem, lib))) {
+      step.execute(context);
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public void staged() throws IOException {
+    ImmutableElfRewriteStep.of(
+            filesystem,
+            lib,
+            ImmutableList.of(
+                ImmutableList.of(
+                    dynSymScrubber(),
+                    dynamicScrubber(),
+                    ImmutableElfScrubFileHeaderStep.of(filesystem, lib),
+                    ImmutableElfClearProgramHeadersStep.of(filesystem, lib)),
+                ImmutableList.of(
+                    symTabScrubber(), ImmutableElfRewriteDynStrSectionStep.of(filesystem, lib))))
+        .execute(context);
+  }
+
+  private ElfSymbolTableScrubberStep dynSymScrubber() {
+    return ImmutableElfSymbolTableScrubberStep.of(
+        filesystem, lib, ".dynsym", Optional.of(".gnu.version"), false, true);
+  }
+
+  private ElfSymbolTableScrubberStep symTabScrubber() {
+    return ImmutableElfSymbolTableScrubberStep.of(
+        filesystem, lib, ".symtab", Optional.empty(), true, true);
+  }
+
+  private ElfDynamicSectionScrubberStep dynamicScrubber() {
+    return ImmutableElfDynamicSectionScrubberStep.of(
+        filesystem, lib, ImmutableSet.of(ElfDynamicSection.DTag.DT_SONAME), true);
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {ElfRewriteBenchmark.class.getName()});
+  }
+}
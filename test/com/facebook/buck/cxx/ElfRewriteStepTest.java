@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import com.facebook.buck.cxx.toolchain.elf.ElfDynamicSection;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.testutil.integration.ProjectWorkspace;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ElfRewriteStepTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() throws IOException {
+    ProjectWorkspace workspace =
+        TestDataHelper.createProjectWorkspaceForScenario(this, "elf_shared_lib", tmp);
+    workspace.setUp();
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+  }
+
+  @Test
+  public void stagedRewritesMatchSequentialSteps() throws IOException, InterruptedException {
+    assertStagedRewritesMatchSequentialSteps(false);
+  }
+
+  @Test
+  public void stagedRewritesMatchSequentialStepsWhenRemovingUndefinedSymbols()
+      throws IOException, InterruptedException {
+    assertStagedRewritesMatchSequentialSteps(true);
+  }
+
+  private void assertStagedRewritesMatchSequentialSteps(boolean removeUndefinedSymbols)
+      throws IOException, InterruptedException {
+    Path sequential = filesystem.getPath("sequential.so");
+    Path staged = filesystem.getPath("staged.so");
+    filesystem.copyFile(filesystem.getPath("libfoo.so"), sequential);
+    filesystem.copyFile(filesystem.getPath("libfoo.so"), staged);
+
+    // The steps in the order they used to run in, each mapping the file on its own.
+    ImmutableList.Builder<Step> steps = ImmutableList.builder();
+    steps.add(
+        ImmutableElfSymbolTableScrubberStep.of(
+            filesystem,
+            sequential,
+            ".dynsym",
+            Optional.of(".gnu.version"),
+            /* allowMissing */ false,
+            removeUndefinedSymbols),
+        ImmutableElfSymbolTableScrubberStep.of(
+            filesystem,
+            sequential,
+            ".symtab",
+            Optional.empty(),
+            /* allowMissing */ true,
+            /* scrubUndefinedSymbols */ true),
+        ImmutableElfDynamicSectionScrubberStep.of(
+            filesystem,
+            sequential,
+            removeUndefinedSymbols
+                ? ImmutableSet.of(ElfDynamicSection.DTag.DT_SONAME)
+                : ImmutableSet.of(
+                    ElfDynamicSection.DTag.DT_NEEDED, ElfDynamicSection.DTag.DT_SONAME),
+            removeUndefinedSymbols),
+        ImmutableElfScrubFileHeaderStep.of(filesystem, sequential));
+    if (removeUndefinedSymbols) {
+      steps.add(ImmutableElfRewriteDynStrSectionStep.of(filesystem, sequential));
+    }
+    steps.add(ImmutableElfClearProgramHeadersStep.of(filesystem, sequential));
+    for (Step step : steps.build()) {
+      step.execute(TestExecutionContext.newInstance());
+    }
+
+    ImmutableElfRewriteStep.of(
+            filesystem,
+            staged,
+            ElfSharedLibraryInterface.getRewriteStages(filesystem, staged, removeUndefinedSymbols))
+        .execute(TestExecutionContext.newInstance());
+
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(sequential)),
+        Files.readAllBytes(filesystem.resolve(staged)));
+  }
+}
@@ -114,4 +114,28 @@ public class HeaderPathNormalizerTest {
         normalizer.getSourcePathForAbsolutePath(pathResolver.getAbsolutePath(headerPath)),
         Matchers.equalTo(headerPath));
   }
+
+  @Test
+  public void unnormalizedPathMapsThroughLongestPrefix() {
+    SourcePathResolverAdapter pathResolver = new TestActionGraphBuilder().getSourcePathResolver();
+    SourcePath headerDirPath = PathSourcePath.of(filesystem, filesystem.getPath("real/dir"));
+    SourcePath headerPath = PathSourcePath.of(filesystem, filesystem.getPath("real/other.h"));
+    Path linkDir = filesystem.resolve("tree");
+    HeaderPathNormalizer normalizer =
+        new HeaderPathNormalizer.Builder(pathResolver)
+            .addHeader(headerDirPath, linkDir)
+            .addHeader(headerPath, linkDir.resolve("dir/nested.h"))
+            .build();
+    assertThat(
+        normalizer.getAbsolutePathForUnnormalizedPath(
+            pathResolver, linkDir.resolve("dir/nested.h")),
+        Matchers.equalTo(Optional.of(pathResolver.getAbsolutePath(headerPath))));
+    assertThat(
+        normalizer.getAbsolutePathForUnnormalizedPath(pathResolver, linkDir.resolve("dir/x.h")),
+        Matchers.equalTo(
+            Optional.of(pathResolver.getAbsolutePath(headerDirPath).resolve("dir/x.h"))));
+    assertThat(
+        normalizer.getAbsolutePathForUnnormalizedPath(pathResolver, filesystem.resolve("tre")),
+        Matchers.equalTo(Optional.empty()));
+  }
 }
@@ -39,9 +39,11 @@ import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.parser.exceptions.NoSuchBuildTargetException;
 import com.facebook.buck.rules.args.Arg;
 import com.facebook.buck.rules.args.StringArg;
+import com.facebook.buck.util.types.Pair;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
@@ -480,6 +482,60 @@ public class OmnibusTest {
     Omnibus.buildSpec(ImmutableList.of(root), ImmutableList.of(), new TestActionGraphBuilder());
   }
 
+  @Test
+  public void binariesWithOverlappingRootsWalkSharedRootsOnce() throws NoSuchBuildTargetException {
+    NativeLinkable a = new OmnibusNode("//:a");
+    NativeLinkable b = new OmnibusNode("//:b", ImmutableList.of(a));
+    NativeLinkTarget root1 = new OmnibusRootNode("//:root1", ImmutableList.of(a));
+    AtomicInteger root2Walks = new AtomicInteger();
+    NativeLinkTarget root2 =
+        new OmnibusRootNode("//:root2", ImmutableList.of(b)) {
+          @Override
+          public Iterable<? extends NativeLinkable> getNativeLinkTargetDeps(
+              ActionGraphBuilder graphBuilder) {
+            root2Walks.incrementAndGet();
+            return super.getNativeLinkTargetDeps(graphBuilder);
+          }
+        };
+
+    // Build two binaries sharing `root2` in the same action graph.
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    for (Pair<String, ImmutableList<NativeLinkTarget>> binary :
+        ImmutableList.of(
+            new Pair<>("//:rule1", ImmutableList.of(root1, root2)),
+            new Pair<>("//:rule2", ImmutableList.of(root2)),
+            new Pair<>("//:rule3", ImmutableList.of(root2)))) {
+      BuildTarget target = BuildTargetFactory.newInstance(binary.getFirst());
+      ImmutableMap<String, SourcePath> libs =
+          toSonameMap(
+              Omnibus.getSharedLibraries(
+                  target,
+                  filesystem,
+                  TestBuildRuleParams.create(),
+                  TestCellPathResolver.get(filesystem),
+                  graphBuilder,
+                  CxxPlatformUtils.DEFAULT_CONFIG,
+                  CxxPlatformUtils.DEFAULT_PLATFORM,
+                  ImmutableList.of(),
+                  binary.getSecond(),
+                  ImmutableList.of()));
+
+      // Each binary still gets its own root and omnibus links.
+      assertThat(
+          getCxxLinkRule(graphBuilder, libs.get(root2.getBuildTarget().toString()))
+              .getBuildTarget()
+              .getUnflavoredBuildTarget(),
+          Matchers.equalTo(target.getUnflavoredBuildTarget()));
+      assertThat(
+          getCxxLinkRule(graphBuilder, libs.get("libomnibus.so"))
+              .getBuildTarget()
+              .getUnflavoredBuildTarget(),
+          Matchers.equalTo(target.getUnflavoredBuildTarget()));
+    }
+    assertThat(root2Walks.get(), Matchers.equalTo(1));
+  }
+
   private CxxLink getCxxLinkRule(SourcePathRuleFinder ruleFinder, SourcePath path) {
     return ((CxxLink) ruleFinder.getRule((ExplicitBuildTargetSourcePath) path));
   }
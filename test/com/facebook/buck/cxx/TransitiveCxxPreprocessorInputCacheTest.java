@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rules.ActionGraphBuilder;
+import com.facebook.buck.core.rules.BuildRuleResolver;
+import com.facebook.buck.core.rules.TestBuildRuleParams;
+import com.facebook.buck.core.rules.impl.FakeBuildRule;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.cxx.toolchain.CxxPlatform;
+import com.facebook.buck.cxx.toolchain.CxxPlatformUtils;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.rules.args.StringArg;
+import com.facebook.buck.util.collect.HashTrieMap;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import org.junit.Test;
+
+public class TransitiveCxxPreprocessorInputCacheTest {
+
+  private static final CxxPlatform CXX_PLATFORM = CxxPlatformUtils.DEFAULT_PLATFORM;
+
+  private static class CachingCxxPreprocessorDep extends FakeBuildRule
+      implements CxxPreprocessorDep {
+
+    private final CxxPreprocessorInput input;
+    private final TransitiveCxxPreprocessorInputCache cache =
+        new TransitiveCxxPreprocessorInputCache(this);
+
+    CachingCxxPreprocessorDep(String target, CachingCxxPreprocessorDep... deps) {
+      super(
+          BuildTargetFactory.newInstance(target),
+          new FakeProjectFilesystem(),
+          TestBuildRuleParams.create().withDeclaredDeps(ImmutableSortedSet.copyOf(deps)));
+      this.input =
+          CxxPreprocessorInput.builder()
+              .putPreprocessorFlags(CxxSource.Type.C, StringArg.of("-D" + getBuildTarget()))
+              .build();
+    }
+
+    @Override
+    public Iterable<CxxPreprocessorDep> getCxxPreprocessorDeps(
+        CxxPlatform cxxPlatform, BuildRuleResolver ruleResolver) {
+      return FluentIterable.from(getBuildDeps()).filter(CxxPreprocessorDep.class);
+    }
+
+    @Override
+    public CxxPreprocessorInput getCxxPreprocessorInput(
+        CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+      return input;
+    }
+
+    @Override
+    public ImmutableMap<BuildTarget, CxxPreprocessorInput> getTransitiveCxxPreprocessorInput(
+        CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+      return cache.getUnchecked(cxxPlatform, graphBuilder);
+    }
+
+    @Override
+    public HashTrieMap<BuildTarget, CxxPreprocessorInput> getSharedTransitiveCxxPreprocessorInput(
+        CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+      return cache.getSharedUnchecked(cxxPlatform, graphBuilder);
+    }
+  }
+
+  @Test
+  public void transitiveInputIsSortedByTarget() {
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+    CachingCxxPreprocessorDep bottom = new CachingCxxPreprocessorDep("//:a_bottom");
+    CachingCxxPreprocessorDep left = new CachingCxxPreprocessorDep("//:d_left", bottom);
+    CachingCxxPreprocessorDep right = new CachingCxxPreprocessorDep("//:b_right", bottom);
+    CachingCxxPreprocessorDep top = new CachingCxxPreprocessorDep("//:c_top", left, right);
+
+    ImmutableMap<BuildTarget, CxxPreprocessorInput> inputs =
+        top.getTransitiveCxxPreprocessorInput(CXX_PLATFORM, graphBuilder);
+
+    assertEquals(
+        ImmutableList.of(
+            bottom.getBuildTarget(),
+            right.getBuildTarget(),
+            top.getBuildTarget(),
+            left.getBuildTarget()),
+        inputs.keySet().asList());
+    assertSame(left.input, inputs.get(left.getBuildTarget()));
+    assertSame(inputs, top.getTransitiveCxxPreprocessorInput(CXX_PLATFORM, graphBuilder));
+  }
+
+  @Test
+  public void transitiveInputSharesStructureWithDeps() {
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+    CachingCxxPreprocessorDep[] deps = new CachingCxxPreprocessorDep[100];
+    deps[0] = new CachingCxxPreprocessorDep("//:lib0");
+    for (int i = 1; i < deps.length; i++) {
+      deps[i] = new CachingCxxPreprocessorDep("//:lib" + i, deps[i - 1]);
+    }
+
+    HashTrieMap<BuildTarget, CxxPreprocessorInput> top =
+        deps[deps.length - 1].getSharedTransitiveCxxPreprocessorInput(CXX_PLATFORM, graphBuilder);
+    HashTrieMap<BuildTarget, CxxPreprocessorInput> child =
+        deps[deps.length - 2].getSharedTransitiveCxxPreprocessorInput(CXX_PLATFORM, graphBuilder);
+
+    assertEquals(deps.length, top.size());
+    // Entries of the receiver win in a union, so this only gives back the argument itself if it
+    // holds the very same entries as the receiver rather than equal copies of them.
+    assertSame(top, child.union(top));
+  }
+}
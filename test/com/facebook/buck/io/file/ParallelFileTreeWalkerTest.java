@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.io.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class ParallelFileTreeWalkerTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void returnsFilesInDepthFirstSortedOrder() throws IOException {
+    tmp.newFile("b.txt");
+    tmp.newFolder("b");
+    tmp.newFile("b/c");
+    tmp.newFolder("b/d");
+    tmp.newFile("b/d/e");
+    tmp.newFile("a");
+    tmp.newFolder("empty");
+
+    ImmutableList<Path> files =
+        ParallelFileTreeWalker.create(FileIoPool.get()).walk(tmp.getRoot(), mapToRelative());
+
+    assertEquals(ImmutableList.of(path("a"), path("b/c"), path("b/d/e"), path("b.txt")), files);
+  }
+
+  @Test
+  public void matchesSequentialWalkOnLargeTree() throws IOException {
+    for (int i = 0; i < 20; i++) {
+      Path dir = tmp.newFolder("dir" + i);
+      for (int j = 0; j < 20; j++) {
+        Path sub = Files.createDirectories(dir.resolve("sub" + (j % 3)));
+        Files.createFile(sub.resolve("file" + j));
+        Files.createFile(dir.resolve("file" + j));
+      }
+    }
+
+    List<Path> expected = new ArrayList<>();
+    walkSorted(tmp.getRoot(), expected);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      ImmutableList<Path> actual =
+          new ParallelFileTreeWalker(pool, false, p -> true, dir -> false)
+              .walk(tmp.getRoot(), (file, attrs) -> file);
+      assertEquals(expected, actual);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void walksOnTheGivenPool() throws IOException {
+    for (int i = 0; i < 4; i++) {
+      tmp.newFolder("dir" + i);
+      tmp.newFile("dir" + i + "/file");
+    }
+
+    Set<String> threadNames = ConcurrentHashMap.newKeySet();
+    ForkJoinPool pool =
+        new ForkJoinPool(
+            2,
+            p -> {
+              ForkJoinWorkerThread thread =
+                  ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+              thread.setName("walker");
+              return thread;
+            },
+            null,
+            false);
+    try {
+      ParallelFileTreeWalker.create(pool)
+          .walk(
+              tmp.getRoot(),
+              (file, attrs) -> {
+                threadNames.add(Thread.currentThread().getName());
+                return file;
+              });
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals(ImmutableSet.of("walker"), threadNames);
+  }
+
+  @Test
+  public void appliesEntryFilterAndSkipsDirectories() throws IOException {
+    tmp.newFile("keep");
+    tmp.newFile("drop");
+    tmp.newFolder("skipped");
+    tmp.newFile("skipped/file");
+    tmp.newFolder("filtered");
+    tmp.newFile("filtered/file");
+
+    ImmutableList<Path> files =
+        new ParallelFileTreeWalker(
+                FileIoPool.get(),
+                false,
+                p -> !p.getFileName().toString().startsWith("filtered")
+                    && !p.getFileName().toString().equals("drop"),
+                dir -> dir.getFileName().toString().equals("skipped"))
+            .walk(tmp.getRoot(), mapToRelative());
+
+    assertEquals(ImmutableList.of(path("keep")), files);
+  }
+
+  @Test
+  public void nullResultsAreLeftOut() throws IOException {
+    tmp.newFile("a");
+    tmp.newFile("b");
+
+    ImmutableList<Path> files =
+        ParallelFileTreeWalker.create(FileIoPool.get())
+            .walk(
+                tmp.getRoot(),
+                (file, attrs) -> file.getFileName().toString().equals("a") ? null : file);
+
+    assertEquals(ImmutableList.of(tmp.getRoot().resolve("b")), files);
+  }
+
+  @Test
+  public void rootFileIsTheOnlyResult() throws IOException {
+    Path file = tmp.newFile("file");
+
+    assertEquals(
+        ImmutableList.of(file),
+        ParallelFileTreeWalker.create(FileIoPool.get()).walk(file, (f, attrs) -> f));
+  }
+
+  @Test
+  public void missingRootThrows() throws IOException {
+    thrown.expect(NoSuchFileException.class);
+    ParallelFileTreeWalker.create(FileIoPool.get())
+        .walk(tmp.getRoot().resolve("missing"), (f, a) -> f);
+  }
+
+  @Test
+  public void loopsAreReportedWhenFollowingLinks() throws IOException {
+    assumeTrue(Platform.detect() != Platform.WINDOWS);
+    Path dir = tmp.newFolder("dir");
+    Files.createSymbolicLink(dir.resolve("loop"), dir);
+
+    thrown.expect(FileSystemLoopException.class);
+    new ParallelFileTreeWalker(FileIoPool.get(), true, p -> true, d -> false)
+        .walk(tmp.getRoot(), (f, a) -> f);
+  }
+
+  @Test
+  public void linksAreNotFollowedByDefault() throws IOException {
+    assumeTrue(Platform.detect() != Platform.WINDOWS);
+    Path dir = tmp.newFolder("dir");
+    Files.createFile(dir.resolve("file"));
+    Files.createSymbolicLink(tmp.getRoot().resolve("link"), dir);
+
+    ImmutableList<Path> files =
+        ParallelFileTreeWalker.create(FileIoPool.get()).walk(tmp.getRoot(), mapToRelative());
+
+    assertEquals(ImmutableList.of(path("dir/file"), path("link")), files);
+  }
+
+  private ParallelFileTreeWalker.FileMapper<Path> mapToRelative() {
+    return (file, attrs) -> tmp.getRoot().relativize(file);
+  }
+
+  private Path path(String relativePath) {
+    return tmp.getRoot().getFileSystem().getPath(relativePath);
+  }
+
+  private static void walkSorted(Path dir, List<Path> files) throws IOException {
+    List<Path> children;
+    try (Stream<Path> stream = Files.list(dir)) {
+      children = stream.sorted().collect(Collectors.toList());
+    }
+    for (Path child : children) {
+      if (Files.isDirectory(child)) {
+        walkSorted(child, files);
+      } else {
+        files.add(child);
+      }
+    }
+  }
+}
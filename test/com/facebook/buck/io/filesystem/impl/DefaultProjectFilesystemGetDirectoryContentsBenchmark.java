@@ -21,10 +21,16 @@ import com.facebook.buck.io.filesystem.TestProjectFilesystems;
 import com.facebook.buck.testutil.TemporaryPaths;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.openjdk.jmh.Main;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -46,6 +52,17 @@ public class DefaultProjectFilesystemGetDirectoryContentsBenchmark {
   @Param({"0", "1", "10", "100", "1000", "10000"})
   public int totalFileCount;
 
+  /**
+   * How the files are laid out: all in the enumerated directory, spread over a chain of {@link
+   * #DEEP_TREE_DEPTH} nested directories, or spread over sibling directories of {@link
+   * #FILES_PER_WIDE_DIRECTORY} files each.
+   */
+  @Param({"flat", "deep", "wide"})
+  public String treeShape;
+
+  private static final int DEEP_TREE_DEPTH = 32;
+  private static final int FILES_PER_WIDE_DIRECTORY = 10;
+
   private TemporaryPaths temporaryPaths = new TemporaryPaths();
   private DefaultProjectFilesystem fileSystem;
   private DefaultProjectFilesystemView fileSystemView;
@@ -59,8 +76,26 @@ public class DefaultProjectFilesystemGetDirectoryContentsBenchmark {
     pathToEnumerate = fileSystem.getRootPath();
 
     for (int i = 0; i < totalFileCount; ++i) {
-      Path path = fileSystem.getPath(String.format("file_%d", i));
-      fileSystem.createNewFile(path);
+      Path dir = getDirectoryForFile(i);
+      fileSystem.mkdirs(dir);
+      fileSystem.createNewFile(dir.resolve(String.format("file_%d", i)));
+    }
+  }
+
+  private Path getDirectoryForFile(int index) {
+    Path dir = fileSystem.getPath("");
+    switch (treeShape) {
+      case "flat":
+        return dir;
+      case "deep":
+        for (int level = 0; level < index % DEEP_TREE_DEPTH; level++) {
+          dir = dir.resolve(String.format("dir_%d", level));
+        }
+        return dir;
+      case "wide":
+        return dir.resolve(String.format("dir_%d", index / FILES_PER_WIDE_DIRECTORY));
+      default:
+        throw new IllegalArgumentException("Unknown tree shape: " + treeShape);
     }
   }
 
@@ -98,6 +133,50 @@ public class DefaultProjectFilesystemGetDirectoryContentsBenchmark {
     }
   }
 
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public Collection<Path> getFilesUnderPath() throws IOException {
+    return fileSystem.getFilesUnderPath(fileSystem.getPath(""));
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public Collection<Path> getFilesUnderPathFromView() throws IOException {
+    return fileSystemView.getFilesUnderPath(
+        fileSystem.getPath(""), EnumSet.of(FileVisitOption.FOLLOW_LINKS));
+  }
+
+  /** The sequential visitor-based walk that {@link #getFilesUnderPath()} used to do. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public Collection<Path> walkRelativeFileTree() throws IOException {
+    List<Path> paths = new ArrayList<>();
+    fileSystem.walkRelativeFileTree(
+        fileSystem.getPath(""),
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            paths.add(file);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return paths;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public void nioWalkFileTree(Blackhole blackhole) throws IOException {
+    Files.walkFileTree(
+        pathToEnumerate.getPath(),
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            blackhole.consume(file);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
   @TearDown(Level.Trial)
   public void tearDown() {
     temporaryPaths.after();
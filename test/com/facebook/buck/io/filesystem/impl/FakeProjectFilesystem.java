@@ -68,6 +68,7 @@ import java.nio.file.NotLinkException;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileTime;
@@ -83,6 +84,8 @@ import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
@@ -808,6 +811,32 @@ public class FakeProjectFilesystem extends DefaultProjectFilesystem {
     }
   }
 
+  @Override
+  ImmutableSet<Path> getFilesUnderPathWithPathMapping(
+      Path root,
+      EnumSet<FileVisitOption> visitOptions,
+      DirectoryStream.Filter<? super Path> ignoreFilter,
+      Function<Path, Path> pathMapper,
+      Predicate<Path> predicate)
+      throws IOException {
+    ImmutableSet.Builder<Path> paths = ImmutableSet.builder();
+    walkFileTreeWithPathMapping(
+        root,
+        visitOptions,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+            if (predicate.test(path)) {
+              paths.add(path);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        },
+        ignoreFilter,
+        pathMapper);
+    return paths.build();
+  }
+
   @Override
   public void copyFolder(Path source, Path target) {
     throw new UnsupportedOperationException();
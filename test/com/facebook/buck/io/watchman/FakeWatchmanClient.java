@@ -17,10 +17,13 @@
 package com.facebook.buck.io.watchman;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 
 /** Fake implementation of {@link com.facebook.buck.io.watchman.WatchmanClient} for tests. */
 public class FakeWatchmanClient implements WatchmanClient {
@@ -28,6 +31,8 @@ public class FakeWatchmanClient implements WatchmanClient {
   private final Map<? extends List<? extends Object>, ? extends Map<String, ? extends Object>>
       queryResults;
   private final Exception exceptionToThrow;
+  private final Queue<Map<String, ? extends Object>> notifications = new ArrayDeque<>();
+  private boolean waitingForNotification = false;
 
   public FakeWatchmanClient(
       long queryElapsedTimeNanos,
@@ -69,6 +74,36 @@ public class FakeWatchmanClient implements WatchmanClient {
     return Optional.of(result);
   }
 
+  @Override
+  public synchronized Optional<? extends Map<String, ? extends Object>> receiveWithTimeout(
+      long timeoutNanos) throws InterruptedException {
+    waitingForNotification = true;
+    notifyAll();
+    long deadlineNanos = System.nanoTime() + timeoutNanos;
+    while (notifications.isEmpty()) {
+      long remainingNanos = deadlineNanos - System.nanoTime();
+      if (remainingNanos <= 0) {
+        return Optional.empty();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+    }
+    waitingForNotification = false;
+    return Optional.of(notifications.remove());
+  }
+
+  /** Queues a message for {@link #receiveWithTimeout(long)} to return. */
+  public synchronized void addNotification(Map<String, ? extends Object> notification) {
+    notifications.add(notification);
+    notifyAll();
+  }
+
+  /** Waits until all queued messages were received, and the receiver is waiting for more. */
+  public synchronized void awaitNotificationsReceived() throws InterruptedException {
+    while (!notifications.isEmpty() || !waitingForNotification) {
+      wait();
+    }
+  }
+
   @Override
   public void close() {}
 }
@@ -18,6 +18,7 @@ package com.facebook.buck.io.watchman;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link com.facebook.buck.io.watchman.WatchmanClient} that simply returns a value passed in a
@@ -36,6 +37,14 @@ public class StubWatchmanClient implements WatchmanClient {
     return result;
   }
 
+  @Override
+  public Optional<? extends Map<String, ?>> receiveWithTimeout(long timeoutNanos)
+      throws InterruptedException {
+    // Nothing is ever pushed to this client.
+    TimeUnit.NANOSECONDS.sleep(timeoutNanos);
+    return Optional.empty();
+  }
+
   @Override
   public void close() {}
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.io.watchman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.io.watchman.WatchmanEvent.Kind;
+import com.facebook.buck.io.watchman.WatchmanEvent.Type;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Test;
+
+public class WatchmanSubscriptionTest {
+
+  private static final AbsPath FAKE_ROOT = AbsPath.of(Paths.get("/fake/root").toAbsolutePath());
+  private static final WatchmanQuery FAKE_QUERY =
+      ImmutableWatchmanQuery.of("/fake/root", ImmutableMap.of());
+
+  private WatchmanSubscription subscription;
+
+  @After
+  public void tearDown() throws IOException {
+    if (subscription != null) {
+      subscription.close();
+    }
+  }
+
+  @Test
+  public void changesAreCoalescedPerPathAndGroupedByDirectory() throws Exception {
+    FakeWatchmanClient client = subscribe(10);
+    client.addNotification(
+        notification(
+            "c:1",
+            file("foo/a", "new", true),
+            file("bar/b", "exists", false),
+            file("foo/c", "new", false)));
+    client.addNotification(
+        notification("c:2", file("foo/a", "new", false), file("bar/b", "new", true)));
+    client.awaitNotificationsReceived();
+
+    WatchmanSubscription.Changes changes = subscription.drain();
+    assertEquals("c:2", changes.getClock());
+    assertEquals(Optional.empty(), changes.getOverflowReason());
+    assertEquals(
+        ImmutableList.of(
+            WatchmanMultiplePathEvent.Change.of(Type.FILE, Paths.get("foo/a"), Kind.CREATE),
+            WatchmanMultiplePathEvent.Change.of(Type.FILE, Paths.get("foo/c"), Kind.MODIFY),
+            WatchmanMultiplePathEvent.Change.of(Type.FILE, Paths.get("bar/b"), Kind.CREATE)),
+        changes.getChanges());
+
+    WatchmanSubscription.Changes nextChanges = subscription.drain();
+    assertEquals("c:2", nextChanges.getClock());
+    assertTrue(nextChanges.getChanges().isEmpty());
+  }
+
+  @Test
+  public void tooManyChangesOverflow() throws Exception {
+    FakeWatchmanClient client = subscribe(1);
+    client.addNotification(notification("c:1", file("foo/a"), file("foo/b")));
+    client.awaitNotificationsReceived();
+
+    WatchmanSubscription.Changes changes = subscription.drain();
+    assertEquals("c:1", changes.getClock());
+    assertTrue(changes.getChanges().isEmpty());
+    assertEquals(Optional.of("Too many files changed."), changes.getOverflowReason());
+    assertEquals(Optional.empty(), subscription.drain().getOverflowReason());
+  }
+
+  @Test
+  public void freshInstanceOverflows() throws Exception {
+    FakeWatchmanClient client = subscribe(10);
+    client.addNotification(
+        ImmutableMap.of("clock", "c:1", "is_fresh_instance", true, "files", ImmutableList.of()));
+    client.awaitNotificationsReceived();
+
+    WatchmanSubscription.Changes changes = subscription.drain();
+    assertEquals("c:1", changes.getClock());
+    assertTrue(changes.getOverflowReason().isPresent());
+  }
+
+  @Test
+  public void errorEndsSubscriptionButKeepsChanges() throws Exception {
+    FakeWatchmanClient client = subscribe(10);
+    client.addNotification(notification("c:1", file("foo/a")));
+    client.addNotification(ImmutableMap.of("error", "watch was removed"));
+    while (subscription.isAlive()) {
+      Thread.sleep(1);
+    }
+
+    WatchmanSubscription.Changes changes = subscription.drain();
+    assertEquals("c:1", changes.getClock());
+    assertEquals(1, changes.getChanges().size());
+    assertFalse(subscription.isAlive());
+  }
+
+  private FakeWatchmanClient subscribe(int maxChanges) throws Exception {
+    FakeWatchmanClient client =
+        new FakeWatchmanClient(
+            0,
+            ImmutableMap.of(
+                FAKE_QUERY.toSubscribeList("buck-" + FAKE_ROOT, "c:0"),
+                ImmutableMap.of("subscribe", "buck-" + FAKE_ROOT, "clock", "c:0")));
+    subscription =
+        WatchmanSubscription.subscribe(client, FAKE_ROOT, FAKE_QUERY, "c:0", maxChanges, 1000);
+    return client;
+  }
+
+  @SafeVarargs
+  private static ImmutableMap<String, Object> notification(
+      String clock, ImmutableMap<String, Object>... files) {
+    return ImmutableMap.of(
+        "subscription", "buck-" + FAKE_ROOT, "clock", clock, "files", ImmutableList.copyOf(files));
+  }
+
+  private static ImmutableMap<String, Object> file(String name, Object... fields) {
+    ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
+    builder.put("name", name);
+    for (int i = 0; i < fields.length; i += 2) {
+      builder.put((String) fields[i], fields[i + 1]);
+    }
+    return builder.build();
+  }
+}
@@ -39,6 +39,7 @@ import com.facebook.buck.util.timing.FakeClock;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import java.io.IOException;
@@ -111,10 +112,11 @@ public class WatchmanWatcherIntegrationTest {
     watcher.postEvents(
         new DefaultBuckEventBus(FakeClock.doNotCare(), new BuildId()),
         WatchmanWatcher.FreshInstanceAction.NONE);
-    WatchmanPathEvent event = watchmanEventCollector.getOnlyEvent(WatchmanPathEvent.class);
-    RelPath eventPath = event.getPath();
-    assertThat(eventPath, Matchers.equalTo(path));
-    assertSame(event.getKind(), Kind.CREATE);
+    WatchmanMultiplePathEvent event =
+        watchmanEventCollector.getOnlyEvent(WatchmanMultiplePathEvent.class);
+    WatchmanMultiplePathEvent.Change change = Iterables.getOnlyElement(event.getChanges());
+    assertThat(change.getPath(), Matchers.equalTo(path.getPath()));
+    assertSame(change.getKind(), Kind.CREATE);
   }
 
   // Create a watcher for the given ignore paths, clearing the initial overflow event before
@@ -129,6 +131,7 @@ public class WatchmanWatcherIntegrationTest {
             ImmutableSet.copyOf(ignorePaths),
             ImmutableMap.of(
                 AbsPath.of(tmp.getRoot()), new WatchmanCursor("n:buckd" + UUID.randomUUID())),
+            Optional.empty(),
             /* numThreads */ 1);
 
     // Clear out the initial overflow event.
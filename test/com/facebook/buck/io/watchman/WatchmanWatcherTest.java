@@ -52,6 +52,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 import org.hamcrest.Matchers;
 import org.junit.After;
@@ -116,7 +118,7 @@ public class WatchmanWatcherTest {
     watcher.postEvents(
         BuckEventBusForTests.newInstance(FakeClock.doNotCare()),
         WatchmanWatcher.FreshInstanceAction.NONE);
-    WatchmanPathEvent pathEvent = eventBuffer.getOnlyEvent(WatchmanPathEvent.class);
+    WatchmanMultiplePathEvent.Change pathEvent = eventBuffer.getOnlyChange();
     assertEquals(Kind.MODIFY, pathEvent.getKind());
     assertEquals(
         "Path should match watchman output.",
@@ -134,7 +136,7 @@ public class WatchmanWatcherTest {
     watcher.postEvents(
         BuckEventBusForTests.newInstance(FakeClock.doNotCare()),
         WatchmanWatcher.FreshInstanceAction.NONE);
-    WatchmanPathEvent pathEvent = eventBuffer.getOnlyEvent(WatchmanPathEvent.class);
+    WatchmanMultiplePathEvent.Change pathEvent = eventBuffer.getOnlyChange();
     assertEquals("Should be create event.", Kind.CREATE, pathEvent.getKind());
   }
 
@@ -150,7 +152,7 @@ public class WatchmanWatcherTest {
     watcher.postEvents(
         BuckEventBusForTests.newInstance(FakeClock.doNotCare()),
         WatchmanWatcher.FreshInstanceAction.NONE);
-    WatchmanPathEvent pathEvent = eventBuffer.getOnlyEvent(WatchmanPathEvent.class);
+    WatchmanMultiplePathEvent.Change pathEvent = eventBuffer.getOnlyChange();
     assertEquals("Should be delete event.", Kind.DELETE, pathEvent.getKind());
   }
 
@@ -169,7 +171,7 @@ public class WatchmanWatcherTest {
     watcher.postEvents(
         BuckEventBusForTests.newInstance(FakeClock.doNotCare()),
         WatchmanWatcher.FreshInstanceAction.NONE);
-    WatchmanPathEvent pathEvent = eventBuffer.getOnlyEvent(WatchmanPathEvent.class);
+    WatchmanMultiplePathEvent.Change pathEvent = eventBuffer.getOnlyChange();
     assertEquals("Should be delete event.", Kind.DELETE, pathEvent.getKind());
   }
 
@@ -186,7 +188,8 @@ public class WatchmanWatcherTest {
     watcher.postEvents(
         BuckEventBusForTests.newInstance(FakeClock.doNotCare()),
         WatchmanWatcher.FreshInstanceAction.NONE);
-    List<WatchmanPathEvent> pathEvents = eventBuffer.filterEventsByClass(WatchmanPathEvent.class);
+    List<WatchmanMultiplePathEvent.Change> pathEvents =
+        eventBuffer.getOnlyEvent(WatchmanMultiplePathEvent.class).getChanges();
     assertEquals(
         "Path should match watchman output.",
         MorePaths.pathWithPlatformSeparators("foo/bar/baz"),
@@ -718,6 +721,74 @@ public class WatchmanWatcherTest {
                         && c.getPath().equals(Paths.get("foo/bar/newdir"))));
   }
 
+  @Test
+  public void whenSubscribedThenNotifiedChangesArePostedBeforeQueryingTheRest()
+      throws IOException, InterruptedException {
+    String subscriptionName = "buck-" + FAKE_ROOT;
+    FakeWatchmanClient client =
+        new FakeWatchmanClient(
+            0,
+            ImmutableMap.of(
+                FAKE_CLOCK_QUERY,
+                ImmutableMap.of("clock", "c:1", "files", ImmutableList.of()),
+                FAKE_QUERY.toSubscribeList(subscriptionName, "c:1"),
+                ImmutableMap.of("subscribe", subscriptionName, "clock", "c:1"),
+                FAKE_QUERY.toList("c:2"),
+                ImmutableMap.of(
+                    "clock",
+                    "c:3",
+                    "files",
+                    ImmutableList.of(ImmutableMap.<String, Object>of("name", "foo/late")))));
+    ConcurrentMap<AbsPath, WatchmanSubscription> subscriptions = new ConcurrentHashMap<>();
+    WatchmanCursor cursor = new WatchmanCursor("c:0:0");
+    WatchmanWatcher watcher =
+        new WatchmanWatcher(
+            eventBus,
+            () -> client,
+            10000,
+            ImmutableMap.of(FAKE_ROOT, FAKE_QUERY),
+            ImmutableMap.of(FAKE_ROOT, cursor),
+            Optional.of(subscriptions),
+            /* numThreads */ 1);
+    try {
+      watcher.postEvents(
+          BuckEventBusForTests.newInstance(FakeClock.doNotCare()),
+          WatchmanWatcher.FreshInstanceAction.NONE);
+      assertTrue(subscriptions.get(FAKE_ROOT).isAlive());
+      assertTrue(eventBuffer.events.isEmpty());
+
+      client.addNotification(
+          ImmutableMap.of(
+              "subscription",
+              subscriptionName,
+              "clock",
+              "c:2",
+              "files",
+              ImmutableList.of(ImmutableMap.<String, Object>of("name", "foo/early", "new", true))));
+      client.awaitNotificationsReceived();
+      watcher.postEvents(
+          BuckEventBusForTests.newInstance(FakeClock.doNotCare()),
+          WatchmanWatcher.FreshInstanceAction.NONE);
+
+      List<WatchmanMultiplePathEvent> events =
+          eventBuffer.filterEventsByClass(WatchmanMultiplePathEvent.class);
+      assertEquals(2, events.size());
+      assertEquals(
+          ImmutableList.of(
+              WatchmanMultiplePathEvent.Change.of(Type.FILE, Paths.get("foo/early"), Kind.CREATE)),
+          events.get(0).getChanges());
+      assertEquals(
+          ImmutableList.of(
+              WatchmanMultiplePathEvent.Change.of(Type.FILE, Paths.get("foo/late"), Kind.MODIFY)),
+          events.get(1).getChanges());
+      assertEquals("c:3", cursor.get());
+    } finally {
+      for (WatchmanSubscription subscription : subscriptions.values()) {
+        subscription.close();
+      }
+    }
+  }
+
   private WatchmanWatcher createWatcher(
       EventBus eventBus, ImmutableMap<String, ? extends Object> response) {
     return createWatcher(
@@ -771,5 +842,13 @@ public class WatchmanWatcherTest {
           filteredEvents.size());
       return filteredEvents.get(0);
     }
+
+    /** Helper to retrieve the only change of the only batch of changes in the list. */
+    public WatchmanMultiplePathEvent.Change getOnlyChange() {
+      ImmutableList<WatchmanMultiplePathEvent.Change> changes =
+          getOnlyEvent(WatchmanMultiplePathEvent.class).getChanges();
+      assertEquals("Expected only one change", 1, changes.size());
+      return changes.get(0);
+    }
   }
 }
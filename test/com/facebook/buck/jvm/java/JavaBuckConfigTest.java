@@ -435,6 +435,23 @@ public class JavaBuckConfigTest {
     assertTrue(config.trackClassUsage(UnconfiguredTargetConfiguration.INSTANCE));
   }
 
+  @Test
+  public void javacDaemonCompilesWithTheJdkWithoutTrackingClassUsage() {
+    JavaBuckConfig config =
+        FakeBuckConfig.builder()
+            .setSections(ImmutableMap.of("java", ImmutableMap.of("javac_daemon", "true")))
+            .build()
+            .getView(JavaBuckConfig.class);
+
+    JavacSpec javacSpec = config.getJavacSpec(UnconfiguredTargetConfiguration.INSTANCE);
+    assumeThat(javacSpec.getJavacSource(), is(Javac.Source.JDK));
+
+    assertThat(
+        javacSpec.getJavacProvider().resolve(new TestActionGraphBuilder()),
+        Matchers.instanceOf(DaemonJavac.class));
+    assertFalse(config.trackClassUsage(UnconfiguredTargetConfiguration.INSTANCE));
+  }
+
   @Test
   public void testCompileFullJarsByDefault() throws IOException {
     JavaBuckConfig config = createWithDefaultFilesystem(new StringReader(""));
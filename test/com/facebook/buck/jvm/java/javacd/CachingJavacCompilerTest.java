@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.javacd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class CachingJavacCompilerTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private CachingJavacCompiler compiler;
+
+  @Before
+  public void setUp() {
+    compiler = new CachingJavacCompiler(ToolProvider.getSystemJavaCompiler(), 4, 64);
+  }
+
+  @Test
+  public void compilesSources() throws IOException {
+    Path out = tmp.newFolder("out");
+    Path source = writeSource("A.java", "public class A {}");
+
+    StringWriter output = new StringWriter();
+    int exitCode =
+        compiler.compile(
+            ImmutableList.of("-d", out.toString()),
+            ImmutableList.of(source.toString()),
+            /* reuseProcessorClassLoaders */ true,
+            output);
+
+    assertEquals(output.toString(), 0, exitCode);
+    assertTrue(Files.exists(out.resolve("A.class")));
+  }
+
+  @Test
+  public void reportsCompilationErrors() throws IOException {
+    Path out = tmp.newFolder("out");
+    Path source = writeSource("A.java", "public class A { int i = \"not an int\"; }");
+
+    StringWriter output = new StringWriter();
+    int exitCode =
+        compiler.compile(
+            ImmutableList.of("-d", out.toString()),
+            ImmutableList.of(source.toString()),
+            /* reuseProcessorClassLoaders */ true,
+            output);
+
+    assertEquals(1, exitCode);
+    assertThat(output.toString(), containsString("incompatible types"));
+  }
+
+  @Test
+  public void reportsInvalidOptions() throws IOException {
+    Path source = writeSource("A.java", "public class A {}");
+
+    int exitCode =
+        compiler.compile(
+            ImmutableList.of("-no-such-option"),
+            ImmutableList.of(source.toString()),
+            /* reuseProcessorClassLoaders */ true,
+            new StringWriter());
+
+    assertEquals(2, exitCode);
+  }
+
+  @Test
+  public void reusesFileManagerAcrossRules() throws IOException {
+    Path jar = writeLibraryJar("Lib");
+
+    assertEquals(0, compileAgainst(jar, "A"));
+    assertEquals(0, compileAgainst(jar, "B"));
+
+    assertEquals(1, compiler.getFileManagersCreated());
+  }
+
+  @Test
+  public void outputDirectoryDoesNotLeakIntoNextCompilation() throws IOException {
+    Path jar = writeLibraryJar("Lib");
+    Path firstOut = tmp.newFolder("first");
+    Path secondOut = tmp.newFolder("second");
+
+    compiler.compile(
+        ImmutableList.of("-d", firstOut.toString(), "-cp", jar.toString()),
+        ImmutableList.of(writeSource("A.java", "public class A extends Lib {}").toString()),
+        /* reuseProcessorClassLoaders */ true,
+        new StringWriter());
+    compiler.compile(
+        ImmutableList.of("-d", secondOut.toString(), "-cp", jar.toString()),
+        ImmutableList.of(writeSource("B.java", "public class B extends Lib {}").toString()),
+        /* reuseProcessorClassLoaders */ true,
+        new StringWriter());
+
+    assertTrue(Files.exists(firstOut.resolve("A.class")));
+    assertTrue(Files.exists(secondOut.resolve("B.class")));
+    assertTrue(Files.notExists(firstOut.resolve("B.class")));
+  }
+
+  @Test
+  public void dropsFileManagerWhenClasspathJarChanges() throws IOException {
+    Path jar = writeLibraryJar("Lib");
+    assertEquals(0, compileAgainst(jar, "A"));
+
+    writeLibraryJar("Lib", "Extra");
+    assertEquals(0, compileAgainst(jar, "B"));
+
+    assertEquals(2, compiler.getFileManagersCreated());
+  }
+
+  @Test
+  public void optionsPartitionTheCache() throws IOException {
+    Path out = tmp.newFolder("out");
+    Path source = writeSource("A.java", "public class A {}");
+
+    compiler.compile(
+        ImmutableList.of("-d", out.toString(), "-encoding", "UTF-8"),
+        ImmutableList.of(source.toString()),
+        /* reuseProcessorClassLoaders */ true,
+        new StringWriter());
+    compiler.compile(
+        ImmutableList.of("-d", out.toString(), "-encoding", "ISO-8859-1"),
+        ImmutableList.of(source.toString()),
+        /* reuseProcessorClassLoaders */ true,
+        new StringWriter());
+
+    assertEquals(2, compiler.getFileManagersCreated());
+  }
+
+  @Test
+  public void reusesAnnotationProcessorClassLoaders() throws IOException {
+    Path processorClasses = compileProcessor("processor");
+
+    assertEquals(0, compileWithProcessor(processorClasses, "A", true));
+    assertEquals(0, compileWithProcessor(processorClasses, "B", true));
+
+    assertEquals(1, compiler.getProcessorClassLoadersCreated());
+  }
+
+  @Test
+  public void doesNotShareAnnotationProcessorClassLoadersUnlessAllowed() throws IOException {
+    Path processorClasses = compileProcessor("processor");
+
+    assertEquals(0, compileWithProcessor(processorClasses, "A", false));
+    assertEquals(0, compileWithProcessor(processorClasses, "B", false));
+
+    assertEquals(0, compiler.getProcessorClassLoadersCreated());
+  }
+
+  @Test
+  public void closesEvictedAnnotationProcessorClassLoaders() throws IOException {
+    compiler = new CachingJavacCompiler(ToolProvider.getSystemJavaCompiler(), 4, 1);
+    Path firstProcessor = compileProcessor("first");
+    Path secondProcessor = compileProcessor("second");
+
+    assertEquals(0, compileWithProcessor(firstProcessor, "A", true));
+    assertEquals(0, compiler.getProcessorClassLoadersClosed());
+    assertEquals(0, compileWithProcessor(secondProcessor, "B", true));
+
+    assertEquals(2, compiler.getProcessorClassLoadersCreated());
+    assertEquals(1, compiler.getProcessorClassLoadersClosed());
+  }
+
+  private Path compileProcessor(String directory) throws IOException {
+    Path processorClasses = tmp.newFolder(directory);
+    Path processorSource =
+        writeSource(
+            "NoOpProcessor.java",
+            "import java.util.Set;\n"
+                + "import javax.annotation.processing.*;\n"
+                + "import javax.lang.model.SourceVersion;\n"
+                + "import javax.lang.model.element.TypeElement;\n"
+                + "@SupportedAnnotationTypes(\"*\")\n"
+                + "public class NoOpProcessor extends AbstractProcessor {\n"
+                + "  @Override public SourceVersion getSupportedSourceVersion() {\n"
+                + "    return SourceVersion.latestSupported();\n"
+                + "  }\n"
+                + "  @Override public boolean process(\n"
+                + "      Set<? extends TypeElement> annotations, RoundEnvironment env) {\n"
+                + "    return false;\n"
+                + "  }\n"
+                + "}\n");
+    assertEquals(
+        0,
+        compiler.compile(
+            ImmutableList.of("-d", processorClasses.toString()),
+            ImmutableList.of(processorSource.toString()),
+            /* reuseProcessorClassLoaders */ true,
+            new StringWriter()));
+    return processorClasses;
+  }
+
+  private int compileWithProcessor(
+      Path processorClasses, String className, boolean reuseProcessorClassLoaders)
+      throws IOException {
+    StringWriter output = new StringWriter();
+    int exitCode =
+        compiler.compile(
+            ImmutableList.of(
+                "-d",
+                tmp.newFolder(className + "-out").toString(),
+                "-processorpath",
+                processorClasses.toString(),
+                "-processor",
+                "NoOpProcessor"),
+            ImmutableList.of(
+                writeSource(className + ".java", "public class " + className + " {}").toString()),
+            reuseProcessorClassLoaders,
+            output);
+    assertEquals(output.toString(), 0, exitCode);
+    return exitCode;
+  }
+
+  private int compileAgainst(Path jar, String className) throws IOException {
+    Path out = tmp.newFolder(className + "-out");
+    StringWriter output = new StringWriter();
+    int exitCode =
+        compiler.compile(
+            ImmutableList.of("-d", out.toString(), "-cp", jar.toString()),
+            ImmutableList.of(
+                writeSource(className + ".java", "public class " + className + " extends Lib {}")
+                    .toString()),
+            /* reuseProcessorClassLoaders */ true,
+            output);
+    assertEquals(output.toString(), 0, exitCode);
+    return exitCode;
+  }
+
+  private Path writeLibraryJar(String... classNames) throws IOException {
+    Path classes = Files.createTempDirectory(tmp.getRoot(), "lib");
+    ImmutableList.Builder<String> sources = ImmutableList.builder();
+    for (String className : classNames) {
+      Path source = classes.resolve(className + ".java");
+      Files.write(
+          source, ("public class " + className + " {}").getBytes(StandardCharsets.UTF_8));
+      sources.add(source.toString());
+    }
+    assertEquals(
+        0,
+        compiler.compile(
+            ImmutableList.of("-d", classes.toString()),
+            sources.build(),
+            /* reuseProcessorClassLoaders */ true,
+            new StringWriter()));
+
+    Path jar = tmp.getRoot().resolve("lib.jar");
+    try (JarOutputStream jarOut = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (String className : classNames) {
+        jarOut.putNextEntry(new JarEntry(className + ".class"));
+        jarOut.write(Files.readAllBytes(classes.resolve(className + ".class")));
+        jarOut.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  private Path writeSource(String fileName, String contents) throws IOException {
+    Path source = Files.createTempDirectory(tmp.getRoot(), "src").resolve(fileName);
+    Files.write(source, contents.getBytes(StandardCharsets.UTF_8));
+    return source;
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.javacd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.tools.ToolProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JavacDaemonClientTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private JavacDaemonClient client;
+
+  @Before
+  public void setUp() throws IOException {
+    client = JavacDaemonClient.launch(tmp.getRoot(), getLaunchCommand());
+  }
+
+  private static List<String> getLaunchCommand() {
+    return ImmutableList.of(
+        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+        "-cp",
+        System.getProperty("java.class.path"),
+        JavacDaemon.class.getName());
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+  }
+
+  @Test
+  public void compilesRelativeToTheDaemonWorkingDirectory() throws IOException {
+    Files.createDirectories(tmp.getRoot().resolve("out"));
+    Files.write(
+        tmp.getRoot().resolve("A.java"), "public class A {}".getBytes(StandardCharsets.UTF_8));
+
+    JavacDaemonClient.Result result =
+        client.compile(
+            ImmutableList.of("-d", "out"),
+            ImmutableList.of("A.java"),
+            /* reuseProcessorClassLoaders */ true);
+
+    assertEquals(result.getOutput(), 0, result.getExitCode());
+    assertTrue(Files.exists(tmp.getRoot().resolve("out/A.class")));
+  }
+
+  @Test
+  public void returnsDiagnostics() throws IOException {
+    Path source = tmp.getRoot().resolve("A.java");
+    Files.write(source, "public class A { B b; }".getBytes(StandardCharsets.UTF_8));
+
+    JavacDaemonClient.Result result =
+        client.compile(
+            ImmutableList.of("-d", tmp.newFolder("out").toString()),
+            ImmutableList.of(source.toString()),
+            /* reuseProcessorClassLoaders */ true);
+
+    assertEquals(1, result.getExitCode());
+    assertThat(result.getOutput(), containsString("cannot find symbol"));
+  }
+
+  @Test
+  public void servesConcurrentCompilations() throws Exception {
+    Thread[] threads = new Thread[4];
+    JavacDaemonClient.Result[] results = new JavacDaemonClient.Result[threads.length];
+    for (int i = 0; i < threads.length; i++) {
+      String name = "C" + i;
+      Path source = tmp.getRoot().resolve(name + ".java");
+      Files.write(source, ("public class " + name + " {}").getBytes(StandardCharsets.UTF_8));
+      Path out = tmp.newFolder(name);
+      int index = i;
+      threads[i] =
+          new Thread(
+              () -> {
+                try {
+                  results[index] =
+                      client.compile(
+                          ImmutableList.of("-d", out.toString()),
+                          ImmutableList.of(source.toString()),
+                          /* reuseProcessorClassLoaders */ true);
+                } catch (IOException e) {
+                  throw new RuntimeException(e);
+                }
+              });
+      threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join(TimeUnit.MINUTES.toMillis(1));
+      assertEquals(results[i].getOutput(), 0, results[i].getExitCode());
+    }
+  }
+
+  @Test(expected = EOFException.class)
+  public void dropsConnectionsWithoutTheToken() throws Exception {
+    byte[] token = new byte[JavacDaemonProtocol.TOKEN_LENGTH];
+    token[0] = 1;
+    try (JavacDaemon daemon =
+        new JavacDaemon(
+            new ServerSocket(0, 50, InetAddress.getLoopbackAddress()),
+            token,
+            ToolProvider.getSystemJavaCompiler())) {
+      Thread server = new Thread(daemon::serve);
+      server.setDaemon(true);
+      server.start();
+
+      try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+          DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+          DataInputStream in = new DataInputStream(socket.getInputStream())) {
+        JavacDaemonProtocol.writeRequest(
+            out,
+            new byte[JavacDaemonProtocol.TOKEN_LENGTH],
+            /* reuseProcessorClassLoaders */ true,
+            ImmutableList.of("-version"),
+            ImmutableList.of());
+        in.readInt();
+      }
+    }
+  }
+
+  @Test
+  public void relaunchesDaemonsThatExited() throws Exception {
+    JavacDaemonClient first = JavacDaemonClient.getOrLaunch(tmp.getRoot(), getLaunchCommand());
+    try {
+      assertSame(first, JavacDaemonClient.getOrLaunch(tmp.getRoot(), getLaunchCommand()));
+      first.close();
+      for (int i = 0; i < 100 && first.isAlive(); i++) {
+        Thread.sleep(50);
+      }
+      JavacDaemonClient second = JavacDaemonClient.getOrLaunch(tmp.getRoot(), getLaunchCommand());
+      second.close();
+      assertNotSame(first, second);
+    } finally {
+      first.close();
+    }
+  }
+
+  @Test
+  public void daemonStopsWhenClosed() throws Exception {
+    client.close();
+    for (int i = 0; i < 100 && client.isAlive(); i++) {
+      Thread.sleep(50);
+    }
+    assertFalse(client.isAlive());
+  }
+}
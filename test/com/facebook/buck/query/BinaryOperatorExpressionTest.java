@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.query.BinaryOperatorExpression.Operator;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+public class BinaryOperatorExpressionTest {
+
+  @Test
+  public void intersectionAndDifferenceSkipOperandsOnceTheResultIsEmpty() throws QueryException {
+    for (Operator operator : ImmutableList.of(Operator.INTERSECT, Operator.EXCEPT)) {
+      TestExpression<Object> first = new TestExpression<>("first");
+      TestExpression<Object> second = new TestExpression<>("second");
+
+      assertTrue(
+          BinaryOperatorExpression.of(operator, ImmutableList.of(first, second))
+              .eval(new NoopQueryEvaluator<>(), new BaseTestQueryEnvironment<>())
+              .isEmpty());
+
+      assertEquals(1, first.getEvaluations());
+      assertEquals(0, second.getEvaluations());
+    }
+  }
+
+  @Test
+  public void unionEvaluatesEveryOperand() throws QueryException {
+    TestExpression<Object> first = new TestExpression<>("first");
+    TestExpression<Object> second = new TestExpression<>("second");
+
+    BinaryOperatorExpression.of(Operator.UNION, ImmutableList.of(first, second))
+        .eval(new NoopQueryEvaluator<>(), new BaseTestQueryEnvironment<>());
+
+    assertEquals(1, first.getEvaluations());
+    assertEquals(1, second.getEvaluations());
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CachingQueryEvaluatorTest {
+
+  @Test
+  public void remembersResults() throws QueryException {
+    CachingQueryEvaluator<Object> evaluator = new CachingQueryEvaluator<>();
+    TestExpression<Object> expression = new TestExpression<>("expression");
+
+    evaluator.eval(expression, new BaseTestQueryEnvironment<>());
+    evaluator.eval(expression, new BaseTestQueryEnvironment<>());
+
+    assertEquals(1, expression.getEvaluations());
+  }
+
+  @Test
+  public void boundedEvaluatorDropsLeastRecentlyUsedResults() throws QueryException {
+    // Each empty result weighs one target.
+    CachingQueryEvaluator<Object> evaluator = new CachingQueryEvaluator<>(2);
+    TestExpression<Object> first = new TestExpression<>("first");
+    TestExpression<Object> second = new TestExpression<>("second");
+    TestExpression<Object> third = new TestExpression<>("third");
+
+    evaluator.eval(first, new BaseTestQueryEnvironment<>());
+    evaluator.eval(second, new BaseTestQueryEnvironment<>());
+    evaluator.eval(first, new BaseTestQueryEnvironment<>());
+    evaluator.eval(third, new BaseTestQueryEnvironment<>());
+
+    assertTrue(evaluator.isPresent(first));
+    assertFalse(evaluator.isPresent(second));
+    assertTrue(evaluator.isPresent(third));
+    assertEquals(1, first.getEvaluations());
+  }
+}
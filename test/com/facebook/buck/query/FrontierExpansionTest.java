@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.query;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.hamcrest.Matchers;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class FrontierExpansionTest {
+
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private static final ExecutorService EXECUTOR =
+      Executors.newFixedThreadPool(4, runnable -> new Thread(runnable, "traversal"));
+
+  private static class ConcurrentQueryEnvironment extends BaseTestQueryEnvironment<Integer> {
+    @Override
+    public Optional<ExecutorService> getTraversalExecutor() {
+      return Optional.of(EXECUTOR);
+    }
+  }
+
+  @AfterClass
+  public static void shutDownExecutor() {
+    EXECUTOR.shutdownNow();
+  }
+
+  /** Every number depends on itself divided by 2 and 3, so the expansion has many duplicates. */
+  private static Set<Integer> expand(Iterable<Integer> targets) {
+    Set<Integer> result = new LinkedHashSet<>();
+    for (int target : targets) {
+      result.add(target / 2);
+      result.add(target / 3);
+    }
+    return result;
+  }
+
+  @Test
+  public void parallelExpansionHasSameOrderAsSequentialExpansion() throws QueryException {
+    List<Integer> frontier =
+        IntStream.range(0, 100_000)
+            .map(i -> (i * 7919) % 100_000)
+            .boxed()
+            .collect(Collectors.toList());
+
+    Set<Integer> expected = expand(frontier);
+    Set<Integer> actual =
+        FrontierExpansion.expand(
+            new ConcurrentQueryEnvironment(), frontier, FrontierExpansionTest::expand);
+
+    assertEquals(new ArrayList<>(expected), new ArrayList<>(actual));
+  }
+
+  @Test
+  public void largeFrontiersAreExpandedOnTheEnvironmentsExecutor() throws QueryException {
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    FrontierExpansion.expand(
+        new ConcurrentQueryEnvironment(),
+        IntStream.range(0, 100_000).boxed().collect(Collectors.toList()),
+        targets -> {
+          threads.add(Thread.currentThread().getName());
+          return ImmutableSet.of();
+        });
+
+    assertEquals(ImmutableSet.of("traversal"), threads);
+  }
+
+  @Test
+  public void sequentialEnvironmentIsNotSplit() throws QueryException {
+    List<Iterable<Integer>> calls = new ArrayList<>();
+    List<Integer> frontier =
+        IntStream.range(0, 100_000).boxed().collect(ImmutableList.toImmutableList());
+
+    FrontierExpansion.expand(
+        new BaseTestQueryEnvironment<>(),
+        frontier,
+        targets -> {
+          calls.add(targets);
+          return ImmutableSet.of();
+        });
+
+    assertEquals(ImmutableList.of(frontier), calls);
+  }
+
+  @Test
+  public void propagatesQueryExceptions() throws QueryException {
+    thrown.expect(QueryException.class);
+    thrown.expectMessage(Matchers.containsString("no such target"));
+
+    FrontierExpansion.expand(
+        new ConcurrentQueryEnvironment(),
+        IntStream.range(0, 100_000).boxed().collect(Collectors.toList()),
+        targets -> {
+          throw new QueryException("no such target");
+        });
+  }
+}
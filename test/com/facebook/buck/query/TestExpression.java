@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.query;
+
+import com.facebook.buck.core.model.QueryTarget;
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+
+/** An expression that evaluates to an empty set and counts how often it was evaluated. */
+class TestExpression<NODE_TYPE> extends QueryExpression<NODE_TYPE> {
+  private final String name;
+  private int evaluations = 0;
+
+  TestExpression(String name) {
+    this.name = name;
+  }
+
+  int getEvaluations() {
+    return evaluations;
+  }
+
+  @Override
+  <OUTPUT_TYPE extends QueryTarget> Set<OUTPUT_TYPE> eval(
+      QueryEvaluator<NODE_TYPE> evaluator, QueryEnvironment<NODE_TYPE> env) {
+    evaluations++;
+    return ImmutableSet.of();
+  }
+
+  @Override
+  public void traverse(Visitor<NODE_TYPE> visitor) {
+    visitor.visit(this);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
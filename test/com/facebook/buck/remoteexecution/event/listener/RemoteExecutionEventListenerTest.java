@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.remoteexecution.event.listener;
+
+import com.facebook.buck.remoteexecution.event.ActionSerializationEvent;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RemoteExecutionEventListenerTest {
+  @Test
+  public void testSerializationStatsAreSummedOverActions() {
+    RemoteExecutionEventListener listener = new RemoteExecutionEventListener();
+    listener.onActionSerialized(new ActionSerializationEvent("//:a", 1000, 1000));
+    listener.onActionSerialized(new ActionSerializationEvent("//:b", 800, 100));
+
+    Assert.assertEquals(1800, listener.getSerializedBytes());
+    Assert.assertEquals(1100, listener.getNewSerializedBytes());
+
+    ImmutableMap<String, String> fields = listener.exportFieldsToMap();
+    Assert.assertEquals("1800", fields.get("serialized_bytes"));
+    Assert.assertEquals("1100", fields.get("serialized_new_bytes"));
+  }
+}
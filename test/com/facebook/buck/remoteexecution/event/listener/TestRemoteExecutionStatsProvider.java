@@ -120,4 +120,14 @@ public class TestRemoteExecutionStatsProvider implements RemoteExecutionStatsPro
   public long getTotalRemoteTimeMs() {
     return TimeUnit.SECONDS.toMillis(200);
   }
+
+  @Override
+  public long getSerializedBytes() {
+    return 0;
+  }
+
+  @Override
+  public long getNewSerializedBytes() {
+    return 0;
+  }
 }
@@ -28,6 +28,8 @@ import com.facebook.buck.event.DefaultBuckEventBus;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.io.watchman.WatchmanEvent.Kind;
+import com.facebook.buck.io.watchman.WatchmanEvent.Type;
+import com.facebook.buck.io.watchman.WatchmanMultiplePathEvent;
 import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.util.cache.NoOpCacheStatsTracker;
@@ -88,6 +90,45 @@ public class RuleKeyCacheRecyclerTest {
     assertFalse(cache.isCached(appendable));
   }
 
+  @Test
+  public void multiplePathWatchEventInvalidatesChangedInputsAndDirectoriesContainingThem() {
+    DefaultRuleKeyCache<String> cache = new DefaultRuleKeyCache<>();
+    RuleKeyInput directoryInput = ImmutableRuleKeyInput.of(FILESYSTEM, FILESYSTEM.getPath("dir"));
+    AddsToRuleKey directoryAppendable = new AddsToRuleKey() {};
+    RuleKeyInput fileInput = ImmutableRuleKeyInput.of(FILESYSTEM, FILESYSTEM.getPath("input1"));
+    AddsToRuleKey fileAppendable = new AddsToRuleKey() {};
+    RuleKeyInput unchangedInput =
+        ImmutableRuleKeyInput.of(FILESYSTEM, FILESYSTEM.getPath("input2"));
+    AddsToRuleKey unchangedAppendable = new AddsToRuleKey() {};
+    cache.get(
+        directoryAppendable,
+        a -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of(directoryInput)),
+        new NoOpCacheStatsTracker());
+    cache.get(
+        fileAppendable,
+        a -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of(fileInput)),
+        new NoOpCacheStatsTracker());
+    cache.get(
+        unchangedAppendable,
+        a -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of(unchangedInput)),
+        new NoOpCacheStatsTracker());
+    RuleKeyCacheRecycler<String> recycler =
+        RuleKeyCacheRecycler.createAndRegister(EVENT_BUS, cache, ImmutableSet.of(FILESYSTEM));
+    recycler.onFilesystemChange(
+        WatchmanMultiplePathEvent.of(
+            FILESYSTEM.getRootPath(),
+            ImmutableList.of(
+                WatchmanMultiplePathEvent.Change.of(
+                    Type.FILE, FILESYSTEM.getPath("dir/a"), Kind.MODIFY),
+                WatchmanMultiplePathEvent.Change.of(
+                    Type.FILE, FILESYSTEM.getPath("dir/b"), Kind.CREATE),
+                WatchmanMultiplePathEvent.Change.of(
+                    Type.FILE, fileInput.getPath(), Kind.DELETE))));
+    assertFalse(cache.isCached(directoryAppendable));
+    assertFalse(cache.isCached(fileAppendable));
+    assertTrue(cache.isCached(unchangedAppendable));
+  }
+
   @Test
   public void overflowWatchEventInvalidatesEverything() {
     DefaultRuleKeyCache<String> cache = new DefaultRuleKeyCache<>();
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rulekey.AddToRuleKey;
+import com.facebook.buck.core.rulekey.AddsToRuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.FakeSourcePath;
+import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.rules.keys.hasher.GuavaRuleKeyHasher;
+import com.facebook.buck.rules.keys.hasher.RuleKeyHasher;
+import com.facebook.buck.rules.keys.hasher.StreamingRuleKeyHasher;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures how many default rule keys per second each {@link RuleKeyHasher} implementation can
+ * produce for a corpus of java-library shaped rules. The keys are computed by a real {@link
+ * DefaultRuleKeyFactory}, so the hasher sees exactly the sequence of values a build feeds it. Run
+ * through {@link #main} to also get the allocation rate of each implementation from JMH's GC
+ * profiler.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RuleKeyHasherBenchmark {
+
+  private static final int CORPUS_SIZE = 1000;
+
+  @Param({"guava", "streaming"})
+  public String hasher;
+
+  private Supplier<RuleKeyHasher<HashCode>> hasherSupplier;
+  private DefaultRuleKeyFactory factory;
+  private List<BuildRule> corpus;
+
+  @Setup
+  public void setUp() {
+    hasherSupplier =
+        hasher.equals("streaming")
+            ? StreamingRuleKeyHasher::newSha1Hasher
+            : () -> new GuavaRuleKeyHasher(Hashing.sha1().newHasher());
+
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Map<Path, HashCode> fileHashes = new HashMap<>();
+    corpus = new ArrayList<>(CORPUS_SIZE);
+    for (int i = 0; i < CORPUS_SIZE; i++) {
+      corpus.add(new CorpusRule(filesystem, fileHashes, i));
+    }
+    factory =
+        new TestDefaultRuleKeyFactory(
+            new FakeFileHashCache(fileHashes), new TestActionGraphBuilder());
+    // Prime the factory's cache so that the benchmark only measures hashing each rule's own
+    // fields, not recomputing the keys of its appendables.
+    corpus.forEach(factory::build);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OperationsPerInvocation(CORPUS_SIZE)
+  public void buildRuleKeys(Blackhole blackhole) {
+    for (BuildRule rule : corpus) {
+      blackhole.consume(factory.buildForDiagnostics(rule, hasherSupplier.get()).diagKey);
+    }
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {RuleKeyHasherBenchmark.class.getName(), "-prof", "gc"});
+  }
+
+  /** Compiler settings shared by all rules, hashed as a separate appendable like a toolchain. */
+  private static class CompilerOptions implements AddsToRuleKey {
+    @AddToRuleKey private final String sourceLevel = "8";
+    @AddToRuleKey private final String targetLevel = "8";
+    @AddToRuleKey private final boolean debug = true;
+
+    @AddToRuleKey
+    private final ImmutableList<String> extraArguments =
+        ImmutableList.of("-Xlint:all", "-Werror", "-encoding", "UTF-8");
+  }
+
+  private static final CompilerOptions COMPILER_OPTIONS = new CompilerOptions();
+
+  /** A rule with the mix of fields a typical library rule adds to its key. */
+  private static class CorpusRule extends EmptyFakeBuildRule {
+    @AddToRuleKey private final String name;
+    @AddToRuleKey private final int apiLevel;
+    @AddToRuleKey private final long timeoutMs;
+    @AddToRuleKey private final boolean exported;
+    @AddToRuleKey private final Optional<String> mainClass;
+    @AddToRuleKey private final ImmutableSortedSet<SourcePath> srcs;
+    @AddToRuleKey private final ImmutableList<BuildTarget> exportedDeps;
+    @AddToRuleKey private final ImmutableMap<String, String> env;
+    @AddToRuleKey private final CompilerOptions compilerOptions = COMPILER_OPTIONS;
+
+    CorpusRule(ProjectFilesystem filesystem, Map<Path, HashCode> fileHashes, int index) {
+      super(BuildTargetFactory.newInstance(String.format("//java/com/example/lib%d:lib", index)));
+      String packagePath = String.format("java/com/example/lib%d/", index);
+      ImmutableSortedSet.Builder<SourcePath> srcs = ImmutableSortedSet.naturalOrder();
+      for (int i = 0; i < 20; i++) {
+        String src = packagePath + "Source" + i + ".java";
+        srcs.add(FakeSourcePath.of(filesystem, src));
+        fileHashes.put(
+            filesystem.resolve(src), Hashing.sha1().hashString(src, StandardCharsets.UTF_8));
+      }
+      ImmutableList.Builder<BuildTarget> exportedDeps = ImmutableList.builder();
+      for (int i = 1; i <= 5 && i <= index; i++) {
+        exportedDeps.add(
+            BuildTargetFactory.newInstance(
+                String.format("//java/com/example/lib%d:lib#abi", index - i)));
+      }
+      this.name = "lib" + index;
+      this.apiLevel = 21 + index % 8;
+      this.timeoutMs = 1000L * index;
+      this.exported = index % 2 == 0;
+      this.mainClass =
+          index % 3 == 0
+              ? Optional.of(String.format("com.example.lib%d.Main", index))
+              : Optional.empty();
+      this.srcs = srcs.build();
+      this.exportedDeps = exportedDeps.build();
+      this.env = ImmutableMap.of("LANG", "en_US.UTF-8", "LIB_INDEX", Integer.toString(index));
+    }
+  }
+}
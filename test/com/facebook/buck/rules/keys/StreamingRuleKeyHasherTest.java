@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.RuleType;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.sourcepath.DefaultBuildTargetSourcePath;
+import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
+import com.facebook.buck.rules.keys.hasher.GuavaRuleKeyHasher;
+import com.facebook.buck.rules.keys.hasher.RuleKeyHasher;
+import com.facebook.buck.rules.keys.hasher.RuleKeyHasher.Container;
+import com.facebook.buck.rules.keys.hasher.RuleKeyHasher.Wrapper;
+import com.facebook.buck.rules.keys.hasher.StreamingRuleKeyHasher;
+import com.facebook.buck.util.sha1.Sha1HashCode;
+import com.google.common.base.Strings;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@SuppressWarnings("PMD.TestClassWithoutTestCases")
+@RunWith(Enclosed.class)
+public class StreamingRuleKeyHasherTest {
+
+  @RunWith(Parameterized.class)
+  public static class UniquenessTest extends CommonRuleKeyHasherTest.UniquenessTest<HashCode> {
+    @Parameters(name = "{0} != {2}")
+    public static Iterable<Object[]> cases() {
+      return CommonRuleKeyHasherTest.uniquenessTestCases(StreamingRuleKeyHasher::newSha1Hasher);
+    }
+  }
+
+  public static class ConsistencyTest extends CommonRuleKeyHasherTest.ConsistencyTest<HashCode> {
+
+    @Override
+    protected StreamingRuleKeyHasher newHasher() {
+      return StreamingRuleKeyHasher.newSha1Hasher();
+    }
+  }
+
+  /** Rule keys are persisted in caches, so the streaming hasher must not change any of them. */
+  public static class CompatibilityTest {
+
+    private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo/bar:baz#qux");
+
+    private static void assertSameHashAsGuava(Consumer<RuleKeyHasher<HashCode>> addToHash) {
+      RuleKeyHasher<HashCode> expected = new GuavaRuleKeyHasher(Hashing.sha1().newHasher());
+      RuleKeyHasher<HashCode> actual = StreamingRuleKeyHasher.newSha1Hasher();
+      addToHash.accept(expected);
+      addToHash.accept(actual);
+      assertEquals(expected.hash(), actual.hash());
+    }
+
+    @Test
+    public void primitivesHashLikeGuava() {
+      assertSameHashAsGuava(
+          h ->
+              h.putNull()
+                  .putBoolean(true)
+                  .putBoolean(false)
+                  .putCharacter('\u20ac')
+                  .putNumber(42)
+                  .putNumber(-42L)
+                  .putNumber((short) -3)
+                  .putNumber((byte) 7)
+                  .putNumber(1.5f)
+                  .putNumber(-0.25d)
+                  .putContainer(Container.MAP, 3)
+                  .putWrapper(Wrapper.OPTIONAL));
+    }
+
+    @Test
+    public void stringsHashLikeGuava() {
+      assertSameHashAsGuava(
+          h ->
+              h.putKey("")
+                  .putString("ascii")
+                  .putString("caf\u00e9 \u20ac \ud83d\ude00")
+                  .putString("lone \ud83d surrogate \ude00")
+                  .putString("trailing \ud83d")
+                  .putPattern(Pattern.compile("a+b"))
+                  .putRuleType(RuleType.of("java_library", RuleType.Kind.BUILD)));
+    }
+
+    @Test
+    public void valuesLargerThanTheBufferHashLikeGuava() {
+      String longString = Strings.repeat("\u00e9abc\u20ac", 10000);
+      byte[] longBytes = new byte[100000];
+      for (int i = 0; i < longBytes.length; i++) {
+        longBytes[i] = (byte) i;
+      }
+      assertSameHashAsGuava(
+          h ->
+              h.putString(longString)
+                  .putBytes(longBytes)
+                  .putNonHashingPath(Paths.get(Strings.repeat("dir/", 5000)))
+                  .putBytes(new byte[0]));
+    }
+
+    @Test
+    public void pathsAndHashesHashLikeGuava() {
+      assertSameHashAsGuava(
+          h ->
+              h.putKeyPath(Paths.get("key/path"))
+                  .putPath(Paths.get("some/file.txt"), HashCode.fromInt(42))
+                  .putPath(Paths.get("/abs/file"), HashCode.fromLong(42L))
+                  .putArchiveMemberPath(
+                      Paths.get("lib.jar"), Paths.get("a/B.class"), HashCode.fromInt(7))
+                  .putNonHashingPath(Paths.get(""))
+                  .putSha1(Sha1HashCode.of("a002b39af204cdfaa5fdb67816b13867c32ac52c"))
+                  .putRuleKey(new RuleKey("b67816b13867c32ac52ca002b39af204cdfaa5fd")));
+    }
+
+    @Test
+    public void targetsHashLikeGuava() {
+      assertSameHashAsGuava(
+          h ->
+              h.putBuildTarget(TARGET)
+                  .putBuildTargetSourcePath(DefaultBuildTargetSourcePath.of(TARGET))
+                  .putBuildTargetSourcePath(
+                      ExplicitBuildTargetSourcePath.of(TARGET, Paths.get("buck-out/out"))));
+    }
+
+    @Test
+    public void recycledHashersStartFromScratch() {
+      StreamingRuleKeyHasher.newSha1Hasher().putString("dirty").hash();
+      RuleKeyHasher<HashCode> outer = StreamingRuleKeyHasher.newSha1Hasher().putString("outer");
+      HashCode inner = StreamingRuleKeyHasher.newSha1Hasher().putString("inner").hash();
+      assertEquals(
+          new GuavaRuleKeyHasher(Hashing.sha1().newHasher()).putString("inner").hash(), inner);
+      assertEquals(
+          new GuavaRuleKeyHasher(Hashing.sha1().newHasher()).putString("outer").hash(),
+          outer.hash());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cannotBeUsedAfterHashing() {
+      RuleKeyHasher<HashCode> hasher = StreamingRuleKeyHasher.newSha1Hasher();
+      hasher.hash();
+      hasher.putString("too late");
+    }
+  }
+}
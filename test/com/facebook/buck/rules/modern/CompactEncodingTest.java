@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.rules.modern;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import org.junit.Test;
+
+public class CompactEncodingTest {
+  private static byte[] encode(int value) throws IOException {
+    ByteArrayDataOutput out = ByteStreams.newDataOutput();
+    CompactEncoding.writeVarInt(out, value);
+    return out.toByteArray();
+  }
+
+  private static int decode(byte[] bytes) throws IOException {
+    return CompactEncoding.readVarInt(ByteStreams.newDataInput(bytes));
+  }
+
+  @Test
+  public void varIntsRoundTrip() throws IOException {
+    for (int value : new int[] {0, 1, 127, 128, 300, 16383, 16384, 1 << 28, Integer.MAX_VALUE}) {
+      assertEquals(value, decode(encode(value)));
+    }
+  }
+
+  @Test
+  public void smallVarIntsTakeFewerBytes() throws IOException {
+    assertEquals(1, encode(0).length);
+    assertEquals(1, encode(127).length);
+    assertEquals(2, encode(128).length);
+    assertEquals(2, encode(16383).length);
+    assertEquals(3, encode(16384).length);
+    assertEquals(5, encode(Integer.MAX_VALUE).length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeVarIntsAreRejected() throws IOException {
+    encode(-1);
+  }
+
+  @Test(expected = IOException.class)
+  public void overlongVarIntsAreRejected() throws IOException {
+    byte[] bytes = new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0};
+    decode(bytes);
+  }
+}
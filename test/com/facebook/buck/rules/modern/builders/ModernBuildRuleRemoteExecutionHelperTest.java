@@ -16,6 +16,7 @@
 
 package com.facebook.buck.rules.modern.builders;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -27,6 +28,7 @@ import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.BuildTargetFactory;
 import com.facebook.buck.core.rulekey.AddToRuleKey;
+import com.facebook.buck.core.rulekey.AddsToRuleKey;
 import com.facebook.buck.core.rulekey.CustomFieldBehavior;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
@@ -37,7 +39,9 @@ import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.DefaultBuckEventBus;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.remoteexecution.event.ActionSerializationEvent;
 import com.facebook.buck.remoteexecution.grpc.GrpcProtocol;
+import com.facebook.buck.remoteexecution.proto.WorkerRequirements;
 import com.facebook.buck.rules.modern.BuildCellRelativePathFactory;
 import com.facebook.buck.rules.modern.Buildable;
 import com.facebook.buck.rules.modern.ModernBuildRule;
@@ -50,9 +54,14 @@ import com.facebook.buck.util.cache.FileHashCache;
 import com.facebook.buck.util.timing.FakeClock;
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.hash.HashCode;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import org.junit.Before;
 import org.junit.Rule;
@@ -63,10 +72,11 @@ public class ModernBuildRuleRemoteExecutionHelperTest {
   private ModernBuildRuleRemoteExecutionHelper mbrHelper;
   private ProjectFilesystem filesystem;
   private SourcePathRuleFinder ruleFinder;
+  private BuckEventBus eventBus;
 
   @Before
   public void setUp() {
-    BuckEventBus eventBus = new DefaultBuckEventBus(FakeClock.doNotCare(), new BuildId("dontcare"));
+    eventBus = new DefaultBuckEventBus(FakeClock.doNotCare(), new BuildId("dontcare"));
     ruleFinder =
         new AbstractBuildRuleResolver() {
           @Override
@@ -178,9 +188,57 @@ public class ModernBuildRuleRemoteExecutionHelperTest {
     }
   }
 
+  public static class SharedValue implements AddsToRuleKey {
+    // Long enough that the value is stored on its own rather than inlined in its parent.
+    @AddToRuleKey final String value = Strings.repeat("shared", 50);
+  }
+
+  public static class SharingBuildable extends SimpleBuildable {
+    @AddToRuleKey final SharedValue shared = new SharedValue();
+  }
+
   public <T extends Buildable> ModernBuildRule<T> wrapAsRule(final T buildable) {
+    return wrapAsRule("//:target", buildable);
+  }
+
+  public <T extends Buildable> ModernBuildRule<T> wrapAsRule(String target, final T buildable) {
     return new ModernBuildRule<T>(
-        BuildTargetFactory.newInstance("//:target"), filesystem, ruleFinder, buildable) {};
+        BuildTargetFactory.newInstance(target), filesystem, ruleFinder, buildable) {};
+  }
+
+  @Test
+  public void testSerializationEventIsPostedPerActionAndCountsSharedValuesOnce()
+      throws IOException {
+    List<ActionSerializationEvent> events = new ArrayList<>();
+    eventBus.register(
+        new Object() {
+          @Subscribe
+          public void onActionSerialized(ActionSerializationEvent event) {
+            events.add(event);
+          }
+        });
+
+    mbrHelper.prepareRemoteExecution(
+        wrapAsRule("//:a", new SharingBuildable()),
+        (digest, type) -> true,
+        WorkerRequirements.getDefaultInstance());
+    mbrHelper.prepareRemoteExecution(
+        wrapAsRule("//:b", new SharingBuildable()),
+        (digest, type) -> true,
+        WorkerRequirements.getDefaultInstance());
+    eventBus.close();
+
+    assertEquals(2, events.size());
+    ActionSerializationEvent first = events.get(0);
+    ActionSerializationEvent second = events.get(1);
+    assertEquals("//:a", first.getBuildTarget());
+    assertEquals("//:b", second.getBuildTarget());
+    assertTrue(first.getSerializedBytes() > 0);
+    assertEquals(first.getSerializedBytes(), first.getNewSerializedBytes());
+    // The two actions differ only in their target, so the shared value is new for the first
+    // action and only referenced by the second.
+    assertTrue(second.getNewSerializedBytes() > 0);
+    assertTrue(second.getNewSerializedBytes() < second.getSerializedBytes());
   }
 
   @Test
@@ -49,9 +49,11 @@ import com.facebook.buck.core.toolchain.ToolchainWithCapability;
 import com.facebook.buck.cxx.RelativeLinkArg;
 import com.facebook.buck.rules.modern.CustomClassSerialization;
 import com.facebook.buck.rules.modern.CustomFieldSerialization;
+import com.facebook.buck.rules.modern.Deserializer;
 import com.facebook.buck.rules.modern.EmptyMemoizerDeserialization;
 import com.facebook.buck.rules.modern.PathSerialization;
 import com.facebook.buck.rules.modern.RemoteExecutionEnabled;
+import com.facebook.buck.rules.modern.Serializer;
 import com.facebook.buck.rules.modern.SerializationTestHelper;
 import com.facebook.buck.rules.modern.SourcePathResolverSerialization;
 import com.facebook.buck.rules.modern.ValueCreator;
@@ -60,14 +62,23 @@ import com.facebook.buck.rules.modern.impl.StringifyingValueVisitor.ExcludeFromS
 import com.facebook.buck.util.Memoizer;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
@@ -389,6 +400,136 @@ public class BuildableSerializerTest extends AbstractValueVisitorTest {
     test(new WithAbsolutePath(rootFilesystem.resolve(rootFilesystem.getPath("a", "b"))));
   }
 
+  @Test
+  public void repeatedAndLongStrings() throws Exception {
+    WithRepeatedStrings reconstructed = test(new WithRepeatedStrings());
+    assertEquals(30000, reconstructed.longString.length());
+  }
+
+  private static class WithRepeatedStrings implements FakeBuildable {
+    @AddToRuleKey private final String longString = Strings.repeat("long\u00e9", 6000);
+
+    @AddToRuleKey
+    private final ImmutableList<String> strings =
+        ImmutableList.of("a", "b", "a", "", "\u20ac", "b", "", "\u20ac", "long");
+
+    @AddToRuleKey
+    private final ImmutableList<SourcePath> paths =
+        ImmutableList.of(
+            PathSourcePath.of(rootFilesystem, Paths.get("some/dir/a.cpp")),
+            PathSourcePath.of(rootFilesystem, Paths.get("some/dir/b.cpp")),
+            PathSourcePath.of(rootFilesystem, Paths.get("some/other/dir/a.cpp")));
+  }
+
+  @Test
+  public void repeatedStringsAreWrittenOnce() throws Exception {
+    replay(cellResolver, ruleFinder);
+    String repeated = "some/fairly/long/path/segment";
+    List<byte[]> registered = new ArrayList<>();
+    Serializer serializer =
+        new Serializer(
+            ruleFinder,
+            cellResolver,
+            (value, data, children) -> {
+              registered.add(data);
+              return HashCode.fromInt(registered.size());
+            });
+    serializer.serialize(new WithStrings(ImmutableList.of(repeated)));
+    serializer.serialize(new WithStrings(ImmutableList.copyOf(Collections.nCopies(100, repeated))));
+    verify(cellResolver, ruleFinder);
+
+    assertEquals(2, registered.size());
+    byte[] once = registered.get(0);
+    byte[] repeatedData = registered.get(1);
+    assertEquals(1, countOccurrences(repeatedData, repeated.getBytes(StandardCharsets.UTF_8)));
+    // Every repeat after the first is a one byte back-reference rather than another copy.
+    assertEquals(once.length + 99, repeatedData.length);
+  }
+
+  @Test
+  public void equalValuesShareOneNodeWhenKeyedByContent() throws Exception {
+    replay(cellResolver, ruleFinder);
+    List<HashCode> registrations = new ArrayList<>();
+    Map<HashCode, byte[]> dataMap = new HashMap<>();
+    Map<HashCode, ImmutableList<HashCode>> childMap = new HashMap<>();
+    Serializer serializer =
+        new Serializer(
+            ruleFinder,
+            cellResolver,
+            (value, data, children) -> {
+              HashCode hash = Hashing.sha256().hashBytes(data);
+              registrations.add(hash);
+              dataMap.putIfAbsent(hash, data);
+              childMap.putIfAbsent(hash, children);
+              return hash;
+            });
+    WithSharedValues instance = new WithSharedValues();
+    HashCode hash = serializer.serialize(instance);
+    verify(cellResolver, ruleFinder);
+
+    // The two fields hold distinct but equal values, so they are registered separately but end up
+    // as a single node that the parent references once.
+    assertEquals(3, registrations.size());
+    assertEquals(2, dataMap.size());
+    assertEquals(1, childMap.get(hash).size());
+
+    WithSharedValues reconstructed =
+        new Deserializer(
+                s -> s.isPresent() ? otherFilesystem : rootFilesystem,
+                Class::forName,
+                () -> resolver,
+                toolchainProvider)
+            .deserialize(getDataProvider(dataMap, hash), WithSharedValues.class);
+    assertEquals(stringify(instance), stringify(reconstructed));
+  }
+
+  private static Deserializer.DataProvider getDataProvider(
+      Map<HashCode, byte[]> dataMap, HashCode hash) {
+    return new Deserializer.DataProvider() {
+      @Override
+      public InputStream getData() {
+        return new ByteArrayInputStream(Preconditions.checkNotNull(dataMap.get(hash)));
+      }
+
+      @Override
+      public Deserializer.DataProvider getChild(HashCode childHash) {
+        return getDataProvider(dataMap, childHash);
+      }
+    };
+  }
+
+  private static int countOccurrences(byte[] data, byte[] needle) {
+    int count = 0;
+    for (int i = 0; i + needle.length <= data.length; i++) {
+      int j = 0;
+      while (j < needle.length && data[i + j] == needle[j]) {
+        j++;
+      }
+      if (j == needle.length) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static class WithStrings implements FakeBuildable {
+    @AddToRuleKey private final ImmutableList<String> strings;
+
+    private WithStrings(ImmutableList<String> strings) {
+      this.strings = strings;
+    }
+  }
+
+  private static class LargeValue implements AddsToRuleKey {
+    // Long enough that the value is registered on its own rather than inlined in its parent.
+    @AddToRuleKey private final String value = Strings.repeat("large", 40);
+  }
+
+  private static class WithSharedValues implements FakeBuildable {
+    @AddToRuleKey private final LargeValue first = new LargeValue();
+    @AddToRuleKey private final LargeValue second = new LargeValue();
+  }
+
   private static class WithAbsolutePath implements FakeBuildable {
     @CustomFieldBehavior(PathSerialization.class)
     private final Path path;
@@ -102,6 +102,11 @@ public class FakeWorkerBuilder
       return false;
     }
 
+    @Override
+    public boolean isMultiplexed() {
+      return false;
+    }
+
     @Override
     public HashCode getInstanceKey() {
       return hashCode;
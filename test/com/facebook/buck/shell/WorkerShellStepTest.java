@@ -123,6 +123,7 @@ public class WorkerShellStepTest {
             startupEnv,
             maxWorkers,
             isAsync,
+            false,
             persistentWorkerKey == null || workerHash == null
                 ? Optional.empty()
                 : Optional.of(WorkerProcessIdentity.of(persistentWorkerKey, workerHash))));
@@ -426,7 +427,10 @@ public class WorkerShellStepTest {
             new WorkerProcessPoolFactory(new FakeProjectFilesystem()) {
               @Override
               public WorkerProcess createWorkerProcess(
-                  ProcessExecutorParams processParams, ExecutionContext context, Path tmpDir)
+                  ProcessExecutorParams processParams,
+                  ExecutionContext context,
+                  Path tmpDir,
+                  boolean multiplexed)
                   throws IOException {
                 try {
                   sleep(5);
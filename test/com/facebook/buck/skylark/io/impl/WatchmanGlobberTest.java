@@ -46,6 +46,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang.NotImplementedException;
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -327,6 +328,14 @@ public class WatchmanGlobberTest {
             }
           }
 
+          @Override
+          public Optional<? extends Map<String, ?>> receiveWithTimeout(long timeoutNanos)
+              throws InterruptedException {
+            // Nothing is ever pushed to this client.
+            TimeUnit.NANOSECONDS.sleep(timeoutNanos);
+            return Optional.empty();
+          }
+
           @Override
           public void close() {}
         };
@@ -356,6 +365,14 @@ public class WatchmanGlobberTest {
       return Optional.empty();
     }
 
+    @Override
+    public Optional<? extends Map<String, ?>> receiveWithTimeout(long timeoutNanos)
+        throws InterruptedException {
+      // Nothing is ever pushed to this client.
+      TimeUnit.NANOSECONDS.sleep(timeoutNanos);
+      return Optional.empty();
+    }
+
     @Override
     public void close() {}
 
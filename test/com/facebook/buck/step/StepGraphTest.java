@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.step;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.event.FakeBuckEventListener;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.google.common.collect.ImmutableList;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class StepGraphTest {
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo:bar");
+
+  @Test
+  public void runsStepsInInsertionOrderWithOneCpu() throws Exception {
+    List<String> order = new CopyOnWriteArrayList<>();
+    StepGraph.Builder builder = StepGraph.builder("graph", TARGET);
+    StepGraph.Node first = builder.add(new RecordingStep("a", order));
+    builder.add(new RecordingStep("b", order));
+    builder.add(new RecordingStep("c", order), first);
+    builder.addChain(
+        ImmutableList.of(new RecordingStep("d", order), new RecordingStep("e", order)), first);
+
+    StepExecutionResult result = builder.build().execute(TestExecutionContext.newInstance());
+
+    assertTrue(result.isSuccess());
+    assertEquals(ImmutableList.of("a", "b", "c", "d", "e"), order);
+  }
+
+  @Test
+  public void independentStepsRunConcurrentlyWithinTheRuleCpuBudget() throws Exception {
+    // Both steps wait for each other, so this only finishes if they run at the same time.
+    CyclicBarrier barrier = new CyclicBarrier(2);
+    List<String> order = new CopyOnWriteArrayList<>();
+    StepGraph.Builder builder = StepGraph.builder("graph", TARGET);
+    StepGraph.Node mkdir = builder.add(new RecordingStep("mkdir", order));
+    builder.addAll(
+        ImmutableList.of(
+            new BarrierStep("copy1", barrier, order), new BarrierStep("copy2", barrier, order)),
+        mkdir);
+    ExecutionContext context =
+        TestExecutionContext.newBuilder()
+            .setRuleResourceAmounts(ResourceAmounts.of(2, 0, 0, 0))
+            .build();
+
+    StepExecutionResult result = builder.build().execute(context);
+
+    assertTrue(result.isSuccess());
+    assertEquals("mkdir", order.get(0));
+    assertEquals(3, order.size());
+  }
+
+  @Test
+  public void failureStopsDependentSteps() throws Exception {
+    List<String> order = new CopyOnWriteArrayList<>();
+    StepGraph.Builder builder = StepGraph.builder("graph", TARGET);
+    StepGraph.Node failing = builder.add(new FakeStep("fail", "failing step", 3));
+    builder.add(new RecordingStep("dependent", order), failing);
+
+    StepExecutionResult result = builder.build().execute(TestExecutionContext.newInstance());
+
+    assertFalse(result.isSuccess());
+    assertEquals(3, result.getExitCode());
+    assertTrue(result.getCause().get() instanceof StepFailedException);
+    assertTrue(order.isEmpty());
+  }
+
+  @Test
+  public void stepsWritingToOverlappingDestinationsRunOneAtATime() throws Exception {
+    AtomicInteger active = new AtomicInteger();
+    AtomicInteger maxActive = new AtomicInteger();
+    Path bundle = Paths.get("bundle");
+    StepGraph.Builder builder = StepGraph.builder("graph", TARGET);
+    builder.addWritingTo(bundle, new ExclusiveStep("copy1", active, maxActive));
+    builder.addWritingTo(bundle, new ExclusiveStep("copy2", active, maxActive));
+    builder.addWritingTo(bundle.resolve("sub"), new ExclusiveStep("copy3", active, maxActive));
+    builder.addWritingTo(bundle.resolve("sub/.."), new ExclusiveStep("plist", active, maxActive));
+    ExecutionContext context =
+        TestExecutionContext.newBuilder()
+            .setRuleResourceAmounts(ResourceAmounts.of(4, 0, 0, 0))
+            .build();
+
+    StepExecutionResult result = builder.build().execute(context);
+
+    assertTrue(result.isSuccess());
+    assertEquals(1, maxActive.get());
+  }
+
+  @Test
+  public void stepsWritingToDisjointDestinationsRunConcurrently() throws Exception {
+    CyclicBarrier barrier = new CyclicBarrier(2);
+    List<String> order = new CopyOnWriteArrayList<>();
+    StepGraph.Builder builder = StepGraph.builder("graph", TARGET);
+    builder.addWritingTo(Paths.get("Contents/Resources"), new BarrierStep("copy", barrier, order));
+    builder.addWritingTo(Paths.get("Contents/MacOS"), new BarrierStep("binary", barrier, order));
+    ExecutionContext context =
+        TestExecutionContext.newBuilder()
+            .setRuleResourceAmounts(ResourceAmounts.of(2, 0, 0, 0))
+            .build();
+
+    StepExecutionResult result = builder.build().execute(context);
+
+    assertTrue(result.isSuccess());
+    assertEquals(2, order.size());
+  }
+
+  @Test
+  public void errorsAreRethrownAsTheyAre() throws Exception {
+    AssertionError error = new AssertionError("boom");
+    StepGraph.Builder builder = StepGraph.builder("graph", TARGET);
+    builder.add(new ThrowingStep("throw", error));
+    builder.add(new RecordingStep("other", new CopyOnWriteArrayList<>()));
+
+    for (int cpus : new int[] {1, 2}) {
+      ExecutionContext context =
+          TestExecutionContext.newBuilder()
+              .setRuleResourceAmounts(ResourceAmounts.of(cpus, 0, 0, 0))
+              .build();
+      try {
+        builder.build().execute(context);
+        fail("Expected the step's error to be rethrown");
+      } catch (AssertionError e) {
+        assertSame(error, e);
+      }
+      assertFalse(Thread.interrupted());
+    }
+  }
+
+  @Test
+  public void innerStepsPostTheirOwnEvents() throws Exception {
+    BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+    FakeBuckEventListener listener = new FakeBuckEventListener();
+    eventBus.register(listener);
+    StepGraph.Builder builder = StepGraph.builder("graph", TARGET);
+    builder.add(new FakeStep("one", "first", 0));
+    builder.add(new FakeStep("two", "second", 0));
+
+    StepRunner.runStep(
+        TestExecutionContext.newBuilder().setBuckEventBus(eventBus).build(),
+        builder.build(),
+        Optional.of(TARGET));
+
+    List<String> finished =
+        listener.getEvents().stream()
+            .filter(StepEvent.Finished.class::isInstance)
+            .map(event -> ((StepEvent) event).getShortStepName())
+            .collect(Collectors.toList());
+    assertEquals(ImmutableList.of("one", "two", "graph"), finished);
+  }
+
+  private static class RecordingStep implements Step {
+    private final String name;
+    private final List<String> order;
+
+    RecordingStep(String name, List<String> order) {
+      this.name = name;
+      this.order = order;
+    }
+
+    @Override
+    public StepExecutionResult execute(ExecutionContext context) {
+      order.add(name);
+      return StepExecutionResults.SUCCESS;
+    }
+
+    @Override
+    public String getShortName() {
+      return name;
+    }
+
+    @Override
+    public String getDescription(ExecutionContext context) {
+      return name;
+    }
+  }
+
+  private static class ExclusiveStep extends RecordingStep {
+    private final AtomicInteger active;
+    private final AtomicInteger maxActive;
+
+    ExclusiveStep(String name, AtomicInteger active, AtomicInteger maxActive) {
+      super(name, new CopyOnWriteArrayList<>());
+      this.active = active;
+      this.maxActive = maxActive;
+    }
+
+    @Override
+    public StepExecutionResult execute(ExecutionContext context) {
+      maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+      try {
+        // Give other steps a chance to start, should they be allowed to.
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } finally {
+        active.decrementAndGet();
+      }
+      return super.execute(context);
+    }
+  }
+
+  private static class ThrowingStep extends RecordingStep {
+    private final Error error;
+
+    ThrowingStep(String name, Error error) {
+      super(name, new CopyOnWriteArrayList<>());
+      this.error = error;
+    }
+
+    @Override
+    public StepExecutionResult execute(ExecutionContext context) {
+      throw error;
+    }
+  }
+
+  private static class BarrierStep extends RecordingStep {
+    private final CyclicBarrier barrier;
+
+    BarrierStep(String name, CyclicBarrier barrier, List<String> order) {
+      super(name, order);
+      this.barrier = barrier;
+    }
+
+    @Override
+    public StepExecutionResult execute(ExecutionContext context) {
+      try {
+        barrier.await(10, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      return super.execute(context);
+    }
+  }
+}
@@ -28,6 +28,7 @@ import com.facebook.buck.event.FakeBuckEventListener;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 
 public class StepRunnerTest {
@@ -80,6 +81,30 @@ public class StepRunnerTest {
     assertFalse(events.get(1).isRelatedTo(events.get(3)));
   }
 
+  @Test
+  public void testFinishedEventRecordsDuration() throws StepFailedException, InterruptedException {
+    BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+    FakeBuckEventListener listener = new FakeBuckEventListener();
+    eventBus.register(listener);
+    ExecutionContext context = TestExecutionContext.newBuilder().setBuckEventBus(eventBus).build();
+
+    StepRunner.runStep(
+        context,
+        new AbstractExecutionStep("sleep") {
+          @Override
+          public StepExecutionResult execute(ExecutionContext context)
+              throws InterruptedException {
+            Thread.sleep(20);
+            return StepExecutionResults.SUCCESS;
+          }
+        },
+        Optional.empty());
+
+    StepEvent.Finished finished =
+        FluentIterable.from(listener.getEvents()).filter(StepEvent.Finished.class).first().get();
+    assertTrue(finished.getDurationNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+  }
+
   @Test
   public void testExplodingStep() throws InterruptedException {
     ExecutionContext context = TestExecutionContext.newInstance();
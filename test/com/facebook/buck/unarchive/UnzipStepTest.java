@@ -17,19 +17,47 @@
 package com.facebook.buck.unarchive;
 
 import static com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem.createJavaOnlyFilesystem;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.cell.name.CanonicalCellName;
+import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.io.filesystem.impl.DefaultProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.DefaultProjectFilesystemDelegate;
+import com.facebook.buck.io.filesystem.impl.DefaultProjectFilesystemFactory;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystemFactory;
 import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.concurrent.ConcurrencyLimit;
+import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileAttribute;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Rule;
 import org.junit.Test;
 
 public class UnzipStepTest {
 
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
   @Test
   public void testGetShortName() {
     Path zipFile = Paths.get("the/zipfile.zip");
@@ -59,4 +87,91 @@ public class UnzipStepTest {
         "unzip /abs/path/the/zipfile.zip -d /abs/path/an/output/dir",
         unzipStep.getDescription(executionContext));
   }
+
+  @Test
+  public void rulesWithTheDefaultCpuAmountExtractOnSeveralThreads() {
+    assertEquals(4, UnzipStep.getExtractionThreads(newContextWithThreads(8)));
+    assertEquals(2, UnzipStep.getExtractionThreads(newContextWithThreads(2)));
+    assertEquals(
+        6,
+        UnzipStep.getExtractionThreads(
+            TestExecutionContext.newBuilder()
+                .setConcurrencyLimit(newConcurrencyLimit(8))
+                .setRuleResourceAmounts(ResourceAmounts.of(6, 0, 0, 0))
+                .build()));
+  }
+
+  @Test
+  public void largeArchivesAreExtractedOffTheCallingThread() throws Exception {
+    // Enough uncompressed bytes to make extraction worth spreading over threads.
+    byte[] contents = new byte[1024 * 1024];
+    Path zipFile = tmp.getRoot().resolve("archive.zip");
+    try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(zipFile.toFile())) {
+      for (int i = 0; i < 16; i++) {
+        zip.putArchiveEntry(new ZipArchiveEntry("file" + i));
+        zip.write(contents);
+        zip.closeArchiveEntry();
+      }
+    }
+    Path outputDirectory = tmp.newFolder("out");
+
+    Set<String> writingThreads = ConcurrentHashMap.newKeySet();
+    ExecutionContext context =
+        TestExecutionContext.newBuilder()
+            .setConcurrencyLimit(newConcurrencyLimit(4))
+            .setProjectFilesystemFactory(
+                new FakeProjectFilesystemFactory() {
+                  @Override
+                  public ProjectFilesystem createProjectFilesystem(
+                      CanonicalCellName cellName,
+                      AbsPath root,
+                      boolean buckOutIncludeTargetCofigHash) {
+                    return new DefaultProjectFilesystem(
+                        CanonicalCellName.rootCell(),
+                        root,
+                        new DefaultProjectFilesystemDelegate(root.getPath()),
+                        DefaultProjectFilesystemFactory.getWindowsFSInstance(),
+                        TestProjectFilesystems.BUCK_OUT_INCLUDE_TARGET_CONFIG_HASH_FOR_TEST) {
+                      @Override
+                      public OutputStream newFileOutputStream(
+                          Path pathRelativeToProjectRoot,
+                          boolean append,
+                          FileAttribute<?>... attrs)
+                          throws IOException {
+                        writingThreads.add(Thread.currentThread().getName());
+                        return super.newFileOutputStream(pathRelativeToProjectRoot, append, attrs);
+                      }
+                    };
+                  }
+                })
+            .build();
+
+    new UnzipStep(
+            TestProjectFilesystems.createProjectFilesystem(tmp.getRoot()),
+            zipFile,
+            tmp.getRoot().relativize(outputDirectory),
+            Optional.empty())
+        .execute(context);
+
+    assertThat(writingThreads, not(empty()));
+    assertThat(writingThreads, not(hasItem(Thread.currentThread().getName())));
+    for (int i = 0; i < 16; i++) {
+      assertArrayEquals(contents, Files.readAllBytes(outputDirectory.resolve("file" + i)));
+    }
+  }
+
+  private static ExecutionContext newContextWithThreads(int threads) {
+    return TestExecutionContext.newBuilder()
+        .setConcurrencyLimit(newConcurrencyLimit(threads))
+        .build();
+  }
+
+  private static ConcurrencyLimit newConcurrencyLimit(int threads) {
+    return new ConcurrencyLimit(
+        threads,
+        ResourceAllocationFairness.FAIR,
+        threads,
+        ResourceAmountsEstimator.DEFAULT_AMOUNTS,
+        ResourceAmountsEstimator.DEFAULT_MAXIMUM_AMOUNTS);
+  }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.bser;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class BserReaderTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private static final BserReader.Keys NAME_AND_AGE = BserReader.Keys.of("name", "age");
+
+  private static ByteBuffer serialize(Object value) throws IOException {
+    ByteBuffer buffer =
+        new BserSerializer()
+            .serializeToBuffer(value, ByteBuffer.allocate(16).order(ByteOrder.nativeOrder()));
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ReadableByteChannel getChannel(Object... values) throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    BserSerializer serializer = new BserSerializer();
+    for (Object value : values) {
+      serializer.serializeToStream(value, stream);
+    }
+    return Channels.newChannel(new ByteArrayInputStream(stream.toByteArray()));
+  }
+
+  /** Collects the names and ages of the objects it visits as "name:age". */
+  private static class NameAndAgeVisitor implements BserReader.ObjectVisitor {
+    private final List<String> people = new ArrayList<>();
+    @Nullable private String name;
+    private long age = -1;
+
+    @Override
+    public void visitField(int keyIndex, BserReader reader) throws IOException {
+      if (keyIndex == 0) {
+        name = reader.readString();
+      } else {
+        age = reader.readLong();
+      }
+    }
+
+    @Override
+    public void endObject() {
+      people.add(name + ":" + age);
+      name = null;
+      age = -1;
+    }
+  }
+
+  @Test
+  public void readsScalars() throws IOException {
+    BserReader reader = new BserReader();
+    assertThat(reader.readFrom(serialize(0x42)).readLong(), equalTo(0x42L));
+    assertThat(
+        reader.readFrom(serialize(0x11223344CCDDEEFFL)).readLong(),
+        equalTo(0x11223344CCDDEEFFL));
+    assertThat(reader.readFrom(serialize(0.123456789)).readDouble(), equalTo(0.123456789));
+    assertThat(reader.readFrom(serialize(true)).readBoolean(), equalTo(true));
+    assertThat(reader.readFrom(serialize("foo")).readString(), equalTo("foo"));
+    assertThat(
+        reader.readFrom(serialize(Collections.singletonList(null))).readArrayLength(),
+        equalTo(1));
+    assertThat(reader.readNullableString(), nullValue());
+  }
+
+  @Test
+  public void readsNonAsciiStrings() throws IOException {
+    BserReader reader = new BserReader().readFrom(serialize(ImmutableList.of("a/été", "b")));
+    assertThat(reader.readArrayLength(), equalTo(2));
+    assertThat(reader.readString(), equalTo("a/été"));
+    assertThat(reader.readString(), equalTo("b"));
+  }
+
+  @Test
+  public void readObjectVisitsRequestedKeysAndSkipsOthers() throws IOException {
+    NameAndAgeVisitor visitor = new NameAndAgeVisitor();
+    new BserReader()
+        .readFrom(
+            serialize(
+                ImmutableMap.of(
+                    "nested",
+                    ImmutableMap.of("name", "ignored", "list", ImmutableList.of(1, 2.0, "x")),
+                    "name",
+                    "fred",
+                    "misc",
+                    Arrays.asList(null, false, 70000L),
+                    "age",
+                    20)))
+        .readObject(NAME_AND_AGE, visitor);
+    assertThat(visitor.people, contains("fred:20"));
+  }
+
+  @Test
+  public void readObjectsReadsArrays() throws IOException {
+    NameAndAgeVisitor visitor = new NameAndAgeVisitor();
+    int numObjects =
+        new BserReader()
+            .readFrom(
+                serialize(
+                    ImmutableList.of(
+                        ImmutableMap.of("name", "fred", "age", 20),
+                        ImmutableMap.of("age", 30, "name", "pete"))))
+            .readObjects(NAME_AND_AGE, visitor);
+    assertThat(numObjects, equalTo(2));
+    assertThat(visitor.people, contains("fred:20", "pete:30"));
+  }
+
+  @Test
+  public void readObjectsReadsTemplatesWithSkippedValues() throws IOException {
+    NameAndAgeVisitor visitor = new NameAndAgeVisitor();
+    ByteBuffer template =
+        ByteBuffer.wrap(
+            BaseEncoding.base16()
+                .decode(
+                    "000103280B0003020203046E616D6502030361676503030203046672656403140203"
+                        + "0470657465031E0C0319"));
+    int numObjects = new BserReader().readFrom(template).readObjects(NAME_AND_AGE, visitor);
+    assertThat(numObjects, equalTo(3));
+    assertThat(visitor.people, contains("fred:20", "pete:30", "null:25"));
+  }
+
+  @Test
+  public void skipValueSkipsTemplates() throws IOException {
+    BserReader reader =
+        new BserReader()
+            .readFrom(
+                ByteBuffer.wrap(
+                    BaseEncoding.base16()
+                        .decode(
+                            "00010331000302"
+                                + "0B0003020203046E616D6502030361676503030203046672656403140203"
+                                + "0470657465031E0C0319"
+                                + "020303656E64")));
+    assertThat(reader.readArrayLength(), equalTo(2));
+    reader.skipValue();
+    assertThat(reader.readString(), equalTo("end"));
+  }
+
+  @Test
+  public void readsConsecutivePdusFromChannel() throws IOException {
+    List<String> bigList = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      bigList.add("some/path/" + i);
+    }
+    ReadableByteChannel channel = getChannel("first", bigList, "last");
+    BserReader reader = new BserReader();
+
+    assertThat(reader.readFrom(channel).readString(), equalTo("first"));
+    reader.readFrom(channel);
+    assertThat(reader.readArrayLength(), equalTo(bigList.size()));
+    for (String path : bigList) {
+      assertThat(reader.readString(), equalTo(path));
+    }
+    assertThat(reader.readFrom(channel).readString(), equalTo("last"));
+  }
+
+  @Test
+  public void sharedBufferGrowsForModeratelyLargePdus() throws IOException {
+    List<String> list = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      list.add("some/path/" + i);
+    }
+    ReadableByteChannel channel = getChannel(list, "middle", list);
+    BserReader reader = new BserReader();
+
+    for (int pdu = 0; pdu < 3; pdu++) {
+      reader.readFrom(channel);
+      if (pdu == 1) {
+        assertThat(reader.readString(), equalTo("middle"));
+        continue;
+      }
+      assertThat(reader.readArrayLength(), equalTo(list.size()));
+      for (String path : list) {
+        assertThat(reader.readString(), equalTo(path));
+      }
+    }
+  }
+
+  @Test
+  public void pdusLargerThanTheSharedBufferAreReadInBoundedSlices() throws IOException {
+    List<String> hugeList = new ArrayList<>();
+    for (int i = 0; i < 200000; i++) {
+      hugeList.add("some/path/" + i);
+    }
+    ReadableByteChannel delegate = getChannel(hugeList, "last");
+    int[] largestHeapRead = {0};
+    ReadableByteChannel channel =
+        new ReadableByteChannel() {
+          @Override
+          public int read(ByteBuffer dst) throws IOException {
+            if (!dst.isDirect()) {
+              largestHeapRead[0] = Math.max(largestHeapRead[0], dst.remaining());
+            }
+            return delegate.read(dst);
+          }
+
+          @Override
+          public boolean isOpen() {
+            return delegate.isOpen();
+          }
+
+          @Override
+          public void close() throws IOException {
+            delegate.close();
+          }
+        };
+    BserReader reader = new BserReader();
+
+    reader.readFrom(channel);
+    assertThat(reader.readArrayLength(), equalTo(hugeList.size()));
+    for (String path : hugeList) {
+      assertThat(reader.readString(), equalTo(path));
+    }
+    assertThat(reader.readFrom(channel).readString(), equalTo("last"));
+    assertThat(largestHeapRead[0], greaterThan(0));
+    assertThat(largestHeapRead[0], lessThanOrEqualTo(64 * 1024));
+  }
+
+  @Test
+  public void truncatedPduThrowsEofException() throws IOException {
+    ByteBuffer pdu = serialize(ImmutableList.of("foo", "bar"));
+    pdu.limit(pdu.limit() - 2);
+    thrown.expect(BserDeserializer.BserEofException.class);
+    new BserReader().readFrom(pdu);
+  }
+
+  @Test
+  public void readingPastTheEndOfThePduThrowsEofException() throws IOException {
+    // An array of two strings, cut in the middle of the first one.
+    ByteBuffer pdu = ByteBuffer.wrap(BaseEncoding.base16().decode("0001030700030202030366"));
+    thrown.expect(BserDeserializer.BserEofException.class);
+    new BserReader().readFrom(pdu).read(reader -> reader.readArrayLength() + reader.readString());
+  }
+
+  @Test
+  public void unexpectedTypeThrowsIOException() throws IOException {
+    BserReader reader = new BserReader().readFrom(serialize("foo"));
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Expected ARRAY");
+    reader.readArrayLength();
+  }
+}
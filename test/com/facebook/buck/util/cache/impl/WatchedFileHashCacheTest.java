@@ -27,6 +27,8 @@ import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.TestProjectFilesystems;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.io.watchman.WatchmanEvent.Kind;
+import com.facebook.buck.io.watchman.WatchmanEvent.Type;
+import com.facebook.buck.io.watchman.WatchmanMultiplePathEvent;
 import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.testutil.TemporaryPaths;
@@ -229,6 +231,37 @@ public class WatchedFileHashCacheTest {
         nullValue());
   }
 
+  @Test
+  public void whenNotifiedOfMultiplePathsTheyAndTheirParentsAreRemoved() throws IOException {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    WatchedFileHashCache cache = new WatchedFileHashCache(filesystem, fileHashCacheMode);
+    Path dir = filesystem.getPath("dir");
+    Path changed1 = dir.resolve("changed1");
+    Path changed2 = filesystem.getPath("other/changed2");
+    Path unchanged = filesystem.getPath("other/unchanged");
+    filesystem.mkdirs(dir);
+    filesystem.mkdirs(unchanged.getParent());
+    filesystem.touch(changed1);
+    filesystem.touch(changed2);
+    filesystem.touch(unchanged);
+
+    HashCodeAndFileType value = HashCodeAndFileType.ofFile(HashCode.fromInt(42));
+    cache.fileHashCacheEngine.put(dir, HashCodeAndFileType.ofDirectory(HashCode.fromInt(1)));
+    cache.fileHashCacheEngine.put(changed1, value);
+    cache.fileHashCacheEngine.put(changed2, value);
+    cache.fileHashCacheEngine.put(unchanged, value);
+    cache.onFileSystemChange(
+        WatchmanMultiplePathEvent.of(
+            filesystem.getRootPath(),
+            ImmutableList.of(
+                WatchmanMultiplePathEvent.Change.of(Type.FILE, changed1, Kind.MODIFY),
+                WatchmanMultiplePathEvent.Change.of(Type.FILE, changed2, Kind.DELETE))));
+    assertFalse(cache.getIfPresent(dir).isPresent());
+    assertFalse(cache.getIfPresent(changed1).isPresent());
+    assertFalse(cache.getIfPresent(changed2).isPresent());
+    assertTrue(cache.getIfPresent(unchanged).isPresent());
+  }
+
   @Test
   public void thatWillGetIsCorrect() throws IOException {
     ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
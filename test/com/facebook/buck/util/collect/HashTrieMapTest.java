@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.collect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class HashTrieMapTest {
+
+  /** A key whose hash code is chosen by the test, to force collisions. */
+  private static class Key {
+    private final String name;
+    private final int hash;
+
+    Key(String name, int hash) {
+      this.name = name;
+      this.hash = hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && ((Key) obj).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private static <K, V> Map<K, V> toMap(HashTrieMap<K, V> map) {
+    Map<K, V> result = new HashMap<>();
+    map.forEach((key, value) -> assertNull("duplicate key " + key, result.put(key, value)));
+    return result;
+  }
+
+  @Test
+  public void emptyMap() {
+    HashTrieMap<String, Integer> map = HashTrieMap.of();
+    assertTrue(map.isEmpty());
+    assertEquals(0, map.size());
+    assertNull(map.get("a"));
+    assertEquals(ImmutableMap.of(), toMap(map));
+  }
+
+  @Test
+  public void plusReplacesExistingValues() {
+    HashTrieMap<String, Integer> map = HashTrieMap.<String, Integer>of().plus("a", 1).plus("b", 2);
+    HashTrieMap<String, Integer> replaced = map.plus("a", 3);
+
+    assertEquals(ImmutableMap.of("a", 1, "b", 2), toMap(map));
+    assertEquals(ImmutableMap.of("a", 3, "b", 2), toMap(replaced));
+    assertEquals(2, replaced.size());
+  }
+
+  @Test
+  public void matchesHashMapForRandomOperations() {
+    Random random = new Random(1234);
+    Map<Integer, Integer> expected = new HashMap<>();
+    HashTrieMap<Integer, Integer> map = HashTrieMap.of();
+    for (int i = 0; i < 10000; i++) {
+      int key = random.nextInt();
+      expected.put(key, i);
+      map = map.plus(key, i);
+    }
+
+    assertEquals(expected.size(), map.size());
+    assertEquals(expected, toMap(map));
+    for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+  }
+
+  @Test
+  public void unionKeepsValuesOfReceiver() {
+    HashTrieMap<String, Integer> left = HashTrieMap.copyOf(ImmutableMap.of("a", 1, "b", 2));
+    HashTrieMap<String, Integer> right = HashTrieMap.copyOf(ImmutableMap.of("b", 3, "c", 4));
+
+    assertEquals(ImmutableMap.of("a", 1, "b", 2, "c", 4), toMap(left.union(right)));
+    assertEquals(ImmutableMap.of("a", 1, "b", 3, "c", 4), toMap(right.union(left)));
+    assertEquals(3, left.union(right).size());
+  }
+
+  @Test
+  public void unionReturnsInputWhenOtherAddsNothing() {
+    HashTrieMap<Integer, Integer> small = HashTrieMap.of();
+    for (int i = 0; i < 100; i++) {
+      small = small.plus(i, i);
+    }
+    HashTrieMap<Integer, Integer> large = small;
+    for (int i = 100; i < 1000; i++) {
+      large = large.plus(i, i);
+    }
+
+    assertSame(large, large.union(small));
+    assertSame(large, small.union(large));
+    assertSame(small, small.union(HashTrieMap.of()));
+    assertSame(small, HashTrieMap.<Integer, Integer>of().union(small));
+  }
+
+  @Test
+  public void collidingKeysAreKeptApart() {
+    Key a = new Key("a", 42);
+    Key b = new Key("b", 42);
+    Key c = new Key("c", 42);
+    HashTrieMap<Key, Integer> ab = HashTrieMap.<Key, Integer>of().plus(a, 1).plus(b, 2);
+    HashTrieMap<Key, Integer> bc = HashTrieMap.<Key, Integer>of().plus(b, 3).plus(c, 4);
+
+    HashTrieMap<Key, Integer> union = ab.union(bc);
+    assertEquals(ImmutableMap.of(a, 1, b, 2, c, 4), toMap(union));
+    assertEquals(Integer.valueOf(4), union.get(c));
+    assertFalse(union.containsKey(new Key("d", 42)));
+    assertSame(union, union.union(ab));
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.util.concurrent;
+
+import com.facebook.buck.util.types.Unit;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Compares acquire/release throughput of the monitor based and the lock-free semaphore when many
+ * threads contend for the same resources.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListeningMultiSemaphoreBenchmark {
+
+  private static final ResourceAmounts MAXIMUM = ResourceAmounts.of(64, 640, 50, 30);
+  private static final ResourceAmounts REQUEST = ResourceAmounts.of(1, 2, 0, 0);
+
+  @Param({"monitor", "lock_free"})
+  public String implementation;
+
+  @Param({"FAIR", "FAST"})
+  public ResourceAllocationFairness fairness;
+
+  private MultiResourceSemaphore semaphore;
+
+  @Setup
+  public void setUp() {
+    semaphore =
+        implementation.equals("lock_free")
+            ? new LockFreeListeningMultiSemaphore(MAXIMUM, fairness)
+            : new ListeningMultiSemaphore(MAXIMUM, fairness);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @Threads(64)
+  public void acquireAndRelease() throws ExecutionException, InterruptedException {
+    ListenableFuture<Unit> future = semaphore.acquire(REQUEST);
+    future.get();
+    semaphore.release(REQUEST);
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {ListeningMultiSemaphoreBenchmark.class.getName()});
+  }
+}
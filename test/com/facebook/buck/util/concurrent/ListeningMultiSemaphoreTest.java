@@ -81,6 +81,30 @@ public class ListeningMultiSemaphoreTest {
     assertThat(array.getAvailableResources(), Matchers.equalTo(array.getMaximumValues()));
   }
 
+  @Test
+  public void testPendingQueueIsOrderedByPriority() {
+    ListeningMultiSemaphore array = getFairListeningMultiSemaphore(amountsOfCpu(1));
+
+    ListenableFuture<Unit> f1 = array.acquire(amountsOfCpu(1));
+    ListenableFuture<Unit> low = array.acquire(amountsOfCpu(1), 1);
+    ListenableFuture<Unit> high = array.acquire(amountsOfCpu(1), 10);
+    ListenableFuture<Unit> sameAsHigh = array.acquire(amountsOfCpu(1), 10);
+    assertThat(f1.isDone(), Matchers.equalTo(true));
+    assertThat(array.getQueueLength(), Matchers.equalTo(3));
+
+    array.release(amountsOfCpu(1));
+    assertThat(high.isDone(), Matchers.equalTo(true));
+    assertThat(sameAsHigh.isDone(), Matchers.equalTo(false));
+
+    array.release(amountsOfCpu(1));
+    assertThat(sameAsHigh.isDone(), Matchers.equalTo(true));
+    assertThat(low.isDone(), Matchers.equalTo(false));
+
+    array.release(amountsOfCpu(1));
+    assertThat(low.isDone(), Matchers.equalTo(true));
+    assertThat(array.getQueueLength(), Matchers.equalTo(0));
+  }
+
   @Test
   public void testProcessingPendingQueueWithCancelledFuturesReleasesPendingItems() {
     ResourceAmounts values = amountsOfCpu(7);
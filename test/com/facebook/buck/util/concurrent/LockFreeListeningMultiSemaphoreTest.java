@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.util.concurrent;
+
+import static org.hamcrest.junit.MatcherAssert.assertThat;
+
+import com.facebook.buck.util.types.Unit;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+public class LockFreeListeningMultiSemaphoreTest {
+  @Test
+  public void testCreatingWithMaximumValues() {
+    ResourceAmounts values = ResourceAmounts.of(2, 10, 3, 4);
+    LockFreeListeningMultiSemaphore semaphore = getFairSemaphore(values);
+    assertThat(semaphore.getAvailableResources(), Matchers.equalTo(values));
+    assertThat(semaphore.getMaximumValues(), Matchers.equalTo(values));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(0));
+  }
+
+  @Test
+  public void testCanRepresent() {
+    assertThat(
+        LockFreeListeningMultiSemaphore.canRepresent(ResourceAmounts.of(64, 640, 50, 30)),
+        Matchers.equalTo(true));
+    assertThat(
+        LockFreeListeningMultiSemaphore.canRepresent(
+            ResourceAmounts.of(1, LockFreeListeningMultiSemaphore.MAX_RESOURCE_VALUE + 1, 0, 0)),
+        Matchers.equalTo(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsMaximumValuesThatCannotBePacked() {
+    getFairSemaphore(ResourceAmounts.of(0, 0, 0, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void testProcessingPendingQueueWithMultipleResources() {
+    LockFreeListeningMultiSemaphore semaphore = getFairSemaphore(ResourceAmounts.of(7, 7, 0, 0));
+
+    ListenableFuture<Unit> cpuOnly = semaphore.acquire(ResourceAmounts.of(5, 0, 0, 0));
+    ListenableFuture<Unit> memOnly = semaphore.acquire(ResourceAmounts.of(0, 5, 0, 0));
+    assertThat(cpuOnly.isDone(), Matchers.equalTo(true));
+    assertThat(memOnly.isDone(), Matchers.equalTo(true));
+
+    ListenableFuture<Unit> both = semaphore.acquire(ResourceAmounts.of(4, 4, 0, 0));
+    assertThat(both.isDone(), Matchers.equalTo(false));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(1));
+
+    semaphore.release(ResourceAmounts.of(5, 0, 0, 0));
+    assertThat(both.isDone(), Matchers.equalTo(false));
+
+    semaphore.release(ResourceAmounts.of(0, 5, 0, 0));
+    assertThat(both.isDone(), Matchers.equalTo(true));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(0));
+    assertThat(
+        semaphore.getAvailableResources(), Matchers.equalTo(ResourceAmounts.of(3, 3, 0, 0)));
+  }
+
+  @Test
+  public void testPendingQueueIsOrderedByPriority() {
+    LockFreeListeningMultiSemaphore semaphore = getFairSemaphore(amountsOfCpu(1));
+
+    semaphore.acquire(amountsOfCpu(1));
+    ListenableFuture<Unit> low = semaphore.acquire(amountsOfCpu(1), 1);
+    ListenableFuture<Unit> high = semaphore.acquire(amountsOfCpu(1), 10);
+    ListenableFuture<Unit> sameAsHigh = semaphore.acquire(amountsOfCpu(1), 10);
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(3));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(high.isDone(), Matchers.equalTo(true));
+    assertThat(sameAsHigh.isDone(), Matchers.equalTo(false));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(sameAsHigh.isDone(), Matchers.equalTo(true));
+    assertThat(low.isDone(), Matchers.equalTo(false));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(low.isDone(), Matchers.equalTo(true));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(0));
+  }
+
+  @Test
+  public void testCancelledPendingItemsGiveBackResources() {
+    LockFreeListeningMultiSemaphore semaphore = getFairSemaphore(amountsOfCpu(7));
+
+    semaphore.acquire(amountsOfCpu(5));
+    ListenableFuture<Unit> toBeCancelled = semaphore.acquire(amountsOfCpu(5));
+    ListenableFuture<Unit> afterCancellation = semaphore.acquire(amountsOfCpu(6));
+    toBeCancelled.cancel(true);
+
+    semaphore.release(amountsOfCpu(5));
+    assertThat(afterCancellation.isDone(), Matchers.equalTo(true));
+    assertThat(afterCancellation.isCancelled(), Matchers.equalTo(false));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(0));
+    assertThat(semaphore.getAvailableResources(), Matchers.equalTo(amountsOfCpu(1)));
+  }
+
+  @Test
+  public void testCappingToMaximumAmounts() {
+    LockFreeListeningMultiSemaphore semaphore =
+        new LockFreeListeningMultiSemaphore(amountsOfCpu(5), ResourceAllocationFairness.FAST);
+
+    ListenableFuture<Unit> first = semaphore.acquire(amountsOfCpu(100500));
+    assertThat(first.isDone(), Matchers.equalTo(true));
+    assertThat(semaphore.getAvailableResources(), Matchers.equalTo(amountsOfCpu(0)));
+
+    semaphore.release(amountsOfCpu(100500));
+    assertThat(semaphore.getAvailableResources(), Matchers.equalTo(semaphore.getMaximumValues()));
+  }
+
+  @Test
+  public void fairFairnessDoesNotReorderPendingItems() {
+    LockFreeListeningMultiSemaphore semaphore = getFairSemaphore(amountsOfCpu(4));
+
+    semaphore.acquire(amountsOfCpu(3));
+    ListenableFuture<Unit> big = semaphore.acquire(amountsOfCpu(4));
+    ListenableFuture<Unit> small = semaphore.acquire(amountsOfCpu(2));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(2));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(big.isDone(), Matchers.equalTo(false));
+    assertThat(small.isDone(), Matchers.equalTo(false));
+  }
+
+  @Test
+  public void fastFairnessLetsSmallerPendingItemsThrough() {
+    LockFreeListeningMultiSemaphore semaphore =
+        new LockFreeListeningMultiSemaphore(amountsOfCpu(4), ResourceAllocationFairness.FAST);
+
+    semaphore.acquire(amountsOfCpu(3));
+    ListenableFuture<Unit> big = semaphore.acquire(amountsOfCpu(4));
+    ListenableFuture<Unit> small = semaphore.acquire(amountsOfCpu(2));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(big.isDone(), Matchers.equalTo(false));
+    assertThat(small.isDone(), Matchers.equalTo(true));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(1));
+  }
+
+  @Test
+  public void testConcurrentAcquireAndReleaseNeverExceedsMaximum() throws Exception {
+    int maxCpu = 3;
+    int threads = 8;
+    int iterations = 2000;
+    LockFreeListeningMultiSemaphore semaphore = getFairSemaphore(amountsOfCpu(maxCpu));
+    AtomicInteger inUse = new AtomicInteger();
+    AtomicInteger maxObserved = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(threads * iterations);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Runnable> workers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        workers.add(
+            () -> {
+              for (int i = 0; i < iterations; i++) {
+                ListenableFuture<Unit> future = semaphore.acquire(amountsOfCpu(1), i % 3);
+                future.addListener(
+                    () -> {
+                      int current = inUse.incrementAndGet();
+                      maxObserved.accumulateAndGet(current, Math::max);
+                      inUse.decrementAndGet();
+                      semaphore.release(amountsOfCpu(1));
+                      done.countDown();
+                    },
+                    executor);
+              }
+            });
+      }
+      workers.forEach(executor::execute);
+      assertThat(done.await(30, TimeUnit.SECONDS), Matchers.equalTo(true));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(maxObserved.get(), Matchers.lessThanOrEqualTo(maxCpu));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(0));
+    assertThat(semaphore.getAvailableResources(), Matchers.equalTo(amountsOfCpu(maxCpu)));
+  }
+
+  private static LockFreeListeningMultiSemaphore getFairSemaphore(ResourceAmounts values) {
+    return new LockFreeListeningMultiSemaphore(values, ResourceAllocationFairness.FAIR);
+  }
+
+  private static ResourceAmounts amountsOfCpu(int cpu) {
+    return ResourceAmounts.of(cpu, 0, 0, 0);
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class ValueGettersTest {
+
+  @SuppressWarnings("unused")
+  public static class Target {
+    private static final String STATIC_FIELD = "static";
+
+    private final String privateField = "private";
+    private final int primitiveField = 42;
+    private final Object nullField = null;
+
+    public String getPublic() {
+      return "public";
+    }
+
+    public long getPrimitive() {
+      return 7L;
+    }
+
+    private String getPrivate() {
+      return "private method";
+    }
+
+    public String throwsUnchecked() {
+      throw new UnsupportedOperationException("unchecked");
+    }
+
+    public String throwsChecked() throws IOException {
+      throw new IOException("checked");
+    }
+
+    public static String staticMethod() {
+      return "static";
+    }
+  }
+
+  /** Not public, so it can't be called from a class spun next to {@link ValueGetters}. */
+  static class PackagePrivateTarget extends Target {
+    public String getInherited() {
+      return "package private";
+    }
+  }
+
+  @Test
+  public void readsPrivateFields() throws Exception {
+    ValueGetter getter = ValueGetters.forField(Target.class.getDeclaredField("privateField"));
+
+    assertEquals("private", getter.get(new Target()));
+  }
+
+  @Test
+  public void boxesPrimitiveFields() throws Exception {
+    ValueGetter getter = ValueGetters.forField(Target.class.getDeclaredField("primitiveField"));
+
+    assertEquals(42, getter.get(new Target()));
+  }
+
+  @Test
+  public void returnsNullFields() throws Exception {
+    ValueGetter getter = ValueGetters.forField(Target.class.getDeclaredField("nullField"));
+
+    assertNull(getter.get(new Target()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsStaticFields() throws Exception {
+    ValueGetters.forField(Target.class.getDeclaredField("STATIC_FIELD"));
+  }
+
+  @Test
+  public void callsPublicMethods() throws Exception {
+    assertEquals(
+        "public", ValueGetters.forMethod(Target.class.getMethod("getPublic")).get(new Target()));
+    assertEquals(
+        7L, ValueGetters.forMethod(Target.class.getMethod("getPrimitive")).get(new Target()));
+  }
+
+  @Test
+  public void callsPrivateMethods() throws Exception {
+    ValueGetter getter = ValueGetters.forMethod(Target.class.getDeclaredMethod("getPrivate"));
+
+    assertEquals("private method", getter.get(new Target()));
+  }
+
+  @Test
+  public void callsMethodsOfClassesThatAreNotPublic() throws Exception {
+    ValueGetter getter =
+        ValueGetters.forMethod(PackagePrivateTarget.class.getMethod("getInherited"));
+
+    assertEquals("package private", getter.get(new PackagePrivateTarget()));
+  }
+
+  @Test
+  public void callsOverridingMethods() throws Exception {
+    ValueGetter getter = ValueGetters.forMethod(Object.class.getMethod("toString"));
+    Object target =
+        new Object() {
+          @Override
+          public String toString() {
+            return "overridden";
+          }
+        };
+
+    assertEquals("overridden", getter.get(target));
+  }
+
+  @Test
+  public void propagatesUncheckedExceptions() throws Exception {
+    ValueGetter getter = ValueGetters.forMethod(Target.class.getMethod("throwsUnchecked"));
+    try {
+      getter.get(new Target());
+      fail("Expected an exception");
+    } catch (UnsupportedOperationException e) {
+      assertEquals("unchecked", e.getMessage());
+    }
+  }
+
+  @Test
+  public void wrapsCheckedExceptions() throws Exception {
+    ValueGetter getter = ValueGetters.forMethod(Target.class.getMethod("throwsChecked"));
+    try {
+      getter.get(new Target());
+      fail("Expected an exception");
+    } catch (IllegalStateException e) {
+      assertSame(IOException.class, e.getCause().getClass());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsStaticMethods() throws Exception {
+    ValueGetters.forMethod(Target.class.getMethod("staticMethod"));
+  }
+}
@@ -763,4 +763,46 @@ public class UntarTest {
 
     Assert.assertFalse(testFilesystem.exists(pycPath));
   }
+
+  @Test
+  public void overwriteChangedSkipsFilesWithMatchingSizeAndModifiedTime() throws IOException {
+    ArchiveFormat format = ArchiveFormat.TAR;
+    Path archivePath = getTestFilePath(format.getExtension());
+    Path mainDotJavaPath = getDestPath("root", "src", "com", "facebook", "buck", "Main.java");
+    Path echoDotShPath = getDestPath("root", "echo.sh");
+    Path junkPath = getDestPath("junk.txt");
+
+    format
+        .getUnarchiver()
+        .extractArchive(
+            archivePath,
+            filesystem,
+            OUTPUT_SUBDIR,
+            Optional.empty(),
+            ExistingFileMode.OVERWRITE_CHANGED_AND_CLEAN_DIRECTORIES);
+
+    // Same size and modification time as the archive entry: assumed to be unchanged.
+    String sameSize = mainDotJava.replace('M', 'N');
+    filesystem.writeContentsToPath(sameSize + "\n", mainDotJavaPath);
+    filesystem.setLastModifiedTime(mainDotJavaPath, expectedModifiedTime);
+    filesystem.writeContentsToPath("changed", echoDotShPath);
+    filesystem.writeContentsToPath("junk", junkPath);
+
+    ImmutableSet<Path> unarchivedFiles =
+        format
+            .getUnarchiver()
+            .extractArchive(
+                archivePath,
+                filesystem,
+                OUTPUT_SUBDIR,
+                Optional.empty(),
+                ExistingFileMode.OVERWRITE_CHANGED_AND_CLEAN_DIRECTORIES);
+
+    Assert.assertThat(unarchivedFiles, Matchers.hasItems(mainDotJavaPath, echoDotShPath));
+    assertOutputFileExists(mainDotJavaPath, sameSize);
+    assertOutputFileExists(echoDotShPath, echoDotSh);
+    assertModifiedTime(echoDotShPath);
+    assertExecutable(echoDotShPath, true);
+    Assert.assertFalse(filesystem.exists(junkPath));
+  }
 }
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.util.unarchive;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
@@ -43,7 +44,9 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
@@ -398,4 +401,80 @@ public class UnzipTest {
     assertTrue(Files.isDirectory(extractFolder.toAbsolutePath().resolve("emptydir")));
     assertEquals(ImmutableSet.of(extractFolder.resolve("1.bin")), result);
   }
+
+  @Test
+  public void testOverwriteChangedRewritesChangedFilesAndRemovesStaleOnes() throws IOException {
+    try (ZipArchive zipArchive = new ZipArchive(this.zipFile, true)) {
+      zipArchive.add("1.bin", DUMMY_FILE_CONTENTS);
+      zipArchive.add("subdir/2.bin", DUMMY_FILE_CONTENTS);
+    }
+
+    ProjectFilesystem filesystem =
+        TestProjectFilesystems.createProjectFilesystem(tmpFolder.getRoot());
+    Path extractFolder = Paths.get("out");
+    filesystem.mkdirs(extractFolder.resolve("subdir"));
+    filesystem.writeContentsToPath("changed", extractFolder.resolve("1.bin"));
+    filesystem.writeContentsToPath("stale", extractFolder.resolve("stale.bin"));
+    filesystem.writeContentsToPath("stale", extractFolder.resolve("subdir/stale.bin"));
+
+    for (int i = 0; i < 2; i++) {
+      ImmutableSet<Path> result =
+          ArchiveFormat.ZIP
+              .getUnarchiver()
+              .extractArchive(
+                  zipFile.toAbsolutePath(),
+                  filesystem,
+                  extractFolder,
+                  Optional.empty(),
+                  PatternsMatcher.NONE,
+                  ExistingFileMode.OVERWRITE_CHANGED_AND_CLEAN_DIRECTORIES);
+
+      assertEquals(
+          ImmutableSet.of(extractFolder.resolve("1.bin"), extractFolder.resolve("subdir/2.bin")),
+          result);
+      assertEquals(
+          new String(DUMMY_FILE_CONTENTS),
+          filesystem.readFileIfItExists(extractFolder.resolve("1.bin")).get());
+      assertEquals(
+          new String(DUMMY_FILE_CONTENTS),
+          filesystem.readFileIfItExists(extractFolder.resolve("subdir/2.bin")).get());
+      assertFalse(filesystem.exists(extractFolder.resolve("stale.bin")));
+      assertFalse(filesystem.exists(extractFolder.resolve("subdir/stale.bin")));
+    }
+  }
+
+  @Test
+  public void testExtractLargeStoredEntry() throws IOException {
+    // Large enough to be copied in several chunks.
+    byte[] contents = new byte[40 * 1024 * 1024 + 17];
+    new Random(42).nextBytes(contents);
+    CRC32 crc = new CRC32();
+    crc.update(contents);
+
+    try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(zipFile.toFile())) {
+      zip.putArchiveEntry(new ZipArchiveEntry("small.txt"));
+      zip.write(DUMMY_FILE_CONTENTS);
+      zip.closeArchiveEntry();
+      ZipArchiveEntry entry = new ZipArchiveEntry("large.bin");
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(contents.length);
+      entry.setCrc(crc.getValue());
+      zip.putArchiveEntry(entry);
+      zip.write(contents);
+      zip.closeArchiveEntry();
+    }
+
+    Path extractFolder = tmpFolder.newFolder();
+    ArchiveFormat.ZIP
+        .getUnarchiver()
+        .withMaxThreads(4)
+        .extractArchive(
+            new DefaultProjectFilesystemFactory(),
+            zipFile.toAbsolutePath(),
+            extractFolder.toAbsolutePath(),
+            ExistingFileMode.OVERWRITE_CHANGED_AND_CLEAN_DIRECTORIES);
+
+    assertArrayEquals(contents, Files.readAllBytes(extractFolder.resolve("large.bin")));
+    assertArrayEquals(DUMMY_FILE_CONTENTS, Files.readAllBytes(extractFolder.resolve("small.txt")));
+  }
 }
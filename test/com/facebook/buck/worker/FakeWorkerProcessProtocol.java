@@ -38,6 +38,9 @@ public class FakeWorkerProcessProtocol {
       }
     }
 
+    @Override
+    public void cancel(int messageId) {}
+
     @Override
     public WorkerProcessProtocol.CommandResponse receiveNextCommandResponse() throws IOException {
       if (isClosed) {
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.worker;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkerProcessPoolEvictorTest {
+
+  private static final long MAX_IDLE_NANOS = 1000;
+
+  private ScheduledExecutorService scheduler;
+  private RecordingPool pool;
+  private ConcurrentMap<String, WorkerProcessPool> pools;
+
+  @Before
+  public void setUp() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    pool = new RecordingPool();
+    pools = new ConcurrentHashMap<>();
+    pools.put("worker", pool);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void usesMaxIdleTimeWhenThereIsEnoughMemory() {
+    createEvictor(0.5).evictIdleWorkers();
+    assertThat(pool.requestedIdleTimes, contains(MAX_IDLE_NANOS));
+  }
+
+  @Test
+  public void stopsAllIdleWorkersUnderMemoryPressure() {
+    createEvictor(0.05).evictIdleWorkers();
+    assertThat(pool.requestedIdleTimes, contains(0L));
+  }
+
+  @Test
+  public void closingStopsTheScheduler() {
+    createEvictor(0.5).close();
+    assertThat(scheduler.isShutdown(), is(true));
+  }
+
+  private WorkerProcessPoolEvictor createEvictor(double freeMemoryFraction) {
+    return new WorkerProcessPoolEvictor(
+        pools, MAX_IDLE_NANOS, 0.1, () -> freeMemoryFraction, scheduler);
+  }
+
+  private static class RecordingPool implements WorkerProcessPool {
+    private final List<Long> requestedIdleTimes = new ArrayList<>();
+
+    @Override
+    public HashCode getPoolHash() {
+      return Hashing.sha256().hashLong(0);
+    }
+
+    @Override
+    public int getCapacity() {
+      return 1;
+    }
+
+    @Override
+    public ListenableFuture<WorkerJobResult> submitJob(String expandedJobArgs) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int stopIdleWorkers(long maxIdleNanos) {
+      requestedIdleTimes.add(maxIdleNanos);
+      return 0;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
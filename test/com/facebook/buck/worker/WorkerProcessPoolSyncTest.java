@@ -32,6 +32,7 @@ import com.google.common.hash.Hashing;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -44,6 +45,7 @@ import java.util.concurrent.Phaser;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import org.junit.After;
@@ -369,6 +371,60 @@ public class WorkerProcessPoolSyncTest {
     worker.close();
   }
 
+  @Test
+  public void routesJobsToTheWarmestWorker() throws Exception {
+    WorkerJobResult result = WorkerJobResult.of(0, Optional.empty(), Optional.empty());
+    WorkerProcessPoolSync pool =
+        createPool(2, () -> new FakeWorkerProcess(ImmutableMap.of("job", result)));
+
+    BorrowedWorkerProcess warm = pool.borrowWorkerProcess();
+    BorrowedWorkerProcess cold = pool.borrowWorkerProcess();
+    WorkerProcess warmProcess = warm.get();
+    cold.get();
+    warm.submitJob("job").get();
+    // return the warm worker first, so that a stack based pool would hand out the cold one
+    warm.close();
+    cold.close();
+
+    try (BorrowedWorkerProcess next = pool.borrowWorkerProcess()) {
+      assertThat(next.get(), is(warmProcess));
+    }
+    pool.close();
+  }
+
+  @Test
+  public void stopsIdleWorkersAndRestartsThemOnDemand() throws Exception {
+    AtomicLong now = new AtomicLong();
+    Set<WorkerProcess> createdWorkers = new HashSet<>();
+    WorkerProcessPoolSync pool =
+        new WorkerProcessPoolSync(
+            2,
+            Hashing.sha256().hashLong(0),
+            () -> {
+              FakeWorkerProcess worker = new FakeWorkerProcess(ImmutableMap.of());
+              worker.ensureLaunchAndHandshake();
+              createdWorkers.add(worker);
+              return worker;
+            },
+            now::get);
+    long maxIdle = TimeUnit.MINUTES.toNanos(5);
+
+    BorrowedWorkerProcess busy = pool.borrowWorkerProcess();
+    busy.get();
+    acquireWorkersThenRelease(pool, 1);
+    assertThat(createdWorkers.size(), is(2));
+
+    now.set(TimeUnit.MINUTES.toNanos(10));
+    // only the worker which is not borrowed can be stopped
+    assertThat(pool.stopIdleWorkers(maxIdle), is(1));
+    busy.close();
+    assertThat(pool.stopIdleWorkers(maxIdle), is(0));
+
+    acquireWorkersThenRelease(pool, 2);
+    assertThat(createdWorkers.size(), is(3));
+    pool.close();
+  }
+
   private static WorkerProcessPoolSync createPool(
       int maxWorkers, ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess) {
     return new WorkerProcessPoolSync(
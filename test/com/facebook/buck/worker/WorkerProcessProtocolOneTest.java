@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.buck.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.testutil.TemporaryPaths;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("resource") // Closing alters the test data.
+public class WorkerProcessProtocolOneTest {
+
+  @Rule public TemporaryPaths temporaryPaths = new TemporaryPaths();
+  @Rule public ExpectedException expectedException = ExpectedException.none();
+
+  @Test
+  public void testHandshake() throws IOException {
+    ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    InputStream received =
+        frames(out -> writeHandshake(out, 7, WorkerProcessProtocolOne.PROTOCOL_VERSION, 4));
+
+    createProtocol(sent, received).handshake(7);
+
+    DataInputStream frame = new DataInputStream(new ByteArrayInputStream(sent.toByteArray()));
+    assertEquals(13, frame.readInt());
+    assertEquals(WorkerProcessProtocolOne.TYPE_HANDSHAKE, frame.readByte());
+    assertEquals(7, frame.readInt());
+    assertEquals(WorkerProcessProtocolOne.PROTOCOL_VERSION, frame.readInt());
+    assertEquals(0, frame.readInt());
+  }
+
+  @Test
+  public void testHandshakeWithWrongVersionFails() throws IOException {
+    expectedException.expect(HumanReadableException.class);
+    expectedException.expectMessage("protocol version to be 1, got 0");
+
+    createProtocol(new ByteArrayOutputStream(), frames(out -> writeHandshake(out, 7, 0, 4)))
+        .handshake(7);
+  }
+
+  @Test
+  public void testSendCommandAndReceiveResults() throws IOException {
+    ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    InputStream received =
+        frames(
+            out -> {
+              writeHandshake(out, 0, WorkerProcessProtocolOne.PROTOCOL_VERSION, 2);
+              writeFrame(out, WorkerProcessProtocolOne.TYPE_RESULT, 2, 0);
+              writeFrame(out, WorkerProcessProtocolOne.TYPE_ERROR, 1, 3);
+            });
+    WorkerProcessProtocol.CommandSender protocol = createProtocol(sent, received);
+    protocol.handshake(0);
+    sent.reset();
+
+    protocol.send(
+        1,
+        ImmutableWorkerProcessCommand.of(
+            Paths.get("args"), Paths.get("stdout"), Paths.get("stderr")));
+    DataInputStream frame = new DataInputStream(new ByteArrayInputStream(sent.toByteArray()));
+    frame.readInt();
+    assertEquals(WorkerProcessProtocolOne.TYPE_COMMAND, frame.readByte());
+    assertEquals(1, frame.readInt());
+    assertEquals("args", readString(frame));
+    assertEquals("stdout", readString(frame));
+    assertEquals("stderr", readString(frame));
+
+    // responses may arrive out of order
+    WorkerProcessProtocol.CommandResponse first = protocol.receiveNextCommandResponse();
+    assertEquals(2, first.getCommandId());
+    assertEquals(0, first.getExitCode());
+    WorkerProcessProtocol.CommandResponse second = protocol.receiveNextCommandResponse();
+    assertEquals(1, second.getCommandId());
+    assertEquals(3, second.getExitCode());
+  }
+
+  @Test
+  public void testCancel() throws IOException {
+    ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    createProtocol(sent, frames(out -> {})).cancel(5);
+
+    DataInputStream frame = new DataInputStream(new ByteArrayInputStream(sent.toByteArray()));
+    assertEquals(5, frame.readInt());
+    assertEquals(WorkerProcessProtocolOne.TYPE_CANCEL, frame.readByte());
+    assertEquals(5, frame.readInt());
+  }
+
+  @Test(timeout = 10000)
+  public void testReservingSlotWaitsUntilWorkerAcceptsMoreCommands() throws Exception {
+    InputStream received =
+        frames(
+            out -> {
+              writeHandshake(out, 0, WorkerProcessProtocolOne.PROTOCOL_VERSION, 1);
+              writeFrame(out, WorkerProcessProtocolOne.TYPE_RESULT, 1, 0);
+            });
+    WorkerProcessProtocol.CommandSender protocol =
+        createProtocol(new ByteArrayOutputStream(), received);
+    protocol.handshake(0);
+    WorkerProcessCommand command =
+        ImmutableWorkerProcessCommand.of(Paths.get("a"), Paths.get("o"), Paths.get("e"));
+    protocol.reserveSlot();
+    protocol.send(1, command);
+
+    CountDownLatch secondSent = new CountDownLatch(1);
+    Thread sender =
+        new Thread(
+            () -> {
+              try {
+                protocol.reserveSlot();
+                protocol.send(2, command);
+                secondSent.countDown();
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    sender.start();
+    assertFalse(secondSent.await(200, TimeUnit.MILLISECONDS));
+
+    protocol.receiveNextCommandResponse();
+    assertTrue(secondSent.await(5, TimeUnit.SECONDS));
+    sender.join();
+  }
+
+  @Test(timeout = 10000)
+  public void testReservingSlotFailsWhenWorkerDiesWhileWaiting() throws IOException {
+    AtomicBoolean alive = new AtomicBoolean(true);
+    WorkerProcessProtocol.CommandSender protocol =
+        new WorkerProcessProtocolOne.CommandSender(
+            new ByteArrayOutputStream(),
+            frames(out -> writeHandshake(out, 0, WorkerProcessProtocolOne.PROTOCOL_VERSION, 1)),
+            temporaryPaths.newFile(),
+            () -> {},
+            alive::get);
+    protocol.handshake(0);
+    WorkerProcessCommand command =
+        ImmutableWorkerProcessCommand.of(Paths.get("a"), Paths.get("o"), Paths.get("e"));
+    protocol.reserveSlot();
+    protocol.send(1, command);
+    alive.set(false);
+
+    expectedException.expect(IOException.class);
+    protocol.reserveSlot();
+  }
+
+  private WorkerProcessProtocol.CommandSender createProtocol(
+      ByteArrayOutputStream sent, InputStream received) throws IOException {
+    return new WorkerProcessProtocolOne.CommandSender(
+        sent, received, temporaryPaths.newFile(), () -> {}, () -> true);
+  }
+
+  private static void writeHandshake(DataOutputStream out, int id, int version, int maxInFlight)
+      throws IOException {
+    out.writeInt(13);
+    out.writeByte(WorkerProcessProtocolOne.TYPE_HANDSHAKE);
+    out.writeInt(id);
+    out.writeInt(version);
+    out.writeInt(maxInFlight);
+  }
+
+  private static void writeFrame(DataOutputStream out, byte type, int id, int exitCode)
+      throws IOException {
+    out.writeInt(9);
+    out.writeByte(type);
+    out.writeInt(id);
+    out.writeInt(exitCode);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static InputStream frames(FrameWriter writer) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writer.write(new DataOutputStream(bytes));
+    return new ByteArrayInputStream(bytes.toByteArray());
+  }
+
+  @FunctionalInterface
+  private interface FrameWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+}
@@ -43,6 +43,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -93,6 +95,89 @@ public class WorkerProcessTest {
     }
   }
 
+  @Test(timeout = 20 * 1000)
+  public void testCancellingJobIsForwardedToProtocol() throws IOException {
+    List<Integer> cancelledIds = new ArrayList<>();
+    FakeWorkerProcessProtocol.FakeCommandSender protocol =
+        new FakeWorkerProcessProtocol.FakeCommandSender() {
+          @Override
+          public void send(int messageId, WorkerProcessCommand command) {
+            // Never answer, so the job stays in flight until it is cancelled.
+          }
+
+          @Override
+          public void cancel(int messageId) {
+            cancelledIds.add(messageId);
+          }
+        };
+
+    try (WorkerProcess process =
+        new WorkerProcess(
+            new FakeProcessExecutor(),
+            createDummyParams(),
+            new FakeProjectFilesystem(),
+            Paths.get("stderr"),
+            Paths.get("tmp").toAbsolutePath().normalize())) {
+      process.launchForTesting(protocol);
+
+      ListenableFuture<WorkerJobResult> job = process.submitJob("do stuff");
+      assertTrue(job.cancel(true));
+      assertThat(cancelledIds, Matchers.contains(0));
+    }
+  }
+
+  @Test(timeout = 20 * 1000)
+  public void testCloseIsNotBlockedBySubmissionWaitingForSlot() throws Exception {
+    CountDownLatch waitingForSlot = new CountDownLatch(1);
+    CountDownLatch closed = new CountDownLatch(1);
+    FakeWorkerProcessProtocol.FakeCommandSender protocol =
+        new FakeWorkerProcessProtocol.FakeCommandSender() {
+          @Override
+          public void reserveSlot() throws IOException {
+            waitingForSlot.countDown();
+            try {
+              closed.await();
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+            throw new IOException("Worker closed while waiting for a slot.");
+          }
+
+          @Override
+          public synchronized void close() {
+            super.close();
+            closed.countDown();
+          }
+        };
+
+    WorkerProcess process =
+        new WorkerProcess(
+            new FakeProcessExecutor(),
+            createDummyParams(),
+            new FakeProjectFilesystem(),
+            Paths.get("stderr"),
+            Paths.get("tmp").toAbsolutePath().normalize());
+    process.launchForTesting(protocol);
+
+    List<Throwable> failures = new ArrayList<>();
+    Thread submitter =
+        new Thread(
+            () -> {
+              try {
+                process.submitJob("do stuff");
+              } catch (Throwable t) {
+                failures.add(t);
+              }
+            });
+    submitter.start();
+    waitingForSlot.await();
+
+    process.close();
+    submitter.join();
+    assertThat(failures.size(), is(1));
+    assertThat(failures.get(0), Matchers.instanceOf(IOException.class));
+  }
+
   @Test(timeout = 20 * 1000)
   public void testUncleanShutdown() throws IOException, ExecutionException, InterruptedException {
     FakeWorkerProcessProtocol.FakeCommandSender protocol =